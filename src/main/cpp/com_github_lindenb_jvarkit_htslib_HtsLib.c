@@ -1,211 +1,320 @@
-
-
 #include <stdio.h>
-#include <unistd.h>
+#include <stdlib.h>
+#include <string.h>
+#include <errno.h>
+#include <stdint.h>
 #include <zlib.h>
-#include <getopt.h>
-#include "htslib/kseq.h"
+#include <htslib/kseq.h>
 #include <htslib/hts.h>
+#include <htslib/vcf.h>
+#include <htslib/tbx.h>
+#include <htslib/kstring.h>
 
 #include "com_github_lindenb_jvarkit_htslib_HtsLib.h"
 
-KSEQ_DECLARE(gzFile)
+KSEQ_INIT(gzFile, gzread)
 
 #define QUALIFIEDMETHOD(fun) Java_com_github_lindenb_jvarkit_htslib_HtsLib_##fun
+#define ERROR(...) do { fprintf(stderr,"[htsjni]"); fprintf(stderr,__VA_ARGS__); fputc('\n',stderr); } while(0)
 
-jlong QUALIFIEDMETHOD(kseq_1init_1file)(JNIEnv *env, jclass clazz, jstring filename) {
-    const char* fn = (*env)->GetStringUTFChars(env,(jstring) filename, NULL);
+/******************************************************************************
+ * KSEQ
+ */
+typedef struct KSeqShuttle {
+    gzFile fp;
+    kseq_t* kseq;
+    /* a record was read by kseq_read_batch but it didn't fit in the java array */
+    int pending;
+    /* native staging buffers filled by kseq_read_batch and then copied into the java arrays */
+    kstring_t data;
+    jint* ends;
+    size_t ends_capacity;
+} KSeqShuttle;
+
+JNIEXPORT jlong JNICALL QUALIFIEDMETHOD(kseq_1init_1file)(JNIEnv *env, jclass clazz, jstring filename) {
+    const char* fn = (*env)->GetStringUTFChars(env, filename, NULL);
     gzFile fp = strcmp(fn, "-") ? gzopen(fn, "r") : gzdopen(fileno(stdin), "r");
     if (fp == 0) {
-        fprintf(stderr, "Cannot open %s.\n", fn);
-        (*env)->ReleaseStringUTFChars(env,filename, fn);
+        ERROR("Cannot open %s.", fn);
+        (*env)->ReleaseStringUTFChars(env, filename, fn);
         return (jlong)0L;
         }
-    kseq_t* obj = kseq_init(fp);
-    (*env)->ReleaseStringUTFChars(env,filename, fn);
-    return (jlong)obj;
+    (*env)->ReleaseStringUTFChars(env, filename, fn);
+    KSeqShuttle* shuttle = (KSeqShuttle*)calloc(1, sizeof(KSeqShuttle));
+    if (shuttle == NULL) {
+        ERROR("Out of memory.");
+        gzclose(fp);
+        return (jlong)0L;
+        }
+    shuttle->fp = fp;
+    shuttle->kseq = kseq_init(fp);
+    gzbuffer(fp, 131072);
+    return (jlong)shuttle;
     }
 
+JNIEXPORT void JNICALL QUALIFIEDMETHOD(kseq_1destroy)(JNIEnv *env, jclass clazz, jlong ptr) {
+    if(ptr==0L) return;
+    KSeqShuttle* shuttle = (KSeqShuttle*)ptr;
+    kseq_destroy(shuttle->kseq);
+    gzclose(shuttle->fp);
+    free(shuttle->data.s);
+    free(shuttle->ends);
+    free(shuttle);
+    }
 
-void QUALIFIEDMETHOD(kseq_1destroy)(JNIEnv *env, jclass clazz,jlong ptr) {
-  if(ptr!=0L)  kseq_destroy(( kseq_t*)ptr);
-}
-
-jint QUALIFIEDMETHOD(kseq_1read4y)(JNIEnv *env, jclass clazz,jlong ptr,jobjectArray array) {
-  if(ptr==0L) return -1;
-  kseq_t* kseq = ( kseq_t*)ptr;
-  int rez = kseq_read(kseq);
-  if(rez<0) return rez;
-  jobject s =  (*env)->NewStringUTF(env,kseq->name.s);
-  (*env)->SetObjectArrayElement(env,array, 0,s);
-  s =  (*env)->NewStringUTF(env,kseq->seq.s);
-  (*env)->SetObjectArrayElement(env,array, 1,s);
-  s =  (*env)->NewStringUTF(env,kseq->comment.s);
-  (*env)->SetObjectArrayElement(env,array, 2,s);
-  s =  (*env)->NewStringUTF(env,kseq->qual.s);
-  (*env)->SetObjectArrayElement(env,array, 3,s);
-  return rez;
-}
+JNIEXPORT jint JNICALL QUALIFIEDMETHOD(kseq_1read4)(JNIEnv *env, jclass clazz, jlong ptr, jobjectArray array) {
+    if(ptr==0L) return -1;
+    KSeqShuttle* shuttle = (KSeqShuttle*)ptr;
+    kseq_t* kseq = shuttle->kseq;
+    int rez = shuttle->pending ? (int)kseq->seq.l : kseq_read(kseq);
+    shuttle->pending = 0;
+    if(rez<0) return rez;
+    (*env)->SetObjectArrayElement(env, array, 0, (*env)->NewStringUTF(env, kseq->name.s));
+    (*env)->SetObjectArrayElement(env, array, 1, (*env)->NewStringUTF(env, kseq->seq.s));
+    (*env)->SetObjectArrayElement(env, array, 2, kseq->comment.l > 0 ? (*env)->NewStringUTF(env, kseq->comment.s) : NULL);
+    (*env)->SetObjectArrayElement(env, array, 3, kseq->qual.l > 0 ? (*env)->NewStringUTF(env, kseq->qual.s) : NULL);
+    return rez;
+    }
 
+/** fill the java arena (see FastqArena) with up to 'max_records' records.
+ * kseq_read does blocking I/O, so the records are first copied into native staging
+ * buffers and no JNI critical region is held while reading.
+ */
+JNIEXPORT jint JNICALL QUALIFIEDMETHOD(kseq_1read_1batch)(JNIEnv *env, jclass clazz, jlong ptr, jbyteArray data_array, jintArray ends_array, jint max_records) {
+    if(ptr==0L) return -1;
+    KSeqShuttle* shuttle = (KSeqShuttle*)ptr;
+    kseq_t* kseq = shuttle->kseq;
+    const size_t capacity = (size_t)(*env)->GetArrayLength(env, data_array);
+    const jsize ends_length = (*env)->GetArrayLength(env, ends_array);
+    if(max_records > ends_length/4) max_records = ends_length/4;
+    if(ks_resize(&(shuttle->data), capacity) != 0) {
+        ERROR("Out of memory.");
+        return -1;
+        }
+    if(shuttle->ends_capacity < (size_t)max_records*4) {
+        jint* p = (jint*)realloc(shuttle->ends, sizeof(jint)*(size_t)max_records*4);
+        if(p==NULL) {
+            ERROR("Out of memory.");
+            return -1;
+            }
+        shuttle->ends = p;
+        shuttle->ends_capacity = (size_t)max_records*4;
+        }
+    char* data = shuttle->data.s;
+    jint* ends = shuttle->ends;
+    jint n = 0;
+    size_t offset = 0;
+    while(n < max_records) {
+        if(!shuttle->pending) {
+            int rez = kseq_read(kseq);
+            if(rez == -1) break; /* end of file */
+            if(rez < -1) return -1;
+            shuttle->pending = 1;
+            }
+        const size_t header_len = kseq->name.l + (kseq->comment.l > 0 ? 1 + kseq->comment.l : 0);
+        const size_t needed = header_len + kseq->seq.l + kseq->qual.l;
+        if(offset + needed > capacity) {
+            /* the record is kept in kseq for the next call */
+            if(n == 0) return -(jint)(needed < 2 ? 2 : needed);
+            break;
+            }
+        memcpy(data + offset, kseq->name.s, kseq->name.l);
+        offset += kseq->name.l;
+        ends[n*4] = (jint)offset;
+        if(kseq->comment.l > 0) {
+            data[offset++] = ' ';
+            memcpy(data + offset, kseq->comment.s, kseq->comment.l);
+            offset += kseq->comment.l;
+            }
+        ends[n*4+1] = (jint)offset;
+        memcpy(data + offset, kseq->seq.s, kseq->seq.l);
+        offset += kseq->seq.l;
+        ends[n*4+2] = (jint)offset;
+        memcpy(data + offset, kseq->qual.s, kseq->qual.l);
+        offset += kseq->qual.l;
+        ends[n*4+3] = (jint)offset;
+        shuttle->pending = 0;
+        n++;
+        }
+    if(n > 0) {
+        (*env)->SetByteArrayRegion(env, data_array, 0, (jsize)offset, (const jbyte*)data);
+        (*env)->SetIntArrayRegion(env, ends_array, 0, n*4, ends);
+        }
+    return n;
+    }
 
+/******************************************************************************
+ * VCF/BCF
+ */
 typedef struct VcfShuttle {
     htsFile *in;
     bcf_hdr_t *header;
     bcf1_t* bcf;
-    //
     tbx_t *tbx_idx;
     hts_idx_t *bcf_idx;
-    //
     hts_itr_t *itr;
-} VcfStuff ;
-
-void VcfShuttleDestroy(VcfShuttle* vcf) {
-if (vcf==NULL) return;
-if (vcf->in!=NULL) hts_close(vcf->in);
-if (vcf->header!=NULL) bcf_hdr_destroy(vcf->header);
-if (vcf->bcf!=NULL) bcf_destroy(vcf->bcf);
-if (vcf->itr!=NULL) hts_itr_destroy(vcf->itr);
-if ( vcf->tbx_idx!=NULL ) tbx_destroy(vcf->tbx_idx);
-if ( vcf->bcf_idx!=NULL ) hts_idx_destroy(vcf->bcf_idx);
-free(vcf);
-}
-
-jlong QUALIFIEDMETHOD(kseq_1read4y)(JNIEnv *env, jclass clazz,jlong ptr,jbool require_index) {
-  VcfShuttle* vcf  = (VcfShuttle*)calloc(1,sizeof(VcfShuttle));
-  const char* fn = (*env)->GetStringUTFChars(env,(jstring) filename, NULL);
-  vcf->in = hts_open(fn,"r");
-  if(vcf->in==NULL) {
-    ERROR("Cannot open input vcf %s. (%s)",fn,strerror(errno));
-    VcfShuttleDestroy(vcf);    
-    return 0L;    
-    }
- vcf->header = bcf_hdr_read(in);
- if(vcf->header==NULL) {
-    ERROR("Cannot read header for input vcf %s.",fn);
-    VcfShuttleDestroy(vcf);    
-    return 0L;    
+    kstring_t line;
+    /* a record was read by bcf_read_raw but the java buffer was too small */
+    int pending;
+} VcfShuttle;
+
+static void VcfShuttleDestroy(VcfShuttle* shuttle) {
+    if (shuttle==NULL) return;
+    if (shuttle->itr!=NULL) hts_itr_destroy(shuttle->itr);
+    if (shuttle->tbx_idx!=NULL) tbx_destroy(shuttle->tbx_idx);
+    if (shuttle->bcf_idx!=NULL) hts_idx_destroy(shuttle->bcf_idx);
+    if (shuttle->bcf!=NULL) bcf_destroy(shuttle->bcf);
+    if (shuttle->header!=NULL) bcf_hdr_destroy(shuttle->header);
+    if (shuttle->in!=NULL) hts_close(shuttle->in);
+    free(shuttle->line.s);
+    free(shuttle);
     }
 
- if(require_index) {
-    if ( vcf->in->format.format==vcf ) {
-        vcf->tbx_idx = tbx_index_load(fn);
-        if(vcf->tbx_idx==NULL) {
-            ERROR("Cannot read index for input vcf %s.",fn);
-            VcfShuttleDestroy(vcf);    
-            return 0L;    
-            }
+JNIEXPORT jlong JNICALL QUALIFIEDMETHOD(bcf_1open)(JNIEnv *env, jclass clazz, jstring filename, jboolean require_index) {
+    VcfShuttle* shuttle = (VcfShuttle*)calloc(1, sizeof(VcfShuttle));
+    if(shuttle==NULL) {
+        ERROR("Out of memory.");
+        return 0L;
         }
-    else  if ( vcf->in->format.format==bcf ) {
-        reader->bcf_idx = bcf_index_load(fn);
-        if(vcf->bcf_idx==NULL) {
-            ERROR("Cannot read index for input bcf %s.",fn);
-            VcfShuttleDestroy(vcf);    
-            return 0L;    
+    const char* fn = (*env)->GetStringUTFChars(env, filename, NULL);
+    shuttle->in = hts_open(fn, "r");
+    if(shuttle->in==NULL) {
+        ERROR("Cannot open input vcf %s. (%s)", fn, strerror(errno));
+        goto fail;
+        }
+    shuttle->header = bcf_hdr_read(shuttle->in);
+    if(shuttle->header==NULL) {
+        ERROR("Cannot read header for input vcf %s.", fn);
+        goto fail;
+        }
+    if(require_index) {
+        if (shuttle->in->format.format==vcf) {
+            shuttle->tbx_idx = tbx_index_load(fn);
+            }
+        else if (shuttle->in->format.format==bcf) {
+            shuttle->bcf_idx = bcf_index_load(fn);
+            }
+        if(shuttle->tbx_idx==NULL && shuttle->bcf_idx==NULL) {
+            ERROR("Cannot read index for input vcf %s.", fn);
+            goto fail;
             }
         }
-    else {
-        ERROR("Unknown filetype for input vcf %s.",fn);
-        VcfShuttleDestroy(vcf);    
-        return 0L;
+    shuttle->bcf = bcf_init();
+    if(shuttle->bcf==NULL) {
+        ERROR("Out of memory.");
+        goto fail;
         }
+    (*env)->ReleaseStringUTFChars(env, filename, fn);
+    return (jlong)shuttle;
+fail:
+    (*env)->ReleaseStringUTFChars(env, filename, fn);
+    VcfShuttleDestroy(shuttle);
+    return 0L;
     }
 
- vcf->bcf = bcf_init();
- if(vcf->bcf==NULL) {
-    ERROR("Out of memory.");
-    VcfShuttleDestroy(vcf);    
-    return -1;    
+JNIEXPORT void JNICALL QUALIFIEDMETHOD(bcf_1close)(JNIEnv *env, jclass clazz, jlong ptr) {
+    VcfShuttleDestroy((VcfShuttle*)ptr);
     }
 
-  return (jlong)vcf;
-  }
-
-jint QUALIFIEDMETHOD(kseq_1read4y)(JNIEnv *env, jclass clazz,jlong ptr) {
-VcfShuttle* vcf  = (VcfShuttle*)ptr;
-VcfShuttleDestroy(ptr);
-return 0;
-}
-
-
-jlong QUALIFIEDMETHOD(kseq_1read4y)(JNIEnv *env, jclass clazz,jlong hdrptr) {
-VcfShuttle* vcf  = (VcfShuttle*)ptr;
-kstring_t htxt = {0,0,0};
-if (bcf_hdr_format(vcf->header, 1, &htxt) < 0) {
-     free(htxt.s);
-    return -1;
-}
-kputc('\0', &htxt); // include the \0 byte
-jobject s =  (*env)->NewStringUTF(env,htxt.s);
-free(htxt.s);
-return  (jlong)s;
-}
-
-jlong QUALIFIEDMETHOD(kseq_1read4y)(JNIEnv *env, jclass clazz,jlong ptr) {
-{
-VcfShuttle* vcf  = (VcfShuttle*)ptr;
-int rez= bcf_read(vcf->in,vcf->header,vcf->bcf);
-if (vcf_format1(vcf->header, vcf->bcf, &(vcf->in->line)) != 0)
-        return -1;
-jobject s =  (*env)->NewStringUTF(env,vcf->in->line.s);
-return (jlong)s;
-}
-
-jint QUALIFIEDMETHOD(kseq_1read4y)(JNIEnv *env, jclass clazz,jlong ptr) {
-VcfShuttle* vcf  = (VcfShuttle*)ptr;
-if ( vcf->itr!=NULL )
-    {
-        hts_itr_destroy(vcf->itr);
-        vcf->itr = NULL;
+JNIEXPORT jint JNICALL QUALIFIEDMETHOD(bcf_1set_1threads)(JNIEnv *env, jclass clazz, jlong ptr, jint n) {
+    VcfShuttle* shuttle = (VcfShuttle*)ptr;
+    if(shuttle==NULL) return -1;
+    return hts_set_threads(shuttle->in, n);
     }
-if ( vcf->tbx_idx !=NULL)
-    {
-        int tid = tbx_name2id(vcf->tbx_idx, seq);
-        if ( tid==-1 ) return -1;    // the sequence not present in this file
-        vcf->itr = tbx_itr_queryi(vcf->tbx_idx,tid,start,end+1);
-    }
-else
-    {
-        int tid = bcf_hdr_name2id(vcf->header, seq);
-        if ( tid==-1 ) return -1;    // the sequence not present in this file
-        vcf->itr = bcf_itr_queryi(vcf->bcf_idx,tid,start,end+1);
-    }
-}
-
-
 
+JNIEXPORT jstring JNICALL QUALIFIEDMETHOD(bcf_1hdr_1to_1string)(JNIEnv *env, jclass clazz, jlong ptr) {
+    VcfShuttle* shuttle = (VcfShuttle*)ptr;
+    kstring_t htxt = {0, 0, 0};
+    if (shuttle==NULL || bcf_hdr_format(shuttle->header, 1, &htxt) < 0) {
+        free(htxt.s);
+        return NULL;
+        }
+    jstring s = (*env)->NewStringUTF(env, htxt.s);
+    free(htxt.s);
+    return s;
+    }
 
- int ret = 0;
- if ( reader->tbx_idx )
-        {
-            if ( (ret=tbx_itr_next(vcf->in, vcf->tbx_idx, vcf->itr, &files->tmps)) < 0 ) break;  // no more lines
-            ret = vcf_parse1(&files->tmps, vcf->header, reader->buffer[reader->nbuffer+1]);
-            if ( ret<0 ) { files->errnum = vcf_parse_error; break; }
+JNIEXPORT jint JNICALL QUALIFIEDMETHOD(bcf_1itr_1init)(JNIEnv *env, jclass clazz, jlong ptr, jstring contig, jint start, jint end) {
+    VcfShuttle* shuttle = (VcfShuttle*)ptr;
+    if(shuttle==NULL) return -1;
+    if (shuttle->itr!=NULL) {
+        hts_itr_destroy(shuttle->itr);
+        shuttle->itr = NULL;
         }
-else
-        {
-            ret = bcf_itr_next(reader->file, reader->itr, reader->buffer[reader->nbuffer+1]);
-            if ( ret < -1 ) files->errnum = bcf_read_error;
-            if ( ret < 0 ) break; // no more lines or an error
-            bcf_subset_format(reader->header,reader->buffer[reader->nbuffer+1]);
+    const char* seq = (*env)->GetStringUTFChars(env, contig, NULL);
+    int tid;
+    if (shuttle->tbx_idx!=NULL) {
+        tid = tbx_name2id(shuttle->tbx_idx, seq);
+        if (tid>=0) shuttle->itr = tbx_itr_queryi(shuttle->tbx_idx, tid, start-1, end);
         }
-if ( files->streaming )
-        {
-            if ( reader->file->format.format==vcf )
-            {
-                if ( (ret=hts_getline(reader->file, KS_SEP_LINE, &files->tmps)) < 0 ) break;   // no more lines
-                ret = vcf_parse1(&files->tmps, reader->header, reader->buffer[reader->nbuffer+1]);
-                if ( ret<0 ) { files->errnum = vcf_parse_error; break; }
-            }
-            else if ( reader->file->format.format==bcf )
-            {
-                ret = bcf_read1(reader->file, reader->header, reader->buffer[reader->nbuffer+1]);
-                if ( ret < -1 ) files->errnum = bcf_read_error;
-                if ( ret < 0 ) break; // no more lines or an error
-            }
-            else
-            {
-                hts_log_error("Fixme: not ready for this");
-                exit(1);
-            }
+    else if (shuttle->bcf_idx!=NULL) {
+        tid = bcf_hdr_name2id(shuttle->header, seq);
+        if (tid>=0) shuttle->itr = bcf_itr_queryi(shuttle->bcf_idx, tid, start-1, end);
         }
+    else {
+        tid = -1;
+        }
+    (*env)->ReleaseStringUTFChars(env, contig, seq);
+    /* the sequence is not present in this file */
+    if (tid<0) return -1;
+    return shuttle->itr==NULL ? -1 : 0;
+    }
+
+/** return the next VCF line of the iterator, or NULL */
+JNIEXPORT jstring JNICALL QUALIFIEDMETHOD(bcf_1itr_1next)(JNIEnv *env, jclass clazz, jlong ptr) {
+    VcfShuttle* shuttle = (VcfShuttle*)ptr;
+    if(shuttle==NULL || shuttle->itr==NULL) return NULL;
+    if (shuttle->tbx_idx!=NULL) {
+        if (tbx_itr_next(shuttle->in, shuttle->tbx_idx, shuttle->itr, &(shuttle->line)) < 0) return NULL;
+        }
+    else {
+        if (bcf_itr_next(shuttle->in, shuttle->itr, shuttle->bcf) < 0) return NULL;
+        shuttle->line.l = 0;
+        if (vcf_format1(shuttle->header, shuttle->bcf, &(shuttle->line)) != 0) return NULL;
+        /* remove the trailing new line */
+        if (shuttle->line.l > 0 && shuttle->line.s[shuttle->line.l-1]=='\n') shuttle->line.s[--shuttle->line.l] = 0;
+        }
+    return (*env)->NewStringUTF(env, shuttle->line.s);
+    }
+
+static void put_le32(uint8_t* p, uint32_t v) {
+    p[0] = v & 0xff;
+    p[1] = (v >> 8) & 0xff;
+    p[2] = (v >> 16) & 0xff;
+    p[3] = (v >> 24) & 0xff;
+    }
 
+/** copy the next raw BCF record into the direct buffer */
+JNIEXPORT jint JNICALL QUALIFIEDMETHOD(bcf_1read_1raw)(JNIEnv *env, jclass clazz, jlong ptr, jobject buffer) {
+    VcfShuttle* shuttle = (VcfShuttle*)ptr;
+    if(shuttle==NULL || shuttle->in->format.format!=bcf) return -1;
+    uint8_t* dest = (uint8_t*)(*env)->GetDirectBufferAddress(env, buffer);
+    jlong capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if(dest==NULL || capacity<0) return -1;
+    if(!shuttle->pending) {
+        /* bcf_read1 doesn't unpack the record: shared and indiv keep the raw bytes */
+        int ret = bcf_read1(shuttle->in, shuttle->header, shuttle->bcf);
+        if(ret == -1) return 0;
+        if(ret < -1) return -1;
+        shuttle->pending = 1;
+        }
+    bcf1_t* b = shuttle->bcf;
+    const size_t needed = 32 + b->shared.l + b->indiv.l;
+    if(needed > INT32_MAX) return -1;
+    if((size_t)capacity < needed) return -((jint)needed);
+    float qual = b->qual;
+    uint32_t qual_bits;
+    memcpy(&qual_bits, &qual, sizeof(float));
+    put_le32(dest +  0, (uint32_t)(24 + b->shared.l));
+    put_le32(dest +  4, (uint32_t)b->indiv.l);
+    put_le32(dest +  8, (uint32_t)b->rid);
+    put_le32(dest + 12, (uint32_t)b->pos);
+    put_le32(dest + 16, (uint32_t)b->rlen);
+    put_le32(dest + 20, qual_bits);
+    put_le32(dest + 24, ((uint32_t)b->n_allele) << 16 | (b->n_info & 0xffff));
+    put_le32(dest + 28, ((uint32_t)b->n_fmt) << 24 | (b->n_sample & 0xffffff));
+    memcpy(dest + 32, b->shared.s, b->shared.l);
+    memcpy(dest + 32 + b->shared.l, b->indiv.s, b->indiv.l);
+    shuttle->pending = 0;
+    return (jint)needed;
+    }
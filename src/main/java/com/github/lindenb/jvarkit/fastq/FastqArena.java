@@ -0,0 +1,112 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.fastq;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A reusable arena holding a batch of FASTQ records filled by a {@link FastqBatchReader}.
+ *
+ * The bytes of all the records are stored in one byte array: for each record, the header (name, an optional
+ * space and the comment), the bases and the qualities. Four ints per record give the end of the name, the end of
+ * the header, the end of the bases and the end of the qualities. A record starts where the previous one ends.
+ * The {@link FastqRecordView}s returned by {@link #get(int)} are views over this array, they are only valid until the
+ * next call to {@link FastqBatchReader#read(FastqArena)}.
+ */
+public class FastqArena {
+	/** system property: number of records in a batch */
+	public static final String BATCH_SIZE_PROPERTY = "jvarkit.fastq.batch.size";
+	private byte[] data;
+	private final int[] ends;
+	private int count = 0;
+
+	public FastqArena() {
+		this(Integer.getInteger(BATCH_SIZE_PROPERTY, 4_096), 1_000_000);
+		}
+
+	public FastqArena(final int maxRecords,final int dataCapacity) {
+		if(maxRecords<1) throw new IllegalArgumentException("bad number of records "+maxRecords);
+		this.ends = new int[maxRecords*4];
+		this.data = new byte[Math.max(1, dataCapacity)];
+		}
+
+	/** max number of records in one batch */
+	public int getMaxRecords() {
+		return this.ends.length/4;
+		}
+
+	/** number of records in the current batch */
+	public int size() {
+		return this.count;
+		}
+
+	public boolean isEmpty() {
+		return this.count==0;
+		}
+
+	/** the bytes of the records. Used by the readers */
+	public byte[] getData() {
+		return this.data;
+		}
+
+	/** the four ends (name, header, bases, qualities) of each record. Used by the readers */
+	public int[] getEnds() {
+		return this.ends;
+		}
+
+	/** set the number of records filled by the reader */
+	public void setSize(final int n) {
+		if(n<0 || n>getMaxRecords()) throw new IllegalArgumentException("bad number of records "+n);
+		this.count = n;
+		}
+
+	/** make sure the data array can hold 'n' bytes, the current content is kept. Return the data array */
+	public byte[] ensureDataCapacity(final int n) {
+		if(n > this.data.length) {
+			this.data = Arrays.copyOf(this.data, Math.max(n, (int)Math.min(Integer.MAX_VALUE - 8L, this.data.length*2L)));
+			}
+		return this.data;
+		}
+
+	/** offset of the first byte of the i-th record */
+	int getStart(final int idx) {
+		return idx==0?0:this.ends[idx*4-1];
+		}
+
+	/** return a view of the i-th record */
+	public FastqRecordView get(final int idx) {
+		return new FastqRecordView(this).set(idx);
+		}
+
+	/** loop over the records of the current batch with a single reused view */
+	public void forEach(final Consumer<FastqRecordView> consumer) {
+		final FastqRecordView view = new FastqRecordView(this);
+		for(int i=0;i< this.count;i++) {
+			consumer.accept(view.set(i));
+			}
+		}
+	}
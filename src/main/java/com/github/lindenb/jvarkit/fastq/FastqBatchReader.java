@@ -0,0 +1,67 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.fastq;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import com.github.lindenb.jvarkit.htslib.HtsLib;
+import com.github.lindenb.jvarkit.htslib.KSeqReader;
+import com.github.lindenb.jvarkit.io.IOUtils;
+
+/**
+ * Reads FASTQ records by batches into a reusable {@link FastqArena}.
+ * The backend is selected with the system property {@value #BACKEND_PROPERTY}:
+ * 'htslib' (kseq through JNI), 'java' or 'auto' (default: htslib if the native library can be loaded).
+ */
+public interface FastqBatchReader extends Closeable {
+	/** system property: backend used to read the FASTQ */
+	public static final String BACKEND_PROPERTY = "jvarkit.fastq.backend";
+
+	/** clear the arena and fill it with the next records. Return the number of records, 0 at the end of the input */
+	public int read(final FastqArena arena) throws IOException;
+
+	/** open a fastq file, or stdin if 'filename' is null or '-' */
+	public static FastqBatchReader open(final String filename) throws IOException {
+		final String backend = System.getProperty(BACKEND_PROPERTY, "auto");
+		final boolean stdin = filename==null || filename.equals("-");
+		switch(backend) {
+			case "htslib":
+				if(!HtsLib.isAvailable()) throw new IOException("htslib native library is not available. See -D"+HtsLib.LIBRARY_PROPERTY);
+				return KSeqReader.open(stdin?"-":filename);
+			case "auto":
+				if(!stdin && HtsLib.isAvailable()) return KSeqReader.open(filename);
+				break;
+			case "java": break;
+			default: throw new IllegalArgumentException("bad value for -D"+BACKEND_PROPERTY+" : "+backend);
+			}
+		return new JavaFastqBatchReader(stdin?
+				IOUtils.uncompress(System.in):
+				IOUtils.openPathForReading(Paths.get(filename))
+				);
+		}
+	}
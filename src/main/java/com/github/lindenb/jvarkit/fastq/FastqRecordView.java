@@ -0,0 +1,177 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.fastq;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.github.lindenb.jvarkit.lang.AbstractCharSequence;
+
+import htsjdk.samtools.fastq.FastqRecord;
+
+/**
+ * A view over one record of a {@link FastqArena}. Nothing is copied: the view is only
+ * valid until the arena is filled again.
+ */
+public class FastqRecordView {
+	private final FastqArena arena;
+	private int index = -1;
+	private int start;
+	private int nameEnd;
+	private int headerEnd;
+	private int readEnd;
+	private int qualEnd;
+
+	/** a CharSequence over a region of the arena */
+	private class Region extends AbstractCharSequence {
+		private final int offset;
+		private final int length;
+		Region(final int offset,final int length) {
+			this.offset = offset;
+			this.length = length;
+			}
+		@Override
+		public int length() {
+			return this.length;
+			}
+		@Override
+		public char charAt(final int i) {
+			if(i<0 || i>=this.length) throw new IndexOutOfBoundsException(String.valueOf(i));
+			return (char)(getData()[this.offset+i] & 0xFF);
+			}
+		@Override
+		public String getString() {
+			return new String(getData(), this.offset, this.length, StandardCharsets.ISO_8859_1);
+			}
+		}
+
+	FastqRecordView(final FastqArena arena) {
+		this.arena = arena;
+		}
+
+	FastqRecordView set(final int idx) {
+		if(idx<0 || idx>=this.arena.size()) throw new IndexOutOfBoundsException("0<="+idx+"<"+this.arena.size());
+		final int[] ends = this.arena.getEnds();
+		this.index = idx;
+		this.start = this.arena.getStart(idx);
+		this.nameEnd = ends[idx*4];
+		this.headerEnd = ends[idx*4+1];
+		this.readEnd = ends[idx*4+2];
+		this.qualEnd = ends[idx*4+3];
+		return this;
+		}
+
+	/** index of this record in the arena */
+	public int getIndex() {
+		return this.index;
+		}
+
+	/** the bytes of the arena */
+	public byte[] getData() {
+		return this.arena.getData();
+		}
+
+	/** length of the name (header up to the first blank) */
+	public int getNameLength() {
+		return this.nameEnd - this.start;
+		}
+
+	/** name of the read (header up to the first blank) */
+	public CharSequence getName() {
+		return new Region(this.start, getNameLength());
+		}
+
+	/** the whole header, without the '@' */
+	public String getReadName() {
+		return new String(getData(), this.start, this.headerEnd - this.start, StandardCharsets.ISO_8859_1);
+		}
+
+	/** offset of the first base in {@link #getData()} */
+	public int getReadOffset() {
+		return this.headerEnd;
+		}
+
+	public int getReadLength() {
+		return this.readEnd - this.headerEnd;
+		}
+
+	public byte getBase(final int i) {
+		return getData()[this.headerEnd + i];
+		}
+
+	public CharSequence getReadBases() {
+		return new Region(this.headerEnd, getReadLength());
+		}
+
+	/** offset of the first quality in {@link #getData()} */
+	public int getQualityOffset() {
+		return this.readEnd;
+		}
+
+	public int getQualityLength() {
+		return this.qualEnd - this.readEnd;
+		}
+
+	/** return the quality character at 'i' (phred+33) */
+	public byte getQuality(final int i) {
+		return getData()[this.readEnd + i];
+		}
+
+	public CharSequence getBaseQualities() {
+		return new Region(this.readEnd, getQualityLength());
+		}
+
+	/** write this record as FASTQ */
+	public void write(final OutputStream out) throws IOException {
+		final byte[] data = getData();
+		out.write('@');
+		out.write(data, this.start, this.headerEnd - this.start);
+		out.write('\n');
+		out.write(data, this.headerEnd, getReadLength());
+		out.write('\n');
+		out.write('+');
+		out.write('\n');
+		out.write(data, this.readEnd, getQualityLength());
+		out.write('\n');
+		}
+
+	/** copy this view to a new htsjdk FastqRecord */
+	public FastqRecord toFastqRecord() {
+		final byte[] data = getData();
+		return new FastqRecord(
+			getReadName(),
+			new String(data, this.headerEnd, getReadLength(), StandardCharsets.ISO_8859_1),
+			null,
+			new String(data, this.readEnd, getQualityLength(), StandardCharsets.ISO_8859_1)
+			);
+		}
+
+	@Override
+	public String toString() {
+		return getReadName();
+		}
+	}
@@ -0,0 +1,131 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.fastq;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pure java {@link FastqBatchReader}: the lines are copied from the input buffer to the
+ * arena without creating any String. Records must be written on four lines.
+ */
+public class JavaFastqBatchReader implements FastqBatchReader {
+	private final InputStream in;
+	private final byte[] buffer = new byte[65_536];
+	private int buf_pos = 0;
+	private int buf_len = 0;
+	private long nLines = 0L;
+
+	public JavaFastqBatchReader(final InputStream in) {
+		this.in = in;
+		}
+
+	private boolean fillBuffer() throws IOException {
+		if(this.buf_pos < this.buf_len) return true;
+		this.buf_pos = 0;
+		this.buf_len = Math.max(0, this.in.read(this.buffer));
+		return this.buf_len > 0;
+		}
+
+	/**
+	 * append the next line (without the end of line) to the arena at 'offset'.
+	 * Return the offset after the line or -1 at the end of the input
+	 */
+	private int readLine(final FastqArena arena,int offset) throws IOException {
+		if(!fillBuffer()) return -1;
+		this.nLines++;
+		for(;;) {
+			int i = this.buf_pos;
+			while(i < this.buf_len && this.buffer[i]!='\n') i++;
+			final int len = i - this.buf_pos;
+			final byte[] data = arena.ensureDataCapacity(offset + len);
+			System.arraycopy(this.buffer, this.buf_pos, data, offset, len);
+			offset += len;
+			if(i < this.buf_len) {
+				this.buf_pos = i + 1;
+				break;
+				}
+			this.buf_pos = this.buf_len;
+			if(!fillBuffer()) break;
+			}
+		if(offset > 0 && arena.getData()[offset-1]=='\r') offset--;
+		return offset;
+		}
+
+	private IOException error(final String msg) {
+		return new IOException("Bad FASTQ at line "+this.nLines+" : "+msg);
+		}
+
+	@Override
+	public int read(final FastqArena arena) throws IOException {
+		final int[] ends = arena.getEnds();
+		final int max = arena.getMaxRecords();
+		arena.setSize(0);
+		int n = 0;
+		int offset = 0;
+		while(n < max) {
+			// skip empty lines, then '@'
+			int c;
+			do {
+				if(!fillBuffer()) {
+					arena.setSize(n);
+					return n;
+					}
+				c = this.buffer[this.buf_pos++];
+				} while(c=='\n' || c=='\r');
+			if(c!='@') throw error("expected '@' but got '"+(char)c+"'");
+			final int start = offset;
+			offset = readLine(arena, offset);
+			if(offset<0) throw error("unexpected end of file after '@'");
+			final byte[] data = arena.getData();
+			int nameEnd = start;
+			while(nameEnd < offset && data[nameEnd]!=' ' && data[nameEnd]!='\t') nameEnd++;
+			ends[n*4] = nameEnd;
+			ends[n*4+1] = offset;
+			final int readStart = offset;
+			offset = readLine(arena, offset);
+			if(offset<0) throw error("missing bases");
+			ends[n*4+2] = offset;
+			final int readLength = offset - readStart;
+			// '+' line, not stored
+			final int plusEnd = readLine(arena, offset);
+			if(plusEnd<=offset || arena.getData()[offset]!='+') throw error("expected '+'");
+			final int qualStart = offset;
+			offset = readLine(arena, offset);
+			if(offset<0) throw error("missing qualities");
+			if(offset - qualStart != readLength) throw error("length(bases)!=length(qualities)");
+			ends[n*4+3] = offset;
+			n++;
+			}
+		arena.setSize(n);
+		return n;
+		}
+
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+		}
+	}
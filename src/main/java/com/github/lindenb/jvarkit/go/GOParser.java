@@ -43,6 +43,7 @@ import java.util.stream.Collectors;
 
 import com.github.lindenb.jvarkit.go.GOOntology.Term;
 import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.lang.TransitiveClosure;
 import com.github.lindenb.jvarkit.util.log.Logger;
 
 import htsjdk.samtools.util.StringUtil;
@@ -218,6 +219,7 @@ public class GOParser {
 			}
 						
 		
+		tree.buildIndex();
 		if(this.debug)
 			{
 			LOG.debug("tree size: "+tree.size());
@@ -309,8 +311,13 @@ public class GOParser {
 		//final Set<TermImpl> parents=new HashSet<>();
 		//final Set<TermImpl> children=new HashSet<>();
 		final Set<RelationImpl> relations = new HashSet<>();
+		/** ontology containing this term */
+		final GOOntologyImpl owner;
+		/** index in the transitive closure of the ontology */
+		int index = -1;
 		
-		TermImpl(final String accession) {
+		TermImpl(final GOOntologyImpl owner,final String accession) {
+			this.owner = owner;
 			this.accession=accession;
 			this.name= this.accession;
 			this.definition= this.accession;
@@ -353,29 +360,17 @@ public class GOParser {
 			return Collections.unmodifiableSet(this.relations);
 			}
 		
+		/** use the transitive closure of the ontology: this doesn't walk the graph */
 		@Override
 		public boolean isDescendantOf(final Term parentNode)
 			{
-			//LOG.debug(" start"+this+" "+this.relations);
-			return _isDescendantOf(parentNode,new HashSet<>());
-			}
-		
-		private boolean _isDescendantOf(final Term parentNode,final Set<Term> seen)
-			{
-			//LOG.debug("here ?"+this+" "+this.relations);
-			if(parentNode==this || getAcn().equals(parentNode.getAcn())) return true;
-			seen.add(this);
-			for(final RelationImpl rel:this.relations)
-				{
-				final TermImpl nto = (TermImpl)rel.getTo() ;
-				if(seen.contains(nto)) {
-					//LOG.debug("twice ?"+this+" "+rel+" "+seen);
-					//System.exit(-1);
-					continue;
-					}
-				if(nto._isDescendantOf(parentNode,seen)) return true;
-				}
-			return false;
+			if(parentNode==this) return true;
+			final TermImpl parent = (parentNode instanceof TermImpl && TermImpl.class.cast(parentNode).owner==this.owner ?
+					TermImpl.class.cast(parentNode):
+					this.owner.acn2term.get(parentNode.getAcn())
+					);
+			if(parent==null) return false;
+			return this.owner.closure.isAncestorOf(parent.index, this.index);
 			}
 		
 		@Override
@@ -416,6 +411,8 @@ public class GOParser {
 	
 	private static class GOOntologyImpl implements GOOntology {
 		private final HashMap<String, TermImpl> acn2term=new HashMap<String, TermImpl>();
+		/** transitive closure of all the relations, built once the terms are loaded */
+		private TransitiveClosure closure = null;
 
 		
 		GOOntologyImpl()
@@ -447,12 +444,25 @@ public class GOParser {
 			TermImpl t = this.acn2term.get(acn);
 			if(t==null) {
 				if(!acn.startsWith("GO:")) throw new IllegalArgumentException("Doesn't start with GO:"+acn);
-				t = new TermImpl(acn);
+				t = new TermImpl(this,acn);
 				this.acn2term.put(acn,t);
 			}
 			return t;
 			}
 		
+		/** build the transitive closure of the relations. Must be called once all the terms are loaded */
+		private void buildIndex() {
+			final List<TermImpl> terms = new ArrayList<>(this.acn2term.values());
+			for(int i=0;i< terms.size();i++) {
+				terms.get(i).index = i;
+				}
+			final int[][] parents = new int[terms.size()][];
+			for(int i=0;i< terms.size();i++) {
+				parents[i] = terms.get(i).relations.stream().mapToInt(R->R.termTo.index).distinct().toArray();
+				}
+			this.closure = new TransitiveClosure(parents);
+			}
+		
 		@Override
 		public Term getTermByAccession(final String s)
 			{
@@ -24,17 +24,66 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.htslib;
 
+import java.nio.ByteBuffer;
+
+import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.util.log.Logger;
+
+/**
+ * JNI bindings to htslib. The native library is compiled with src/main/cpp/Makefile.
+ * It is loaded from the path defined by the system property {@value #LIBRARY_PROPERTY}
+ * or from java.library.path (name: 'htsjni').
+ */
 public class HtsLib {
-/** kseq */
+	private static final Logger LOG = Logger.build(HtsLib.class).make();
+	/** system property: path to the native library */
+	public static final String LIBRARY_PROPERTY = "jvarkit.htsjni.path";
+	private static Boolean loaded = null;
+
+	/** try to load the native library, return true on success */
+	public static synchronized boolean isAvailable() {
+		if(loaded==null) {
+			try {
+				final String path = System.getProperty(LIBRARY_PROPERTY);
+				if(StringUtils.isBlank(path)) {
+					System.loadLibrary("htsjni");
+					}
+				else
+					{
+					System.load(path);
+					}
+				loaded = Boolean.TRUE;
+				}
+			catch(final Throwable err) {
+				LOG.debug("cannot load htsjni : "+err.getMessage());
+				loaded = Boolean.FALSE;
+				}
+			}
+		return loaded.booleanValue();
+		}
+
+	/** kseq */
 	public static native long kseq_init_file(final String filename);
 	public static native void kseq_destroy(long ptr);
 	public static native int kseq_read4(long ptr,final String array[]);
+	/**
+	 * read up to 'maxRecords' records into 'data'. For each record, the four ends of the name, header, bases
+	 * and qualities are stored in 'ends' (see FastqArena). Return the number of records, 0 at the end of the file,
+	 * -1 on error, or '-size' if the first record doesn't fit in 'data': the record is kept for the next call.
+	 */
+	public static native int kseq_read_batch(long ptr,byte data[],int ends[],int maxRecords);
 	/** bcf */
 	public static native long bcf_open(final String filename,boolean requireIndex);
 	public static native String bcf_hdr_to_string(final long bcfptr);
 	public static native void bcf_close(long bcfptr);
 	public static native int bcf_itr_init(long bcfptr,String contig,int start,int end);
 	public static native String bcf_itr_next(long bcfptr);
-	
-	
-}
+	/** use 'n' threads for the BGZF decompression. return 0 on success */
+	public static native int bcf_set_threads(long bcfptr,int n);
+	/**
+	 * copy the next raw BCF record into the direct buffer, as it is stored in a BCF file (l_shared, l_indiv, shared, indiv).
+	 * return the number of bytes written, 0 at the end of the file, -1 on error, or '-size'
+	 * if the buffer is too small: the record is kept and will be returned by the next call.
+	 */
+	public static native int bcf_read_raw(long bcfptr,ByteBuffer directBuffer);
+	}
@@ -26,12 +26,18 @@ package com.github.lindenb.jvarkit.htslib;
 
 import java.io.IOException;
 
+import com.github.lindenb.jvarkit.fastq.FastqArena;
+import com.github.lindenb.jvarkit.fastq.FastqBatchReader;
 import com.github.lindenb.jvarkit.jni.CPtr;
 
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.util.CloseableIterator;
 
-public class KSeqReader extends CPtr implements CloseableIterator<FastqRecord>{
+/**
+ * FASTQ reader using htslib/kseq. Records can be read one by one as {@link FastqRecord}
+ * or by batches with {@link #read(FastqArena)}, but both methods should not be mixed.
+ */
+public class KSeqReader extends CPtr implements CloseableIterator<FastqRecord>, FastqBatchReader {
 	private final String filename;
 	private FastqRecord curr = null;
 	private final String array4[] = new String[4];
@@ -63,6 +69,23 @@ public class KSeqReader extends CPtr implements CloseableIterator<FastqRecord>{
 		return rec;
 		}
 	
+	@Override
+	public int read(final FastqArena arena) throws IOException {
+		if(this.curr!=null) throw new IllegalStateException("cannot mix next() and read(arena)");
+		arena.setSize(0);
+		if(isNull()) return 0;
+		for(;;) {
+			final int n = HtsLib.kseq_read_batch(getPtr(), arena.getData(), arena.getEnds(), arena.getMaxRecords());
+			if(n < -1) {
+				arena.ensureDataCapacity(-n);
+				continue;
+				}
+			if(n == -1) throw new IOException("Cannot read fastq in \""+this.filename+"\"");
+			arena.setSize(n);
+			return n;
+			}
+		}
+
 	@Override
 	public void close() {
 		if(!isNull()) HtsLib.kseq_destroy(getPtr());
@@ -70,7 +70,6 @@ import htsjdk.tribble.readers.SynchronousLineReader;
 import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.util.BlockCompressedInputStream;
-import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IOUtil;
@@ -409,11 +408,7 @@ public class IOUtils {
 	    	final String base = file.getFileName().toString();
 		    if (base.endsWith(".vcf.gz") || base.endsWith(".bgz"))
 		    	{
-		        return new BlockCompressedOutputStream(
-		        		file,
-		        		BlockCompressedOutputStream.getDefaultCompressionLevel(),
-		        		BlockCompressedOutputStream.getDefaultDeflaterFactory()
-		        		);
+		        return ParallelBlockCompressedOutputStream.open(file);
 		    	}
 		    else if (base.endsWith(".bz2"))
 		    	{
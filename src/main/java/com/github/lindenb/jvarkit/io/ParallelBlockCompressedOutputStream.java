@@ -0,0 +1,331 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.LocationAware;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.zip.DeflaterFactory;
+
+/**
+ * BGZF output stream compressing the blocks in a pool of threads.
+ * 
+ * The blocks are cut and compressed exactly like htsjdk's {@link BlockCompressedOutputStream} does, and they
+ * are written in order, so the output is bit-identical. The number of threads is set launcher-wide with
+ * {@link #setDefaultThreadCount(int)} (option `--bgzf-threads` or the property `jvarkit.bgzf.threads`); the
+ * static 'open' methods return a plain {@link BlockCompressedOutputStream} when it is lower than 2.
+ * 
+ * {@link #getFilePointer()} has to wait for the pending blocks, so the gain is small when a caller asks for the
+ * virtual file pointer after each record (index on the fly).
+ */
+public class ParallelBlockCompressedOutputStream extends OutputStream implements LocationAware {
+	private static int defaultThreadCount = parseThreadCount(System.getProperty("jvarkit.bgzf.threads", "0"));
+	private static ThreadPoolExecutor sharedExecutor = null;
+	/** per-thread deflaters */
+	private static final ThreadLocal<Deflaters> THREAD_DEFLATERS = new ThreadLocal<>();
+
+	private final OutputStream out;
+	private final int compressionLevel;
+	private final DeflaterFactory deflaterFactory;
+	private final ExecutorService executor;
+	/** max number of blocks being compressed before the caller has to wait */
+	private final int maxPendingBlocks;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private byte[] uncompressedBuffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
+	private int numUncompressedBytes = 0;
+	/** file address of the next block to be written to 'out' */
+	private long blockAddress = 0L;
+	private boolean closed = false;
+
+	/** deflaters owned by one thread of the pool */
+	private static class Deflaters {
+		final DeflaterFactory factory;
+		final int level;
+		final Deflater deflater;
+		final Deflater noCompressionDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
+		final byte[] compressedBuffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+		final CRC32 crc32 = new CRC32();
+		Deflaters(final DeflaterFactory factory,final int level) {
+			this.factory = factory;
+			this.level = level;
+			this.deflater = factory.makeDeflater(level, true);
+			}
+		void end() {
+			this.deflater.end();
+			this.noCompressionDeflater.end();
+			}
+		}
+
+	public ParallelBlockCompressedOutputStream(final OutputStream out,final int compressionLevel,final int nThreads) {
+		this.out = out;
+		this.compressionLevel = compressionLevel;
+		this.deflaterFactory = BlockCompressedOutputStream.getDefaultDeflaterFactory();
+		this.executor = getSharedExecutor(nThreads);
+		this.maxPendingBlocks = Math.max(2, nThreads * 2);
+		}
+
+	public ParallelBlockCompressedOutputStream(final OutputStream out) {
+		this(out, BlockCompressedOutputStream.getDefaultCompressionLevel(), getDefaultThreadCount());
+		}
+
+	private static int parseThreadCount(final String s) {
+		try {
+			return Math.max(0, Integer.parseInt(s.trim()));
+			}
+		catch(final NumberFormatException err) {
+			return 0;
+			}
+		}
+
+	/** set the number of threads used by the BGZF writers. A value lower than 2 disables the parallel compression */
+	public static synchronized void setDefaultThreadCount(final int n) {
+		defaultThreadCount = Math.max(0, n);
+		}
+
+	public static synchronized int getDefaultThreadCount() {
+		return defaultThreadCount;
+		}
+
+	/**
+	 * get the pool shared by all the streams, made of daemon threads. The pool is never shut down because other streams
+	 * may still use it: it only grows to the largest number of threads requested. Each stream limits its own parallelism
+	 * with its number of pending blocks.
+	 */
+	private static synchronized ExecutorService getSharedExecutor(final int nThreads) {
+		final int n = Math.max(1, nThreads);
+		if(sharedExecutor == null) {
+			sharedExecutor = (ThreadPoolExecutor)Executors.newFixedThreadPool(n, R->{
+				final Thread t = new Thread(R, "bgzf-compressor");
+				t.setDaemon(true);
+				return t;
+				});
+			}
+		else if(sharedExecutor.getCorePoolSize() < n) {
+			// the maximum must be raised first
+			sharedExecutor.setMaximumPoolSize(n);
+			sharedExecutor.setCorePoolSize(n);
+			}
+		return sharedExecutor;
+		}
+
+	/** open a BGZF stream, compressing in parallel if {@link #getDefaultThreadCount()} is greater than 1 */
+	public static OutputStream open(final OutputStream os,final Path pathOrNull) {
+		final int n = getDefaultThreadCount();
+		if(n < 2) return new BlockCompressedOutputStream(os, pathOrNull);
+		return new ParallelBlockCompressedOutputStream(os, BlockCompressedOutputStream.getDefaultCompressionLevel(), n);
+		}
+
+	/** open a BGZF file, compressing in parallel if {@link #getDefaultThreadCount()} is greater than 1 */
+	public static OutputStream open(final Path path) throws IOException {
+		if(getDefaultThreadCount() < 2) {
+			return new BlockCompressedOutputStream(
+					path,
+					BlockCompressedOutputStream.getDefaultCompressionLevel(),
+					BlockCompressedOutputStream.getDefaultDeflaterFactory()
+					);
+			}
+		return open(Files.newOutputStream(path), path);
+		}
+
+	@Override
+	public void write(final int b) throws IOException {
+		this.uncompressedBuffer[this.numUncompressedBytes++] = (byte)b;
+		if(this.numUncompressedBytes == this.uncompressedBuffer.length) submitBlock();
+		}
+
+	@Override
+	public void write(final byte[] bytes,int startIndex,int numBytes) throws IOException {
+		while(numBytes > 0) {
+			final int n = Math.min(this.uncompressedBuffer.length - this.numUncompressedBytes, numBytes);
+			System.arraycopy(bytes, startIndex, this.uncompressedBuffer, this.numUncompressedBytes, n);
+			this.numUncompressedBytes += n;
+			startIndex += n;
+			numBytes -= n;
+			if(this.numUncompressedBytes == this.uncompressedBuffer.length) submitBlock();
+			}
+		}
+
+	/** send the current buffer to the pool */
+	private void submitBlock() throws IOException {
+		if(this.numUncompressedBytes == 0) return;
+		final byte[] data = this.uncompressedBuffer;
+		final int len = this.numUncompressedBytes;
+		final DeflaterFactory factory = this.deflaterFactory;
+		final int level = this.compressionLevel;
+		this.pending.add(this.executor.submit(()->compressBlock(factory, level, data, len)));
+		this.uncompressedBuffer = new byte[BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE];
+		this.numUncompressedBytes = 0;
+		writeCompletedBlocks(this.pending.size() >= this.maxPendingBlocks);
+		}
+
+	/** write the compressed blocks, in order. If 'wait' is true, wait until there are less than 'maxPendingBlocks' blocks */
+	private void writeCompletedBlocks(final boolean wait) throws IOException {
+		while(!this.pending.isEmpty()) {
+			final Future<byte[]> head = this.pending.peek();
+			if(!head.isDone() && !(wait && this.pending.size() >= this.maxPendingBlocks)) break;
+			writeBlock(head);
+			this.pending.poll();
+			}
+		}
+
+	/** write all the pending blocks */
+	private void writeAllBlocks() throws IOException {
+		while(!this.pending.isEmpty()) {
+			writeBlock(this.pending.peek());
+			this.pending.poll();
+			}
+		}
+
+	private void writeBlock(final Future<byte[]> future) throws IOException {
+		final byte[] block;
+		try {
+			block = future.get();
+			}
+		catch(final InterruptedException err) {
+			throw new InterruptedIOException(err.getMessage());
+			}
+		catch(final ExecutionException err) {
+			throw new IOException(err.getCause());
+			}
+		this.out.write(block);
+		this.blockAddress += block.length;
+		}
+
+	/** compress one block, same as BlockCompressedOutputStream.deflateBlock */
+	private static byte[] compressBlock(final DeflaterFactory factory,final int level,final byte[] data,final int len) {
+		Deflaters deflaters = THREAD_DEFLATERS.get();
+		if(deflaters == null || deflaters.factory != factory || deflaters.level != level) {
+			if(deflaters != null) deflaters.end();
+			deflaters = new Deflaters(factory, level);
+			THREAD_DEFLATERS.set(deflaters);
+			}
+		final byte[] compressed = deflaters.compressedBuffer;
+		final Deflater deflater = deflaters.deflater;
+		deflater.reset();
+		deflater.setInput(data, 0, len);
+		deflater.finish();
+		int compressedSize = deflater.deflate(compressed, 0, compressed.length);
+		if(!deflater.finished()) {
+			final Deflater noCompression = deflaters.noCompressionDeflater;
+			noCompression.reset();
+			noCompression.setInput(data, 0, len);
+			noCompression.finish();
+			compressedSize = noCompression.deflate(compressed, 0, compressed.length);
+			if(!noCompression.finished()) throw new IllegalStateException("cannot compress block");
+			}
+		deflaters.crc32.reset();
+		deflaters.crc32.update(data, 0, len);
+		final long crc = deflaters.crc32.getValue();
+
+		final int totalBlockSize = compressedSize + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH + BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+		final byte[] block = new byte[totalBlockSize];
+		int i = 0;
+		block[i++] = BlockCompressedStreamConstants.GZIP_ID1;
+		block[i++] = (byte)BlockCompressedStreamConstants.GZIP_ID2;
+		block[i++] = BlockCompressedStreamConstants.GZIP_CM_DEFLATE;
+		block[i++] = (byte)BlockCompressedStreamConstants.GZIP_FLG;
+		i = putInt(block, i, 0);/* modification time */
+		block[i++] = (byte)BlockCompressedStreamConstants.GZIP_XFL;
+		block[i++] = (byte)BlockCompressedStreamConstants.GZIP_OS_UNKNOWN;
+		i = putShort(block, i, BlockCompressedStreamConstants.GZIP_XLEN);
+		block[i++] = BlockCompressedStreamConstants.BGZF_ID1;
+		block[i++] = BlockCompressedStreamConstants.BGZF_ID2;
+		i = putShort(block, i, BlockCompressedStreamConstants.BGZF_LEN);
+		i = putShort(block, i, totalBlockSize - 1);
+		System.arraycopy(compressed, 0, block, i, compressedSize);
+		i += compressedSize;
+		i = putInt(block, i, (int)crc);
+		putInt(block, i, len);
+		return block;
+		}
+
+	private static int putShort(final byte[] array,int i,final int v) {
+		array[i++] = (byte)(v & 0xFF);
+		array[i++] = (byte)((v >> 8) & 0xFF);
+		return i;
+		}
+
+	private static int putInt(final byte[] array,int i,final int v) {
+		i = putShort(array, i, v & 0xFFFF);
+		return putShort(array, i, (v >>> 16) & 0xFFFF);
+		}
+
+	/** same as {@link BlockCompressedOutputStream#getFilePointer()} . Waits for the pending blocks. */
+	public long getFilePointer() throws IOException {
+		writeAllBlocks();
+		return BlockCompressedFilePointerUtil.makeFilePointer(this.blockAddress, this.numUncompressedBytes);
+		}
+
+	@Override
+	public long getPosition() {
+		try {
+			return getFilePointer();
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		}
+
+	/** compress and write the current block, even if it is not full */
+	@Override
+	public void flush() throws IOException {
+		submitBlock();
+		writeAllBlocks();
+		this.out.flush();
+		}
+
+	@Override
+	public void close() throws IOException {
+		if(this.closed) return;
+		this.closed = true;
+		try {
+			flush();
+			this.out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+			}
+		finally
+			{
+			this.pending.forEach(F->F.cancel(true));
+			this.pending.clear();
+			this.out.close();
+			}
+		}
+	}
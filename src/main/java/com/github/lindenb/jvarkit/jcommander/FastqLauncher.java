@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.util.List;
 
 import com.beust.jcommander.Parameter;
+import com.github.lindenb.jvarkit.fastq.FastqBatchReader;
 import com.github.lindenb.jvarkit.fastq.FastqPairedReaderFactory;
 import com.github.lindenb.jvarkit.fastq.FastqRecordPair;
 import com.github.lindenb.jvarkit.io.IOUtils;
@@ -42,6 +43,8 @@ public abstract class FastqLauncher extends Launcher {
 private static final Logger LOG = Logger.build(FastqLauncher.class).make();
 @Parameter(names={"--paired"},description="assume input is paired end: we expect two files, or the input is assumed interleaved fastq.")
 boolean paired_end = false;
+@Parameter(names={"--batch-reader"},description="Single-end input: read the fastq by batches of records stored in a reusable arena, using htslib/kseq (JNI) when the native library is available, or a java parser. Ignored if the tool doesn't support it. See also -D"+FastqBatchReader.BACKEND_PROPERTY)
+boolean use_batch_reader = false;
 
 
 protected Logger getLogger() {
@@ -62,6 +65,15 @@ protected int runSingleEnd(final FastqReader fqr) throws IOException {
 	throw new UnsupportedOperationException("Single-end not implemented");
 }
 
+/** does this software supports {@link #runSingleEnd(FastqBatchReader)} */
+protected boolean isSupportingBatchReader() {
+	return false;
+	}
+
+protected int runSingleEnd(final FastqBatchReader reader) throws IOException {
+	throw new UnsupportedOperationException("Batch reader not implemented");
+	}
+
 /** does this software supported paired-end n_ends==2 or singled_end n_ends==1 */
 protected boolean isSupportingXXXEnd(int n_ends) {
 	return true;
@@ -96,6 +108,14 @@ public int doWork(final List<String> args)
 			return -1;
 			}
 		final String input = oneFileOrNull(args);
+		if(this.use_batch_reader) {
+			if(isSupportingBatchReader()) {
+				try(FastqBatchReader r = FastqBatchReader.open(input)) {
+					return runSingleEnd(r);
+					}
+				}
+			getLogger().warn("This software doesn't support the batch reader.");
+			}
 		try(FastqReader fqr= (input==null?
 				new FastqReader(IOUtils.openStdinForBufferedReader()):
 				new FastqReader(new File(input))
@@ -36,6 +36,7 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.util.log.MetricsRegistry;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
@@ -137,6 +138,11 @@ protected ProgressLoggerInterface createProgressLogger() {
 
 protected void scanIterator(final SAMFileHeader headerIn,final CloseableIterator<SAMRecord> iter,final SAMFileWriter sfw) {
 final Function<SAMRecord,List<SAMRecord>> modifier = createSAMRecordFunction();
+final MetricsRegistry metrics = MetricsRegistry.getInstance();
+if(metrics.isEnabled()) {
+	scanIteratorWithMetrics(metrics,iter,modifier,sfw);
+	return;
+	}
 while(iter.hasNext()) {
 	final SAMRecord rec = iter.next();
 	for(final SAMRecord R :modifier.apply(rec)) {
@@ -145,6 +151,27 @@ while(iter.hasNext()) {
 	}
 }
 
+/** same as scanIterator but measures the time spent to decode, filter and encode the reads */
+private void scanIteratorWithMetrics(final MetricsRegistry metrics,final CloseableIterator<SAMRecord> iter,final Function<SAMRecord,List<SAMRecord>> modifier,final SAMFileWriter sfw) {
+final MetricsRegistry.Timer decode = metrics.timer("sam.decode");
+final MetricsRegistry.Timer filter = metrics.timer("sam.filter");
+final MetricsRegistry.Timer encode = metrics.timer("sam.encode");
+for(;;) {
+	long t = decode.start();
+	if(!iter.hasNext()) break;
+	final SAMRecord rec = iter.next();
+	decode.stop(t);
+	t = filter.start();
+	final List<SAMRecord> L = modifier.apply(rec);
+	filter.stop(t);
+	for(final SAMRecord R :L) {
+		t = encode.start();
+		sfw.addAlignment(R);
+		encode.stop(t);
+		}
+	}
+}
+
 @Override
 protected int processInput(final SAMFileHeader headerIn, final CloseableIterator<SAMRecord> iter) {
 	try(SAMFileWriter sfw = openSamFileWriter(headerIn)) {
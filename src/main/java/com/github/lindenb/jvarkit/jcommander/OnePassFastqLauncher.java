@@ -27,13 +27,17 @@ package com.github.lindenb.jvarkit.jcommander;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.function.Predicate;
 
 import com.beust.jcommander.Parameter;
+import com.github.lindenb.jvarkit.fastq.FastqArena;
+import com.github.lindenb.jvarkit.fastq.FastqBatchReader;
 import com.github.lindenb.jvarkit.fastq.FastqPairedWriter;
 import com.github.lindenb.jvarkit.fastq.FastqPairedWriterFactory;
 import com.github.lindenb.jvarkit.fastq.FastqRecordPair;
+import com.github.lindenb.jvarkit.fastq.FastqRecordView;
 import com.github.lindenb.jvarkit.util.log.Logger;
 
 import htsjdk.samtools.fastq.BasicFastqWriter;
@@ -42,6 +46,9 @@ import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.fastq.FastqWriter;
 import htsjdk.samtools.fastq.FastqWriterFactory;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Md5CalculatingOutputStream;
+import htsjdk.samtools.util.RuntimeIOException;
 
 public abstract class OnePassFastqLauncher extends FastqLauncher {
 private static final Logger LOG = Logger.build(OnePassFastqLauncher.class).make();
@@ -85,6 +92,53 @@ protected int runSingleEnd(FastqReader iter,FastqWriter fws) throws IOException
 	return 0;
 	}
 
+/**
+ * return a predicate testing the records of a {@link FastqArena} without copying them, or null (default).
+ * When it is defined, the accepted records are written from the bytes of the arena.
+ */
+protected Predicate<FastqRecordView> createPredicateForFastqRecordView() {
+	return null;
+	}
+
+/** the accepted records are written from the bytes of the arena */
+protected int runSingleEnd(final FastqBatchReader reader,final Predicate<FastqRecordView> predicate,final OutputStream out) throws IOException {
+	final FastqArena arena = new FastqArena();
+	try {
+		while(reader.read(arena)>0) {
+			arena.forEach(rec->{
+				if(predicate.test(rec)) {
+					try {
+						rec.write(out);
+						}
+					catch(final IOException err) {
+						throw new RuntimeIOException(err);
+						}
+					}
+				});
+			}
+		}
+	catch(final RuntimeIOException err) {
+		if(err.getCause() instanceof IOException) throw (IOException)err.getCause();
+		throw err;
+		}
+	return 0;
+	}
+
+/** the records are copied from the arena and tested with {@link #createPredicateForFastqRecord()} */
+protected int runSingleEnd(FastqBatchReader reader,FastqWriter fws) throws IOException {
+	final Predicate<FastqRecord> predicate = this.createPredicateForFastqRecord();
+	final FastqArena arena = new FastqArena();
+	while(reader.read(arena)>0) {
+		for(int i=0;i< arena.size();i++) {
+			final FastqRecord rec = arena.get(i).toFastqRecord();
+			if(predicate.test(rec)) {
+				fws.write(rec);
+				}
+			}
+		}
+	return 0;
+	}
+
 @Override
 protected int runPairedEnd(final CloseableIterator<FastqRecordPair> iter) throws IOException {
 	int ret = 0;
@@ -121,19 +175,46 @@ protected int runPairedEnd(final CloseableIterator<FastqRecordPair> iter) throws
 		}
 	}
 
-@Override
-protected int runSingleEnd(final FastqReader fqr) throws IOException {
+private FastqWriter openSingleEndWriter() {
 if(this.outputFile1==null) {
-	try(FastqWriter fw = new BasicFastqWriter(new PrintStream(new BufferedOutputStream(stdout())))){
-		return runSingleEnd(fqr, fw);
-		}
+	return new BasicFastqWriter(new PrintStream(new BufferedOutputStream(stdout())));
 	} else {
 		final FastqWriterFactory fqwf = new FastqWriterFactory();
 		fqwf.setCreateMd5(this.write_md5);
-		try(FastqWriter fw = fqwf.newWriter(this.outputFile1)) {
-			return runSingleEnd(fqr, fw);
+		return fqwf.newWriter(this.outputFile1);
+		}
+}
+
+@Override
+protected int runSingleEnd(final FastqReader fqr) throws IOException {
+	try(FastqWriter fw = openSingleEndWriter()) {
+		return runSingleEnd(fqr, fw);
+		}
+}
+
+/** same output as {@link #openSingleEndWriter()} but as a stream of bytes */
+private OutputStream openSingleEndOutputStream() {
+	if(this.outputFile1==null) {
+		return new BufferedOutputStream(stdout());
+		}
+	final OutputStream os = IOUtil.openFileForWriting(this.outputFile1);
+	if(this.write_md5) {
+		return new BufferedOutputStream(new Md5CalculatingOutputStream(os, new File(this.outputFile1.getAbsolutePath() + ".md5")));
+		}
+	return new BufferedOutputStream(os);
+	}
+
+@Override
+protected int runSingleEnd(final FastqBatchReader reader) throws IOException {
+	final Predicate<FastqRecordView> predicate = this.createPredicateForFastqRecordView();
+	if(predicate!=null) {
+		try(OutputStream out = openSingleEndOutputStream()) {
+			return runSingleEnd(reader, predicate, out);
 			}
 		}
+	try(FastqWriter fw = openSingleEndWriter()) {
+		return runSingleEnd(reader, fw);
+		}
 }
 
 }
@@ -24,19 +24,29 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.jcommander;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
+import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.util.log.MetricsRegistry;
 import com.github.lindenb.jvarkit.util.log.ProgressFactory;
+import com.github.lindenb.jvarkit.util.vcf.DelegateVariantContextWriter;
+import com.github.lindenb.jvarkit.util.vcf.readers.DelegateVcfIterator;
 import com.github.lindenb.jvarkit.variant.variantcontext.writer.WritingVariantsDelegate;
 import com.github.lindenb.jvarkit.variant.vcf.BcfIteratorBuilder;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineReader;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineWriter;
 
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -48,6 +58,8 @@ public abstract class OnePassVcfLauncher extends Launcher {
 private static final Logger LOG = Logger.build(OnePassVcfLauncher.class).make();
 @Parameter(names={"-o","--out"},description=OPT_OUPUT_FILE_OR_STDOUT)
 protected Path outputFile=null;
+@Parameter(names={"--no-line-mode"},description="For the tools supporting it, when the input and the output are text VCFs, the lines are not decoded by htsjdk: only the modified columns are rewritten, the other columns (e.g. genotypes) are copied verbatim. This option disables this 'line mode' and always uses the htsjdk decoder.")
+protected boolean disable_line_mode = false;
 @ParametersDelegate
 protected WritingVariantsDelegate writingVariantsDelegate= new WritingVariantsDelegate();
 
@@ -84,6 +96,44 @@ private static class VCFIter implements VCFIterator {
 		}
 	}
 
+/** measures the time spent in the decoder */
+private static class TimedVCFIter extends DelegateVcfIterator {
+	private final MetricsRegistry.Timer timer;
+	TimedVCFIter(final VCFIterator delegate,final MetricsRegistry.Timer timer) {
+		super(delegate);
+		this.timer = timer;
+		}
+	@Override
+	public boolean hasNext() {
+		final long t = this.timer.start();
+		final boolean b = super.hasNext();
+		this.timer.resume(t);
+		return b;
+		}
+	@Override
+	public VariantContext next() {
+		final long t = this.timer.start();
+		final VariantContext ctx = super.next();
+		this.timer.stop(t);
+		return ctx;
+		}
+	}
+
+/** measures the time spent in the encoder */
+private static class TimedWriter extends DelegateVariantContextWriter {
+	private final MetricsRegistry.Timer timer;
+	TimedWriter(final VariantContextWriter delegate,final MetricsRegistry.Timer timer) {
+		super(delegate);
+		this.timer = timer;
+		}
+	@Override
+	public void add(final VariantContext ctx) {
+		final long t = this.timer.start();
+		super.add(ctx);
+		this.timer.stop(t);
+		}
+	}
+
 protected Logger getLogger() {
 	return null;
 	}
@@ -107,6 +157,55 @@ protected int beforeVcf() {
 protected void afterVcf() {
 	}
 
+/** 
+ * return true if the tool implements {@link #doVcfLinesToVcfLines(String, VcfLineReader, VcfLineWriter)}
+ * with the current options. The line mode is used when the input and the output are text VCFs,
+ * unless option --no-line-mode is set.
+ */
+protected boolean isVcfLineModeSupported() {
+	return false;
+	}
+
+/** 
+ * line mode: called instead of {@link #doVcfToVcf(String, VCFIterator, VariantContextWriter)}. The tool only
+ * rewrites the columns it needs, the other columns (e.g. genotypes) are copied verbatim.
+ * The default implementation decodes the lines with htsjdk and calls {@link #doVcfToVcf(String, VCFIterator, VariantContextWriter)}.
+ */
+protected int doVcfLinesToVcfLines(final String inputName,final VcfLineReader in,final VcfLineWriter out) {
+	try(VCFIterator iter = in.asVCFIterator()) {
+		try(VariantContextWriter w = out.asVariantContextWriter()) {
+			return doVcfToVcf(inputName, iter, w);
+			}
+		}
+	}
+
+/**
+ * return a function selecting, from the original VCF header, the samples whose genotypes are needed by this tool, or null
+ * if all the samples are needed (default). The VCFIterator passed to {@link #doVcfToVcf(String, VCFIterator, VariantContextWriter)}
+ * will only contain those samples, and, for a text VCF, the genotypes of the other samples are not decoded.
+ */
+protected Function<VCFHeader, Collection<String>> getSampleSelector() {
+	return null;
+	}
+
+private int runVcfLineMode(final String inputName,final VcfLineReader in) throws IOException {
+	final ProgressFactory.Watcher<SimpleInterval> progress = (getLogger()==null?null:
+		ProgressFactory.newInstance().
+			dictionary(in.getHeader()).
+			logger(getLogger()).
+			build());
+	if(progress!=null) in.setListener(L->progress.apply(new SimpleInterval(L.getContig(), L.getStart(), L.getStart())));
+	try(VcfLineWriter out = new VcfLineWriter(this.writingVariantsDelegate.openTextVcfStream(this.outputFile))) {
+		final int err = doVcfLinesToVcfLines(inputName, in, out);
+		if(err!=0) deleteOutputOnError();
+		return err;
+		}
+	finally {
+		if(progress!=null) progress.close();
+		in.close();
+		}
+	}
+
 @Override
 public int doWork(final List<String> args) {
 	VCFIterator in = null;
@@ -131,9 +230,25 @@ public int doWork(final List<String> args) {
 		}
 	
 	try {
-		final BcfIteratorBuilder bcb = new BcfIteratorBuilder();
+		final BcfIteratorBuilder bcb = new BcfIteratorBuilder().setSampleSelector(getSampleSelector());
+		final boolean lineMode = isVcfLineModeSupported() &&
+				!this.disable_line_mode &&
+				this.writingVariantsDelegate.isTextVcfOutput(this.outputFile);
 		if(input==null) {
-			in = bcb.open(stdin());
+			if(lineMode) {
+				final BufferedInputStream bin = new BufferedInputStream(IOUtils.uncompress(stdin()));
+				if(VcfLineReader.isTextVcf(bin)) {
+					return runVcfLineMode("<stdin>", new VcfLineReader(bin));
+					}
+				in = bcb.open(bin);
+				}
+			else
+				{
+				in = bcb.open(stdin());
+				}
+			}
+		else if(lineMode && !IOUtil.isUrl(input) && VcfLineReader.isTextVcf(Paths.get(input))) {
+			return runVcfLineMode(input, VcfLineReader.open(Paths.get(input)));
 			}
 		else {
 			in = bcb.open(input);
@@ -142,7 +257,22 @@ public int doWork(final List<String> args) {
 			in = new VCFIter(in, getLogger());
 			}
 		vcw = this.writingVariantsDelegate.dictionary(in.getHeader()).open(this.outputFile); 
-		final int err = doVcfToVcf(input==null?"<stdin>":input, in,vcw);
+		final MetricsRegistry metrics = MetricsRegistry.getInstance();
+		final int err;
+		if(metrics.isEnabled()) {
+			final MetricsRegistry.Timer decode = metrics.timer("vcf.decode");
+			final MetricsRegistry.Timer encode = metrics.timer("vcf.encode");
+			in = new TimedVCFIter(in,decode);
+			vcw = new TimedWriter(vcw,encode);
+			final long t = System.nanoTime();
+			err = doVcfToVcf(input==null?"<stdin>":input, in,vcw);
+			/* time spent in the tool itself */
+			metrics.timer("vcf.filter").add(Math.max(0L,(System.nanoTime()-t) - decode.getNanos() - encode.getNanos()));
+			}
+		else
+			{
+			err = doVcfToVcf(input==null?"<stdin>":input, in,vcw);
+			}
 		vcw.close();
 		vcw=null;
 		in.close();
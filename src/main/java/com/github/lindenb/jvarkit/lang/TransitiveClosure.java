@@ -0,0 +1,119 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.lang;
+
+import java.util.Arrays;
+
+/**
+ * Immutable transitive closure of a directed graph (e.g. an ontology) whose nodes are
+ * numbered from 0 to N-1.
+ *
+ * For each node, the sorted list of all its ancestors (including the node itself) is computed once,
+ * so testing if a node is an ancestor of another node is a binary search in a small array
+ * and doesn't walk the graph. Nodes with multiple parents and cycles are supported.
+ * Instances are thread-safe.
+ */
+public class TransitiveClosure {
+	/** ancestors[i]: sorted indexes of all the ancestors of 'i', including 'i' */
+	private final int[][] ancestors;
+
+	/**
+	 * @param parents parents[i] contains the indexes of the direct parents of node 'i'. May be null for a node without parent.
+	 */
+	public TransitiveClosure(final int[][] parents) {
+		final int n = parents.length;
+		this.ancestors = new int[n][];
+		/* visited[j]==i+1 if j was already visited for node i: the array is never cleared */
+		final int[] visited = new int[n];
+		int[] stack = new int[Math.max(16, n)];
+		int[] found = new int[16];
+		for(int i=0;i< n;i++) {
+			final int stamp = i+1;
+			int stack_size = 0;
+			int nFound = 0;
+			stack[stack_size++] = i;
+			visited[i] = stamp;
+			while(stack_size>0) {
+				final int node = stack[--stack_size];
+				if(nFound==found.length) found = Arrays.copyOf(found, nFound*2);
+				found[nFound++] = node;
+				final int[] p = parents[node];
+				if(p==null) continue;
+				for(final int parent:p) {
+					if(parent<0 || parent>=n) throw new IllegalArgumentException("bad parent index "+parent+" for node "+node);
+					if(visited[parent]==stamp) continue;
+					visited[parent] = stamp;
+					if(stack_size==stack.length) stack = Arrays.copyOf(stack, stack_size*2);
+					stack[stack_size++] = parent;
+					}
+				}
+			final int[] a = Arrays.copyOf(found, nFound);
+			Arrays.sort(a);
+			this.ancestors[i] = a;
+			}
+		}
+
+	/** number of nodes */
+	public int size() {
+		return this.ancestors.length;
+		}
+
+	/** return true if 'ancestor' is 'node' or one of its ancestors */
+	public boolean isAncestorOf(final int ancestor,final int node) {
+		return Arrays.binarySearch(this.ancestors[node], ancestor) >= 0;
+		}
+
+	/** return the number of ancestors of 'node' , including 'node' */
+	public int getAncestorCount(final int node) {
+		return this.ancestors[node].length;
+		}
+
+	/** return a copy of the sorted indexes of the ancestors of 'node', including 'node' */
+	public int[] getAncestors(final int node) {
+		return this.ancestors[node].clone();
+		}
+
+	/** compute the sorted indexes of the descendants of each node (including the node itself) */
+	public int[][] getDescendants() {
+		final int n = this.ancestors.length;
+		final int[] counts = new int[n];
+		for(int i=0;i< n;i++) {
+			for(final int a: this.ancestors[i]) counts[a]++;
+			}
+		final int[][] descendants = new int[n][];
+		for(int i=0;i< n;i++) {
+			descendants[i] = new int[counts[i]];
+			counts[i] = 0;
+			}
+		/* nodes are visited in increasing order: each list is sorted */
+		for(int i=0;i< n;i++) {
+			for(final int a: this.ancestors[i]) {
+				descendants[a][counts[a]++] = i;
+				}
+			}
+		return descendants;
+		}
+	}
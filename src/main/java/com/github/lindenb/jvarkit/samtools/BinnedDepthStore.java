@@ -0,0 +1,370 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.samtools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.github.lindenb.jvarkit.lang.JvarkitException;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.samtools.util.RuntimeIOException;
+
+/**
+ * A persistent, columnar store of binned depth.
+ *
+ * The store is a directory. Each sample is a column stored in its own file (suffix {@value #SUFFIX})
+ * so adding a new sample to a cohort only means writing a new file with {@link #createWriter(Path, String, SAMSequenceDictionary, int)}.
+ * A column contains: a header (sample name, bin size, dictionary), the values of the bins
+ * compressed by chunks of consecutive bins, and a footer indexing the chunks of each contig.
+ * The files are memory-mapped and only the chunks overlapping a query are inflated.
+ * All the columns of a store must share the same dictionary and the same bin size.
+ * 
+ * Instances are thread-safe.
+ */
+public class BinnedDepthStore implements Closeable {
+	public static final String SUFFIX = ".depth.bin";
+	static final byte[] MAGIC = "JVKDEPTH".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	/** default number of bins per compressed chunk */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private final Path directory;
+	private final List<Column> columns;
+	private final SAMSequenceDictionary dict;
+	private final int binSize;
+
+	/** index of one contig in a column */
+	private static class ContigIndex {
+		int n_bins;
+		long[] offsets;
+		int[] lengths;
+		}
+
+	/** one sample */
+	private static class Column implements Closeable {
+		final Path path;
+		final String sample;
+		final int binSize;
+		final int chunkSize;
+		final SAMSequenceDictionary dict;
+		final ContigIndex[] contigs;
+		private FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final Inflater inflater = new Inflater(true);
+		/** last decoded chunk */
+		private int cached_tid = -1;
+		private int cached_chunk = -1;
+		private float[] cached_values = null;
+
+		Column(final Path path) throws IOException {
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+			final long size = this.channel.size();
+			if(size > Integer.MAX_VALUE) throw new IOException("file is too large "+path);
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+			final byte[] magic = new byte[MAGIC.length];
+			this.buffer.get(magic);
+			if(!Arrays.equals(magic, MAGIC)) throw new IOException("not a depth file "+path);
+			final int version = this.buffer.getInt();
+			if(version!=VERSION) throw new IOException("unsupported version "+version+" in "+path);
+			this.sample = readUTF(this.buffer);
+			this.binSize = this.buffer.getInt();
+			this.chunkSize = this.buffer.getInt();
+			final int n_seqs = this.buffer.getInt();
+			final List<SAMSequenceRecord> ssrs = new ArrayList<>(n_seqs);
+			for(int i=0;i< n_seqs;i++) {
+				final String name = readUTF(this.buffer);
+				ssrs.add(new SAMSequenceRecord(name,this.buffer.getInt()));
+				}
+			this.dict = new SAMSequenceDictionary(ssrs);
+			this.buffer.position((int)(size - Long.BYTES));
+			this.buffer.position((int)this.buffer.getLong());
+			this.contigs = new ContigIndex[n_seqs];
+			for(int i=0;i< n_seqs;i++) {
+				final ContigIndex ci = new ContigIndex();
+				ci.n_bins = this.buffer.getInt();
+				final int n_chunks = this.buffer.getInt();
+				ci.offsets = new long[n_chunks];
+				ci.lengths = new int[n_chunks];
+				for(int j=0;j< n_chunks;j++) {
+					ci.offsets[j] = this.buffer.getLong();
+					ci.lengths[j] = this.buffer.getInt();
+					}
+				this.contigs[i] = ci;
+				}
+			}
+
+		private static String readUTF(final ByteBuffer buffer) {
+			final int len = buffer.getShort() & 0xFFFF;
+			final byte[] array = new byte[len];
+			buffer.get(array);
+			// modified UTF-8 is the same as UTF-8 for the usual sample/contig names
+			return new String(array, StandardCharsets.UTF_8);
+			}
+
+		/** fill 'dest' with the bins [bin_start, bin_start+dest.length[ of the contig 'tid' */
+		synchronized void read(final int tid,int bin_start,final float[] dest,int dest_off,int len) {
+			final ContigIndex ci = this.contigs[tid];
+			while(len>0) {
+				final int chunk_idx = bin_start / this.chunkSize;
+				final int in_chunk = bin_start % this.chunkSize;
+				final int n = Math.min(len, this.chunkSize - in_chunk);
+				if(bin_start >= ci.n_bins) {
+					Arrays.fill(dest, dest_off, dest_off + len, 0f);
+					return;
+					}
+				final float[] values = decode(tid,chunk_idx);
+				for(int i=0;i< n;i++) {
+					dest[dest_off+i] = (in_chunk+i < values.length ? values[in_chunk+i] : 0f);
+					}
+				bin_start += n;
+				dest_off += n;
+				len -= n;
+				}
+			}
+
+		private float[] decode(final int tid,final int chunk_idx) {
+			if(tid==this.cached_tid && chunk_idx==this.cached_chunk) return this.cached_values;
+			final ContigIndex ci = this.contigs[tid];
+			final int n_values = Math.min(this.chunkSize, ci.n_bins - chunk_idx*this.chunkSize);
+			final byte[] compressed = new byte[ci.lengths[chunk_idx]];
+			final ByteBuffer slice = this.buffer.duplicate();
+			slice.position((int)ci.offsets[chunk_idx]);
+			slice.get(compressed);
+			final byte[] raw = new byte[n_values*Float.BYTES];
+			try {
+				this.inflater.reset();
+				this.inflater.setInput(compressed);
+				int n=0;
+				while(n < raw.length) {
+					final int count = this.inflater.inflate(raw, n, raw.length - n);
+					if(count==0 && (this.inflater.finished() || this.inflater.needsInput())) break;
+					n+=count;
+					}
+				if(n!=raw.length) throw new RuntimeIOException("cannot decode chunk "+chunk_idx+" in "+this.path);
+				}
+			catch(final DataFormatException err) {
+				throw new RuntimeIOException(err);
+				}
+			final float[] values = new float[n_values];
+			ByteBuffer.wrap(raw).asFloatBuffer().get(values);
+			this.cached_tid = tid;
+			this.cached_chunk = chunk_idx;
+			this.cached_values = values;
+			return values;
+			}
+
+		@Override
+		public void close() throws IOException {
+			this.inflater.end();
+			this.cached_values = null;
+			if(this.channel!=null) this.channel.close();
+			this.channel = null;
+			}
+		}
+
+	private BinnedDepthStore(final Path directory,final List<Column> columns) {
+		this.directory = directory;
+		this.columns = Collections.unmodifiableList(columns);
+		if(columns.isEmpty()) {
+			this.dict = new SAMSequenceDictionary();
+			this.binSize = 1;
+			}
+		else
+			{
+			final Column first = columns.get(0);
+			this.dict = first.dict;
+			this.binSize = first.binSize;
+			for(final Column c: columns) {
+				if(c.binSize!=this.binSize) throw new IllegalArgumentException("bin size differ between "+first.path+" and "+c.path);
+				if(!this.dict.isSameDictionary(c.dict)) throw new JvarkitException.DictionariesAreNotTheSame(this.dict, c.dict);
+				}
+			}
+		}
+
+	/** open all the columns of the store in 'directory' */
+	public static BinnedDepthStore open(final Path directory) throws IOException {
+		final List<Column> columns = new ArrayList<>();
+		final Map<String,Path> seen = new HashMap<>();
+		try(Stream<Path> st = Files.list(directory)) {
+			for(final Path p: st.filter(P->P.getFileName().toString().endsWith(SUFFIX)).sorted().collect(Collectors.toList())) {
+				final Column c = new Column(p);
+				columns.add(c);
+				if(seen.containsKey(c.sample)) {
+					columns.forEach(C->{try {C.close();} catch(IOException err) {}});
+					throw new IOException("duplicate sample "+c.sample+" in "+p+" and "+seen.get(c.sample));
+					}
+				seen.put(c.sample, p);
+				}
+			}
+		try {
+			return new BinnedDepthStore(directory,columns);
+			}
+		catch(final RuntimeException|Error err) {
+			for(final Column c:columns) c.close();
+			throw err;
+			}
+		}
+
+	/** number of bins of a contig of length 'contigLength' */
+	public static int getBinCount(final int contigLength,final int binSize) {
+		return (int)(((long)contigLength + binSize - 1L) / binSize);
+		}
+
+	/** create a writer for a new sample in the store 'directory'. If the sample already exists in the store, its column will be replaced when the writer is closed.
+	 * A new file name is reserved with an empty file, so writers running in parallel for samples with the same cleaned-up name never get the same file.
+	 */
+	public static BinnedDepthWriter createWriter(final Path directory,final String sample,final SAMSequenceDictionary dict,final int binSize) throws IOException {
+		Files.createDirectories(directory);
+		final String base = sample.replaceAll("[^A-Za-z0-9_\\.\\-]", "_");
+		Path path = null;
+		boolean reserved = false;
+		for(int i=0;;i++) {
+			path = directory.resolve(base+(i==0?"":"."+i)+SUFFIX);
+			try {
+				Files.createFile(path);
+				reserved = true;
+				break;
+				}
+			catch(final FileAlreadyExistsException err) {
+				/* empty file: name reserved by another writer */
+				if(Files.size(path)==0L) continue;
+				try(Column c = new Column(path)) {
+					if(c.sample.equals(sample)) break;
+					}
+				}
+			}
+		try {
+			return new BinnedDepthWriter(path, sample, dict, binSize, DEFAULT_CHUNK_SIZE, reserved);
+			}
+		catch(final IOException|RuntimeException err) {
+			if(reserved) Files.deleteIfExists(path);
+			throw err;
+			}
+		}
+
+	public Path getDirectory() {
+		return this.directory;
+		}
+
+	public int getBinSize() {
+		return this.binSize;
+		}
+
+	public SAMSequenceDictionary getSequenceDictionary() {
+		return this.dict;
+		}
+
+	public List<String> getSamples() {
+		return this.columns.stream().map(C->C.sample).collect(Collectors.toList());
+		}
+
+	/** return the index of the sample or -1 */
+	public int getSampleIndex(final String sample) {
+		for(int i=0;i< this.columns.size();i++) {
+			if(this.columns.get(i).sample.equals(sample)) return i;
+			}
+		return -1;
+		}
+
+	/** number of bins for the contig */
+	public int getBinCount(final String contig) {
+		return getBinCount(getSequence(contig).getSequenceLength(),this.binSize);
+		}
+
+	private SAMSequenceRecord getSequence(final String contig) {
+		final SAMSequenceRecord ssr = this.dict.getSequence(contig);
+		if(ssr==null) throw new JvarkitException.ContigNotFoundInDictionary(contig, this.dict);
+		return ssr;
+		}
+
+	/** get the value of the 0-based bin 'binIndex' of the contig for the sample */
+	public float get(final int sampleIndex,final String contig,final int binIndex) {
+		final float[] array = new float[1];
+		getBins(sampleIndex, getSequence(contig).getSequenceIndex(), binIndex, array);
+		return array[0];
+		}
+
+	/** fill 'dest' with the values of the bins starting at 'binStart' */
+	private void getBins(final int sampleIndex,final int tid,final int binStart,final float[] dest) {
+		this.columns.get(sampleIndex).read(tid, binStart, dest, 0, dest.length);
+		}
+
+	/** index of the first bin overlapping loc */
+	public int getFirstBinIndex(final Locatable loc) {
+		return Math.max(0,(loc.getStart()-1)/this.binSize);
+		}
+
+	/** return the values of the bins overlapping 'loc' for the sample. The first bin is {@link #getFirstBinIndex(Locatable)} */
+	public float[] getBins(final int sampleIndex,final Locatable loc) {
+		final SAMSequenceRecord ssr = getSequence(loc.getContig());
+		final int b0 = getFirstBinIndex(loc);
+		final int b1 = Math.min(getBinCount(ssr.getSequenceLength(),this.binSize),(Math.min(loc.getEnd(),ssr.getSequenceLength())-1)/this.binSize + 1);
+		final float[] array = new float[Math.max(0, b1-b0)];
+		getBins(sampleIndex, ssr.getSequenceIndex(), b0, array);
+		return array;
+		}
+
+	/** return the values of the bins overlapping 'loc' for all the samples. array[sample][bin] */
+	public float[][] getMatrix(final Locatable loc) {
+		final float[][] matrix = new float[this.columns.size()][];
+		for(int i=0;i< matrix.length;i++) {
+			matrix[i] = getBins(i, loc);
+			}
+		return matrix;
+		}
+
+	@Override
+	public void close() throws IOException {
+		for(final Column c:this.columns) c.close();
+		}
+
+	@Override
+	public String toString() {
+		return "BinnedDepthStore("+this.directory+") samples:"+this.columns.size()+" bin:"+this.binSize;
+		}
+	}
@@ -0,0 +1,190 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.samtools;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.Deflater;
+
+import com.github.lindenb.jvarkit.lang.JvarkitException;
+import com.github.lindenb.jvarkit.lang.primitive.IntArray;
+import com.github.lindenb.jvarkit.lang.primitive.LongArray;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+
+/**
+ * Writes the binned depth of one sample in a {@link BinnedDepthStore}.
+ *
+ * The bins of each contig must be sent in order, contig after contig, using
+ * {@link #setContig(String)} and {@link #add(float)}. Bins that are never written are read as 0.
+ * The file is written in a temporary file and moved into the store on {@link #close()},
+ * so a store never contains a partial column.
+ */
+public class BinnedDepthWriter implements Closeable {
+	private final Path finalPath;
+	private final Path tmpPath;
+	/** true if 'finalPath' is an empty file reserving the name, to be removed if the column is never written */
+	private final boolean reserved;
+	private final SAMSequenceDictionary dict;
+	private final int binSize;
+	private final int chunkSize;
+	private final DataOutputStream out;
+	/** number of bytes written so far. DataOutputStream.size() saturates at Integer.MAX_VALUE */
+	private long file_offset = 0L;
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final float[] chunk;
+	private int chunk_length = 0;
+	private byte[] compressed = new byte[0];
+	/** number of bins written for each contig */
+	private final int[] bins_written;
+	/** offsets and compressed length of the chunks of each contig */
+	private final LongArray[] chunk_offsets;
+	private final IntArray[] chunk_lengths;
+	/** current contig */
+	private int tid = -1;
+	private boolean closed = false;
+
+	BinnedDepthWriter(final Path finalPath,final String sample,final SAMSequenceDictionary dict,final int binSize,final int chunkSize,final boolean reserved) throws IOException {
+		if(binSize<1) throw new IllegalArgumentException("bad bin size "+binSize);
+		if(chunkSize<1) throw new IllegalArgumentException("bad chunk size "+chunkSize);
+		this.finalPath = finalPath;
+		this.reserved = reserved;
+		this.dict = dict;
+		this.binSize = binSize;
+		this.chunkSize = chunkSize;
+		this.chunk = new float[chunkSize];
+		this.bins_written = new int[dict.size()];
+		this.chunk_offsets = new LongArray[dict.size()];
+		this.chunk_lengths = new IntArray[dict.size()];
+		for(int i=0;i< dict.size();i++) {
+			this.chunk_offsets[i] = new LongArray();
+			this.chunk_lengths[i] = new IntArray();
+			}
+		this.tmpPath = Files.createTempFile(finalPath.getParent(), "tmp.", BinnedDepthStore.SUFFIX+".tmp");
+		this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.tmpPath)));
+		this.out.write(BinnedDepthStore.MAGIC);
+		this.out.writeInt(BinnedDepthStore.VERSION);
+		this.out.writeUTF(sample);
+		this.out.writeInt(binSize);
+		this.out.writeInt(chunkSize);
+		this.out.writeInt(dict.size());
+		for(final SAMSequenceRecord ssr: dict.getSequences()) {
+			this.out.writeUTF(ssr.getSequenceName());
+			this.out.writeInt(ssr.getSequenceLength());
+			}
+		this.file_offset = this.out.size();
+		}
+
+	public int getBinSize() {
+		return this.binSize;
+		}
+
+	public SAMSequenceDictionary getSequenceDictionary() {
+		return this.dict;
+		}
+
+	/** start writing the bins of a new contig. Each contig can be written only once. */
+	public void setContig(final String contig) throws IOException {
+		final SAMSequenceRecord ssr = this.dict.getSequence(contig);
+		if(ssr==null) throw new JvarkitException.ContigNotFoundInDictionary(contig, this.dict);
+		if(this.tid==ssr.getSequenceIndex()) return;
+		flushChunk();
+		if(this.bins_written[ssr.getSequenceIndex()]>0) throw new IllegalStateException("contig "+contig+" was already written");
+		this.tid = ssr.getSequenceIndex();
+		}
+
+	/** append the value of the next bin of the current contig */
+	public void add(final float value) throws IOException {
+		if(this.tid<0) throw new IllegalStateException("setContig was not called");
+		final SAMSequenceRecord ssr = this.dict.getSequence(this.tid);
+		if(this.bins_written[this.tid] >= BinnedDepthStore.getBinCount(ssr.getSequenceLength(),this.binSize)) {
+			throw new IllegalStateException("too many bins for "+ssr.getSequenceName());
+			}
+		this.chunk[this.chunk_length++] = value;
+		this.bins_written[this.tid]++;
+		if(this.chunk_length==this.chunkSize) flushChunk();
+		}
+
+	private void flushChunk() throws IOException {
+		if(this.chunk_length==0) return;
+		final ByteBuffer raw = ByteBuffer.allocate(this.chunk_length*Float.BYTES);
+		for(int i=0;i< this.chunk_length;i++) raw.putFloat(this.chunk[i]);
+		this.deflater.reset();
+		this.deflater.setInput(raw.array());
+		this.deflater.finish();
+		if(this.compressed.length < raw.capacity()+64) this.compressed = new byte[raw.capacity()+64];
+		int n=0;
+		while(!this.deflater.finished()) {
+			if(n==this.compressed.length) {
+				final byte[] tmp = new byte[this.compressed.length*2];
+				System.arraycopy(this.compressed, 0, tmp, 0, n);
+				this.compressed = tmp;
+				}
+			n += this.deflater.deflate(this.compressed, n, this.compressed.length - n);
+			}
+		this.chunk_offsets[this.tid].add(this.file_offset);
+		this.chunk_lengths[this.tid].add(n);
+		this.out.write(this.compressed, 0, n);
+		this.file_offset += n;
+		this.chunk_length = 0;
+		}
+
+	@Override
+	public void close() throws IOException {
+		if(this.closed) return;
+		this.closed = true;
+		boolean moved = false;
+		try {
+			flushChunk();
+			final long footer = this.file_offset;
+			for(int i=0;i< this.dict.size();i++) {
+				this.out.writeInt(this.bins_written[i]);
+				this.out.writeInt(this.chunk_offsets[i].size());
+				for(int j=0;j< this.chunk_offsets[i].size();j++) {
+					this.out.writeLong(this.chunk_offsets[i].get(j));
+					this.out.writeInt(this.chunk_lengths[i].get(j));
+					}
+				}
+			this.out.writeLong(footer);
+			this.out.flush();
+			this.out.close();
+			Files.move(this.tmpPath, this.finalPath, StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+			}
+		finally {
+			this.deflater.end();
+			Files.deleteIfExists(this.tmpPath);
+			if(!moved && this.reserved) Files.deleteIfExists(this.finalPath);
+			}
+		}
+	}
@@ -0,0 +1,391 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.samtools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.github.lindenb.jvarkit.lang.JvarkitException;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.samtools.util.RuntimeIOException;
+
+/**
+ * A multi-resolution pyramid of the mean coverage of a BAM file, saved as a sidecar file (suffix {@value #SUFFIX}).
+ *
+ * Level 0 contains the mean depth in bins of 'baseBinSize' bases, level 'n' contains the mean depth in bins
+ * of 'baseBinSize*2^n' bases. The last level contains one bin for the longest contig.
+ * The values are read by tiles of consecutive bins kept in a LRU cache, so drawing a whole chromosome only reads
+ * a few kilobytes and panning/zooming mostly hits the cache.
+ *
+ * Instances are thread-safe.
+ */
+public class CoveragePyramid implements Closeable {
+	public static final String SUFFIX = ".covpyr";
+	public static final int DEFAULT_BIN_SIZE = 1_024;
+	private static final byte[] MAGIC = "JVKCOVPY".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	/** number of bins in a tile */
+	private static final int TILE_SIZE = 4_096;
+	/** max number of tiles in the cache */
+	private static final int MAX_TILES = 256;
+	/** shared thread prefetching the tiles */
+	private static ExecutorService prefetchService = null;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final SAMSequenceDictionary dict;
+	private final long bamSize;
+	private final long bamLastModified;
+	private final int minMappingQuality;
+	private final int baseBinSize;
+	private final int nLevels;
+	/** offsets[tid][level] of the first bin */
+	private final long[][] offsets;
+	private final Map<Long,float[]> tiles = new LinkedHashMap<Long,float[]>(MAX_TILES,0.75f,true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Long,float[]> eldest) {
+			return size() > MAX_TILES;
+			}
+		};
+
+	private CoveragePyramid(final Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		final ByteBuffer head = ByteBuffer.allocate(MAGIC.length + Integer.BYTES);
+		readFully(head, 0L);
+		final byte[] magic = new byte[MAGIC.length];
+		head.get(magic);
+		if(!Arrays.equals(magic, MAGIC)) throw new IOException("not a coverage pyramid "+path);
+		final int headerLength = head.getInt();
+		final ByteBuffer header = ByteBuffer.allocate(headerLength);
+		readFully(header, head.capacity());
+		try(DataInputStream dis = new DataInputStream(new ByteArrayInputStream(header.array()))) {
+			final int version = dis.readInt();
+			if(version!=VERSION) throw new IOException("unsupported version "+version+" in "+path);
+			this.bamSize = dis.readLong();
+			this.bamLastModified = dis.readLong();
+			this.minMappingQuality = dis.readInt();
+			this.baseBinSize = dis.readInt();
+			final int n_seqs = dis.readInt();
+			final List<SAMSequenceRecord> ssrs = new ArrayList<>(n_seqs);
+			for(int i=0;i< n_seqs;i++) {
+				final String name = dis.readUTF();
+				ssrs.add(new SAMSequenceRecord(name,dis.readInt()));
+				}
+			this.dict = new SAMSequenceDictionary(ssrs);
+			}
+		this.nLevels = getLevelCount(this.dict, this.baseBinSize);
+		this.offsets = new long[this.dict.size()][this.nLevels];
+		long offset = head.capacity() + headerLength;
+		for(int tid=0;tid< this.dict.size();++tid) {
+			final int len = this.dict.getSequence(tid).getSequenceLength();
+			for(int level=0;level< this.nLevels;++level) {
+				this.offsets[tid][level] = offset;
+				offset += (long)getBinCount(len, getBinSize(level))*Float.BYTES;
+				}
+			}
+		if(offset!=this.channel.size()) throw new IOException("bad file size for "+path+". Expected "+offset+" but got "+this.channel.size());
+		}
+
+	private void readFully(final ByteBuffer buffer,long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			final int n = this.channel.read(buffer, position);
+			if(n<0) throw new IOException("unexpected end of file in "+this.path);
+			position+=n;
+			}
+		buffer.flip();
+		}
+
+	/** open an existing pyramid */
+	public static CoveragePyramid open(final Path path) throws IOException {
+		return new CoveragePyramid(path);
+		}
+
+	/** return the path of the sidecar pyramid for this bam */
+	public static Path getSidecar(final Path bam) {
+		return bam.resolveSibling(bam.getFileName().toString()+SUFFIX);
+		}
+
+	private static int getBinCount(final int contigLength,final long binSize) {
+		return (int)((contigLength + binSize - 1L)/binSize);
+		}
+
+	/** number of levels needed to get one bin for the longest contig */
+	private static int getLevelCount(final SAMSequenceDictionary dict,final int baseBinSize) {
+		final int maxLen = dict.getSequences().stream().mapToInt(SSR->SSR.getSequenceLength()).max().orElse(0);
+		int n = 1;
+		while(((long)baseBinSize<<(n-1)) < maxLen && n < 31) n++;
+		return n;
+		}
+
+	public SAMSequenceDictionary getSequenceDictionary() {
+		return this.dict;
+		}
+
+	public int getLevelCount() {
+		return this.nLevels;
+		}
+
+	/** size of the bins at this level */
+	public long getBinSize(final int level) {
+		return ((long)this.baseBinSize) << level;
+		}
+
+	public int getMinMappingQuality() {
+		return this.minMappingQuality;
+		}
+
+	/** return true if the pyramid was built from this version of the bam (same size, same modification time) */
+	public boolean isUpToDate(final Path bam) {
+		try {
+			return Files.size(bam)==this.bamSize &&
+				Files.getLastModifiedTime(bam).toMillis()==this.bamLastModified;
+			}
+		catch(final IOException err) {
+			return false;
+			}
+		}
+
+	/** return the coarsest level whose bins are not larger than 'basesPerPixel' , or -1 if even the first level is too coarse */
+	public int chooseLevel(final double basesPerPixel) {
+		if(basesPerPixel < this.baseBinSize) return -1;
+		int level = 0;
+		while(level+1 < this.nLevels && getBinSize(level+1) <= basesPerPixel) level++;
+		return level;
+		}
+
+	private float[] getTile(final int tid,final int level,final int tileIdx) {
+		final Long key = ((((long)tid)*64L + level) << 32) | tileIdx;
+		synchronized(this.tiles) {
+			final float[] tile = this.tiles.get(key);
+			if(tile!=null) return tile;
+			}
+		final int nBins = getBinCount(this.dict.getSequence(tid).getSequenceLength(), getBinSize(level));
+		final int first = tileIdx*TILE_SIZE;
+		final int n = Math.max(0, Math.min(TILE_SIZE, nBins - first));
+		final float[] tile = new float[n];
+		if(n>0) {
+			final ByteBuffer buffer = ByteBuffer.allocate(n*Float.BYTES);
+			try {
+				readFully(buffer, this.offsets[tid][level] + (long)first*Float.BYTES);
+				}
+			catch(final IOException err) {
+				throw new RuntimeIOException(err);
+				}
+			buffer.asFloatBuffer().get(tile);
+			}
+		synchronized(this.tiles) {
+			this.tiles.put(key, tile);
+			}
+		return tile;
+		}
+
+	/** return the mean depth in a bin */
+	public float get(final int tid,final int level,final int binIdx) {
+		final float[] tile = getTile(tid, level, binIdx/TILE_SIZE);
+		final int i = binIdx%TILE_SIZE;
+		return i < tile.length ? tile[i] : 0f;
+		}
+
+	/** return the mean depth for each pixel using the given level. Return null if the level is negative */
+	public double[] getDepths(final Locatable loc,final int nPixels,final int level) {
+		if(level<0 || nPixels<=0) return null;
+		final int tid = this.dict.getSequenceIndex(loc.getContig());
+		if(tid<0) throw new JvarkitException.ContigNotFoundInDictionary(loc.getContig(), this.dict);
+		final int contigLength = this.dict.getSequence(tid).getSequenceLength();
+		final long binSize = getBinSize(level);
+		final double start0 = loc.getStart()-1;
+		final double end0 = Math.min(contigLength, loc.getEnd());
+		final double bpPerPixel = loc.getLengthOnReference()/(double)nPixels;
+		final double[] depths = new double[nPixels];
+		for(int p=0;p< nPixels;++p) {
+			final double a = start0 + p*bpPerPixel;
+			final double b = Math.min(end0, a + bpPerPixel);
+			double sum = 0.0;
+			double weight = 0.0;
+			for(long bin=(long)(a/binSize); bin*binSize < b; ++bin) {
+				final double lo = Math.max(a, bin*binSize);
+				final double hi = Math.min(b, Math.min((bin+1)*binSize, contigLength));
+				if(hi<=lo) continue;
+				sum += get(tid, level, (int)bin)*(hi-lo);
+				weight += (hi-lo);
+				}
+			depths[p] = weight>0?sum/weight:0.0;
+			}
+		return depths;
+		}
+
+	/** load in background the tiles of the neighbouring windows (left, right and zoom out) of the current view */
+	public void prefetch(final Locatable loc,final int level) {
+		if(level<0) return;
+		final int tid = this.dict.getSequenceIndex(loc.getContig());
+		if(tid<0) return;
+		final long len = loc.getLengthOnReference();
+		final long binSize = getBinSize(level);
+		final int nBins = getBinCount(this.dict.getSequence(tid).getSequenceLength(), binSize);
+		final int tile1 = (int)(Math.max(0L, loc.getStart()-1-len)/binSize)/TILE_SIZE;
+		final int tile2 = (int)(Math.min(nBins-1L, (loc.getEnd()+len)/binSize)/TILE_SIZE);
+		final int upLevel = Math.min(level+1, this.nLevels-1);
+		final ExecutorService service = getPrefetchService();
+		service.submit(()->{
+			for(int t=tile1;t<=tile2;t++) getTile(tid, level, t);
+			for(int t=(int)((loc.getStart()-1)/getBinSize(upLevel))/TILE_SIZE;t<=(int)((loc.getEnd()-1)/getBinSize(upLevel))/TILE_SIZE;t++) getTile(tid, upLevel, t);
+			});
+		}
+
+	private static synchronized ExecutorService getPrefetchService() {
+		if(prefetchService==null) {
+			prefetchService = Executors.newSingleThreadExecutor(R->{
+				final Thread t = new Thread(R,"coverage-pyramid-prefetch");
+				t.setDaemon(true);
+				return t;
+				});
+			}
+		return prefetchService;
+		}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+		synchronized(this.tiles) {
+			this.tiles.clear();
+			}
+		}
+
+	/** reads that are counted: mapped, not duplicate, not QC-fail, primary, mapq&ge;minMapq */
+	private static boolean acceptRead(final SAMRecord rec,final int minMapq) {
+		return !(rec.getReadUnmappedFlag() ||
+			rec.getDuplicateReadFlag() ||
+			rec.getReadFailsVendorQualityCheckFlag() ||
+			rec.isSecondaryOrSupplementary() ||
+			rec.getMappingQuality() < minMapq);
+		}
+
+	/**
+	 * build the pyramid for an indexed bam. The contigs are scanned one by one, the depth is computed
+	 * with a {@link DepthAccumulator} and the file is written in a temporary file moved to 'output' on success.
+	 */
+	public static void build(final SamReader sr,final Path bam,final Path output,final int baseBinSize,final int minMapq) throws IOException {
+		if(baseBinSize<1) throw new IllegalArgumentException("bad bin size "+baseBinSize);
+		if(!sr.hasIndex()) throw new IOException("bam "+bam+" is not indexed.");
+		final SAMSequenceDictionary dict = sr.getFileHeader().getSequenceDictionary();
+		final int nLevels = getLevelCount(dict, baseBinSize);
+		final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		try(DataOutputStream dos = new DataOutputStream(headerBytes)) {
+			dos.writeInt(VERSION);
+			dos.writeLong(Files.size(bam));
+			dos.writeLong(Files.getLastModifiedTime(bam).toMillis());
+			dos.writeInt(minMapq);
+			dos.writeInt(baseBinSize);
+			dos.writeInt(dict.size());
+			for(final SAMSequenceRecord ssr:dict.getSequences()) {
+				dos.writeUTF(ssr.getSequenceName());
+				dos.writeInt(ssr.getSequenceLength());
+				}
+			}
+		final Path tmp = Files.createTempFile(output.toAbsolutePath().getParent(), "tmp.", SUFFIX);
+		try {
+			try(OutputStream os = Files.newOutputStream(tmp);DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os))) {
+				dos.write(MAGIC);
+				dos.writeInt(headerBytes.size());
+				dos.write(headerBytes.toByteArray());
+				for(final SAMSequenceRecord ssr:dict.getSequences()) {
+					final int len = ssr.getSequenceLength();
+					final long[] sums = new long[getBinCount(len, baseBinSize)];
+					final DepthAccumulator accumulator = new DepthAccumulator((pos1,depth)->{
+						sums[(pos1-1)/baseBinSize] += depth;
+						});
+					accumulator.reset(len);
+					try(SAMRecordIterator iter = sr.query(ssr.getSequenceName(), 0, 0, false)) {
+						while(iter.hasNext()) {
+							final SAMRecord rec = iter.next();
+							if(!acceptRead(rec,minMapq)) continue;
+							accumulator.advance(rec.getAlignmentStart());
+							accumulator.add(rec);
+							}
+						}
+					accumulator.finish();
+					/* level 0 */
+					double[] means = new double[sums.length];
+					for(int i=0;i< sums.length;i++) {
+						final long binStart = (long)i*baseBinSize;
+						means[i] = sums[i]/(double)(Math.min(len, binStart+baseBinSize)-binStart);
+						}
+					for(int level=0;level< nLevels;++level) {
+						for(double v:means) dos.writeFloat((float)v);
+						if(level+1==nLevels) break;
+						/* next level: weighted mean of two consecutive bins */
+						final long binSize = ((long)baseBinSize)<<level;
+						final double[] next = new double[getBinCount(len, binSize*2)];
+						for(int i=0;i< next.length;i++) {
+							double sum = 0.0;
+							long weight = 0L;
+							for(int j=2*i;j<=2*i+1 && j< means.length;j++) {
+								final long w = Math.min(len, (j+1)*binSize) - j*binSize;
+								sum += means[j]*w;
+								weight += w;
+								}
+							next[i] = weight>0?sum/weight:0.0;
+							}
+						means = next;
+						}
+					}
+				dos.flush();
+				}
+			Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+			}
+		finally {
+			Files.deleteIfExists(tmp);
+			}
+		}
+	}
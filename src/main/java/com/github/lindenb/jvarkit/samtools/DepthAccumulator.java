@@ -0,0 +1,143 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.samtools;
+
+import java.util.Arrays;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Streaming depth accumulator for one contig.
+ *
+ * Instead of allocating an array of the size of the contig, the depth is stored
+ * as a difference array (start/end events) in a ring buffer that is only as large
+ * as the longest span of a read. The caller must add the events sorted on their start
+ * and call {@link #advance(int)} when the stream has passed a position: all the positions
+ * before this position are sent to the {@link DepthConsumer}, in order, one by one.
+ *
+ */
+public class DepthAccumulator {
+	/** consumer receiving the depth of each position */
+	@FunctionalInterface
+	public static interface DepthConsumer {
+		public void accept(int pos1,int depth);
+		}
+
+	private final DepthConsumer consumer;
+	/** ring buffer of depth differences */
+	private int diff[];
+	/** length of the current contig */
+	private int contigLength = 0;
+	/** next 1-based position to be sent to the consumer */
+	private int flushed = 1;
+	/** 1-based position after the last event */
+	private int last_event = 1;
+	/** current depth */
+	private int current_depth = 0;
+
+	public DepthAccumulator(final DepthConsumer consumer) {
+		this.consumer = consumer;
+		this.diff = new int[1_000];
+		}
+
+	/** start a new contig */
+	public DepthAccumulator reset(final int contigLength) {
+		if(contigLength<0) throw new IllegalArgumentException("negative contig length "+contigLength);
+		Arrays.fill(this.diff, 0);
+		this.contigLength = contigLength;
+		this.flushed = 1;
+		this.last_event = 1;
+		this.current_depth = 0;
+		return this;
+		}
+
+	/** length of the current contig */
+	public int getContigLength() {
+		return this.contigLength;
+		}
+
+	/** return the next 1-based position that will be sent to the consumer */
+	public int getPosition() {
+		return this.flushed;
+		}
+
+	private void ensureCapacity(final int n) {
+		if(n <= this.diff.length) return;
+		final int new_diff[] = new int[Math.max(n, this.diff.length*2)];
+		for(int pos1 = this.flushed; pos1 < this.last_event; ++pos1) {
+			new_diff[pos1 % new_diff.length] = this.diff[pos1 % this.diff.length];
+			}
+		this.diff = new_diff;
+		}
+
+	/** increment the depth in [start1,start1+length[ . Positions that were already sent to the consumer are ignored */
+	public void add(int start1,int length) {
+		if(length<=0) return;
+		int end1 = start1 + length;//exclusive
+		start1 = Math.max(start1, this.flushed);
+		end1 = Math.min(end1, this.contigLength+1);
+		if(end1 <= start1) return;
+		ensureCapacity(1 + end1 - this.flushed);
+		this.diff[start1 % this.diff.length]++;
+		this.diff[end1 % this.diff.length]--;
+		this.last_event = Math.max(this.last_event, end1+1);
+		}
+
+	/** increment the depth for each base of the read aligned on the reference (cigar operators M,X,=) */
+	public void add(final SAMRecord rec) {
+		final Cigar cigar = rec.getCigar();
+		if(cigar==null) return;
+		int ref1 = rec.getAlignmentStart();
+		for(final CigarElement ce:cigar) {
+			final CigarOperator op = ce.getOperator();
+			if(!op.consumesReferenceBases()) continue;
+			if(op.consumesReadBases()) {
+				add(ref1,ce.getLength());
+				}
+			ref1+=ce.getLength();
+			}
+		}
+
+	/** send the depth of all positions before 'pos1' to the consumer */
+	public void advance(int pos1) {
+		pos1 = Math.min(pos1, this.contigLength+1);
+		while(this.flushed < pos1) {
+			final int idx = this.flushed % this.diff.length;
+			this.current_depth += this.diff[idx];
+			this.diff[idx] = 0;
+			this.consumer.accept(this.flushed, this.current_depth);
+			this.flushed++;
+			}
+		}
+
+	/** send the depth of all the remaining positions of the contig to the consumer */
+	public void finish() {
+		advance(this.contigLength+1);
+		}
+	}
@@ -0,0 +1,320 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.samtools;
+
+import java.util.Arrays;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * Streaming base pileup for one contig and several samples.
+ *
+ * For each position and each sample, the number of bases A,C,G,T,N,other and deletions are counted per strand,
+ * with the sum of their base qualities, in a ring buffer of primitive ints that is only as large as the longest span
+ * of a read (see {@link DepthAccumulator}). The caller must add the reads sorted on their start and call
+ * {@link #advance(int)} when the stream has passed a position: all the covered positions before this position
+ * are sent to the {@link PileupConsumer}, in order.
+ * If the initial capacity is larger than the contig, the reads don't need to be sorted as long as {@link #advance(int)}
+ * is not called before the end.
+ *
+ */
+public class PileupAccumulator {
+	public static final int BASE_A = 0;
+	public static final int BASE_C = 1;
+	public static final int BASE_G = 2;
+	public static final int BASE_T = 3;
+	public static final int BASE_N = 4;
+	/** any other base (IUPAC, '=' ...) */
+	public static final int BASE_OTHER = 5;
+	/** deletion in the read */
+	public static final int DELETION = 6;
+	/** number of codes */
+	public static final int NUM_CODES = 7;
+	private static final int CODE_OF_BASE[] = new int[256];
+	static {
+		Arrays.fill(CODE_OF_BASE, BASE_OTHER);
+		CODE_OF_BASE['A'] = CODE_OF_BASE['a'] = BASE_A;
+		CODE_OF_BASE['C'] = CODE_OF_BASE['c'] = BASE_C;
+		CODE_OF_BASE['G'] = CODE_OF_BASE['g'] = BASE_G;
+		CODE_OF_BASE['T'] = CODE_OF_BASE['t'] = BASE_T;
+		CODE_OF_BASE['N'] = CODE_OF_BASE['n'] = BASE_N;
+		}
+
+	/** consumer receiving each covered position. The column is only valid during the call */
+	@FunctionalInterface
+	public static interface PileupConsumer {
+		public void accept(Column column);
+		}
+
+	/** view of the counts at one position */
+	public class Column {
+		private int pos1;
+		private int offset;
+		private Column() {
+			}
+		/** 1-based position on the contig */
+		public int getPosition() {
+			return this.pos1;
+			}
+		public int getSampleCount() {
+			return PileupAccumulator.this.sampleCount;
+			}
+		private int index(final int sample,final int code,final boolean negativeStrand) {
+			if(sample<0 || sample>=PileupAccumulator.this.sampleCount) throw new IndexOutOfBoundsException("0<="+sample+"<"+PileupAccumulator.this.sampleCount);
+			return this.offset + (sample*NUM_CODES + code)*2 + (negativeStrand?1:0);
+			}
+		/** number of items with this code on one strand */
+		public int getCount(final int sample,final int code,final boolean negativeStrand) {
+			return PileupAccumulator.this.counts[index(sample,code,negativeStrand)];
+			}
+		/** number of items with this code on both strands */
+		public int getCount(final int sample,final int code) {
+			final int i = index(sample,code,false);
+			return PileupAccumulator.this.counts[i] + PileupAccumulator.this.counts[i+1];
+			}
+		/** number of bases 'base' (case insensitive) on one strand */
+		public int getBaseCount(final int sample,final char base,final boolean negativeStrand) {
+			return getCount(sample, baseToCode(base), negativeStrand);
+			}
+		/** number of bases 'base' (case insensitive) on both strands */
+		public int getBaseCount(final int sample,final char base) {
+			return getCount(sample, baseToCode(base));
+			}
+		/** sum of the base qualities for this code on one strand */
+		public int getQualitySum(final int sample,final int code,final boolean negativeStrand) {
+			return PileupAccumulator.this.qualities[index(sample,code,negativeStrand)];
+			}
+		/** number of bases (not deletions) for this sample */
+		public int getDepth(final int sample) {
+			int n = 0;
+			final int i = index(sample,0,false);
+			for(int j=0;j< DELETION*2;j++) n += PileupAccumulator.this.counts[i+j];
+			return n;
+			}
+		@Override
+		public String toString() {
+			return "Column("+this.pos1+")";
+			}
+		}
+
+	private final int sampleCount;
+	/** number of ints per position */
+	private final int stride;
+	private final PileupConsumer consumer;
+	private final Column column = new Column();
+	/** ring buffer of counts */
+	private int counts[];
+	/** ring buffer of base qualities */
+	private int qualities[];
+	/** number of items per position in the ring buffer, used to skip the empty positions */
+	private int totals[];
+	private int minBaseQuality = 0;
+	/** length of the current contig */
+	private int contigLength = 0;
+	/** next 1-based position to be sent to the consumer */
+	private int flushed = 1;
+	/** 1-based position after the last event */
+	private int last_event = 1;
+
+	public PileupAccumulator(final int sampleCount,final int initialCapacity,final PileupConsumer consumer) {
+		if(sampleCount<1) throw new IllegalArgumentException("bad number of samples "+sampleCount);
+		this.sampleCount = sampleCount;
+		this.stride = sampleCount * NUM_CODES * 2;
+		this.consumer = consumer;
+		alloc(Math.max(1_000, initialCapacity));
+		}
+
+	public PileupAccumulator(final int sampleCount,final PileupConsumer consumer) {
+		this(sampleCount, 1_000, consumer);
+		}
+
+	/** convert a base to a code: {@link #BASE_A}, {@link #BASE_C}, {@link #BASE_G}, {@link #BASE_T}, {@link #BASE_N} or {@link #BASE_OTHER} */
+	public static int baseToCode(final int base) {
+		return CODE_OF_BASE[base & 0xFF];
+		}
+
+	private void alloc(final int capacity) {
+		this.totals = new int[capacity];
+		this.counts = new int[capacity * this.stride];
+		this.qualities = new int[capacity * this.stride];
+		}
+
+	public int getSampleCount() {
+		return this.sampleCount;
+		}
+
+	/** bases with a lower quality are ignored */
+	public PileupAccumulator setMinBaseQuality(final int minBaseQuality) {
+		this.minBaseQuality = minBaseQuality;
+		return this;
+		}
+
+	public int getMinBaseQuality() {
+		return this.minBaseQuality;
+		}
+
+	/** start a new contig */
+	public PileupAccumulator reset(final int contigLength) {
+		if(contigLength<0) throw new IllegalArgumentException("negative contig length "+contigLength);
+		Arrays.fill(this.totals, 0);
+		Arrays.fill(this.counts, 0);
+		Arrays.fill(this.qualities, 0);
+		this.contigLength = contigLength;
+		this.flushed = 1;
+		this.last_event = 1;
+		return this;
+		}
+
+	/** length of the current contig */
+	public int getContigLength() {
+		return this.contigLength;
+		}
+
+	/** return the next 1-based position that will be sent to the consumer */
+	public int getPosition() {
+		return this.flushed;
+		}
+
+	private void ensureCapacity(final int n) {
+		final int capacity = this.totals.length;
+		if(n <= capacity) return;
+		final int old_totals[] = this.totals;
+		final int old_counts[] = this.counts;
+		final int old_qualities[] = this.qualities;
+		alloc(Math.max(n, capacity*2));
+		final int new_capacity = this.totals.length;
+		for(int pos1 = this.flushed; pos1 < this.last_event; ++pos1) {
+			final int src = pos1 % capacity;
+			final int dest = pos1 % new_capacity;
+			this.totals[dest] = old_totals[src];
+			System.arraycopy(old_counts, src*this.stride, this.counts, dest*this.stride, this.stride);
+			System.arraycopy(old_qualities, src*this.stride, this.qualities, dest*this.stride, this.stride);
+			}
+		}
+
+	/** increment the counter 'code' at 'pos1'. No check is done */
+	private void incr(final int sample,final int pos1,final int code,final int qual,final boolean negativeStrand) {
+		final int row = pos1 % this.totals.length;
+		final int i = row*this.stride + (sample*NUM_CODES + code)*2 + (negativeStrand?1:0);
+		this.counts[i]++;
+		this.qualities[i] += qual;
+		this.totals[row]++;
+		if(pos1 >= this.last_event) this.last_event = pos1 + 1;
+		}
+
+	/** add one base. Positions that were already sent to the consumer are ignored */
+	public void add(final int sample,final int pos1,final byte base,final int qual,final boolean negativeStrand) {
+		if(sample<0 || sample>=this.sampleCount) throw new IndexOutOfBoundsException("0<="+sample+"<"+this.sampleCount);
+		if(pos1 < this.flushed || pos1 > this.contigLength) return;
+		if(qual < this.minBaseQuality) return;
+		ensureCapacity(1 + pos1 - this.flushed);
+		incr(sample, pos1, baseToCode(base), qual, negativeStrand);
+		}
+
+	/** add a deletion. Positions that were already sent to the consumer are ignored */
+	public void addDeletion(final int sample,final int pos1,final boolean negativeStrand) {
+		if(sample<0 || sample>=this.sampleCount) throw new IndexOutOfBoundsException("0<="+sample+"<"+this.sampleCount);
+		if(pos1 < this.flushed || pos1 > this.contigLength) return;
+		ensureCapacity(1 + pos1 - this.flushed);
+		incr(sample, pos1, DELETION, 0, negativeStrand);
+		}
+
+	/** add the bases of the read aligned on the reference (cigar operators M,X,=) and the deletions (D) */
+	public void add(final int sample,final SAMRecord rec) {
+		if(sample<0 || sample>=this.sampleCount) throw new IndexOutOfBoundsException("0<="+sample+"<"+this.sampleCount);
+		if(rec.getReadUnmappedFlag()) return;
+		final Cigar cigar = rec.getCigar();
+		if(cigar==null || cigar.isEmpty()) return;
+		final byte bases[] = rec.getReadBases();
+		if(bases==SAMRecord.NULL_SEQUENCE) return;
+		final byte quals[] = rec.getBaseQualities();
+		final boolean hasQuals = quals!=SAMRecord.NULL_QUALS && quals.length==bases.length;
+		final boolean negativeStrand = rec.getReadNegativeStrandFlag();
+		final int end1 = Math.min(rec.getAlignmentEnd(), this.contigLength);
+		if(end1 < this.flushed) return;
+		ensureCapacity(1 + end1 - this.flushed);
+		int ref1 = rec.getAlignmentStart();
+		int readpos = 0;
+		for(final CigarElement ce:cigar) {
+			final CigarOperator op = ce.getOperator();
+			final int len = ce.getLength();
+			switch(op) {
+				case M: case X: case EQ:
+					for(int i=0;i< len;i++) {
+						final int pos1 = ref1 + i;
+						if(pos1 < this.flushed || pos1 > end1) continue;
+						final int qual = hasQuals ? quals[readpos+i] : 0;
+						if(hasQuals && qual < this.minBaseQuality) continue;
+						incr(sample, pos1, baseToCode(bases[readpos+i]), qual, negativeStrand);
+						}
+					break;
+				case D:
+					for(int i=0;i< len;i++) {
+						final int pos1 = ref1 + i;
+						if(pos1 < this.flushed || pos1 > end1) continue;
+						incr(sample, pos1, DELETION, 0, negativeStrand);
+						}
+					break;
+				default: break;
+				}
+			if(op.consumesReferenceBases()) ref1 += len;
+			if(op.consumesReadBases()) readpos += len;
+			}
+		}
+
+	/** send all the covered positions before 'pos1' to the consumer */
+	public void advance(int pos1) {
+		pos1 = Math.min(pos1, this.contigLength+1);
+		final int capacity = this.totals.length;
+		while(this.flushed < pos1) {
+			if(this.flushed >= this.last_event) {
+				/* nothing after this position */
+				this.flushed = pos1;
+				break;
+				}
+			final int row = this.flushed % capacity;
+			if(this.totals[row]!=0) {
+				final int offset = row*this.stride;
+				this.column.pos1 = this.flushed;
+				this.column.offset = offset;
+				this.consumer.accept(this.column);
+				this.totals[row] = 0;
+				Arrays.fill(this.counts, offset, offset+this.stride, 0);
+				Arrays.fill(this.qualities, offset, offset+this.stride, 0);
+				}
+			this.flushed++;
+			}
+		if(this.last_event < this.flushed) this.last_event = this.flushed;
+		}
+
+	/** send all the remaining positions of the contig to the consumer */
+	public void finish() {
+		advance(this.contigLength+1);
+		}
+	}
@@ -0,0 +1,193 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.samtools.reference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.github.lindenb.jvarkit.lang.JvarkitException;
+import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+
+/**
+ * Random access to the bases of a reference using a LRU cache of fixed-size chunks.
+ *
+ * The bases of a chunk are upper-cased once when the chunk is loaded, and the
+ * length of the homopolymer runs ending/starting at each base are precomputed,
+ * so {@link #getHomopolymerLeft(String, int)} and {@link #getHomopolymerRight(String, int)}
+ * are O(1) unless the run crosses the boundary of a chunk.
+ *
+ * Instances are thread-safe: the underlying {@link ReferenceSequenceFile} is only accessed
+ * when a chunk is missing from the cache, under a lock. Chunks are immutable.
+ */
+public class ReferenceChunkCache implements Closeable {
+	public static final int DEFAULT_CHUNK_SIZE = 65_536;
+	public static final int DEFAULT_MAX_CHUNKS = 32;
+	private final ReferenceSequenceFile referenceSequenceFile;
+	private final SAMSequenceDictionary dict;
+	private final int chunkSize;
+	private final Map<Long, Chunk> cache;
+
+	/** an immutable chunk of a contig */
+	private static class Chunk {
+		/** upper case bases */
+		final byte[] bases;
+		/** length of the run of identical bases ending at index, in this chunk */
+		final int[] leftRun;
+		/** length of the run of identical bases starting at index, in this chunk */
+		final int[] rightRun;
+		Chunk(final byte[] bases) {
+			final int n = bases.length;
+			this.bases = bases;
+			for(int i=0;i< n;i++) {
+				final byte b = bases[i];
+				if(b>='a' && b<='z') bases[i] = (byte)(b - 'a' + 'A');
+				}
+			this.leftRun = new int[n];
+			this.rightRun = new int[n];
+			for(int i=0;i< n;i++) {
+				this.leftRun[i] = (i>0 && bases[i]==bases[i-1] ? this.leftRun[i-1] + 1 : 1);
+				}
+			for(int i=n-1;i>=0;i--) {
+				this.rightRun[i] = (i+1<n && bases[i]==bases[i+1] ? this.rightRun[i+1] + 1 : 1);
+				}
+			}
+		}
+
+	/** the cache takes the ownership of the referenceSequenceFile, it will be closed by {@link #close()} */
+	public ReferenceChunkCache(final ReferenceSequenceFile referenceSequenceFile,final int chunkSize,final int maxChunks) {
+		if(chunkSize<1) throw new IllegalArgumentException("bad chunk size "+chunkSize);
+		if(maxChunks<1) throw new IllegalArgumentException("bad number of chunks "+maxChunks);
+		this.referenceSequenceFile = referenceSequenceFile;
+		this.dict = SequenceDictionaryUtils.extractRequired(referenceSequenceFile);
+		this.chunkSize = chunkSize;
+		this.cache = new LinkedHashMap<Long, Chunk>(maxChunks+1,0.75f,true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, Chunk> eldest) {
+				return size() > maxChunks;
+				}
+			};
+		}
+
+	public ReferenceChunkCache(final ReferenceSequenceFile referenceSequenceFile) {
+		this(referenceSequenceFile,DEFAULT_CHUNK_SIZE,DEFAULT_MAX_CHUNKS);
+		}
+
+	public SAMSequenceDictionary getSequenceDictionary() {
+		return this.dict;
+		}
+
+	private SAMSequenceRecord getSequence(final String contig) {
+		final SAMSequenceRecord ssr = this.dict.getSequence(contig);
+		if(ssr==null) throw new JvarkitException.ContigNotFoundInDictionary(contig, this.dict);
+		return ssr;
+		}
+
+	private Chunk getChunk(final SAMSequenceRecord ssr,final int chunkIndex) {
+		final Long key = (((long)ssr.getSequenceIndex())<<32) | chunkIndex;
+		synchronized(this.cache) {
+			Chunk chunk = this.cache.get(key);
+			if(chunk==null) {
+				final int start0 = chunkIndex * this.chunkSize;
+				final int end0 = Math.min(ssr.getSequenceLength(), start0 + this.chunkSize);
+				chunk = new Chunk(this.referenceSequenceFile.getSubsequenceAt(ssr.getSequenceName(), start0+1, end0).getBases());
+				this.cache.put(key, chunk);
+				}
+			return chunk;
+			}
+		}
+
+	private void checkPosition(final SAMSequenceRecord ssr,final int pos1) {
+		if(pos1<1 || pos1 > ssr.getSequenceLength()) throw new IndexOutOfBoundsException("position "+pos1+" out of "+ssr.getSequenceName()+":1-"+ssr.getSequenceLength());
+		}
+
+	/** return the upper-case base at 1-based position pos1 */
+	public byte getBase(final String contig,final int pos1) {
+		final SAMSequenceRecord ssr = getSequence(contig);
+		checkPosition(ssr,pos1);
+		final int pos0 = pos1 - 1;
+		return getChunk(ssr, pos0/this.chunkSize).bases[pos0 % this.chunkSize];
+		}
+
+	/** return the number of consecutive identical bases ending at pos1, including pos1 */
+	public int getHomopolymerLeft(final String contig,final int pos1) {
+		final SAMSequenceRecord ssr = getSequence(contig);
+		checkPosition(ssr,pos1);
+		int chunkIndex = (pos1-1)/this.chunkSize;
+		int offset = (pos1-1)%this.chunkSize;
+		Chunk chunk = getChunk(ssr, chunkIndex);
+		final byte base = chunk.bases[offset];
+		int count = 0;
+		for(;;) {
+			final int n = chunk.leftRun[offset];
+			count += n;
+			// run doesn't reach the start of the chunk
+			if(n <= offset || chunkIndex==0) break;
+			chunkIndex--;
+			chunk = getChunk(ssr, chunkIndex);
+			offset = chunk.bases.length - 1;
+			if(chunk.bases[offset]!=base) break;
+			}
+		return count;
+		}
+
+	/** return the number of consecutive identical bases starting at pos1, including pos1 */
+	public int getHomopolymerRight(final String contig,final int pos1) {
+		final SAMSequenceRecord ssr = getSequence(contig);
+		checkPosition(ssr,pos1);
+		final int lastChunk = (ssr.getSequenceLength()-1)/this.chunkSize;
+		int chunkIndex = (pos1-1)/this.chunkSize;
+		int offset = (pos1-1)%this.chunkSize;
+		Chunk chunk = getChunk(ssr, chunkIndex);
+		final byte base = chunk.bases[offset];
+		int count = 0;
+		for(;;) {
+			final int n = chunk.rightRun[offset];
+			count += n;
+			// run doesn't reach the end of the chunk
+			if(offset + n < chunk.bases.length || chunkIndex==lastChunk) break;
+			chunkIndex++;
+			chunk = getChunk(ssr, chunkIndex);
+			offset = 0;
+			if(chunk.bases[offset]!=base) break;
+			}
+		return count;
+		}
+
+	@Override
+	public void close() throws IOException {
+		synchronized(this.cache) {
+			this.cache.clear();
+			}
+		this.referenceSequenceFile.close();
+		}
+	}
@@ -32,9 +32,12 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -63,9 +66,9 @@ import com.beust.jcommander.Parameter;
 import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.JvarkitException;
 import com.github.lindenb.jvarkit.math.stats.Percentile;
+import com.github.lindenb.jvarkit.samtools.DepthAccumulator;
 import com.github.lindenb.jvarkit.samtools.util.IntervalParserFactory;
 import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
-import com.github.lindenb.jvarkit.util.Counter;
 import com.github.lindenb.jvarkit.util.Pedigree;
 import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
 import com.github.lindenb.jvarkit.util.bio.samfilter.SamRecordFilterFactory;
@@ -89,10 +92,11 @@ About BedGraph: [https://genome.ucsc.edu/goldenpath/help/bedgraph.html](https://
 
 ## Memory
 
-warning: the program is memory consuming, it allocates on array of integer of the size of your longest contig.
+The depth is computed on the fly using a buffer as large as the longest read. Older versions allocated an array of integer of the size of the longest contig.
 
 ## History:
 
+20221019: depth is computed using a sliding buffer instead of an array of the size of the contig.
 20171115: removed cast_to_integer replaced by 'format', added percentile. Removed options --zerolength and --mindepth.
 
 ## Aggregators:
@@ -144,9 +148,9 @@ fixedStep chrom=ref2 start=1 step=3 span=1
 END_DOC
  */
 @Program(name="bam2wig",
-description="Bam to fixedStep Wiggle converter , or BED GRAPH. Parses the cigar String to get the depth. Memory intensive: must alloc sizeof(int)*size(chrom)",
+description="Bam to fixedStep Wiggle converter , or BED GRAPH. Parses the cigar String to get the depth.",
 keywords={"bam","wig","wiggle","bed"},
-modificationDate="20200304"
+modificationDate="20221019"
 )
 public class Bam2Wig extends Launcher
 	{
@@ -189,22 +193,44 @@ public class Bam2Wig extends Launcher
 	
 	private static abstract class Aggregator
 		{
-		abstract void visit(final int array[],final SAMRecord rec);
-		void finish(final int array[]) {}
-		protected void incr(final int array[],int pos1,int length)
+		/** start a new contig. The value of each position will be sent to 'consumer' */
+		abstract void begin(final SAMSequenceRecord ssr,final DepthAccumulator.DepthConsumer consumer);
+		abstract void visit(final SAMRecord rec);
+		/** send the value of the remaining positions of the current contig */
+		abstract void finish();
+		}
+	
+	/** aggregators incrementing the value of some positions of the reads */
+	private static abstract class DepthAggregator extends Aggregator
+		{
+		private DepthAccumulator depthAccumulator = null;
+		@Override
+		void begin(final SAMSequenceRecord ssr,final DepthAccumulator.DepthConsumer consumer) {
+			this.depthAccumulator = new DepthAccumulator(consumer).reset(ssr.getSequenceLength());
+			}
+		protected void incr(int pos1,int length)
 			{
-			for(int i=0;i< length ;++i)
-				{
-				final int array_index= pos1+i-1;
-				if(array_index>0 && array_index<array.length)
-					{
-					array[array_index]++;
-					}
-				}
+			this.depthAccumulator.add(pos1, length);
+			}
+		/** increment the positions for this read */
+		protected abstract void fill(final SAMRecord rec);
+		/** all the positions before the returned value will never be incremented by the next reads */
+		protected int getFlushPosition(final SAMRecord rec) {
+			return rec.getAlignmentStart();
+			}
+		@Override
+		void visit(final SAMRecord rec) {
+			fill(rec);
+			this.depthAccumulator.advance(getFlushPosition(rec));
+			}
+		@Override
+		void finish() {
+			this.depthAccumulator.finish();
+			this.depthAccumulator = null;
 			}
 		}
 	
-	private static class CoverageAggregator extends Aggregator
+	private static class CoverageAggregator extends DepthAggregator
 		{
 		private final Predicate<SAMRecord> internalFilter;
 		CoverageAggregator() {
@@ -214,7 +240,7 @@ public class Bam2Wig extends Launcher
 			this.internalFilter = predicate;
 			}
 		@Override
-		void visit(final int array[],final SAMRecord rec)
+		protected void fill(final SAMRecord rec)
 			{
 			if(!this.internalFilter.test(rec)) return ;
 			final Cigar cigar=rec.getCigar();
@@ -227,7 +253,7 @@ public class Bam2Wig extends Launcher
     				{
     				if(op.consumesReadBases())
     					{
-    					incr(array,refpos1,ce.getLength());
+    					incr(refpos1,ce.getLength());
     					}
     				refpos1+=ce.getLength();
     				}    				
@@ -235,10 +261,10 @@ public class Bam2Wig extends Launcher
 			}
 		}
 	
-	private static class DeletionAggregator extends Aggregator
+	private static class DeletionAggregator extends DepthAggregator
 		{
 		@Override
-		void visit(final int array[],final SAMRecord rec)
+		protected void fill(final SAMRecord rec)
 			{
 			final Cigar cigar=rec.getCigar();
 			if(cigar==null) return;
@@ -249,7 +275,7 @@ public class Bam2Wig extends Launcher
 				switch(op)
 					{
 					case D:
-					case N:incr(array,refpos1,ce.getLength());
+					case N:incr(refpos1,ce.getLength());
 					default: break;
 					}
 				if(op.consumesReferenceBases())
@@ -259,10 +285,10 @@ public class Bam2Wig extends Launcher
 				}
 			}
 		}
-	private static class InsertionAggregator extends Aggregator
+	private static class InsertionAggregator extends DepthAggregator
 		{
 		@Override
-		void visit(final int array[],final SAMRecord rec)
+		protected void fill(final SAMRecord rec)
 			{
 			final Cigar cigar=rec.getCigar();
 			if(cigar==null) return;
@@ -272,7 +298,7 @@ public class Bam2Wig extends Launcher
 				final CigarOperator op = ce.getOperator();
 				switch(op)
 					{
-					case I: incr(array,refpos1,1);
+					case I: incr(refpos1,1);
 					default: break;
 					}
 				if(op.consumesReferenceBases())
@@ -284,10 +310,10 @@ public class Bam2Wig extends Launcher
 		}
 	
 	
-	private static class ClipAggregator extends Aggregator
+	private static class ClipAggregator extends DepthAggregator
 		{
 		@Override
-		void visit(final int array[],final SAMRecord rec)
+		protected void fill(final SAMRecord rec)
 			{
 			final Cigar cigar=rec.getCigar();
 			if(cigar==null) return;
@@ -297,7 +323,7 @@ public class Bam2Wig extends Launcher
 				final CigarOperator op = ce.getOperator();
 				if(op.isClipping())
 					{
-					incr(array,refpos1,ce.getLength());
+					incr(refpos1,ce.getLength());
 					refpos1+=ce.getLength();
 					}
 				else if(op.consumesReferenceBases())
@@ -306,78 +332,149 @@ public class Bam2Wig extends Launcher
 					}
 				}
 			}
+		@Override
+		protected int getFlushPosition(final SAMRecord rec) {
+			/* reads are sorted on alignment start, not on unclipped start, and the leading clip
+			 * of the next reads can be of any length: nothing is flushed before the end of the contig */
+			return 1;
+			}
 		}
+	/** base class for the aggregators needing the depth of each sample at each position.
+	 * Depths are stored in a ring buffer of primitive int: one row per genomic position, one column per sample.
+	 * Rows are dumped as soon as the (sorted) stream of reads has passed them.
+	 */
 	private static abstract class BufferedAggregator extends Aggregator
 		{
-		private final List<SAMRecord> buffer= new ArrayList<>();
-		private int last_start=1;
-		protected abstract void dump(final List<SAMRecord> records,int start1,int end1,final int array[]);
+		/** read-group to sample index, resolved once per read-group. -1 if the read group must be ignored */
+		private final Map<SAMReadGroupRecord,Integer> rg2column = new IdentityHashMap<>();
+		/** sample name to sample index */
+		private final Map<String,Integer> sample2column = new HashMap<>();
+		/** ring buffer of depths: row=position modulo capacity , column=sample index */
+		private int depths[] = new int[0];
+		/** number of positions (rows) in the ring buffer */
+		private int capacity = 0;
+		/** number of samples (columns) in the ring buffer */
+		private int n_columns = 0;
+		/** first 1-based position that was not dumped yet */
+		private int buffer_start = 1;
+		/** last 1-based position (exclusive) that was filled */
+		private int buffer_end = 1;
+		/** length of the current contig */
+		private int contigLength = 0;
+		/** receives the value of each position */
+		private DepthAccumulator.DepthConsumer consumer = null;
 		
-		protected abstract String partition(SAMRecord rec);
+		/** return the sample name for this read-group or null if it must be ignored */
+		protected abstract String partition(final SAMReadGroupRecord rg);
+
+		/** compute the value for one position. The depth of sample 'i' is rowDepths[offset+i] */
+		protected abstract int compute(final int rowDepths[],int offset,int nSamples);
 		
-		protected Map<Integer,Counter<String>> fillPositions(final List<SAMRecord> records,final int begin1,final int end1)
-			{
-			final Map<Integer,Counter<String>> pos2sample2depth = new HashMap<>();
-			for(final SAMRecord rec:records) {
-				final Cigar cigar = rec.getCigar();
-				if(cigar==null) continue;
-				final String sample = partition(rec);
-				if(StringUtil.isBlank(sample)) continue;
-				
-				int pos1= rec.getAlignmentStart();
-				for(final CigarElement ce:cigar) {
-					if(pos1>=end1) break;
-					final CigarOperator op= ce.getOperator();
-					if(op.consumesReferenceBases())
-						{
-						final int L=ce.getLength();
-						if(op.consumesReadBases())
-							{
-							for(int i=0;i< L && pos1+i<end1;++i)
-								{
-								final int nx = pos1 + i;
-								if(nx>=begin1 && nx< end1)
-									{
-									Counter<String> sample2coverage = pos2sample2depth.get(nx);
-									if(sample2coverage==null) {
-										sample2coverage = new Counter<String>();
-										pos2sample2depth.put(nx, sample2coverage);
-										}
-									sample2coverage.incr(sample);
-									}
-								}
-							}
-						pos1+=L;
+		/** return the index of the given sample, create a new column if needed */
+		protected int getSampleIndex(final String sample) {
+			final Integer idx = this.sample2column.get(sample);
+			if(idx!=null) return idx.intValue();
+			final int n = this.sample2column.size();
+			this.sample2column.put(sample, n);
+			return n;
+			}
+		
+		private int getSampleIndex(final SAMRecord rec) {
+			final SAMReadGroupRecord rg = rec.getReadGroup();
+			if(rg==null) return -1;
+			Integer idx = this.rg2column.get(rg);
+			if(idx==null) {
+				final String sample = partition(rg);
+				idx = StringUtil.isBlank(sample)?-1:getSampleIndex(sample);
+				this.rg2column.put(rg, idx);
+				}
+			return idx.intValue();
+			}
+		
+		/** resize the ring buffer so it can contain 'positions' rows and 'columns' samples */
+		private void ensureCapacity(final int positions,final int columns) {
+			if(positions <= this.capacity && columns <= this.n_columns) return;
+			final int new_capacity = Math.max(this.capacity, Math.max(positions, this.capacity*2));
+			final int new_columns = Math.max(this.n_columns,columns);
+			final int new_depths[] = new int[new_capacity * new_columns];
+			for(int pos1=this.buffer_start;pos1 < this.buffer_end;++pos1) {
+				System.arraycopy(
+					this.depths, (pos1 % this.capacity) * this.n_columns,
+					new_depths, (pos1 % new_capacity) * new_columns,
+					this.n_columns
+					);
+				}
+			this.depths = new_depths;
+			this.capacity = new_capacity;
+			this.n_columns = new_columns;
+			}
+		
+		/** dump and clear all the rows before 'end1' */
+		private void flush(int end1) {
+			end1 = Math.min(end1, this.contigLength+1);
+			for(int pos1 = this.buffer_start; pos1 < end1; ++pos1) {
+				int value = 0;
+				if(pos1 < this.buffer_end) {
+					final int offset = (pos1 % this.capacity) * this.n_columns;
+					boolean covered = false;
+					for(int i=0;i< this.n_columns && !covered;i++) {
+						covered = this.depths[offset+i]!=0;
+						}
+					if(covered) {
+						value = compute(this.depths, offset, this.n_columns);
+						Arrays.fill(this.depths, offset, offset + this.n_columns, 0);
 						}
 					}
-				
+				this.consumer.accept(pos1, value);
 				}
-			return pos2sample2depth;
+			this.buffer_start = Math.max(this.buffer_start, end1);
+			this.buffer_end = Math.max(this.buffer_end, this.buffer_start);
 			}
 		
 		@Override
-		void visit(final int array[],final SAMRecord rec)
+		void begin(final SAMSequenceRecord ssr,final DepthAccumulator.DepthConsumer consumer) {
+			this.consumer = consumer;
+			this.contigLength = ssr.getSequenceLength();
+			this.buffer_start = 1;
+			this.buffer_end = 1;
+			}
+		
+		@Override
+		void visit(final SAMRecord rec)
 			{
-			if(rec.getAlignmentStart() < this.last_start)
+			if(rec.getAlignmentStart() < this.buffer_start)
 				{
-				throw new IllegalStateException("got read "+rec+" after last_start="+last_start);
+				throw new IllegalStateException("got read "+rec+" after last_start="+this.buffer_start);
 				}
-			this.buffer.removeIf(R->R.getEnd()< this.last_start);
-			final List<SAMRecord> toDump= buffer.stream().
-					filter(R->R.getEnd()< R.getAlignmentEnd()).
-					collect(Collectors.toList());
+			final Cigar cigar = rec.getCigar();
+			if(cigar==null) return;
+			final int column = getSampleIndex(rec);
+			if(column<0) return;
+			flush(rec.getAlignmentStart());
+			ensureCapacity(1 + rec.getAlignmentEnd() - this.buffer_start, this.sample2column.size());
 			
-			if(!toDump.isEmpty()) {
-				dump(toDump,this.last_start,rec.getAlignmentStart(),array);
-				this.last_start = rec.getAlignmentStart();
+			int pos1= rec.getAlignmentStart();
+			for(final CigarElement ce:cigar) {
+				final CigarOperator op= ce.getOperator();
+				if(!op.consumesReferenceBases()) continue;
+				final int L=ce.getLength();
+				if(op.consumesReadBases())
+					{
+					for(int i=0;i< L;++i)
+						{
+						this.depths[((pos1+i) % this.capacity) * this.n_columns + column]++;
+						}
+					this.buffer_end = Math.max(this.buffer_end, pos1 + L);
+					}
+				pos1+=L;
 				}
-			this.buffer.add(rec);
 			}
 		@Override
-		void finish(final int array[]) {
-			dump(this.buffer,this.last_start,array.length+1,array);
-			buffer.clear();
-			this.last_start=1;
+		void finish() {
+			flush(this.contigLength+1);
+			// reads may go beyond the end of the contig
+			Arrays.fill(this.depths, 0);
+			this.consumer = null;
 			}
 		}
 	
@@ -391,36 +488,27 @@ public class Bam2Wig extends Launcher
 			}
 		
 		@Override
-		protected String partition(final SAMRecord rec) {
-			return this.samRecordPartition.apply(rec.getReadGroup());
+		protected String partition(final SAMReadGroupRecord rg) {
+			return this.samRecordPartition.apply(rg);
 			}
 		
 		@Override
-		protected void dump(final List<SAMRecord> records,final int begin1,final int end1,final int array[]) {
-			final Map<Integer,Counter<String>> pos2sample2depth= fillPositions(records,begin1,end1);
-			for(int start1 = begin1;start1<end1;++start1)
-				{
-				final Counter<String> sample2coverage = pos2sample2depth.get(start1);
-				if(sample2coverage==null) continue;
-				
-				final int num_samples= (int)sample2coverage.stream().
-						mapToInt(E->E.getValue().intValue()).
-						filter(D->D>=this.minDepth).
-						count()
-						;				
-				if(start1>0 && start1<=array.length)
-					{
-					array[start1-1]=num_samples;
-					}
-				
+		protected int compute(final int rowDepths[],final int offset,final int nSamples) {
+			int num_samples = 0;
+			for(int i=0;i< nSamples;i++) {
+				final int depth = rowDepths[offset+i];
+				if(depth>0 && depth>=this.minDepth) num_samples++;
 				}
+			return num_samples;
 			}
 		}
 	
 	private static class CaseControlAggregator extends BufferedAggregator
 		{
-		private final Map<String,Pedigree.Person> case2person;
-		private final Map<String,Pedigree.Person> ctrl2person;
+		/* cases are the columns [0,n_cases[ , controls are the columns [n_cases,n_cases+n_ctrls[ */
+		private final int n_cases;
+		private final int n_ctrls;
+		private final Set<String> pedigree_samples = new HashSet<>();
 		CaseControlAggregator(final File pedigreeFile) {
 			final Pedigree pedigree ;
 			IOUtil.assertFileIsReadable(pedigreeFile);
@@ -431,67 +519,138 @@ public class Bam2Wig extends Launcher
 				{
 				throw new RuntimeIOException(err);
 				}
-			this.case2person=pedigree.getPersons().stream().
+			final List<String> cases = pedigree.getPersons().stream().
 						filter(P->P.isAffected()).
-						collect(Collectors.toMap(P->P.getId(), P->P))
+						map(P->P.getId()).
+						distinct().
+						collect(Collectors.toList())
 						;
-			this.ctrl2person=pedigree.getPersons().stream().
+			final List<String> ctrls = pedigree.getPersons().stream().
 					filter(P->P.isUnaffected()).
-					collect(Collectors.toMap(P->P.getId(), P->P))
+					map(P->P.getId()).
+					distinct().
+					collect(Collectors.toList())
 					;
+			this.n_cases = cases.size();
+			this.n_ctrls = ctrls.size();
+			cases.forEach(S->getSampleIndex(S));
+			ctrls.forEach(S->getSampleIndex(S));
+			this.pedigree_samples.addAll(cases);
+			this.pedigree_samples.addAll(ctrls);
+			}
+		@Override
+		void visit(final SAMRecord rec) {
+			if(this.n_cases==0) return;
+			if(this.n_ctrls==0) return;
+			super.visit(rec);
 			}
+		
 		@Override
-		void visit(int[] array, SAMRecord rec) {
-			if(this.case2person.isEmpty()) return;
-			if(this.ctrl2person.isEmpty()) return;
-			if(StringUtil.isBlank(partition(rec))) return;
-			super.visit(array, rec);
+		protected String partition(final SAMReadGroupRecord rg) {
+			final String sample= rg.getSample();
+			if(!this.pedigree_samples.contains(sample)) return null;
+			return sample;
 			}
 		
 		@Override
-		protected String partition(final SAMRecord rec) {
+		protected int compute(final int rowDepths[],final int offset,final int nSamples) {
+			final double median_cases = Percentile.median().evaluate(rowDepths, offset, this.n_cases).getAsDouble();
+			final double median_ctrl = Percentile.median().evaluate(rowDepths, offset + this.n_cases, this.n_ctrls).getAsDouble();
+			final double ratio = median_cases / median_ctrl;
+			return (int)(ratio * 1000.0);
+			}
+		}
 
-			final SAMReadGroupRecord rg = rec.getReadGroup();
-			if(rg==null) return null;
-			final String sample= rg.getSample();			
-			if(!(this.ctrl2person.containsKey(sample)|| this.case2person.containsKey(sample))) return null;
-			return null;
+	
+	
+	/** receives the value of each position of a contig and prints the sliding windows */
+	private class WindowWriter implements DepthAccumulator.DepthConsumer
+		{
+		private final PrintWriter pw;
+		private final SAMSequenceRecord ssr;
+		private final SimpleInterval interval;
+		private final Percentile percentile;
+		/** ring buffer containing the last 'window_span' values */
+		private final int ring[];
+		/** values of the current window */
+		private final int window[];
+		/** 0-based start of the next window */
+		private int start0;
+		private boolean header_printed = false;
+		private boolean done = false;
+		WindowWriter(final PrintWriter pw,final SAMSequenceRecord ssr,final SimpleInterval interval,final Percentile percentile) {
+			this.pw = pw;
+			this.ssr = ssr;
+			this.interval = interval;
+			this.percentile = percentile;
+			this.ring = new int[window_span];
+			this.window = new int[window_span];
+			this.start0 = (interval==null?0:interval.getStart());
 			}
 		
 		@Override
-		protected void dump(final List<SAMRecord> records,final int begin1,final int end1,final int array[]) {
-			if(this.case2person.isEmpty()) return;
-			if(this.ctrl2person.isEmpty()) return;
-			final Map<Integer,Counter<String>> pos2sample2depth= fillPositions(records,begin1,end1);
-				
-					
-			for(int start1 = begin1;start1<end1;++start1)
+		public void accept(final int pos1,final int value) {
+			final int pos0 = pos1 - 1;
+			this.ring[pos0 % this.ring.length] = value;
+			while(!this.done && this.start0 + window_span - 1 <= pos0) {
+				printWindow(window_span);
+				}
+			}
+		
+		private void printWindow(final int length) {
+			if(this.interval!=null)
 				{
-				
-				final Counter<String> sample2coverage = pos2sample2depth.get(start1);
-				if(sample2coverage==null) continue;
-				
-				final double median_cases = Percentile.median().evaluate(this.case2person.keySet().
-						stream().
-						mapToDouble(ID->sample2coverage.count(ID))
-						).getAsDouble();
-				final double median_ctrl = Percentile.median().evaluate(this.ctrl2person.keySet().
-						stream().
-						mapToDouble(ID->sample2coverage.count(ID))
-						).getAsDouble();
-
-				final double ratio = median_cases / median_ctrl;
-				
-				if(start1>0 && start1<=array.length)
+				if(!this.interval.getContig().equals(this.ssr.getSequenceName()) || this.start0 > this.interval.getEnd()) {
+					this.done = true;
+					return;
+					}
+				if(this.start0 + window_span < this.interval.getStart())
 					{
-					array[start1-1]= (int)(ratio * 1000.0);
+					this.start0 += win_shift;
+					return;
 					}
-				
+				}
+			if(!bedGraph && !this.header_printed)
+				{
+				this.pw.println(
+ 						"fixedStep chrom="+this.ssr.getSequenceName()+
+ 						" start="+(this.start0+1)+
+ 						" step="+win_shift +" span="+ window_span
+ 						);
+				this.header_printed=true;
+				}
+			/* 
+			 * http://genome.ucsc.edu/goldenPath/help/wiggle.html
+			   Wiggle track data values can be integer or real, positive or negative values.
+			   Chromosome positions are specified as 1-relative.
+			   For a chromosome of length N, the first position is 1 and the last position is N. Only positions specified have data. Positions not specified do not have data and will not be graphed. 
+			 */
+			for(int i=0;i< length;i++) {
+				this.window[i] = this.ring[(this.start0+i) % this.ring.length];
+				}
+			final double percentile_value = this.percentile.evaluate(this.window, 0, length).getAsDouble();
+			if(bedGraph)
+				{
+				this.pw.print(this.ssr.getSequenceName());
+				this.pw.print('\t');
+				this.pw.print(this.start0);
+				this.pw.print('\t');
+				this.pw.print(this.start0+window_span);
+				this.pw.print('\t');
+				}
+			this.pw.printf(printfFormat,percentile_value);
+			this.pw.print('\n');
+			if(this.pw.checkError()) this.done=true;
+			this.start0 += win_shift;
+			}
+		
+		/** print the remaining windows at the end of the contig */
+		void finish() {
+			while(!this.done && this.start0 < this.ssr.getSequenceLength()) {
+				printWindow(Math.min(window_span, this.ssr.getSequenceLength() - this.start0));
 				}
 			}
 		}
-
-	
 	
 	private void run(
 			final PrintWriter pw,
@@ -518,7 +677,7 @@ public class Bam2Wig extends Launcher
 		
 		final Percentile percentile = Percentile.of(this.percentilType);
 		SAMSequenceRecord ssr = null;
-		int array[]=null;
+		WindowWriter windowWriter = null;
 		final SAMSequenceDictionaryProgress progess=new SAMSequenceDictionaryProgress(dict);
 		if(this.custom_track)
 			{
@@ -548,66 +707,10 @@ public class Bam2Wig extends Launcher
 				{
 				if(ssr!=null)
 					{
-					aggregator.finish(array);
 					// dump data
-					int start0=(interval==null?0:interval.getStart());
-					boolean header_printed=false;
-					
-					
-					while(start0 < array.length)
-						{
-						if(interval!=null)
-							{
-							if(!interval.getContig().equals(ssr.getSequenceName())) break;//
-							if(start0> interval.getEnd()) break;
-							
-							if(start0+window_span < interval.getStart())
-								{
-								start0+=win_shift;
-								continue;
-								}
-							}
-						
-						if(!this.bedGraph && !header_printed)
-							{
-							pw.println(
-			 						"fixedStep chrom="+ssr.getSequenceName()+
-			 						" start="+(start0+1)+
-			 						" step="+this.win_shift +" span="+ this.window_span
-			 						);
-							header_printed=true;
-							}
-						/* 
-						 * http://genome.ucsc.edu/goldenPath/help/wiggle.html
-						   Wiggle track data values can be integer or real, positive or negative values.
-						   Chromosome positions are specified as 1-relative.
-						   For a chromosome of length N, the first position is 1 and the last position is N. Only positions specified have data. Positions not specified do not have data and will not be graphed. 
-						 */
-		 				
-						final double percentile_value = 
-							percentile.evaluate(
-									array,
-									start0,
-									Math.min(this.window_span,array.length-start0)
-									).getAsDouble();
-						if(this.bedGraph)
-							{
-							pw.print(ssr.getSequenceName());
-							pw.print('\t');
-							pw.print(start0);
-							pw.print('\t');
-							pw.print(start0+this.window_span);
-							pw.print('\t');
-							}
-						
-						pw.printf(this.printfFormat,percentile_value);
-	 					pw.print('\n');
-		 				
-		 				if(pw.checkError()) break;
-		 				start0 += this.win_shift;
-						}
-					array = null;
-					System.gc();
+					aggregator.finish();
+					windowWriter.finish();
+					windowWriter = null;
 					ssr = null;
 					}
 				if(rec==null) break;
@@ -615,16 +718,12 @@ public class Bam2Wig extends Launcher
 				}
 			if(ssr==null)
 				{
-				System.gc();
 				ssr=dict.getSequence(rec.getReferenceIndex());
 				Objects.requireNonNull(ssr);
-				LOG.info("Allocating int["+ssr.getSequenceLength()+"]");
-				array=new int[ssr.getSequenceLength()];
-				LOG.info("Allocating : Done.");
-				Arrays.fill(array, 0);
+				windowWriter = new WindowWriter(pw, ssr, interval, percentile);
+				aggregator.begin(ssr, windowWriter);
 				}
-			aggregator.visit(array, rec);
-			
+			aggregator.visit(rec);
 			}
 		progess.finish();
 		iter.close();
@@ -24,11 +24,11 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.tools.bamindexnames;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -40,7 +40,7 @@ import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.util.picard.AbstractDataCodec;
 import com.github.lindenb.jvarkit.util.picard.SAMSequenceDictionaryProgress;
 
-import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.BAMFileSpan;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SamReader;
@@ -52,6 +52,9 @@ import htsjdk.samtools.util.SortingCollection;
 /**
 BEGIN_DOC
 
+The index is a hash table of the read names pointing to the BGZF virtual offsets of the reads, it is saved as `${bam}.names.idx`.
+The BAM doesn't need to be sorted or indexed. Indexes created before 2026 must be rebuilt.
+
 ## Example
 
 ```bash
@@ -63,137 +66,130 @@ END_DOC
  */
 @Program(name="bamindexreadnames",
 	description="Build a dictionary of read names to be searched with BamQueryReadNames",
-	keywords={"sam","bam"})
+	keywords={"sam","bam"},
+	modificationDate="20261019"
+	)
 public class BamIndexReadNames
 	extends BaseBamIndexReadNames
 	{
 	private static final Logger LOG=Logger.build(BamIndexReadNames.class).make();
-	private BamIndexReadNames()
+	public BamIndexReadNames()
 		{
 		}
-	private static class NameAndPosCodec extends AbstractDataCodec<NameAndPos>
+	private static class HashAndOffsetCodec extends AbstractDataCodec<HashAndOffset>
 		{
 		@Override
-		public NameAndPos decode(DataInputStream dis) throws IOException {
-			NameAndPos nap=new NameAndPos();
+		public HashAndOffset decode(DataInputStream dis) throws IOException {
+			final HashAndOffset hao=new HashAndOffset();
 			try
 				{	
-				nap.name=dis.readUTF();
+				hao.hash=dis.readLong();
 				}
-			catch(IOException err)
+			catch(final EOFException err)
 				{
 				return null;
 				}
-			nap.tid=dis.readInt();
-			nap.pos=dis.readInt();
-			return nap;
+			hao.offset=dis.readLong();
+			return hao;
 			}
 		@Override
-		public void encode(DataOutputStream dos, NameAndPos nap)
+		public void encode(DataOutputStream dos, HashAndOffset hao)
 				throws IOException {
-			dos.writeUTF(nap.name);
-			dos.writeInt(nap.tid);
-			dos.writeInt(nap.pos);
+			dos.writeLong(hao.hash);
+			dos.writeLong(hao.offset);
 			}
 		@Override
-		public AbstractDataCodec<NameAndPos> clone()
+		public AbstractDataCodec<HashAndOffset> clone()
 			{
-			return new NameAndPosCodec();
+			return new HashAndOffsetCodec();
 			}
 		}
 
-	private static class NameAndPosComparator
-		implements Comparator<NameAndPos>
+	private static class HashAndOffsetComparator
+		implements Comparator<HashAndOffset>
 		{
 		@Override
-		public int compare(NameAndPos o1, NameAndPos o2)
+		public int compare(HashAndOffset o1, HashAndOffset o2)
 			{
-			int i=o1.name.compareTo(o2.name);
-			if(i!=0) return i;
-			i=o1.tid-o2.tid;
+			final int i=Long.compareUnsigned(o1.hash, o2.hash);
 			if(i!=0) return i;
-			i=o1.pos-o2.pos;
-			return i;
+			return Long.compare(o1.offset, o2.offset);
 			}
 		}
 
-		private int maxRecordsInRAM=50000;
+		private int maxRecordsInRAM=500_000;
 
 		
 		private void indexBamFile(Path bamFile) throws IOException
 			{
-			
-			NameIndexDef indexDef=new NameIndexDef();
-
-			SortingCollection<NameAndPos> sorting=null;
+			bamFile = bamFile.toAbsolutePath();
+			long countReads = 0L;
+			SortingCollection<HashAndOffset> sorting=null;
 			LOG.info("Opening "+bamFile);
-			SamReader sfr=SamReaderFactory.makeDefault().
+			final SamReader sfr=SamReaderFactory.makeDefault().
 					validationStringency(ValidationStringency.SILENT).
+					enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).
 					open(bamFile);
+			if(!sfr.type().equals(SamReader.Type.BAM_TYPE))
+				{
+				sfr.close();
+				throw new IOException("not a BAM file "+bamFile);
+				}
 			sorting=SortingCollection.newInstance(
-					NameAndPos.class,
-					new NameAndPosCodec() ,
-					new NameAndPosComparator(),
+					HashAndOffset.class,
+					new HashAndOffsetCodec() ,
+					new HashAndOffsetComparator(),
 					maxRecordsInRAM,
 					bamFile.getParent()
 					);
 			sorting.setDestructiveIteration(true);
-			if(sfr.getFileHeader().getSortOrder()!=SortOrder.coordinate)
-				{
-				throw new IOException("not SortOrder.coordinate "+sfr.getFileHeader().getSortOrder());
-				}
 			
-			SAMRecordIterator iter=sfr.iterator();
-			SAMSequenceDictionaryProgress progress=new SAMSequenceDictionaryProgress(sfr.getFileHeader().getSequenceDictionary());
+			final SAMRecordIterator iter=sfr.iterator();
+			final SAMSequenceDictionaryProgress progress=new SAMSequenceDictionaryProgress(sfr.getFileHeader().getSequenceDictionary());
 			while(iter.hasNext())
 				{
-				SAMRecord rec=iter.next();
-				progress.watch(rec);
-				NameAndPos nap=new NameAndPos();
-				nap.name=rec.getReadName();
-				indexDef.maxNameLengt =Math.max(nap.name.length()+1, indexDef.maxNameLengt );
-				nap.tid=rec.getReferenceIndex();
-				nap.pos=rec.getAlignmentStart();
-				indexDef.countReads++;
-				sorting.add(nap);
+				final SAMRecord rec=progress.watch(iter.next());
+				final HashAndOffset hao=new HashAndOffset();
+				hao.hash=hashName(rec.getReadName());
+				hao.offset=BAMFileSpan.class.cast(rec.getFileSource().getFilePointer()).getFirstOffset();
+				countReads++;
+				sorting.add(hao);
 				}
 			progress.finish();
 			iter.close();
 			sfr.close();
 			sorting.doneAdding();
-			LOG.info("Done Adding. N="+indexDef.countReads);
+			LOG.info("Done Adding. N="+countReads);
 			
-			Path indexFile= bamFile.getParent().resolve(bamFile.getFileName().toString()+NAME_IDX_EXTENSION);
+			final Path indexFile= bamFile.resolveSibling(bamFile.getFileName().toString()+NAME_IDX_EXTENSION);
 			
 			LOG.info("Writing index "+indexFile);
-			OutputStream raf= Files.newOutputStream(indexFile);
-			
-			ByteBuffer byteBuff= ByteBuffer.allocate(8+4);
-			byteBuff.putLong(indexDef.countReads);
-			byteBuff.putInt(indexDef.maxNameLengt);
-			raf.write(byteBuff.array());
-			
-			byteBuff= ByteBuffer.allocate( indexDef.maxNameLengt+4+4);
-			CloseableIterator<NameAndPos> iter2=sorting.iterator();
-			while(iter2.hasNext())
-				{
-				byteBuff.rewind();
-				NameAndPos nap=iter2.next();
-				for(int i=0;i< nap.name.length();++i)
+			final int bits = bucketBits(countReads);
+			/* directory[b+1] is the number of entries in bucket 'b', then the index of the first entry after 'b' */
+			final long directory[]=new long[(1<<bits)+1];
+			try(DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile),65536))) {
+				dos.write(MAGIC);
+				dos.writeLong(countReads);
+				dos.writeInt(bits);
+				try(CloseableIterator<HashAndOffset> iter2=sorting.iterator()) {
+					while(iter2.hasNext())
+						{
+						final HashAndOffset hao=iter2.next();
+						dos.writeLong(hao.hash);
+						dos.writeLong(hao.offset);
+						directory[bucketOf(hao.hash, bits)+1]++;
+						}
+					}
+				for(int i=1;i< directory.length;++i)
 					{
-					byteBuff.put((byte)nap.name.charAt(i));
+					directory[i]+=directory[i-1];
 					}
-				for(int i=nap.name.length();i< indexDef.maxNameLengt;++i)
+				for(int i=0;i< directory.length;++i)
 					{
-					byteBuff.put((byte)'\0');
+					dos.writeLong(directory[i]);
 					}
-				byteBuff.putInt(nap.tid);
-				byteBuff.putInt(nap.pos);
-				raf.write(byteBuff.array());
-				
+				dos.flush();
 				}
-			raf.flush();
-			raf.close();
 			sorting.cleanup();
 			}
 		
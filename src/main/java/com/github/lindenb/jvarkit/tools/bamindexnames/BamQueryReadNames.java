@@ -29,6 +29,8 @@ History:
 
 package com.github.lindenb.jvarkit.tools.bamindexnames;
 
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.Chunk;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMRecord;
@@ -39,11 +41,15 @@ import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.tribble.readers.LineIterator;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -93,14 +99,16 @@ ZZZZ:X
  
  END_DOC
  */
-@Program(description="Query a Bam file indexed with BamIndexReadNames")
+@Program(description="Query a Bam file indexed with BamIndexReadNames",
+	modificationDate="20261019"
+	)
 public class BamQueryReadNames extends BaseBamIndexReadNames
 	{
 	private static final Logger LOG=Logger.build(BamQueryReadNames.class).make();
 	@Parameter(names={"-o","--out"},description=OPT_OUPUT_FILE_OR_STDOUT)
 	private File outputFile=null;
 
-	@Parameter(names={"-s"},description="user list of read names is sorted")
+	@Parameter(names={"-s"},description="user list of read names is sorted. [20261019] ignored: the index is now a hash table.")
 	private boolean query_reads_is_sorted=false;
 	
 	@Parameter(names={"-N"},description=" save unmatched names here")
@@ -109,67 +117,82 @@ public class BamQueryReadNames extends BaseBamIndexReadNames
 	@ParametersDelegate
 	private WritingBamArgs writingBamArgs=new WritingBamArgs();
 	
-	private RandomAccessFile raf;
-	private NameIndexDef indexDef;
+	private NameIndex nameIndex;
 
-	private BamQueryReadNames()
+	public BamQueryReadNames()
 		{
 		}
 	
-	
-	
-	private NameAndPos getNameAndPosAt(long index)
-		throws IOException
+	/** reader for the index written by BamIndexReadNames */
+	private static class NameIndex implements Closeable
 		{
-		long fileoffset=FILE_PREFIX_SIZE//header
-					+ index*(this.indexDef.sizeOfNameAndPos());
+		private final FileChannel channel;
+		private final long countReads;
+		private final int bits;
+		private final long directoryOffset;
+		private ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE*BUCKET_SIZE*2);
 		
-		ByteBuffer byteBuff= ByteBuffer.allocate( indexDef.sizeOfNameAndPos());
-		this.raf.seek(fileoffset);
-		this.raf.readFully(byteBuff.array());
-		
-		NameAndPos nap=new NameAndPos();
+		NameIndex(final File file) throws IOException
+			{
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			final ByteBuffer header = read(0L, HEADER_SIZE);
+			final byte magic[]=new byte[MAGIC.length];
+			header.get(magic);
+			if(!Arrays.equals(magic, MAGIC))
+				{
+				this.channel.close();
+				throw new IOException("Bad or old index format in "+file+". Please rebuild the index with bamindexreadnames.");
+				}
+			this.countReads = header.getLong();
+			this.bits = header.getInt();
+			this.directoryOffset = HEADER_SIZE + this.countReads * ENTRY_SIZE;
+			}
 		
-		StringBuilder b=new StringBuilder(indexDef.maxNameLengt);
-		for(int i=0;i< indexDef.maxNameLengt && byteBuff.get(i)!=0;++i)
+		/** read 'size' bytes at 'offset' in the reusable buffer */
+		private ByteBuffer read(long offset,final int size) throws IOException
 			{
-			b.append((char)byteBuff.get(i));
+			if(this.buffer.capacity() < size) this.buffer = ByteBuffer.allocate(size);
+			this.buffer.clear();
+			this.buffer.limit(size);
+			while(this.buffer.hasRemaining())
+				{
+				final int n = this.channel.read(this.buffer, offset);
+				if(n<0) throw new EOFException("Cannot read "+size+" bytes in name index");
+				offset+=n;
+				}
+			this.buffer.flip();
+			return this.buffer;
 			}
-		nap.name=b.toString();
-		byteBuff.position( indexDef.maxNameLengt);
-		nap.tid=byteBuff.getInt();
-		nap.pos=byteBuff.getInt();
-		return nap;
 		
-		}
-	
-	private long lower_bound(long first, long last, final String readName) throws IOException
-		{
-			long len = last-first;
-			while (len > 0)
+		/** return the sorted virtual offsets of the reads that may have this name */
+		long[] find(final String readName) throws IOException
 			{
-				long half = len /2;
-				long middle = first + half;
-				String middle_s = getNameAndPosAt(middle).name;
-				
-				if (middle_s.compareTo(readName)<0)
-					{
-					first = middle;
-					++first;
-					len = len - half - 1;
-					}
-				else
-					{
-					len = half;
-					}
-				
-
+			final long hash = hashName(readName);
+			final int bucket = bucketOf(hash, this.bits);
+			ByteBuffer bb = read(this.directoryOffset + bucket*8L, 16);
+			final long first = bb.getLong();
+			final long last = bb.getLong();
+			if(first>=last) return new long[0];
+			bb = read(HEADER_SIZE + first*ENTRY_SIZE, (int)((last-first)*ENTRY_SIZE));
+			long[] offsets = new long[0];
+			while(bb.hasRemaining())
+				{
+				final long h = bb.getLong();
+				final long offset = bb.getLong();
+				if(h!=hash) continue;
+				offsets = Arrays.copyOf(offsets, offsets.length+1);
+				offsets[offsets.length-1] = offset;
 				}
-			return first;
+			return offsets;
+			}
+		
+		@Override
+		public void close() throws IOException
+			{
+			this.channel.close();
+			}
 		}
 
-
-
 	
 	@Override
 	public int doWork(final List<String> args) {
@@ -184,7 +207,7 @@ public class BamQueryReadNames extends BaseBamIndexReadNames
 				return -1;
 				}
 			
-			if(this.notFoundFile==null)
+			if(this.notFoundFile!=null)
 				{
 				notFoundStream.close();
 				notFoundStream=openFileOrStdoutAsPrintWriter(notFoundFile);
@@ -195,10 +218,7 @@ public class BamQueryReadNames extends BaseBamIndexReadNames
 					validationStringency(ValidationStringency.SILENT).
 					open(bamFile);
 			File nameIdxFile=new File(bamFile.getParentFile(), bamFile.getName()+NAME_IDX_EXTENSION);
-			this.indexDef=new NameIndexDef();
-			this.raf=new RandomAccessFile(nameIdxFile, "r");
-			indexDef.countReads=raf.readLong();
-			indexDef.maxNameLengt=raf.readInt();
+			this.nameIndex=new NameIndex(nameIdxFile);
 			
 			
 			LineIterator r=null;
@@ -211,12 +231,12 @@ public class BamQueryReadNames extends BaseBamIndexReadNames
 				r=IOUtils.openStdinForLineIterator();
 				}
 			SAMFileHeader header=sfr.getFileHeader().clone();
+			/* reads are written in the order of the query */
+			header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
 			
 			bamw=writingBamArgs.openSAMFileWriter(this.outputFile, header, true);
 			
 			
-			long iter_start = 0L;
-			
 			while(r.hasNext())
 				{
 				String line=r.next();
@@ -240,64 +260,16 @@ public class BamQueryReadNames extends BaseBamIndexReadNames
 					side=-1;
 					searchRead=line;
 					}	
-				long index=lower_bound(
-						iter_start,
-						this.indexDef.countReads,
-						searchRead
-						);
-				if(index>=this.indexDef.countReads)
-					{
-					notFoundStream.println(line);
-					continue;
-					}
-				if(query_reads_is_sorted)
-					{
-					iter_start=index;
-					}
+				final long offsets[]=this.nameIndex.find(searchRead);
 				
-				Set<SAMRecord> found=new LinkedHashSet<SAMRecord>();
-				while(index <this.indexDef.countReads )
+				final Set<SAMRecord> found=new LinkedHashSet<SAMRecord>();
+				for(final long offset: offsets)
 					{
-					NameAndPos nap=getNameAndPosAt(index);
-					if(nap.name.compareTo(searchRead)<0)
-						{
-						++index;
-						continue;
-						}
-					else if(nap.name.compareTo(searchRead)>0)
-						{
-						break;
-						}
-					SAMRecordIterator iter;
-					if(nap.tid<0)
-						{
-						iter=sfr.queryUnmapped();
-						}
-					else
-						{
-						iter=sfr.query(
-							header.getSequence(nap.tid).getSequenceName(),
-							nap.pos,
-							0,
-							true
-							);
-						}
+					/* the read starting at this virtual offset */
+					final SAMRecordIterator iter=sfr.indexing().iterator(new BAMFileSpan(new Chunk(offset, offset+1)));
 					while(iter.hasNext())
 						{
-						SAMRecord rec=iter.next();
-						if(nap.tid>=0)
-							{
-							if(nap.tid!=rec.getReferenceIndex())throw new IllegalStateException();
-
-							if(rec.getAlignmentStart()< nap.pos)
-								{
-								continue;
-								}
-							if(rec.getAlignmentStart()> nap.pos)
-								{
-								break;
-								}
-							}
+						final SAMRecord rec=iter.next();
 						if(rec.getReadName().equals(searchRead))
 							{
 							if(side==1 && !(rec.getReadPairedFlag() && rec.getFirstOfPairFlag()))
@@ -310,11 +282,8 @@ public class BamQueryReadNames extends BaseBamIndexReadNames
 								}
 							found.add(rec);
 							}
-						
 						}
 					iter.close();
-					
-					++index;
 					}
 				if(found.isEmpty())
 					{
@@ -343,7 +312,7 @@ public class BamQueryReadNames extends BaseBamIndexReadNames
 		finally
 			{
 			CloserUtil.close(notFoundStream);
-			CloserUtil.close(raf);
+			CloserUtil.close(this.nameIndex);
 			CloserUtil.close(sfr);
 			CloserUtil.close(bamw);
 			}
@@ -24,35 +24,75 @@ SOFTWARE.
 
 History:
 * 2014 creation
+* 2026 hash table of the virtual file offsets
 
 */
 package com.github.lindenb.jvarkit.tools.bamindexnames;
 
 
-import com.github.lindenb.jvarkit.util.jcommander.Launcher;
+import java.nio.charset.StandardCharsets;
 
+import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 
+/**
+ * Layout of the read-name index, all numbers are big-endian:
+ * <pre>
+ * MAGIC (8 bytes)
+ * number of entries (long)
+ * number of bits of the bucket (int)
+ * entries, sorted on (unsigned hash, virtual offset) : (hash of the read name (long), BGZF virtual offset of the read (long))
+ * directory: for each bucket (and one more), the index of its first entry (long)
+ * </pre>
+ * The bucket of a name is made of the top bits of its hash, so a lookup reads the directory and
+ * the entries of a single bucket. The names are not stored: the caller must check the name of the decoded reads.
+ */
 public abstract class BaseBamIndexReadNames
 	extends Launcher
 	{
-	protected static final int FILE_PREFIX_SIZE=4+8;
 	protected static final String NAME_IDX_EXTENSION=".names.idx";
-	protected static class NameIndexDef
+	protected static final byte[] MAGIC = "RNIDX02\n".getBytes(StandardCharsets.US_ASCII);
+	/** size of MAGIC + count + bits */
+	protected static final int HEADER_SIZE = 8 + 8 + 4;
+	/** size of one entry (hash + offset) */
+	protected static final int ENTRY_SIZE = 8 + 8;
+	/** expected number of entries per bucket */
+	protected static final int BUCKET_SIZE = 64;
+	
+	/** entry of the index */
+	protected static class HashAndOffset
+		{
+		long hash;
+		long offset;
+		}
+	
+	/** 64-bit hash of a read name: FNV-1a and the final mix of murmur3 */
+	protected static long hashName(final CharSequence name)
 		{
-		long countReads=0L;
-		int maxNameLengt=0;
-		
-		public int sizeOfNameAndPos()
+		long h = 0xcbf29ce484222325L;
+		for(int i=0;i< name.length();++i)
 			{
-			return maxNameLengt+4+4;
+			h ^= name.charAt(i);
+			h *= 0x100000001b3L;
 			}
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
 		}
-
-	protected static class NameAndPos
+	
+	/** number of bits for the buckets for 'count' entries */
+	protected static int bucketBits(final long count)
 		{
-		String name;
-		int tid;
-		int pos;
+		int bits = 0;
+		while(bits < 30 && (count >>> bits) > BUCKET_SIZE) bits++;
+		return bits;
+		}
+	
+	/** bucket of a hash */
+	protected static int bucketOf(final long hash,final int bits)
+		{
+		return bits==0?0:(int)(hash >>> (64 - bits));
 		}
-
 	}
@@ -31,24 +31,39 @@ package com.github.lindenb.jvarkit.tools.bamstats01;
 
 import java.io.PrintWriter;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.beust.jcommander.Parameter;
 import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.lang.primitive.IntArray;
+import com.github.lindenb.jvarkit.lang.primitive.LongArray;
 import com.github.lindenb.jvarkit.samtools.util.IntervalListProvider;
-import com.github.lindenb.jvarkit.util.Counter;
 import com.github.lindenb.jvarkit.util.illumina.ShortReadName;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.util.picard.SAMSequenceDictionaryProgress;
 
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFlag;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamInputResource;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
@@ -139,6 +154,11 @@ $18     count   458630
 
 
 
+### Performance
+
+The categories are interned into a table of dense ids: the read groups, the contigs and the prefix `instrument:run:flowcell:lane` of the read names are decoded only once.
+The counts are stored in primitive arrays indexed by (category, flag, mapq). With `--jobs`, each contig of an indexed BAM/CRAM is scanned by one job and the counts are merged.
+
 ### See also
 
 BamStats02View
@@ -151,7 +171,7 @@ END_DOC
 @Program(name="bamstats02",
 	description="Statistics about the flags and reads in a BAM",
 	keywords= {"sam","bam"},
-	modificationDate="20191003"
+	modificationDate="20261019"
 	)
 public class BamStats02
 	extends Launcher
@@ -167,7 +187,8 @@ public class BamStats02
 	private IntervalListProvider intervalListProvider = null;
 	@Parameter(names={"-R","--ref"},description=CRAM_INDEXED_REFENCE)
 	private Path faidx = null;
-
+	@Parameter(names={"-j","--jobs"},description="Number of parallel jobs. When an input is an indexed BAM/CRAM file, each contig is scanned by one job and the counts of the contigs are merged. A value lower than 1 means use all procs available.")
+	private int nJobs = 1;
 
 	
 	
@@ -240,7 +261,7 @@ public class BamStats02
 				return false;
 			Category other = (Category) obj;
 			
-			if (flag != other.flag)
+			if (flag != other.flag) return false;
 			if(!Arrays.equals(this._ints, other._ints)) return false;
 			if(!Arrays.equals(this._strings, other._strings)) return false;			
 			return true;
@@ -263,99 +284,376 @@ public class BamStats02
 
     	}
    
+    /** number of mapq buckets: 0 for the unmapped reads, then one bucket per ten units of mapping quality (0,10,...,260) */
+    private static final int MAPQ_BUCKETS = 28;
+    
+    /** dense table of ids for a primitive long key. The ids are 0,1,2,... in the order of insertion */
+    private static class LongInterner
+    	{
+    	private long keys[] = new long[1024];
+    	private int ids[] = new int[1024];
+    	private final LongArray id2key = new LongArray();
+    	
+    	LongInterner() {
+    		Arrays.fill(this.ids, -1);
+    		}
+    	
+    	private static int slot(final long key,final int capacity) {
+    		long h = key * 0x9E3779B97F4A7C15L;
+    		return (int)(h ^ (h>>>32)) & (capacity-1);
+    		}
+    	
+    	int intern(final long key) {
+    		int i = slot(key,this.keys.length);
+    		for(;;) {
+    			final int id = this.ids[i];
+    			if(id==-1) break;
+    			if(this.keys[i]==key) return id;
+    			i = (i+1) & (this.keys.length-1);
+    			}
+    		final int id = this.id2key.size();
+    		this.keys[i] = key;
+    		this.ids[i] = id;
+    		this.id2key.add(key);
+    		if(2*this.id2key.size() > this.keys.length) rehash();
+    		return id;
+    		}
+    	
+    	private void rehash() {
+    		final int capacity = this.keys.length*2;
+    		this.keys = new long[capacity];
+    		this.ids = new int[capacity];
+    		Arrays.fill(this.ids, -1);
+    		for(int id=0;id< this.id2key.size();++id) {
+    			final long key = this.id2key.get(id);
+    			int i = slot(key,capacity);
+    			while(this.ids[i]!=-1) i = (i+1) & (capacity-1);
+    			this.keys[i] = key;
+    			this.ids[i] = id;
+    			}
+    		}
+    	
+    	long getKey(final int id) {
+    		return this.id2key.get(id);
+    		}
+    	
+    	int size() {
+    		return this.id2key.size();
+    		}
+    	}
+    
+    /** properties extracted from the read name: instrument:run:flowcell:lane */
+    private static class ReadNameGroup
+    	{
+    	final String prefix;
+    	final String instrument;
+    	final String flowcell;
+    	final int lane;
+    	final int run;
+    	ReadNameGroup(final String prefix,final ShortReadName readName) {
+    		this.prefix = prefix;
+    		this.instrument = readName.getInstrumentName();
+    		this.flowcell = readName.getFlowCellId();
+    		this.lane = readName.getFlowCellLane();
+    		this.run = readName.getRunId();
+    		}
+    	}
+    
+    /** counts the reads of one BAM (or of one contig of one BAM) */
+    private class CategoryCounter
+    	{
+    	private final String filename;
+    	private final int nContigs;
+    	/** read groups, index 0 is 'no read group' */
+    	private final List<SAMReadGroupRecord> readGroups = new ArrayList<>();
+    	private final Map<SAMReadGroupRecord,Integer> readGroup2index = new IdentityHashMap<>();
+    	/** read-name groups, index 0 is 'invalid read name' */
+    	private final List<ReadNameGroup> readNameGroups = new ArrayList<>();
+    	private final Map<String,Integer> prefix2readNameGroup = new HashMap<>();
+    	private int lastReadNameGroup = 0;
+    	/** (read group, read-name group) */
+    	private final LongInterner sources = new LongInterner();
+    	/** (source, contig, mate contig, in target) */
+    	private final LongInterner categories = new LongInterner();
+    	/** dense index of the SAM flags */
+    	private final int flag2index[] = new int[1<<16];
+    	private final IntArray index2flag = new IntArray();
+    	/** counts[category][flag-index*MAPQ_BUCKETS+mapq-bucket] */
+    	private long counts[][] = new long[16][];
+    	
+    	CategoryCounter(final String filename,final SAMFileHeader header) {
+    		this.filename = filename;
+    		this.nContigs = header.getSequenceDictionary().size();
+    		this.readGroups.add(null);
+    		this.readNameGroups.add(null);
+    		Arrays.fill(this.flag2index, -1);
+    		}
+    	
+    	private int getReadGroupIndex(final SAMReadGroupRecord rg) {
+    		if(rg==null) return 0;
+    		Integer idx = this.readGroup2index.get(rg);
+    		if(idx==null) {
+    			idx = this.readGroups.size();
+    			this.readGroups.add(rg);
+    			this.readGroup2index.put(rg, idx);
+    			}
+    		return idx;
+    		}
+    	
+    	/** length of the read name before ':tile:x:y' or -1 if the name doesn't look like an illumina read name */
+    	private int getReadNamePrefixLength(final String s) {
+    		int colons = 0;
+    		int ndigits = 0;
+    		for(int i=s.length()-1;i>=0;--i) {
+    			final char c = s.charAt(i);
+    			if(c==':') {
+    				if(ndigits==0 || ndigits>9) return -1;
+    				if(++colons==3) return i;
+    				ndigits = 0;
+    				}
+    			else if(c>='0' && c<='9') {
+    				ndigits++;
+    				}
+    			else
+    				{
+    				return -1;
+    				}
+    			}
+    		return -1;
+    		}
+    	
+    	private int addReadNameGroup(final String key,final ShortReadName readName) {
+    		if(!readName.isValid()) {
+    			this.prefix2readNameGroup.put(key, 0);
+    			return 0;
+    			}
+    		final int idx = this.readNameGroups.size();
+    		this.readNameGroups.add(new ReadNameGroup(key,readName));
+    		this.prefix2readNameGroup.put(key, idx);
+    		return idx;
+    		}
+    	
+    	/** the fields 'instrument:run:flowcell:lane' are decoded only once per distinct prefix */
+    	private int getReadNameGroupIndex(final String readName) {
+    		if(readName==null) return 0;
+    		final int len = getReadNamePrefixLength(readName);
+    		if(len==-1) {
+    			/* ShortReadName needs at least 6 columns */
+    			if(readName.chars().filter(C->C==':').count() < 5L) return 0;
+    			final ShortReadName srn = ShortReadName.parse(readName);
+    			if(!srn.isValid()) return 0;
+    			final String key = String.join("\t",srn.getInstrumentName(),String.valueOf(srn.getRunId()),srn.getFlowCellId(),String.valueOf(srn.getFlowCellLane()));
+    			final Integer idx = this.prefix2readNameGroup.get(key);
+    			return idx!=null ? idx : addReadNameGroup(key,srn);
+    			}
+    		final ReadNameGroup last = this.readNameGroups.get(this.lastReadNameGroup);
+    		if(last!=null && last.prefix.length()==len && readName.startsWith(last.prefix)) {
+    			return this.lastReadNameGroup;
+    			}
+    		final String prefix = readName.substring(0, len);
+    		Integer idx = this.prefix2readNameGroup.get(prefix);
+    		if(idx==null) {
+    			/* the last columns are only digits, so the validity only depends on the prefix */
+    			idx = addReadNameGroup(prefix,ShortReadName.parse(prefix+":0:0:0"));
+    			}
+    		if(idx!=0) this.lastReadNameGroup = idx;
+    		return idx;
+    		}
+    	
+    	private int getFlagIndex(final int flag) {
+    		int idx = this.flag2index[flag & 0xFFFF];
+    		if(idx==-1) {
+    			idx = this.index2flag.size();
+    			this.index2flag.add(flag & 0xFFFF);
+    			this.flag2index[flag & 0xFFFF] = idx;
+    			}
+    		return idx;
+    		}
+    	
+    	/** 0 is '.', 1..nContigs are the contigs, nContigs+1 is '*' (no reference) */
+    	private int getContigIndex(final int tid) {
+    		return tid<0?this.nContigs+1:tid+1;
+    		}
+    	
+    	private String getContigName(final SAMSequenceDictionary dict,final int idx) {
+    		return idx>this.nContigs?SAMRecord.NO_ALIGNMENT_REFERENCE_NAME:dict.getSequence(idx-1).getSequenceName();
+    		}
+    	
+    	void visit(final SAMRecord record) {
+    		final long source = ((long)getReadGroupIndex(record.getReadGroup())<<32) | getReadNameGroupIndex(record.getReadName());
+    		final int sourceId = this.sources.intern(source);
+    		
+    		int chromIdx = 0;
+    		int mateChromIdx = 0;
+    		int inTarget = -1;
+    		int mapqBucket = 0;
+    		if(record.getReadPairedFlag() && !record.getMateUnmappedFlag())
+    			{
+    			mateChromIdx = getContigIndex(record.getMateReferenceIndex());
+    			}
+    		if(!record.getReadUnmappedFlag())
+    			{
+    			chromIdx = getContigIndex(record.getReferenceIndex());
+    			mapqBucket = 1 + (record.getMappingQuality()+9)/10;
+    			if(BamStats02.this.intervals!=null)
+    				{
+    				inTarget = BamStats02.this.intervals.containsOverlapping(record)?1:0;
+    				}
+    			}
+    		final long key = ((((long)sourceId*(this.nContigs+2)) + chromIdx)*(this.nContigs+2) + mateChromIdx)*3L + (inTarget+1);
+    		final int catId = this.categories.intern(key);
+    		if(catId >= this.counts.length) {
+    			this.counts = Arrays.copyOf(this.counts, catId*2);
+    			}
+    		final int slot = getFlagIndex(record.getFlags())*MAPQ_BUCKETS + mapqBucket;
+    		long array[] = this.counts[catId];
+    		if(array==null || slot>=array.length) {
+    			array = (array==null?new long[this.index2flag.size()*MAPQ_BUCKETS]:Arrays.copyOf(array, this.index2flag.size()*MAPQ_BUCKETS));
+    			this.counts[catId] = array;
+    			}
+    		array[slot]++;
+    		}
+    	
+    	/** convert the dense ids to Category and add the counts to 'category2count' */
+    	void collect(final SAMSequenceDictionary dict,final Map<Category,Long> category2count) {
+    		for(int catId=0;catId< this.categories.size();++catId) {
+    			final long array[] = this.counts[catId];
+    			if(array==null) continue;
+    			long key = this.categories.getKey(catId);
+    			final int inTarget = (int)(key%3L) - 1;
+    			key /= 3L;
+    			final int mateChromIdx = (int)(key%(this.nContigs+2));
+    			key /= (this.nContigs+2);
+    			final int chromIdx = (int)(key%(this.nContigs+2));
+    			final long source = this.sources.getKey((int)(key/(this.nContigs+2)));
+    			final SAMReadGroupRecord rg = this.readGroups.get((int)(source>>>32));
+    			final ReadNameGroup rng = this.readNameGroups.get((int)(source & 0xFFFFFFFFL));
+    			
+    			for(int slot=0;slot< array.length;++slot) {
+    				if(array[slot]==0L) continue;
+    				final int mapqBucket = slot%MAPQ_BUCKETS;
+    				final Category cat = new Category();
+    				cat.set(STRING_PROPS.filename,this.filename);
+    				cat.flag = this.index2flag.get(slot/MAPQ_BUCKETS);
+    				if(rg!=null) {
+    					cat.set(STRING_PROPS.samplename,rg.getSample());
+    					cat.set(STRING_PROPS.platform,rg.getPlatform());
+    					cat.set(STRING_PROPS.platformUnit,rg.getPlatformUnit());
+    					cat.set(STRING_PROPS.library,rg.getLibrary());
+    					}
+    				if(rng!=null) {
+    					cat.set(STRING_PROPS.instrument,rng.instrument);
+    					cat.set(STRING_PROPS.flowcell,rng.flowcell);
+    					cat.set(INT_PROPS.lane,rng.lane);
+    					cat.set(INT_PROPS.run,rng.run);
+    					}
+    				if(mateChromIdx>0) cat.set(STRING_PROPS.mate_chromosome,getContigName(dict,mateChromIdx));
+    				if(chromIdx>0) cat.set(STRING_PROPS.chromosome,getContigName(dict,chromIdx));
+    				if(mapqBucket>0) cat.set(INT_PROPS.mapq,(mapqBucket-1)*10);
+    				cat.set(INT_PROPS.inTarget,inTarget);
+    				category2count.merge(cat, array[slot], Long::sum);
+    				}
+    			}
+    		}
+    	}
+    
+    /** scan one contig of an indexed BAM, or the unmapped reads if contig==null */
+    private class ContigWorker implements Callable<CategoryCounter>
+    	{
+    	private final SamReaderFactory srf;
+    	private final Path path;
+    	private final String contig;
+    	ContigWorker(final SamReaderFactory srf,final Path path,final String contig) {
+    		this.srf = srf;
+    		this.path = path;
+    		this.contig = contig;
+    		}
+    	@Override
+    	public CategoryCounter call() throws Exception {
+    		try(SamReader sr = this.srf.open(this.path)) {
+    			final CategoryCounter counter = new CategoryCounter(this.path.toString(),sr.getFileHeader());
+    			try(SAMRecordIterator iter = (this.contig==null?sr.queryUnmapped():sr.query(this.contig, 0, 0, false))) {
+    				while(iter.hasNext()) {
+    					counter.visit(iter.next());
+    					}
+    				}
+    			return counter;
+    			}
+    		}
+    	}
     
 	public BamStats02()
 		{
 		
 		}
 	
-	
+	private void print(final SAMSequenceDictionary dict,final List<CategoryCounter> counters,final PrintWriter out)
+		{
+		final Map<Category,Long> category2count = new LinkedHashMap<>();
+		for(final CategoryCounter counter:counters)
+			{
+			counter.collect(dict,category2count);
+			}
+		final List<Map.Entry<Category,Long>> entries = new ArrayList<>(category2count.entrySet());
+		entries.sort((A,B)->Long.compare(B.getValue(), A.getValue()));
+		for(final Map.Entry<Category,Long> entry:entries)
+			{
+			entry.getKey().print(out);
+    		out.print("\t");
+    		out.print(entry.getValue());
+			out.println();
+			}
+		out.flush();
+		}
 	
 	private void run(String filename,SamReader r,PrintWriter out)
 		{
-		final Counter<Category> counter=new Counter<>();
-		SAMRecordIterator iter=null;
-		try
+		final SAMFileHeader header = r.getFileHeader();
+		final CategoryCounter counter = new CategoryCounter(filename,header);
+		try(SAMRecordIterator iter=r.iterator())
 			{
-			iter=r.iterator();
-			final SAMSequenceDictionaryProgress progress=new SAMSequenceDictionaryProgress(r.getFileHeader().getSequenceDictionary());
+			final SAMSequenceDictionaryProgress progress=new SAMSequenceDictionaryProgress(header.getSequenceDictionary());
 			while(iter.hasNext())
 				{
-				final SAMRecord record=progress.watch(iter.next());
-				final Category cat=new Category();
-				cat.set(STRING_PROPS.filename,filename);
-				cat.flag = record.getFlags();
-				cat.set(INT_PROPS.inTarget,-1);
-				
-				final SAMReadGroupRecord g=record.getReadGroup();
-				if(g!=null) {
-				cat.set(STRING_PROPS.samplename,g.getSample());
-				cat.set(STRING_PROPS.platform,g.getPlatform());
-				cat.set(STRING_PROPS.platformUnit,g.getPlatformUnit());
-				cat.set(STRING_PROPS.library,g.getLibrary());
-				}
-				
-				final ShortReadName readName=ShortReadName.parse(record);
-				if(readName.isValid())
-					{
-					cat.set(STRING_PROPS.instrument,readName.getInstrumentName());
-					cat.set(STRING_PROPS.flowcell,readName.getFlowCellId());
-					cat.set(INT_PROPS.lane,readName.getFlowCellLane());
-					cat.set(INT_PROPS.run,readName.getRunId());
-					}
-				
-				
-				if(record.getReadPairedFlag() && !record.getMateUnmappedFlag())
-					{
-					cat.set(STRING_PROPS.mate_chromosome,record.getMateReferenceName());
-					}
-				
-				if(!record.getReadUnmappedFlag())
-					{
-					cat.set(INT_PROPS.mapq,(int)(Math.ceil(record.getMappingQuality()/10.0)*10));
-					cat.set(STRING_PROPS.chromosome,record.getReferenceName());
-					
-					if(this.intervals!=null)
-						{
-						if(this.intervals.containsOverlapping(
-								new Interval(record.getReferenceName(), record.getAlignmentStart(), record.getAlignmentEnd())
-								))
-								{
-
-								cat.set(INT_PROPS.inTarget,1);
-								}
-						else
-								{
-								cat.set(INT_PROPS.inTarget,0);
-								}
-						}
-					
-					}
-				counter.incr(cat);
+				counter.visit(progress.watch(iter.next()));
 				}
 			progress.finish();
-			
-			for(final Category cat:counter.keySetDecreasing())
-				{
-				cat.print(out);
-	    		out.print("\t");
-	    		out.print(counter.count(cat));
-				out.println();
-				}
-		
-			out.flush();
 			}
-		finally
+		print(header.getSequenceDictionary(),Collections.singletonList(counter),out);
+		}
+	
+	private void runParallel(final SamReaderFactory srf,final Path path,final SAMSequenceDictionary dict,final ExecutorService executorService,final PrintWriter out) throws Throwable
+		{
+		final List<Future<CategoryCounter>> results = new ArrayList<>(dict.size()+1);
+		for(final SAMSequenceRecord ssr:dict.getSequences())
 			{
-			CloserUtil.close(iter);
+			results.add(executorService.submit(new ContigWorker(srf,path,ssr.getSequenceName())));
 			}
-		
+		results.add(executorService.submit(new ContigWorker(srf,path,null)));
+		final List<CategoryCounter> counters = new ArrayList<>(results.size());
+		for(final Future<CategoryCounter> result:results)
+			{
+			try {
+				counters.add(result.get());
+				}
+			catch(final ExecutionException err) {
+				throw err.getCause();
+				}
+			}
+		LOG.info("done: "+path);
+		print(dict,counters,out);
 		}
 	
 	@Override
 	public int doWork(List<String> args) {
+		if(this.nJobs<1)
+			{
+			this.nJobs = Math.max(1, Runtime.getRuntime().availableProcessors());
+			LOG.info("setting njobs to "+this.nJobs);
+			}
 		SamReader samFileReader=null;
 		PrintWriter out=null;
+		ExecutorService executorService = null;
 		try
 			{
 			if(this.intervalListProvider!=null)
@@ -401,12 +699,23 @@ public class BamStats02
 				}
 			else
 				{
+				if(this.nJobs>1) executorService = Executors.newFixedThreadPool(this.nJobs);
 				for(final Path filename:IOUtils.unrollPaths(args))
 					{
 					samFileReader=srf.open(filename);
-					run(filename.toString(),samFileReader,out);
-					samFileReader.close();
-					samFileReader=null;
+					if(executorService!=null && samFileReader.hasIndex())
+						{
+						final SAMSequenceDictionary dict = samFileReader.getFileHeader().getSequenceDictionary();
+						samFileReader.close();
+						samFileReader=null;
+						runParallel(srf,filename,dict,executorService,out);
+						}
+					else
+						{
+						run(filename.toString(),samFileReader,out);
+						samFileReader.close();
+						samFileReader=null;
+						}
 					}
 				}
 			
@@ -420,6 +729,7 @@ public class BamStats02
 			}
 		finally
 			{
+			if(executorService!=null) executorService.shutdownNow();
 			CloserUtil.close(samFileReader);
 			CloserUtil.close(out);
 			}
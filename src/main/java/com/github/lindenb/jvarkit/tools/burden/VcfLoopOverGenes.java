@@ -65,6 +65,7 @@ import com.github.lindenb.jvarkit.util.iterator.EqualRangeIterator;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.util.log.MetricsRegistry;
 import com.github.lindenb.jvarkit.util.picard.AbstractDataCodec;
 import com.github.lindenb.jvarkit.util.picard.SAMSequenceDictionaryProgress;
 import com.github.lindenb.jvarkit.util.vcf.VCFUtils;
@@ -591,6 +592,8 @@ public class VcfLoopOverGenes extends Launcher {
 				              0L, TimeUnit.MILLISECONDS,
 				              new LinkedBlockingQueue<Runnable>()
 				              );
+				    final ThreadPoolExecutor threadPool = (ThreadPoolExecutor)executorService;
+				    MetricsRegistry.getInstance().gauge("queue.depth",()->threadPool.getQueue().size());
 				    futureResults= new ArrayList<>();
 				 	}
 				 else
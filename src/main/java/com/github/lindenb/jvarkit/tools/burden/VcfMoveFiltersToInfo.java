@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import com.beust.jcommander.Parameter;
@@ -39,6 +40,9 @@ import com.github.lindenb.jvarkit.lang.JvarkitException;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLine;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineReader;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineWriter;
 
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
@@ -81,6 +85,11 @@ $ java -jar dist/vcfmovefilterstoinfo.jar -f OLDFILTER -t FT2 input.vcf | grep -
 
 ```
 
+## Performance
+
+When the input and the output are text VCFs and option `-G` is not used, the lines are not decoded by htsjdk: only FILTER and INFO are rewritten,
+the genotypes are copied verbatim. Use `--no-line-mode` to use the htsjdk decoder.
+
 END_DOC
 */
 
@@ -88,7 +97,7 @@ END_DOC
 		description="Move any FILTER to the INFO column. reset FILTER to PASS",
 		keywords={"vcf","format","info"},
 		creationDate="20161025",
-		modificationDate="20220323"
+		modificationDate="20261019"
 		)
 public class VcfMoveFiltersToInfo
 	extends OnePassVcfLauncher
@@ -110,27 +119,25 @@ public class VcfMoveFiltersToInfo
 		return LOG;
 		}
 	
-	@Override
-	protected int doVcfToVcf(
-		final String inputName,
-		final VCFIterator in,
-		final VariantContextWriter out)
-		{
-		final VCFHeader header = in.getHeader();
-		final Set<VCFHeaderLine> headerLines = new HashSet<>();
-		
-		final VCFInfoHeaderLine infoHeaderLine = new VCFInfoHeaderLine(
+	private VCFInfoHeaderLine createInfoHeaderLine() {
+		return new VCFInfoHeaderLine(
 				this.infoName.trim(),
 				VCFHeaderLineCount.UNBOUNDED,
 				VCFHeaderLineType.String,
 				"Variant was previously FILTERed with the given values."
 				);
-		final Set<String> limitToThoseFilters = onlyThoseFiltersTagStr.stream().flatMap(
+		}
+	
+	private Set<String> getLimitToThoseFilters() {
+		return onlyThoseFiltersTagStr.stream().flatMap(
 				S->Arrays.asList(S.split("[, ]")).stream()).
 				filter(S->!StringUtil.isBlank(S)).
 				collect(Collectors.toSet())
 				;
-
+		}
+	
+	private VCFHeader createHeader(final VCFHeader header,final VCFInfoHeaderLine infoHeaderLine) {
+		final Set<VCFHeaderLine> headerLines = new HashSet<>();
 		if(header.getInfoHeaderLine(infoHeaderLine.getID())!=null)
 			{
 			throw new JvarkitException.UserError("INFO["+infoHeaderLine.getID()+"] already exists in input VCF.");
@@ -147,7 +154,18 @@ public class VcfMoveFiltersToInfo
 		final VCFHeader header2 = new VCFHeader(header);
 		JVarkitVersion.getInstance().addMetaData(this, header2);
 		headerLines.stream().forEach(HL->header2.addMetaDataLine(HL));
-		out.writeHeader(header2);
+		return header2;
+		}
+	
+	@Override
+	protected int doVcfToVcf(
+		final String inputName,
+		final VCFIterator in,
+		final VariantContextWriter out)
+		{
+		final VCFInfoHeaderLine infoHeaderLine = createInfoHeaderLine();
+		final Set<String> limitToThoseFilters = getLimitToThoseFilters();
+		out.writeHeader(createHeader(in.getHeader(), infoHeaderLine));
 		while(in.hasNext())
 			{
 			final VariantContext ctx = in.next();
@@ -205,6 +223,44 @@ public class VcfMoveFiltersToInfo
 		}
 	
 	
+	/** the genotypes are not modified, unless option -G is used */
+	@Override
+	protected boolean isVcfLineModeSupported() {
+		return StringUtil.isBlank(this.genotypeFilterStr);
+		}
+	
+	@Override
+	protected int doVcfLinesToVcfLines(final String inputName, final VcfLineReader in, final VcfLineWriter out) {
+		final VCFInfoHeaderLine infoHeaderLine = createInfoHeaderLine();
+		final Set<String> limitToThoseFilters = getLimitToThoseFilters();
+		out.writeHeader(createHeader(in.getHeader(), infoHeaderLine));
+		while(in.hasNext())
+			{
+			final VcfLine line = in.next();
+			if(line.isFiltered())
+				{
+				final Set<String> INFOfilters = new HashSet<>();
+				// sorted, like htsjdk
+				final Set<String> FILTERfilters = new TreeSet<>();
+				for(final String filter : line.getFilters()) {
+					if(!limitToThoseFilters.isEmpty() && !limitToThoseFilters.contains(filter)) {
+						FILTERfilters.add(filter);
+						}
+					else
+						{
+						INFOfilters.add(filter);
+						}
+					}
+				line.setFilter(FILTERfilters.isEmpty()?VCFConstants.PASSES_FILTERS_v4:String.join(";", FILTERfilters));
+				if(!INFOfilters.isEmpty()) {
+					line.putInfoAttribute(infoHeaderLine.getID(), String.join(",", INFOfilters));
+					}
+				}
+			out.add(line);
+			}
+		return 0;
+		}
+	
 	@Override
 	protected int beforeVcf() {
 		if(StringUtil.isBlank(this.infoName)) {
@@ -38,6 +38,7 @@ import java.util.stream.Collectors;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
 import com.github.lindenb.jvarkit.lang.JvarkitException;
+import com.github.lindenb.jvarkit.samtools.PileupAccumulator;
 import com.github.lindenb.jvarkit.samtools.util.IntervalParserFactory;
 import com.github.lindenb.jvarkit.tools.misc.ConcatSam;
 import com.github.lindenb.jvarkit.util.Counter;
@@ -117,7 +118,7 @@ END_DOC
 @Program(name="minicaller",
 	description="Simple and Stupid Variant Caller designed for @AdrienLeger2",
 	keywords={"bam","sam","calling","vcf"},
-	modificationDate="20200304"
+	modificationDate="20261019"
 	)
 public class MiniCaller extends Launcher
     {
@@ -146,6 +147,22 @@ public class MiniCaller extends Launcher
   
     private final List<MyVariantContext> buffer=new ArrayList<>();
     private double min_fraction_alt=1.0/1000.0;
+    /** bases aligned on the reference, for all the samples */
+    private PileupAccumulator pileup = null;
+    /** contig index of the pileup */
+    private int pileupTid = -1;
+    private GenomicSequence genomicSeq = null;
+    /** sample name to index in the pileup */
+    private final Map<String,Integer> sample2index = new HashMap<>();
+    private final List<String> sampleNames = new ArrayList<>();
+    /** alleles for A,C,G,T,N */
+    private static final Allele PILEUP_ALLELES[]= {
+    	Allele.create("A",false),
+    	Allele.create("C",false),
+    	Allele.create("G",false),
+    	Allele.create("T",false),
+    	Allele.create("N",false)
+    	};
 
     
     private static class AlleleData
@@ -402,6 +419,35 @@ public class MiniCaller extends Launcher
         return ctx;
         }
     
+    /** convert the bases at one position of the pileup to a MyVariantContext */
+    private void pileupToContext(final PileupAccumulator.Column column)
+    	{
+    	final int pos0 = column.getPosition()-1;
+    	MyVariantContext ctx = null;
+    	for(int sample=0;sample< column.getSampleCount();++sample)
+    		{
+    		for(int code=PileupAccumulator.BASE_A;code<=PileupAccumulator.BASE_N;++code)
+    			{
+    			final int count_plus = column.getCount(sample, code, false);
+    			final int count_minus = column.getCount(sample, code, true);
+    			if(count_plus + count_minus == 0) continue;
+    			if(ctx==null)
+    				{
+    				ctx = findContext(
+    					this.pileupTid,
+    					pos0,
+    					Allele.create(String.valueOf(this.genomicSeq.charAt(pos0)), true)
+    					);
+    				}
+    			final AlleleData ad = ctx.
+    				getSample(this.sampleNames.get(sample)).
+    				getAllele(PILEUP_ALLELES[code]);
+    			ad.count_strands[0] += count_plus;
+    			ad.count_strands[1] += count_minus;
+    			}
+    		}
+    	}
+    
     @Override
     public int doWork(final List<String> args) {
     	
@@ -482,6 +528,12 @@ public class MiniCaller extends Launcher
    
             //addMetaData(metaData);
             
+            this.sampleNames.addAll(new TreeSet<>(sampleSet));
+            /* reads without partition */
+            if(!this.sampleNames.contains(this.samRecordPartition.name())) this.sampleNames.add(this.samRecordPartition.name());
+            for(final String sn: this.sampleNames) this.sample2index.put(sn, this.sample2index.size());
+            this.pileup = new PileupAccumulator(this.sampleNames.size(), this::pileupToContext);
+            
             final VCFHeader vcfHeader=new VCFHeader(
                     metaData , sampleSet
                     );
@@ -490,7 +542,6 @@ public class MiniCaller extends Launcher
             this.variantContextWriter = this.writingVariantsDelegate.dictionary(this.dictionary).open(outputFile);
             this.variantContextWriter.writeHeader(vcfHeader);
 
-            GenomicSequence genomicSeq=null;
             SAMSequenceDictionaryProgress progress=new SAMSequenceDictionaryProgress(this.dictionary);
             for(;;)
                 {
@@ -502,6 +553,17 @@ public class MiniCaller extends Launcher
                     rec=progress.watch(iter.next());
                     if(rec.getReadUnmappedFlag()) continue;
                     if(this.readFilter.filterOut(rec)) continue;
+                    
+                    /* new contig: send the remaining bases of the previous contig to the buffer */
+                    if(this.pileupTid != rec.getReferenceIndex().intValue())
+                    	{
+                    	if(this.pileupTid>=0) this.pileup.finish();
+                    	this.pileupTid = rec.getReferenceIndex();
+                    	this.genomicSeq = new GenomicSequence(referenceSequenceFile,rec.getContig());
+                    	this.pileup.reset(this.genomicSeq.length());
+                    	}
+                    /* bases before this read are complete */
+                    this.pileup.advance(rec.getAlignmentStart());
                   
                     /* flush buffer if needed */
                     while(!this.buffer.isEmpty() &&
@@ -510,18 +572,14 @@ public class MiniCaller extends Launcher
                     	{
                     	this.buffer.remove(0).print();
                     	}
-                    /* get genomic sequence at this position */
-                    if(genomicSeq==null ||  !genomicSeq.getChrom().equals(rec.getContig()))
-                        {
-                        genomicSeq = new GenomicSequence(referenceSequenceFile,rec.getContig());
-                        }
                     final Cigar cigar= rec.getCigar();
                     if(cigar==null) continue;
                     int readPos=0;
                     int refPos0 = rec.getAlignmentStart() -1;//0 based-reference
                     final byte bases[]=rec.getReadBases();
-                    final byte quals[]=rec.getBaseQualities();
                     final String sampleName= this.samRecordPartition.getPartion(rec,samRecordPartition.name());
+                    /* bases aligned on the reference */
+                    this.pileup.add(this.sample2index.get(sampleName), rec);
                     
                     for(final CigarElement ce: cigar.getCigarElements())
                         {
@@ -584,18 +642,7 @@ public class MiniCaller extends Launcher
                                 }
                             case EQ: case M: case X:
                                 {
-                                for(int i=0; i< ce.getLength();++i)
-                                    {
-                                    findContext(
-                                            rec.getReferenceIndex(),
-                                            refPos0 + i,
-                                            Allele.create(String.valueOf(genomicSeq.charAt( refPos0 + i)), true)
-                                    		).
-                                		getSample(sampleName).
-                                		getAllele(Allele.create(String.valueOf((char)bases[ readPos + i ]),false)).
-                                    	incr( rec.getReadNegativeStrandFlag())
-                                    	;
-                                    }
+                                /* already in this.pileup */
                                 readPos+=ce.getLength();
                                 refPos0+= ce.getLength();
                                 break;
@@ -611,6 +658,7 @@ public class MiniCaller extends Launcher
                     }
                 }
             
+            if(this.pileupTid>=0) this.pileup.finish();
             while(!buffer.isEmpty()) buffer.remove(0).print();
             progress.finish();
             iter.close();iter=null;
@@ -47,6 +47,7 @@ import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.util.samtools.ContigDictComparator;
 import com.github.lindenb.jvarkit.variant.variantcontext.writer.WritingVariantsDelegate;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
 
 import htsjdk.samtools.SAMSequenceDictionary;
@@ -65,7 +66,6 @@ import htsjdk.variant.vcf.VCFHeaderLine;
 import htsjdk.variant.vcf.VCFHeaderLineType;
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import htsjdk.variant.vcf.VCFReader;
-import htsjdk.variant.vcf.VCFRecordCodec;
 
 /**
 BEGIN_DOC
@@ -180,7 +180,7 @@ public class ExpansionHunterMerge extends Launcher {
 				tmpHeader.addMetaDataLine(sampleInfo);
 				sorter = SortingCollection.newInstance(
                         VariantContext.class,
-                        new VCFRecordCodec(tmpHeader, false),
+                        new BinaryVariantContextCodec(tmpHeader),
                         comparator2,
                         this.writingSortingCollection.getMaxRecordsInRam(),
                         this.writingSortingCollection.getTmpPaths()
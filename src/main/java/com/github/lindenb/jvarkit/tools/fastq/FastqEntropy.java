@@ -31,6 +31,9 @@ import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import com.beust.jcommander.Parameter;
+import com.github.lindenb.jvarkit.fastq.FastqArena;
+import com.github.lindenb.jvarkit.fastq.FastqBatchReader;
+import com.github.lindenb.jvarkit.fastq.FastqRecordView;
 import com.github.lindenb.jvarkit.fastq.FastqRecordPair;
 import com.github.lindenb.jvarkit.io.NullOuputStream;
 import com.github.lindenb.jvarkit.jcommander.FastqLauncher;
@@ -154,7 +157,7 @@ END_DOC
 @Program(name="fastqentropy",
 	description="Compute the Entropy of a Fastq file (distribution of the length(gzipped(sequence))",
 	keywords={"fastq"},
-	modificationDate="20220209"
+	modificationDate="20261019"
 	)
 public class FastqEntropy extends FastqLauncher
 	{
@@ -185,10 +188,16 @@ public class FastqEntropy extends FastqLauncher
 	
 	
 	private void convert(FastqRecord rec)
+		{
+		final byte[] quals = rec.getBaseQualityString().getBytes();
+		convert(quals, 0, quals.length);
+		}
+	
+	private void convert(final byte[] quals,int offset,int length)
 		{
 		try {
 			try(BestCompressionOutputStream gzout=new BestCompressionOutputStream()) {
-				gzout.write(rec.getBaseQualityString().getBytes());
+				gzout.write(quals, offset, length);
 				gzout.flush();
 				this.length2count.incr(gzout.getByteWrittenCount());
 				}
@@ -214,6 +223,23 @@ public class FastqEntropy extends FastqLauncher
 		return dump();
 		}
 	
+	@Override
+	protected boolean isSupportingBatchReader() {
+		return true;
+		}
+	
+	@Override
+	protected int runSingleEnd(final FastqBatchReader reader) throws IOException {
+		final FastqArena arena = new FastqArena();
+		while(reader.read(arena)>0) {
+			for(int i=0;i< arena.size();i++) {
+				final FastqRecordView rec = arena.get(i);
+				convert(rec.getData(), rec.getQualityOffset(), rec.getQualityLength());
+				}
+			}
+		return dump();
+		}
+	
 	private int dump() throws IOException {
 		try(PrintWriter pw = super.openPathOrStdoutAsPrintWriter(this.fileout)) {
 			for(Long n:this.length2count.keySetIncreasing())
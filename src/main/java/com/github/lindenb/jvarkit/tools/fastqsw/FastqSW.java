@@ -51,6 +51,7 @@ import org.biojava.nbio.core.sequence.template.SequenceView;
 
 import com.beust.jcommander.Parameter;
 import com.github.lindenb.jvarkit.fastq.FastqRecordPair;
+import com.github.lindenb.jvarkit.fastq.FastqRecordView;
 import com.github.lindenb.jvarkit.jcommander.OnePassFastqLauncher;
 import com.github.lindenb.jvarkit.jcommander.converter.FractionConverter;
 import com.github.lindenb.jvarkit.lang.LogicalOp;
@@ -100,7 +101,7 @@ END_DOC
 @Program(name="fastqsw",
 	keywords={"fastq","align","sw"},
 	description="align fasta sequences vs fastq",
-	modificationDate="20220207",
+	modificationDate="20261019",
 	creationDate="20220207"
 	)
 public class FastqSW extends OnePassFastqLauncher {
@@ -159,8 +160,12 @@ public class FastqSW extends OnePassFastqLauncher {
 	
 	
 	private void saveAlign(final FastqRecord rec, MyAlign a) {
+		saveAlign(rec.getReadName(), a);
+		}
+	
+	private void saveAlign(final String readName, MyAlign a) {
 		if(this.saveAlignStream==null) return;
-		this.saveAlignStream.println("#"+rec.getReadName()+
+		this.saveAlignStream.println("#"+readName+
 				" distance:"+ a.sw.getDistance()+ 
 				" score:"+ a.sw.getScore()+ 
 				" similarity:"+ a.sw.getSimilarity()+ 
@@ -174,13 +179,18 @@ public class FastqSW extends OnePassFastqLauncher {
 	
 	private Optional<MyAlign> 
 		align(final FastqRecord rec) {
+		return align(rec.getReadName(), rec.getReadString());
+		}
+	
+	private Optional<MyAlign> 
+		align(final String readName,final String readString) {
 	final boolean count_gaps = !this.disable_count_gap;
 	final DNASequence recseq;
 	try {
-		recseq = new DNASequence(rec.getReadString(),DNA_COMPOUND_SET);
+		recseq = new DNASequence(readString,DNA_COMPOUND_SET);
 		}
 	catch(final CompoundNotFoundException err) {
-		throw new IllegalArgumentException("Cannot get reverse complement for "+rec.getReadName(),err);
+		throw new IllegalArgumentException("Cannot get reverse complement for "+readName,err);
 		}
 	final SequenceView<NucleotideCompound> rcseq = disable_reverse_complement?
 			null:
@@ -219,6 +229,11 @@ public class FastqSW extends OnePassFastqLauncher {
 	return Optional.empty();
 	}
 	
+	@Override
+	protected boolean isSupportingBatchReader() {
+		return true;
+		}
+	
 	@Override
 	protected Predicate<FastqRecord> createPredicateForFastqRecord() {
 		return (REC)->{
@@ -231,6 +246,18 @@ public class FastqSW extends OnePassFastqLauncher {
 			};
 		}
 	@Override
+	protected Predicate<FastqRecordView> createPredicateForFastqRecordView() {
+		return (REC)->{
+			 final String readName = REC.getReadName();
+			 final Optional<MyAlign> opt = align(readName, REC.getReadBases().toString());
+			 if(opt.isPresent()) {
+				saveAlign(readName,opt.get());
+				return !inverse_logic;
+			 	}
+			 return inverse_logic;
+			};
+		}
+	@Override
 	protected Predicate<FastqRecordPair> createPredicateForFastqRecordPair() {
 		return (RECS)->{
 			 final Optional<MyAlign> optR1 = align(RECS.getFirstInPair());
@@ -49,6 +49,7 @@ import com.github.lindenb.jvarkit.util.jcommander.NoSplitter;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.variant.vcf.BufferedVCFReader;
+import com.github.lindenb.jvarkit.variant.vcf.SortedVCFReader;
 import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
 
 import htsjdk.samtools.util.CloseableIterator;
@@ -83,7 +84,7 @@ END_DOC
 @Program(name="vcfgnomad",
 	description="Peek annotations from gnomad",
 	keywords={"vcf","annotation","gnomad"},
-	modificationDate="20200702",
+	modificationDate="20261019",
 	creationDate="20170407"
 )
 public class VcfGnomad extends OnePassVcfLauncher {
@@ -95,6 +96,8 @@ public class VcfGnomad extends OnePassVcfLauncher {
 	private Path gnomadPath =null;
 	@Parameter(names={"--bufferSize"},description= BufferedVCFReader.OPT_BUFFER_DESC+" "+DistanceParser.OPT_DESCRIPTION,converter=DistanceParser.StringConverter.class,splitter=com.github.lindenb.jvarkit.util.jcommander.NoSplitter.class)
 	private int gnomadBufferSize= 10_000;
+	@Parameter(names={"--sorted"},description=SortedVCFReader.OPT_SORTED_DESC)
+	private boolean sorted_merge_join = false;
 	@Parameter(names={"-F","--fields"},description="AF fields to peek-up from gnomad. Space/comma/semicolon separated")
 	private String infoFieldStr="AF_popmax,AF_nfe";
 	@Parameter(names={"--noUpdateId"},description="do Not Update ID if it is missing in user's variant")
@@ -110,7 +113,7 @@ public class VcfGnomad extends OnePassVcfLauncher {
 	private boolean debug = false;
 
 	
-	private BufferedVCFReader gnomadReader = null;
+	private VCFReader gnomadReader = null;
 	private ContigNameConverter ctgNameConverter = null;
 	private final Set<String> gnomad_info_af_attributes = new HashSet<>();
 	
@@ -126,9 +129,15 @@ public class VcfGnomad extends OnePassVcfLauncher {
 	@Override
 	protected int beforeVcf() {
 		try {
-			final VCFReader r = VCFReaderFactory.makeDefault().open(this.gnomadPath,true);
-			this.gnomadReader = new BufferedVCFReader(r, this.gnomadBufferSize);
-			this.ctgNameConverter = ContigNameConverter.fromOneDictionary(SequenceDictionaryUtils.extractRequired(r.getHeader()));
+			if(this.sorted_merge_join) {
+				this.gnomadReader = SortedVCFReader.open(this.gnomadPath);
+				}
+			else
+				{
+				final VCFReader r = VCFReaderFactory.makeDefault().open(this.gnomadPath,true);
+				this.gnomadReader = new BufferedVCFReader(r, this.gnomadBufferSize);
+				}
+			this.ctgNameConverter = ContigNameConverter.fromOneDictionary(SequenceDictionaryUtils.extractRequired(this.gnomadReader.getHeader()));
 			}
 		catch(final Throwable err)
 			{
@@ -169,11 +178,18 @@ public class VcfGnomad extends OnePassVcfLauncher {
 				filter(ID->!this.gnomad_info_af_attributes.contains(ID)).
 				collect(Collectors.toList());
 		
-		this.gnomadReader.setSimplifier(V->{
+		final UnaryOperator<VariantContext> simplifier = V->{
 			final VariantContextBuilder vcb = new VariantContextBuilder(V);
 			vcb.rmAttributes(removeAtt).noGenotypes();
 			return vcb.make();
-			});
+			};
+		if(this.gnomadReader instanceof SortedVCFReader) {
+			SortedVCFReader.class.cast(this.gnomadReader).setSimplifier(simplifier);
+			}
+		else
+			{
+			BufferedVCFReader.class.cast(this.gnomadReader).setSimplifier(simplifier);
+			}
 		
 		return 0;
 		}
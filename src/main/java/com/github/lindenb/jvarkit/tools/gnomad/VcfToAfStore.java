@@ -0,0 +1,152 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.tools.gnomad;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+import com.github.lindenb.jvarkit.util.jcommander.Launcher;
+import com.github.lindenb.jvarkit.util.jcommander.Program;
+import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.util.log.ProgressFactory;
+import com.github.lindenb.jvarkit.util.vcf.AFExtractorFactory;
+import com.github.lindenb.jvarkit.util.vcf.AFExtractorFactory.AFExtractor;
+import com.github.lindenb.jvarkit.variant.af.AlleleFrequencyStore;
+import com.github.lindenb.jvarkit.variant.af.AlleleFrequencyStoreWriter;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+
+/**
+BEGIN_DOC
+
+## Motivation
+
+Convert a large population VCF (e.g. gnomAD) to a compact, memory-mapped store of allele frequencies.
+The store maps a hash of 'CHROM:POS:REF:ALT' to one AF (float) per population.
+It is used by `vcfpeekaf` (as the database) and by `vcfafinfofilter` (option `--store`)
+to find the AF of a variant without decoding the VCF of the database.
+
+Contigs are normalized by removing the 'chr' prefix. Missing AFs are stored as NaN.
+The names of the populations are the names of the fields, without the 'INFO/' prefix.
+
+## Example
+
+```
+$ java -jar dist/vcf2afstore.jar -F 'AF_NFE,AF_AFR,AF_popmax' -o gnomad.afstore gnomad.genomes.vcf.gz
+```
+
+END_DOC
+ */
+@Program(
+	name="vcf2afstore",
+	description="Create a compact, memory-mapped store of allele frequencies from a VCF.",
+	keywords={"vcf","af","gnomad"},
+	creationDate="20261019",
+	modificationDate="20261019",
+	generate_doc=false
+	)
+public class VcfToAfStore extends Launcher {
+	private static final Logger LOG = Logger.build(VcfToAfStore.class).make();
+	@Parameter(names={"-o","--output"},description="Output store. Should end with "+AlleleFrequencyStore.SUFFIX,required=true)
+	private Path outputFile = null;
+	@Parameter(names={"-F","--fields"},description="One population per field. "+AFExtractorFactory.OPT_DESC)
+	private String user_fields_str = "AF";
+	@ParametersDelegate
+	private WritingSortingCollection writingSortingCollection = new WritingSortingCollection();
+
+	@Override
+	public int doWork(final List<String> args) {
+		try {
+			if(!this.outputFile.getFileName().toString().endsWith(AlleleFrequencyStore.SUFFIX)) {
+				LOG.error("output should end with "+AlleleFrequencyStore.SUFFIX+" "+this.outputFile);
+				return -1;
+				}
+			try(VCFIterator iter = super.openVCFIterator(oneFileOrNull(args))) {
+				final VCFHeader header = iter.getHeader();
+				final List<AFExtractor> extractors = new AFExtractorFactory().parseFieldExtractors(this.user_fields_str);
+				if(extractors.isEmpty()) {
+					LOG.error("no population defined");
+					return -1;
+					}
+				for(final AFExtractor ex: extractors) {
+					if(!ex.validateHeader(header)) {
+						LOG.error("invalid field "+ex.getName()+" for the VCF header");
+						return -1;
+						}
+					}
+				/* population names, without the "INFO/" prefix */
+				final List<String> populations = extractors.stream().map(E->E.getName().replace("INFO/","")).collect(Collectors.toList());
+				LOG.info("populations: "+String.join(" ", populations));
+				final float[] afs = new float[populations.size()];
+				long n_records = 0L;
+				try(AlleleFrequencyStoreWriter w = AlleleFrequencyStore.createWriter(
+						this.outputFile,
+						populations,
+						this.writingSortingCollection.getMaxRecordsInRam(),
+						this.writingSortingCollection.getTmpPath())) {
+					final ProgressFactory.Watcher<VariantContext> progress = ProgressFactory.newInstance().dictionary(header).logger(LOG).build();
+					while(iter.hasNext()) {
+						final VariantContext ctx = progress.apply(iter.next());
+						final List<Allele> alts = ctx.getAlternateAlleles();
+						if(alts.isEmpty()) continue;
+						final List<List<Double>> values = extractors.stream().map(E->E.parse(ctx)).collect(Collectors.toList());
+						for(int x=0;x< alts.size();x++) {
+							final Allele alt = alts.get(x);
+							if(alt.isSymbolic() || alt.equals(Allele.SPAN_DEL) || alt.isNoCall()) continue;
+							boolean got_one = false;
+							for(int p=0;p< afs.length;p++) {
+								final List<Double> L = values.get(p);
+								final Double af = (L==null || x>=L.size() ? null : L.get(x));
+								afs[p] = (af==null ? Float.NaN : af.floatValue());
+								got_one |= af!=null;
+								}
+							if(!got_one) continue;
+							w.add(ctx.getContig(), ctx.getStart(), ctx.getReference().getDisplayString(), alt.getDisplayString(), afs);
+							n_records++;
+							}
+						}
+					progress.close();
+					LOG.info("sorting and writing "+n_records+" records...");
+					}
+				}
+			return 0;
+			}
+		catch(final Throwable err) {
+			LOG.error(err);
+			return -1;
+			}
+		}
+
+	public static void main(final String[] args) {
+		new VcfToAfStore().instanceMainWithExit(args);
+		}
+	}
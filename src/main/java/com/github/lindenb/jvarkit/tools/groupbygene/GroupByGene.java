@@ -42,10 +42,7 @@ import java.util.stream.Collectors;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
-import htsjdk.variant.vcf.VCFCodec;
-import htsjdk.variant.vcf.VCFEncoder;
 import htsjdk.variant.vcf.VCFHeader;
-import htsjdk.variant.vcf.VCFHeaderVersion;
 import htsjdk.variant.vcf.VCFIterator;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
@@ -68,6 +65,7 @@ import com.github.lindenb.jvarkit.util.picard.AbstractDataCodec;
 import com.github.lindenb.jvarkit.util.samtools.ContigDictComparator;
 import com.github.lindenb.jvarkit.util.vcf.predictions.GeneExtractorFactory;
 import com.github.lindenb.jvarkit.variant.vcf.BcfIteratorBuilder;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 
 /**
 BEGIN_DOC
@@ -222,15 +220,13 @@ public class GroupByGene
 	private class CallCodec 
 		extends AbstractDataCodec<Call>
 		{
-		final VCFHeader header;
-		private final VCFCodec vCodec;
-		private final VCFEncoder vcfEncoder;
+		private final BinaryVariantContextCodec vCodec;
 
 		CallCodec(final VCFHeader header) {
-			this.header= header;
-			this.vCodec = new VCFCodec();
-			this.vcfEncoder = new VCFEncoder(header, false, false);
-			this.vCodec.setVCFHeader(header, VCFHeaderVersion.VCF4_2);
+			this(new BinaryVariantContextCodec(header));
+			}
+		private CallCodec(final BinaryVariantContextCodec vCodec) {
+			this.vCodec = vCodec;
 			}
 		@Override
 		public void encode(final DataOutputStream dos,final Call c)
@@ -239,7 +235,7 @@ public class GroupByGene
 			dos.writeUTF(c.gene.name);
 			dos.writeUTF(c.gene.label);
 			dos.writeUTF(c.gene.type);
-			writeString(dos, this.vcfEncoder.encode(c.ctx));
+			this.vCodec.encode(dos, c.ctx);
 			}
 		
 		@Override
@@ -255,12 +251,12 @@ public class GroupByGene
 			final String gType=dis.readUTF();
 			final Call c= new Call();
 			c.gene=new GeneName(gName,gLbl, gType);
-			c.ctx = this.vCodec.decode(readString(dis));
+			c.ctx = this.vCodec.decode(dis);
 			return c;
 			}
 		@Override
 		public CallCodec clone() {
-			return new CallCodec(this.header);
+			return new CallCodec(this.vCodec.clone());
 			}
 		}
 	
@@ -42,6 +42,7 @@ import com.github.lindenb.jvarkit.util.log.ProgressFactory;
 import com.github.lindenb.jvarkit.util.vcf.AFExtractorFactory;
 import com.github.lindenb.jvarkit.util.vcf.AFExtractorFactory.AFExtractor;
 import com.github.lindenb.jvarkit.util.vcf.VariantAttributesRecalculator;
+import com.github.lindenb.jvarkit.variant.af.AlleleFrequencyStore;
 import com.github.lindenb.jvarkit.variant.variantcontext.writer.WritingVariantsDelegate;
 
 import htsjdk.variant.vcf.VCFIterator;
@@ -74,17 +75,21 @@ $ java -jar dist/vcfafinfofilter.jar -nfe input.vcf
 $ java -jar dist/vcfafinfofilter.jar -af 'gnomad_exome_AF_NFE,gnomad_genome_AF_NFE'   input.vcf
 $ java -jar dist/vcfafinfofilter.jar -acn 'gnomad_genome_AC_NFE,gnomad_genome_AN_NFE'   input.vcf
 $ java -jar dist/vcfafinfofilter.jar -acn 'gnomad_genome_*_NFE'   input.vcf
+$ java -jar dist/vcfafinfofilter.jar --store gnomad.afstore --store-populations 'AF_NFE'  input.vcf
 
 ```
 
+## Allele frequency store
 
+Since 20261019, the AF can be read from a store created with `vcf2afstore` (option `--store`): the input VCF
+doesn't need to be annotated with vcfgnomad.
 
 END_DOC
  */
 @Program(name="vcfafinfofilter",
 	description="Filter VCF annotated with external (AF or AC/AN) frequency information like vcfgnomad",
 	keywords={"vcf","annotation","af"},
-	modificationDate="20200324",
+	modificationDate="20261019",
 	creationDate="20180625"
 	)
 public class VcfAfInfoFilter extends Launcher{
@@ -108,6 +113,11 @@ public class VcfAfInfoFilter extends Launcher{
 	@Parameter(names={"-F","--fields"},description="[20180905]"+AFExtractorFactory.OPT_DESC)
 	private String user_fields_str = "";
 
+	@Parameter(names={"--store"},description="[20261019] Allele frequency store created with vcf2afstore. Its allele frequencies are tested like the INFO fields.")
+	private Path afStorePath = null;
+	@Parameter(names={"--store-populations"},description="[20261019] Comma-separated list of populations to be used in the allele frequency store. Default: all populations.")
+	private String afStorePopulations = "";
+
 	@Parameter(names={"-i","--no-valid"},description="Ignore INFO Field Validation. (e.g INFO field not declarated in VCF header)")
 	private boolean ignore_INFO_field_validation=false;
 	@Parameter(names={"-nfe","--nfe"},description="Add INFO fields for the 'NFE' population created by vcfgnomad: gnomad_exome_AC_NFE,gnomad_exome_AF_NFE,gnomad_exome_AN_NFE,gnomad_genome_AC_NFE,gnomad_genome_AF_NFE,gnomad_genome_AN_NF")
@@ -119,6 +129,9 @@ public class VcfAfInfoFilter extends Launcher{
 	@ParametersDelegate
 	private WritingVariantsDelegate writingVariantsDelegate = new WritingVariantsDelegate();
 	
+	private AlleleFrequencyStore afStore = null;
+	/** indexes of the populations of the afStore */
+	private int[] afStorePopIndexes = new int[0];
 
 	public VcfAfInfoFilter() {
 		
@@ -199,7 +212,7 @@ public class VcfAfInfoFilter extends Launcher{
 				});
 			
 			
-			if(afExtractors.isEmpty()) {
+			if(afExtractors.isEmpty() && this.afStore==null) {
 				LOG.warn("No extractor was defined !");
 				} 
 			
@@ -239,6 +252,28 @@ public class VcfAfInfoFilter extends Launcher{
 				final List<Allele> alt_alleles = ctx.getAlternateAlleles();
 				final Set<Allele> ok_alleles = new HashSet<>(alt_alleles);
 				ok_alleles.remove(Allele.SPAN_DEL);
+				if(this.afStore!=null) {
+					final float[] store_afs = new float[this.afStore.getPopulations().size()];
+					for(final Allele alt: alt_alleles) {
+						if(!ok_alleles.contains(alt) || alt.isSymbolic()) continue;
+						if(!this.afStore.get(AlleleFrequencyStore.hash(ctx, alt), store_afs)) continue;
+						for(final int popIdx : this.afStorePopIndexes) {
+							final float af = store_afs[popIdx];
+							if(Float.isNaN(af)) continue;
+							if(af < this.user_af_minimum || af > this.user_af_maximum)
+								{
+								if(this.filter_for_any_allele) {
+									ok_alleles.clear();
+									}
+								else
+									{
+									ok_alleles.remove(alt);
+									}
+								break;
+								}
+							}
+						}
+					}
 				for(final AFExtractor afExtractor : afExtractors)
 					{
 					if(ok_alleles.isEmpty()) break;
@@ -329,12 +364,37 @@ public class VcfAfInfoFilter extends Launcher{
 			}
 		try 
 			{
+			if(this.afStorePath!=null) {
+				this.afStore = AlleleFrequencyStore.open(this.afStorePath);
+				if(StringUtil.isBlank(this.afStorePopulations)) {
+					this.afStorePopIndexes = new int[this.afStore.getPopulations().size()];
+					for(int i=0;i< this.afStorePopIndexes.length;i++) this.afStorePopIndexes[i]=i;
+					}
+				else
+					{
+					final List<Integer> L = new ArrayList<>();
+					for(final String pop: this.afStorePopulations.split("[,; \t\n]+")) {
+						if(StringUtil.isBlank(pop)) continue;
+						final int idx = this.afStore.getPopulationIndex(pop);
+						if(idx<0) {
+							LOG.error("population "+pop+" not found in "+this.afStorePath+". Available: "+String.join(" ",this.afStore.getPopulations()));
+							return -1;
+							}
+						L.add(idx);
+						}
+					this.afStorePopIndexes = L.stream().mapToInt(Integer::intValue).toArray();
+					}
+				}
 			return doVcfToVcfPath(args,this.writingVariantsDelegate,this.outputFile);
 			}
 		catch(final Throwable err) {
 			LOG.error(err);
 			return -1;
 			}
+		finally {
+			if(this.afStore!=null) try {this.afStore.close();} catch(final Throwable err2) {}
+			this.afStore = null;
+			}
 		}
 
 public static void main(final String[] args) {
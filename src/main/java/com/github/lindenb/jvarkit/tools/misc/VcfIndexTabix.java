@@ -43,12 +43,12 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder.OutputType;
 import htsjdk.variant.vcf.VCFHeader;
-import htsjdk.variant.vcf.VCFRecordCodec;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 
 import com.github.lindenb.jvarkit.util.picard.SAMSequenceDictionaryProgress;
 import htsjdk.variant.vcf.VCFIterator;
@@ -114,7 +114,7 @@ public class VcfIndexTabix
 			this.sorter =
 	                SortingCollection.newInstance(
 	                        VariantContext.class,
-	                        new VCFRecordCodec(header),
+	                        new BinaryVariantContextCodec(header),
 	                        header.getVCFRecordComparator(),
 	                        VcfIndexTabix.this.writingSortingCollection.getMaxRecordsInRam(),
 	                        VcfIndexTabix.this.writingSortingCollection.getTmpPaths()
@@ -26,7 +26,6 @@ SOFTWARE.
 package com.github.lindenb.jvarkit.tools.misc;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -37,9 +36,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.github.lindenb.jvarkit.jcommander.OnePassVcfLauncher;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
-import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.picard.SAMSequenceDictionaryProgress;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineReader;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineWriter;
 
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.variant.variantcontext.Genotype;
@@ -52,12 +53,10 @@ import htsjdk.variant.vcf.VCFHeaderLine;
 
 import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.CharSplitter;
-import com.github.lindenb.jvarkit.util.vcf.PostponedVariantContextWriter;
 import htsjdk.variant.vcf.VCFIterator;
 
 
 import com.beust.jcommander.Parameter;
-import com.beust.jcommander.ParametersDelegate;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 
@@ -81,6 +80,14 @@ chr1	30860	.	G	C	0/0:7,0:7:15:0,15,177	0/0:2,0:2:3:0,3,39	0/0:6,0:6:12:0,12,143
 chr1	69270	.	A	G	./.	./.	1/1:0,3:3:9:106,9,0	1/1:0,6:6:18:203,18,0
 ```
 
+When the input and the output are text VCFs, only the header is rewritten: the variants are copied verbatim.
+Use `--no-line-mode` to use the htsjdk decoder.
+
+## History
+
+* 20261019: the output options are now the ones shared by the other VCF tools: `-o/--out`, `--generate-vcf-md5` and `--bcf-output`.
+  `--output` is kept as an alias of `--out`. `--vcfmd5`, `--vcfcreateindex` and `--outputbcf` were removed: use `--generate-vcf-md5`, `--bcf-output` or index the VCF with `bcftools index`.
+
 END_DOC
 */
 
@@ -89,18 +96,16 @@ END_DOC
 	keywords={"vcf","sample"},
 	deprecatedMsg="use bcftools reheader"
 	)
-public class VcfRenameSamples extends Launcher
+public class VcfRenameSamples extends OnePassVcfLauncher
 	{
 	private static final Logger LOG = Logger.build(VcfRenameSamples.class).make();
 
-	@Parameter(names={"-o","--output"},description=OPT_OUPUT_FILE_OR_STDOUT)
-	private File outputFile = null;
 	@Parameter(names="-f",description="Tab delimited file containing old-name\\tnew-name",required=true)
 	private Path mappingFile=null;
 	@Parameter(names="-E",description= "error like src sample missing in VCF")
 	private boolean missing_user_name_is_error=false;
-	@ParametersDelegate
-	private PostponedVariantContextWriter.WritingVcfConfig writingVcfArgs = new PostponedVariantContextWriter.WritingVcfConfig();
+	@Parameter(names={"--output"},description="Deprecated. Same as -o/--out. "+OPT_OUPUT_FILE_OR_STDOUT)
+	private Path deprecatedOutputFile=null;
 
 	private final Map<String,String> oldNameToNewName=new HashMap<>();
 	
@@ -108,13 +113,8 @@ public class VcfRenameSamples extends Launcher
 		{
 		}
 	
-	@Override
-	protected int doVcfToVcf(
-			final String inputName,
-			final VCFIterator in,
-			final VariantContextWriter out
-			) {
-		final VCFHeader header1=in.getHeader();
+	/** create the new header, return null on error */
+	private VCFHeader renameSamples(final VCFHeader header1) {
 		final Set<String> samples1 = new LinkedHashSet<String>(header1.getSampleNamesInOrder());
 		
 		final List<String> newHeader=new ArrayList<String>(samples1);
@@ -137,7 +137,7 @@ public class VcfRenameSamples extends Launcher
 				if(missing_user_name_is_error)
 					{
 					LOG.error("Source Sample "+srcName+" missing in "+samples1+". Use option -E to ignore");
-					return -1;
+					return null;
 					}
 				else
 					{
@@ -150,7 +150,19 @@ public class VcfRenameSamples extends Launcher
 		header2.addMetaDataLine(new VCFHeaderLine(getClass().getSimpleName()+"CmdLine",String.valueOf(getProgramCommandLine())));
 		header2.addMetaDataLine(new VCFHeaderLine(getClass().getSimpleName()+"Version",String.valueOf(getVersion())));
 		JVarkitVersion.getInstance().addMetaData(getClass().getSimpleName(), header2);
-		
+		return header2;
+		}
+	
+	@Override
+	protected int doVcfToVcf(
+			final String inputName,
+			final VCFIterator in,
+			final VariantContextWriter out
+			) {
+		final VCFHeader header1=in.getHeader();
+		final Set<String> samples1 = new LinkedHashSet<String>(header1.getSampleNamesInOrder());
+		final VCFHeader header2 = renameSamples(header1);
+		if(header2==null) return -1;
 		out.writeHeader(header2);
 		
 		final SAMSequenceDictionaryProgress progress=new SAMSequenceDictionaryProgress(header1);
@@ -220,8 +232,7 @@ public class VcfRenameSamples extends Launcher
 		}
 	
 	@Override
-	public int doWork(final List<String> args) {
-		
+	protected int beforeVcf() {
 		if(mappingFile==null) {
 			LOG.error("undefined mapping file");
 			return -1;
@@ -245,13 +256,36 @@ public class VcfRenameSamples extends Launcher
 			LOG.error("Some dest-name have been defined twice.");
 			return -1;
 			}
-		
-		return doVcfToVcf(args, outputFile);
+		return 0;
 		}
-
+	
 	@Override
-	protected VariantContextWriter openVariantContextWriter(final File outorNull) throws IOException {
-		return new PostponedVariantContextWriter(this.writingVcfArgs,stdout(),this.outputFile);
+	public int doWork(final List<String> args) {
+		if(this.deprecatedOutputFile!=null) {
+			if(this.outputFile!=null && !this.outputFile.equals(this.deprecatedOutputFile)) {
+				LOG.error("--output and -o/--out were both defined");
+				return -1;
+				}
+			this.outputFile = this.deprecatedOutputFile;
+			}
+		return super.doWork(args);
+		}
+	
+	@Override
+	protected boolean isVcfLineModeSupported() {
+		return true;
+		}
+	
+	/** only the header changes: the variants are copied verbatim */
+	@Override
+	protected int doVcfLinesToVcfLines(final String inputName, final VcfLineReader in, final VcfLineWriter out) {
+		final VCFHeader header2 = renameSamples(in.getHeader());
+		if(header2==null) return -1;
+		out.writeHeader(header2);
+		while(in.hasNext()) {
+			out.add(in.next());
+			}
+		return 0;
 		}
 	
 	public static void main(final String[] args)
@@ -34,6 +34,9 @@ import com.github.lindenb.jvarkit.lang.StringUtils;
 import com.github.lindenb.jvarkit.util.bio.fasta.ContigNameConverter;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLine;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineReader;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineWriter;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.variant.utils.SAMSequenceDictionaryExtractor;
@@ -56,6 +59,7 @@ java  -jar jvarkit-git/vcfsetdict.jar --onNotFound SKIP -r ref.fasta input.vcf >
 ## History
 
 * [20170906] remove the creation of a dictionary, moved to VcfCreateDictionary
+* [20261019] text VCFs are processed line by line, only the CHROM column is rewritten. The genotypes are copied verbatim. Use `--no-line-mode` to use the htsjdk decoder.
 
 
 END_DOC
@@ -65,7 +69,7 @@ END_DOC
 	description="Set the `##contig` lines in a VCF header on the fly",
 	keywords={"vcf","dict","fai"},
 	creationDate="20140105",
-	modificationDate="20210201"
+	modificationDate="20261019"
 	)
 public class VcfSetSequenceDictionary extends OnePassVcfLauncher {
 	private static final Logger LOG=Logger.build(VcfSetSequenceDictionary.class).make();
@@ -83,6 +87,43 @@ public class VcfSetSequenceDictionary extends OnePassVcfLauncher {
 		{
 		}
 
+	/** return the new contig name or null if the variant must be skipped or, with RAISE_EXCEPTION, if the program must stop */
+	private String convertContig(final ContigNameConverter contigNameConverter,final String contig,final Set<String> inputContigsNotFound) {
+		final String newContig = contigNameConverter.apply(contig);
+		if(!StringUtils.isBlank(newContig)) return newContig;
+		switch(this.onContigNotFound) {
+			case RAISE_EXCEPTION:
+				LOG.error("cannot convert contig "+contig+ " for new dictionary");
+				return null;
+			case RETURN_ORIGINAL: return contig;
+			default:
+				if(inputContigsNotFound.add(contig)) {
+					LOG.info("cannot convert contig "+contig+ " for new dictionary");
+					}
+				return null;
+			}
+		}
+	
+	private ContigNameConverter createContigNameConverter(final VCFHeader header) {
+		final SAMSequenceDictionary oldDict = header.getSequenceDictionary();
+		if(oldDict!=null && !oldDict.isEmpty())
+			{
+			return ContigNameConverter.fromDictionaries(oldDict, this.dict);
+			}
+		else
+			{
+			return ContigNameConverter.fromOneDictionary(this.dict);
+			}
+		}
+	
+	private void warnContigsNotFound(final Set<String> inputContigsNotFound) {
+		inputContigsNotFound.stream().forEach(chrom->
+			{
+			LOG.warn("Variant(s) with Contig \'"+chrom+"\' could not be converted to new Dictionary and where ignored");
+			});
+		inputContigsNotFound.clear();
+		}
+	
 	@Override
 	protected int doVcfToVcf(
 		final String inputName,
@@ -94,17 +135,8 @@ public class VcfSetSequenceDictionary extends OnePassVcfLauncher {
 		final VCFHeader header = in.getHeader();
 		
 		final VCFHeader header2 = new VCFHeader(header);
-		final ContigNameConverter contigNameConverter;
-		final SAMSequenceDictionary oldDict = header.getSequenceDictionary();
+		final ContigNameConverter contigNameConverter = createContigNameConverter(header);
 		header2.setSequenceDictionary(this.dict);
-		if(oldDict!=null && !oldDict.isEmpty())
-			{
-			contigNameConverter = ContigNameConverter.fromDictionaries(oldDict, this.dict);
-			}
-		else
-			{
-			contigNameConverter = ContigNameConverter.fromOneDictionary(this.dict);
-			}
 		
 		w.writeHeader(header2);
 		
@@ -113,30 +145,13 @@ public class VcfSetSequenceDictionary extends OnePassVcfLauncher {
 			{
 			final VariantContext ctx = in.next();
 			
-			String newContig = contigNameConverter.apply(ctx.getContig());
-			
-			
-			if(StringUtils.isBlank(newContig))
-				{
-				if(this.onContigNotFound.equals(OnNotFound.RAISE_EXCEPTION))
-					{
-					LOG.error("cannot convert contig "+ctx.getContig()+ " for new dictionary");
-					return -1;
-					}
-				else if(this.onContigNotFound.equals(OnNotFound.RETURN_ORIGINAL))
-					{
-					newContig = ctx.getContig();
-					}
-				else
-					{
-					if(!inputContigsNotFound.contains(ctx.getContig())) {
-						LOG.info("cannot convert contig "+ctx.getContig()+ " for new dictionary");
-						inputContigsNotFound.add(ctx.getContig());
-						}
-					continue;
-					}
+			final String newContig = convertContig(contigNameConverter, ctx.getContig(), inputContigsNotFound);
+			if(newContig==null) {
+				if(this.onContigNotFound.equals(OnNotFound.RAISE_EXCEPTION)) return -1;
+				continue;
 				}
-			else if(newContig.equals(ctx.getContig()))
+			
+			if(newContig.equals(ctx.getContig()))
 				{
 				w.add(ctx);
 				}
@@ -145,13 +160,38 @@ public class VcfSetSequenceDictionary extends OnePassVcfLauncher {
 				w.add(new VariantContextBuilder(ctx).chr(newContig).make());
 				}
 			}
-		inputContigsNotFound.stream().forEach(chrom->
-			{
-			LOG.warn("Variant(s) with Contig \'"+chrom+"\' could not be converted to new Dictionary and where ignored");
-			});
-		inputContigsNotFound.clear();
+		warnContigsNotFound(inputContigsNotFound);
 		return 0;
 	    }
+	
+	@Override
+	protected boolean isVcfLineModeSupported() {
+		return true;
+		}
+	
+	@Override
+	protected int doVcfLinesToVcfLines(final String inputName, final VcfLineReader in, final VcfLineWriter w) {
+		final Set<String> inputContigsNotFound = new HashSet<>();
+		final VCFHeader header = in.getHeader();
+		final VCFHeader header2 = new VCFHeader(header);
+		final ContigNameConverter contigNameConverter = createContigNameConverter(header);
+		header2.setSequenceDictionary(this.dict);
+		w.writeHeader(header2);
+		while(in.hasNext())
+			{
+			final VcfLine line = in.next();
+			final String contig = line.getContig();
+			final String newContig = convertContig(contigNameConverter, contig, inputContigsNotFound);
+			if(newContig==null) {
+				if(this.onContigNotFound.equals(OnNotFound.RAISE_EXCEPTION)) return -1;
+				continue;
+				}
+			if(!newContig.equals(contig)) line.setContig(newContig);
+			w.add(line);
+			}
+		warnContigsNotFound(inputContigsNotFound);
+		return 0;
+		}
 
 	@Override
 	protected Logger getLogger() {
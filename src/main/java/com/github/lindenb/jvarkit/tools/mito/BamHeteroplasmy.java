@@ -41,6 +41,7 @@ import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.JvarkitException;
 import com.github.lindenb.jvarkit.lang.StringUtils;
 import com.github.lindenb.jvarkit.math.stats.FisherExactTest;
+import com.github.lindenb.jvarkit.samtools.PileupAccumulator;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
 import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
@@ -50,9 +51,8 @@ import com.github.lindenb.jvarkit.util.samtools.SAMRecordPartition;
 import com.github.lindenb.jvarkit.util.vcf.VCFUtils;
 
 import htsjdk.samtools.Cigar;
-import htsjdk.samtools.CigarElement;
-import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SAMSequenceDictionary;
@@ -93,7 +93,7 @@ END_DOC
 @Program(name="bamheteroplasmy",
 description="Call a VCF for the Mitochondria (Experimental)",
 creationDate="20190910",
-modificationDate="20190912",
+modificationDate="20261019",
 keywords={"vcf","sam","bam","mitochondria"}
 )
 public class BamHeteroplasmy extends Launcher {
@@ -133,72 +133,174 @@ public class BamHeteroplasmy extends Launcher {
 	
 	
 	private ReferenceSequence chrMSequence = null;
-	private static final char ATGCNatgcn[]=new char[] {'A','T','G','C','N','a','t','g','c','n'};
 	private static final int ACGT[]=new int[] {'A','C','G','T'};
+	private static final VCFFormatHeaderLine formatHeteroPlasmy = new VCFFormatHeaderLine(
+			"HP",
+			1,
+			VCFHeaderLineType.Float,
+			"Heteroplasmy (read alt/depth)"
+			);
+	private static final VCFFormatHeaderLine formatFisherStrand = new VCFFormatHeaderLine(
+			"FS",
+			1,
+			VCFHeaderLineType.Float,
+			"Fisher Strand"
+			);
+	private static final VCFFormatHeaderLine formatDP8 = new VCFFormatHeaderLine(
+			"DP8",
+			8,
+			VCFHeaderLineType.Integer,
+			"number of bases ACGT(formard) acgt(reverse) "
+			);
+	private static final VCFInfoHeaderLine infoSamples = new VCFInfoHeaderLine(
+			"SAMPLES",
+			VCFHeaderLineCount.UNBOUNDED,
+			VCFHeaderLineType.String,
+			"Samples with genotype"
+			);
+	private static final VCFInfoHeaderLine infoNoRefSamples = new VCFInfoHeaderLine(
+			"NOREFSAMPLES",
+			VCFHeaderLineCount.UNBOUNDED,
+			VCFHeaderLineType.String,
+			"Samples without REF base"
+			);
+	private static final VCFInfoHeaderLine infoNSamples = new VCFInfoHeaderLine(
+			"NSAMPLES",
+			1,
+			VCFHeaderLineType.Integer,
+			"Number of Samples with genotype"
+			);
+	/** samples with at least one read */
+	private final Map<String,SampleHeteroplasmy> sample2heteroplasmy= new HashMap<>();
+	private VariantContextWriter vcw = null;
 	
-
-	
-	private  static class Pileup {
-		final Map<Character,Integer> counter = new HashMap<>(ATGCNatgcn.length);
-		
-		
-		int count(char c) {
-			return counter.getOrDefault(c, 0);
-		}
-		
-		int countPlus(char ch) {
-			return  count(Character.toUpperCase(ch));
-			}
-		
-		int countMinus(char ch) {
-			return  count(Character.toLowerCase(ch));
-			}
-		int countPlus(Allele ch) {
-			return  countPlus(ch.getBaseString().charAt(0));
-			}
-		
-		int countMinus(Allele ch) {
-			return  countPlus(ch.getBaseString().charAt(0));
-			}
-		int countIgnoreCase(char ch) {
-			return  countPlus(ch)+ countMinus(ch);
-			}
-		
-		int count(Allele c) {
-			return count(c.getBaseString().charAt(0));
-			}
-		
-		int countIgnoreCase(Allele c) {
-			return countIgnoreCase(c.getBaseString().charAt(0));
-		}
-	}
-	
-	private class SampleHeteroplasmy
+	private static class SampleHeteroplasmy
 		{
 		final String sn;
-		final Map<Integer,Pileup> pos1ToPileups;
+		/** index in the PileupAccumulator */
+		final int index;
 	
-		SampleHeteroplasmy(final String sn) {
+		SampleHeteroplasmy(final String sn,final int index) {
 			this.sn = sn;
-			this.pos1ToPileups = new HashMap<>(BamHeteroplasmy.this.chrMSequence.length());
+			this.index = index;
 			}
-		void visit(int pos1,boolean negativeStrand,byte base) {
-			Pileup p = this.pos1ToPileups.get(pos1);
-			if(p==null) {
-				p = new Pileup();
-				this.pos1ToPileups.put(pos1,p);
+		}
+
+	/** write the variants at one position of the mitochondrial genome */
+	private void writeColumn(final PileupAccumulator.Column pileup) {
+		final int pos1 = pileup.getPosition();
+		final byte ref_base = this.chrMSequence.getBases()[pos1-1];
+		final Allele ref = Allele.create(ref_base, true);
+		final char ref_char = ref.getBaseString().charAt(0);
+		for(int alt_base: ACGT) {
+			if(alt_base==(int)ref_base) continue;
+			final char alt_char = (char)alt_base;
+			final Set<String> filters = new HashSet<>();
+			final Set<String> samplesWithGt = new TreeSet<>();
+			final Set<String> noRefSamples = new TreeSet<>();
+			final Allele alt= Allele.create((byte)alt_base, false);
+			int max_gq = 0;
+			final VariantContextBuilder vcb = new VariantContextBuilder(null, this.chrMSequence.getName(), pos1, pos1,
+					Arrays.asList(ref,alt));
+			
+			final List<Genotype> genotypes = new ArrayList<>(this.sample2heteroplasmy.size());
+			for(SampleHeteroplasmy compound: this.sample2heteroplasmy.values()) {
+				final int idx = compound.index;
+				if( pileup.getDepth(idx)==0 ) {
+					continue;
+					}
+				
+				if(pileup.getBaseCount(idx, ref_char, false)==0) {
+					noRefSamples.add(compound.sn);
+					}
+				
+				if( pileup.getBaseCount(idx, alt_char, false) < min_allele_dp  ) {
+					genotypes.add(GenotypeBuilder.createMissing(compound.sn, 1));
+					continue;
+					}
+				
+				
+				final int dp ;
+				if(use_all_alleles) {
+					dp= pileup.getDepth(idx);
+					}
+				else
+					{
+					dp = pileup.getBaseCount(idx, ref_char) +  pileup.getBaseCount(idx, alt_char);
+					}
+				
+				if(dp==0) {
+					genotypes.add(GenotypeBuilder.createMissing(compound.sn, 1));
+					continue;
+					}
+				
+				final GenotypeBuilder gb = new GenotypeBuilder(compound.sn,Collections.singletonList(alt));
+
+				
+				gb.DP(dp);
+				gb.AD(new int[] {
+						pileup.getBaseCount(idx, ref_char),
+						pileup.getBaseCount(idx, alt_char)
+					});
+				
+				final double p = pileup.getBaseCount(idx, alt_char)/dp;
+				gb.attribute(formatHeteroPlasmy.getID(), p);
+				
+			
+				double tmp = 1.96 * Math.sqrt( ( p * ( 1.0 - p ) ) / dp );
+				double min_confidence = Math.max(p-tmp, 0.0);
+				double max_confidence = Math.min(p+tmp, 1.0);
+				double distance = max_confidence - min_confidence;
+				int gq = (int)(1.0-distance)*99;
+				max_gq = Math.max(max_gq, gq);
+				gb.GQ(gq);
+				
+				final int dp8[]=new int[ACGT.length*2];
+				for(int y=0;y< ACGT.length;++y) {
+					char b = (char)ACGT[y];
+					dp8[y] = pileup.getBaseCount(idx, b, false);
+					dp8[y + ACGT.length ] = pileup.getBaseCount(idx, b, true);
+					}
+				
+				gb.attribute(formatDP8.getID(),dp8);
+				
+					
+				final FisherExactTest fisher = FisherExactTest.compute(
+						pileup.getBaseCount(idx, ref_char, false), 
+						pileup.getBaseCount(idx, ref_char, true), 
+						pileup.getBaseCount(idx, alt_char, false), 
+						pileup.getBaseCount(idx, alt_char, true)
+						);
+				gb.attribute(formatFisherStrand.getID(), fisher.getAsDouble());
+				
+				if(fisher.getAsDouble()< this.fisher_strand_bias) {
+					gb.attribute(VCFConstants.GENOTYPE_FILTER_KEY, formatFisherStrand.getID());
+					filters.add(formatFisherStrand.getID());
+					}
+				
+				genotypes.add(gb.make());
+				samplesWithGt.add(compound.sn);
+				} // end of loop compound
+			
+			//no genotype found here, don't create a variant
+			if(samplesWithGt.isEmpty()) continue;
+			if(filters.isEmpty()) {
+				vcb.passFilters();
+			} else
+				{
+				vcb.filters(filters);
 				}
-			final char c =  negativeStrand ?
-				(char)Character.toLowerCase(base):
-				(char)Character.toUpperCase(base);
-			p.counter.put(c, p.counter.getOrDefault(c,0)+1);
-			}
+			if(max_gq>0) vcb.log10PError(max_gq/-10.0);
+			vcb.attribute(infoNSamples.getID(), samplesWithGt.size());
+			vcb.attribute(infoSamples.getID(),new ArrayList<>(samplesWithGt));
+			vcb.genotypes(genotypes);
+			this.vcw.add(vcb.make());
+			} //end loop over alt base
 		}
 
 	
 	@Override
 	public int doWork(List<String> args) {
-		VariantContextWriter vcw = null;
 		ReferenceSequenceFile referenceSequenceFile = null;
 		try {
 			referenceSequenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(this.faidx);
@@ -220,9 +322,27 @@ public class BamHeteroplasmy extends Launcher {
 			
 			this.chrMSequence = Objects.requireNonNull(referenceSequenceFile.getSequence(ssr1.getSequenceName()));
 			
+			/* all the partitions that can be found in the BAMs, to get the number of samples of the pileup */
+			final Map<String,Integer> sample2index = new HashMap<>();
+			for(final Path bam1File:all_bams) {
+				try(SamReader bam1 = srf.open(bam1File)) {
+					final String defaultName = bam1File.getFileName().toString();
+					final List<SAMReadGroupRecord> readGroups = bam1.getFileHeader().getReadGroups();
+					if(readGroups.isEmpty()) {
+						/* the reads are assigned to the file name (or to 'all' for partition 'any') */
+						sample2index.putIfAbsent(this.partition.apply(null, defaultName), sample2index.size());
+						}
+					for(final SAMReadGroupRecord rg: readGroups) {
+						sample2index.putIfAbsent(this.partition.apply(rg, defaultName), sample2index.size());
+						}
+					}
+				}
 			
-			final Map<String,SampleHeteroplasmy> sample2heteroplasmy= new HashMap<>();
-			
+			/* the whole organelle fits in the pileup: the BAMs don't need to be merged */
+			final int chrMLength = this.chrMSequence.length();
+			final PileupAccumulator pileup = new PileupAccumulator(Math.max(1, sample2index.size()), chrMLength+1, this::writeColumn);
+			pileup.setMinBaseQuality(this.baseq);
+			pileup.reset(chrMLength);
 			
 			for(final Path bam1File:all_bams) {
 				final SamReader bam1 = srf.open(bam1File);
@@ -251,42 +371,21 @@ public class BamHeteroplasmy extends Launcher {
 						) continue;
 						
 					final String sampleName = this.partition.getPartion(rec,bam1File.getFileName().toString());
-					SampleHeteroplasmy sampleData = sample2heteroplasmy.get(sampleName);
+					SampleHeteroplasmy sampleData = this.sample2heteroplasmy.get(sampleName);
 					if(sampleData==null) {
-						sampleData = new SampleHeteroplasmy(sampleName);
-						sample2heteroplasmy.put(sampleName,sampleData);
+						final Integer idx = sample2index.get(sampleName);
+						if(idx==null) throw new IllegalStateException("Cannot find sample "+sampleName+" in "+bam1File);
+						sampleData = new SampleHeteroplasmy(sampleName,idx);
+						this.sample2heteroplasmy.put(sampleName,sampleData);
 					}
 					
 					final Cigar cigar = rec.getCigar();
 					if(cigar==null || cigar.isEmpty()) continue;
 					if(cigar.numCigarElements()>1 &&
 						cigar.getCigarElements().stream().filter(CE->CE.getOperator().isClipping()).mapToInt(CE->CE.getLength()).sum()> this.max_clip) continue;
-					final byte bases[]=rec.getReadBases();
-					if(bases==SAMRecord.NULL_SEQUENCE) continue;
+					if(rec.getReadBases()==SAMRecord.NULL_SEQUENCE) continue;
 					
-					final byte qualities[]=rec.getBaseQualities();
-					
-					int refpos = rec.getUnclippedStart();
-					int readpos=0;
-					for(final CigarElement ce:cigar) {
-						final CigarOperator op =ce.getOperator();
-						if(op.consumesReferenceBases()) {
-							if(op.consumesReadBases())
-								{
-								for(int i=0;i< ce.getLength();i++) {
-									final int pos1 = refpos+i;
-									if(pos1<1 || pos1> this.chrMSequence.length()) continue;
-									if(qualities!=SAMRecord.NULL_QUALS && qualities[readpos+i] < this.baseq) continue;
-									
-									sampleData.visit(pos1,rec.getReadNegativeStrandFlag(),bases[readpos+i]);
-									}
-								}
-							refpos+=ce.getLength();
-							}
-						if(op.consumesReadBases()) {
-							readpos+=ce.getLength();
-							}
-						}
+					pileup.add(sampleData.index, rec);
 					}
 				iter.close();
 				bam1.close();
@@ -304,179 +403,27 @@ public class BamHeteroplasmy extends Launcher {
 			metaData.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.ALLELE_COUNT_KEY,true));
 			metaData.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.ALLELE_FREQUENCY_KEY,true));
 			metaData.add(VCFStandardHeaderLines.getInfoLine(VCFConstants.END_KEY,true));
-			
-			final VCFFormatHeaderLine formatHeteroPlasmy = new VCFFormatHeaderLine(
-					"HP",
-					1,
-					VCFHeaderLineType.Float,
-					"Heteroplasmy (read alt/depth)"
-					);
 			metaData.add(formatHeteroPlasmy);
-			final VCFFormatHeaderLine formatFisherStrand = new VCFFormatHeaderLine(
-					"FS",
-					1,
-					VCFHeaderLineType.Float,
-					"Fisher Strand"
-					);
 			metaData.add(formatFisherStrand);
-			
-			final VCFFormatHeaderLine formatDP8 = new VCFFormatHeaderLine(
-					"DP8",
-					8,
-					VCFHeaderLineType.Integer,
-					"number of bases ACGT(formard) acgt(reverse) "
-					);
 			metaData.add(formatDP8);
-			
-			final VCFInfoHeaderLine infoSamples = new VCFInfoHeaderLine(
-					"SAMPLES",
-					VCFHeaderLineCount.UNBOUNDED,
-					VCFHeaderLineType.String,
-					"Samples with genotype"
-					);
 			metaData.add(infoSamples);
-			
-			final VCFInfoHeaderLine infoNoRefSamples = new VCFInfoHeaderLine(
-					"NOREFSAMPLES",
-					VCFHeaderLineCount.UNBOUNDED,
-					VCFHeaderLineType.String,
-					"Samples without REF base"
-					);
 			metaData.add(infoNoRefSamples);
-			
-			final VCFInfoHeaderLine infoNSamples = new VCFInfoHeaderLine(
-					"NSAMPLES",
-					1,
-					VCFHeaderLineType.Integer,
-					"Number of Samples with genotype"
-					);
 			metaData.add(infoNSamples);
 			
 			metaData.add(new VCFFilterHeaderLine(formatFisherStrand.getID(),"Fails fisher test for Strands : "+this.fisher_strand_bias));
 			
-			final VCFHeader header=new VCFHeader(metaData,sample2heteroplasmy.keySet()); 
+			final VCFHeader header=new VCFHeader(metaData,this.sample2heteroplasmy.keySet()); 
 			header.setSequenceDictionary(dict1);
 			JVarkitVersion.getInstance().addMetaData(this, header);
 			
-			vcw = VCFUtils.createVariantContextWriterToPath(this.outputFile);
-			vcw.writeHeader(header);
+			this.vcw = VCFUtils.createVariantContextWriterToPath(this.outputFile);
+			this.vcw.writeHeader(header);
 			
+			/* write the variants for each covered position */
+			pileup.finish();
 			
-			for(int pos1=1; pos1 <= this.chrMSequence.length();pos1++) {
-				final byte ref_base = this.chrMSequence.getBases()[pos1-1];
-				final Allele ref = Allele.create(ref_base, true);
-				for(int alt_base: ACGT) {
-					if(alt_base==(int)ref_base) continue;
-					final Set<String> filters = new HashSet<>();
-					final Set<String> samplesWithGt = new TreeSet<>();
-					final Set<String> noRefSamples = new TreeSet<>();
-					final Allele alt= Allele.create((byte)alt_base, false);
-					int max_gq = 0;
-					final VariantContextBuilder vcb = new VariantContextBuilder(null, this.chrMSequence.getName(), pos1, pos1,
-							Arrays.asList(ref,alt));
-					
-					final List<Genotype> genotypes = new ArrayList<>(sample2heteroplasmy.size());
-					for(SampleHeteroplasmy compound: sample2heteroplasmy.values()) {
-						final Pileup pileup = compound.pos1ToPileups.get(pos1);
-						
-						if( pileup==null ) {
-							continue;
-							}
-						
-						if(pileup.count(ref)==0) {
-							noRefSamples.add(compound.sn);
-							}
-						
-						if( pileup.count(alt) < min_allele_dp  ) {
-							genotypes.add(GenotypeBuilder.createMissing(compound.sn, 1));
-							continue;
-							}
-						
-						
-						final int dp ;
-						if(use_all_alleles) {
-							dp= pileup.counter.values().
-									stream().
-									mapToInt(I->I).
-									sum();
-							}
-						else
-							{
-							dp = pileup.countIgnoreCase(ref) +  pileup.countIgnoreCase(alt);
-							}
-						
-						if(dp==0) {
-							genotypes.add(GenotypeBuilder.createMissing(compound.sn, 1));
-							continue;
-							}
-						
-						final GenotypeBuilder gb = new GenotypeBuilder(compound.sn,Collections.singletonList(alt));
-
-						
-						gb.DP(dp);
-						gb.AD(new int[] {
-								pileup.countIgnoreCase(ref),
-								pileup.countIgnoreCase(alt)
-							});
-						
-						final double p = pileup.countIgnoreCase(alt)/dp;
-						gb.attribute(formatHeteroPlasmy.getID(), p);
-						
-					
-						double tmp = 1.96 * Math.sqrt( ( p * ( 1.0 - p ) ) / dp );
-						double min_confidence = Math.max(p-tmp, 0.0);
-						double max_confidence = Math.min(p+tmp, 1.0);
-						double distance = max_confidence - min_confidence;
-						int gq = (int)(1.0-distance)*99;
-						max_gq = Math.max(max_gq, gq);
-						gb.GQ(gq);
-						
-						final int dp8[]=new int[ACGT.length*2];
-						for(int y=0;y< ACGT.length;++y) {
-							char b = (char)ACGT[y];
-							dp8[y] = pileup.countPlus(b);
-							dp8[y + ACGT.length ] = pileup.countMinus(b);
-							}
-						
-						gb.attribute(formatDP8.getID(),dp8);
-						
-							
-						final FisherExactTest fisher = FisherExactTest.compute(
-								pileup.countPlus(ref), 
-								pileup.countMinus(ref), 
-								pileup.countPlus(alt), 
-								pileup.countMinus(alt)
-								);
-						gb.attribute(formatFisherStrand.getID(), fisher.getAsDouble());
-						
-						if(fisher.getAsDouble()< this.fisher_strand_bias) {
-							gb.attribute(VCFConstants.GENOTYPE_FILTER_KEY, formatFisherStrand.getID());
-							filters.add(formatFisherStrand.getID());
-							}
-						
-						genotypes.add(gb.make());
-						samplesWithGt.add(compound.sn);
-						} // end of loop compound
-					
-					//no genotype found here, don't create a variant
-					if(samplesWithGt.isEmpty()) continue;
-					if(filters.isEmpty()) {
-						vcb.passFilters();
-					} else
-						{
-						vcb.filters(filters);
-						}
-					if(max_gq>0) vcb.log10PError(max_gq/-10.0);
-					vcb.attribute(infoNSamples.getID(), samplesWithGt.size());
-					vcb.attribute(infoSamples.getID(),new ArrayList<>(samplesWithGt));
-					vcb.genotypes(genotypes);
-					vcw.add(vcb.make());
-					
-					
-					} //end loop over alt base
-				}
-			vcw.close();
-			vcw=null;
+			this.vcw.close();
+			this.vcw=null;
 			referenceSequenceFile.close();
 			referenceSequenceFile=null;
 			return 0;
@@ -484,7 +431,7 @@ public class BamHeteroplasmy extends Launcher {
 			LOG.error(e);
 			return -1;
 		} finally {
-			CloserUtil.close(vcw);
+			CloserUtil.close(this.vcw);
 			CloserUtil.close(referenceSequenceFile);
 			}
 		}
@@ -40,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -69,7 +70,7 @@ import com.github.lindenb.jvarkit.util.bio.gtf.GTFLine;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
-import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
+import com.github.lindenb.jvarkit.variant.vcf.VariantTileCache;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
@@ -96,7 +97,6 @@ import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 import htsjdk.variant.vcf.VCFHeader;
-import htsjdk.variant.vcf.VCFReader;
 /**
 BEGIN_DOC
 
@@ -142,6 +142,13 @@ public  class HtsFileServer extends Launcher {
 	private Path faidxRef = null;
 	@Parameter(names= {"-G","--no-genotype"},description="remove genotypes from vcf")
 	private boolean remove_genotype_vcf = false;
+	@Parameter(names={"--tile-size"},description=VariantTileCache.OPT_TILE_SIZE_DESC)
+	private int tileSize = VariantTileCache.DEFAULT_TILE_SIZE;
+	@Parameter(names={"--cache-size"},description=VariantTileCache.OPT_CACHE_SIZE_DESC)
+	private long cacheSize = VariantTileCache.DEFAULT_CACHE_SIZE;
+
+	/** decoded variants and VCF readers, shared by the servlet threads */
+	private VariantTileCache tileCache = null;
 
 	
 	/** base handler for any data that can be querid by interval */
@@ -171,11 +178,8 @@ public  class HtsFileServer extends Launcher {
 		private boolean has_genotypes;
 		VcfInput(final Path path) throws IOException{
 			super(path);
-			// try open with index
-			try(VCFReader ignore= VCFReaderFactory.makeDefault().open(path, true)) {
-				has_genotypes = ignore.getHeader().hasGenotypingData();
-				//nothing
-				}
+			// open with index, the reader is kept in the pool
+			has_genotypes = tileCache.getHeader(path).hasGenotypingData();
 			}
 		
 		@Override
@@ -206,32 +210,26 @@ public  class HtsFileServer extends Launcher {
 			vcb.setReferenceDictionary(dictionary);
 			vcb.clearOptions();
 			try(VariantContextWriter w=vcb.build()) {
-				try(VCFReader r = VCFReaderFactory.makeDefault().open(getPath(), true)) {
-					final VCFHeader header = r.getHeader();
-					if(remove_genotype_vcf && this.has_genotypes) {
-						w.writeHeader(new VCFHeader(header.getMetaDataInInputOrder(),Collections.emptyList()));
-						}
-					else
-						{
-						w.writeHeader(header);
-						}
-					
-					CloseableIterator<VariantContext> iter;
-					if(loc==null) {
-						iter = r.iterator();
-						}
-					else
-						{
-						iter = r.query(loc);
-						}
+				final VCFHeader header = tileCache.getHeader(getPath());
+				if(remove_genotype_vcf && this.has_genotypes) {
+					w.writeHeader(new VCFHeader(header.getMetaDataInInputOrder(),Collections.emptyList()));
+					}
+				else
+					{
+					w.writeHeader(header);
+					}
+				
+				try(CloseableIterator<VariantContext> iter = (loc==null?
+						tileCache.iterator(getPath()):
+						tileCache.query(getPath(), loc, remove_genotype_vcf)
+						)) {
 					while(iter.hasNext()) {
 						VariantContext ctx=iter.next();
-						if(remove_genotype_vcf) {
+						if(remove_genotype_vcf && ctx.hasGenotypes()) {
 							ctx =  new VariantContextBuilder(ctx).noGenotypes().make();
 							}
 						w.add(ctx);
 						}
-					iter.close();
 					}
 				}
 			bos.flush();
@@ -476,6 +474,17 @@ public  class HtsFileServer extends Launcher {
 			}
 		
 		
+		/* the content only depends on the files and on the interval */
+		final String etag = "\"" + StringUtils.md5(selected.stream().
+				map(I->this.tileCache.getETag(I.getPath(), StringUtils.ifBlank(intervalstr,"")+"|"+this.remove_genotype_vcf)).
+				collect(Collectors.joining(","))) + "\"";
+		if(etag.equals(request.getHeader("If-None-Match"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+			}
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", "no-cache");
+		
 		String prefix= StringUtils.now()+".";
 		if(loc!=null) {
 			prefix += loc.getContig()+"_"+loc.getStart()+"_"+loc.getEnd()+".";
@@ -721,6 +730,7 @@ public  class HtsFileServer extends Launcher {
 	
 		try {
 			this.dictionary  = SequenceDictionaryUtils.extractRequired(this.faidxRef);
+			this.tileCache = new VariantTileCache(this.tileSize, this.cacheSize);
 			
 			final Set<String> filenames = new HashSet<>();
 			for(final Path path: IOUtils.unrollPaths(args)) {
@@ -788,7 +798,10 @@ public  class HtsFileServer extends Launcher {
 			LOG.error(err);
 			return -1;
 			}
-		
+		finally {
+			if(this.tileCache!=null) this.tileCache.close();
+			this.tileCache = null;
+			}
 		}	
 
 
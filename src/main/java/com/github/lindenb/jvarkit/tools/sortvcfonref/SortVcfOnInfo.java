@@ -39,6 +39,7 @@ import com.github.lindenb.jvarkit.jcommander.OnePassVcfLauncher;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
@@ -48,7 +49,6 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import htsjdk.variant.vcf.VCFIterator;
-import htsjdk.variant.vcf.VCFRecordCodec;
 
 /**
 BEGIN_DOC
@@ -259,7 +259,7 @@ public class SortVcfOnInfo extends OnePassVcfLauncher {
 			
 			sorted=SortingCollection.newInstance(
 					VariantContext.class,
-					new VCFRecordCodec(header),
+					new BinaryVariantContextCodec(header),
 					cmp,
 					this.writingSortingCollection.getMaxRecordsInRam(),
 					this.writingSortingCollection.getTmpPaths()
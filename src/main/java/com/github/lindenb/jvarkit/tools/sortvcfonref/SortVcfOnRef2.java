@@ -36,6 +36,7 @@ import com.github.lindenb.jvarkit.jcommander.OnePassVcfLauncher;
 import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
@@ -44,7 +45,6 @@ import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFIterator;
-import htsjdk.variant.vcf.VCFRecordCodec;
 
 /**
 
@@ -102,7 +102,7 @@ public class SortVcfOnRef2 extends OnePassVcfLauncher
 
     		array= SortingCollection.newInstance(
 					VariantContext.class,
-                    new VCFRecordCodec(h2,true),
+                    new BinaryVariantContextCodec(h2),
                     h2.getVCFRecordComparator(),
                     this.writingSortingCollection.getMaxRecordsInRam(),
                     this.writingSortingCollection.getTmpPaths()
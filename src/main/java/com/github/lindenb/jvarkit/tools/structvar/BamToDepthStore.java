@@ -0,0 +1,316 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.tools.structvar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import com.beust.jcommander.Parameter;
+import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.lang.JvarkitException;
+import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.samtools.BinnedDepthStore;
+import com.github.lindenb.jvarkit.samtools.BinnedDepthWriter;
+import com.github.lindenb.jvarkit.samtools.CoverageFactory;
+import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
+import com.github.lindenb.jvarkit.util.bio.DistanceParser;
+import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
+import com.github.lindenb.jvarkit.util.jcommander.Launcher;
+import com.github.lindenb.jvarkit.util.jcommander.NoSplitter;
+import com.github.lindenb.jvarkit.util.jcommander.Program;
+import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.util.samtools.SAMRecordPartition;
+
+import htsjdk.samtools.GenomicIndexUtil;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamFiles;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.FileExtensions;
+import htsjdk.samtools.util.SequenceUtil;
+
+/**
+BEGIN_DOC
+
+## Motivation
+
+Build or extend a persistent store of binned depth. The store is a directory containing one compressed, indexed column per sample.
+CNV tools and scripts can then query the depth of any sample/region using `com.github.lindenb.jvarkit.samtools.BinnedDepthStore`
+without scanning the BAMs again. Adding a new sample to an existing store only writes one new file.
+
+Two sources are available:
+
+  * the reads of the BAM (default). The value of a bin is the mean depth in the bin. The depth is computed using the same rules as the other jvarkit coverage tools.
+  * the linear index of the BAI (`--bai`). The value of a bin (16384 bp) is the number of compressed bytes in the BAM for that bin (like `goleft indexcov`). This is very fast as the BAM is not read.
+
+A store can only contain columns with the same bin size and the same dictionary.
+
+## Example
+
+```
+$ java -jar dist/bam2depthstore.jar -R src/test/resources/rotavirus_rf.fa --bin 100 -o STORE src/test/resources/S*.bam
+$ ls STORE/
+S1.depth.bin  S2.depth.bin  S3.depth.bin  S4.depth.bin  S5.depth.bin
+```
+
+END_DOC 
+ */
+@Program(
+	name="bam2depthstore",
+	description="Create or extend a persistent store of binned depth from BAM files or from their BAI index.",
+	keywords={"cnv","bam","depth","coverage","bai"},
+	creationDate="20221019",
+	modificationDate="20221019",
+	generate_doc=false
+	)
+public class BamToDepthStore extends Launcher {
+	private static final Logger LOG = Logger.build( BamToDepthStore.class).make();
+	/** size of the windows of the linear index in a BAI */
+	private static final int BAI_LINEAR_WINDOW = 16_384;
+	/** number of bins fetched per query to the CoverageFactory */
+	private static final int BINS_PER_QUERY = 1_000;
+	
+	@Parameter(names={"-o","--output","--store"},description="Output store directory. Will be created if it doesn't exist.",required=true)
+	private Path storeDir = null;
+	@Parameter(names={"-R","--reference"},description=INDEXED_FASTA_REFERENCE_DESCRIPTION,required=true)
+	private Path refPath = null;
+	@Parameter(names={"--mapq"},description = "min mapping quality")
+	private int min_mapq=1;
+	@Parameter(names = {"--bin","--bin-size"}, description = "Bin size. Ignored with --bai. "+DistanceParser.OPT_DESCRIPTION,converter=DistanceParser.StringConverter.class,splitter=NoSplitter.class)
+	private int bin_size = 1_000;
+	@Parameter(names={"--bai"},description="Don't read the BAM, use the linear index of the BAI. The bin size is "+BAI_LINEAR_WINDOW+" and the values are the number of compressed bytes.")
+	private boolean use_bai = false;
+	@Parameter(names={"--partition"},description=SAMRecordPartition.OPT_DESC)
+	private SAMRecordPartition partition = SAMRecordPartition.sample;
+	@Parameter(names={"--force"},description="Replace the samples that are already in the store.")
+	private boolean force_replace = false;
+	@Parameter(names={"-j","--jobs"},description="Number of parallel jobs. Each BAM is read by one job. A value lower than 1 means use all procs available.")
+	private int nJobs = 1;
+
+	private SamReader openSamReader(final Path path) {
+		return SamReaderFactory.makeDefault().
+			referenceSequence(this.refPath).
+			validationStringency(ValidationStringency.LENIENT).
+			open(path);
+		}
+	
+	private Set<String> getSamples(final SAMFileHeader header,final Path path) {
+		final Set<String> samples = header.getReadGroups().stream().
+				map(RG->this.partition.apply(RG, null)).
+				filter(S->!StringUtils.isBlank(S)).
+				collect(Collectors.toCollection(TreeSet::new));
+		if(samples.isEmpty() && this.use_bai) {
+			samples.add(IOUtils.getFilenameWithoutCommonSuffixes(path));
+			}
+		return samples;
+		}
+	
+	/** fill the store using the reads of the BAM */
+	private void readBam(final Path path,final SAMSequenceDictionary dict) throws IOException {
+		final CoverageFactory coverageFactory = new CoverageFactory().
+				setMappingQuality(this.min_mapq).
+				setPartition(this.partition);
+		try(SamReader sr = openSamReader(path)) {
+			final SAMFileHeader header = sr.getFileHeader();
+			SequenceUtil.assertSequenceDictionariesEqual(dict, SequenceDictionaryUtils.extractRequired(header));
+			for(final String sample: getSamples(header,path)) {
+				LOG.info(path+": "+sample);
+				try(BinnedDepthWriter w = BinnedDepthStore.createWriter(this.storeDir, sample, dict, this.bin_size)) {
+					for(final SAMSequenceRecord ssr: dict.getSequences()) {
+						w.setContig(ssr.getSequenceName());
+						final int n_bins = BinnedDepthStore.getBinCount(ssr.getSequenceLength(), this.bin_size);
+						for(int b0=0;b0 < n_bins;b0+=BINS_PER_QUERY) {
+							final int start1 = 1 + b0 * this.bin_size;
+							final int end1 = (int)Math.min((long)(b0+BINS_PER_QUERY)*this.bin_size, ssr.getSequenceLength());
+							final int[] depths = coverageFactory.getSimpleCoverage(sr, new SimpleInterval(ssr.getSequenceName(),start1,end1), sample).toIntArray();
+							for(int i=0;i< depths.length;i+=this.bin_size) {
+								final int n = Math.min(this.bin_size, depths.length - i);
+								double sum = 0;
+								for(int j=0;j< n;j++) sum+=depths[i+j];
+								w.add((float)(sum/n));
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	
+	/** fill the store using the linear index of the BAI */
+	private void readBai(final Path path,final SAMSequenceDictionary dict) throws IOException {
+		final String sample;
+		try(SamReader sr = openSamReader(path)) {
+			final SAMFileHeader header = sr.getFileHeader();
+			SequenceUtil.assertSequenceDictionariesEqual(dict, SequenceDictionaryUtils.extractRequired(header));
+			final Set<String> samples = getSamples(header,path);
+			if(samples.size()!=1) throw new IllegalArgumentException("Expected only one sample in "+path+" but got "+String.join(",", samples));
+			sample = samples.iterator().next();
+			}
+		final Path baiPath = SamFiles.findIndex(path);
+		if(baiPath==null || !baiPath.getFileName().toString().endsWith(FileExtensions.BAI_INDEX)) {
+			throw new IOException("Cannot find "+ FileExtensions.BAI_INDEX+" associated to "+path);
+			}
+		LOG.info(baiPath+": "+sample);
+		// see the SAM specification, section 5.2
+		final ByteBuffer bai = ByteBuffer.wrap(Files.readAllBytes(baiPath)).order(ByteOrder.LITTLE_ENDIAN);
+		final byte[] magic = new byte[4];
+		bai.get(magic);
+		if(!(magic[0]=='B' && magic[1]=='A' && magic[2]=='I' && magic[3]==1)) throw new IOException("Bad magic in "+baiPath);
+		final int n_ref = bai.getInt();
+		if(n_ref!=dict.size()) throw new IOException("Expected "+dict.size()+" sequences in "+baiPath+" but got "+n_ref);
+		try(BinnedDepthWriter w = BinnedDepthStore.createWriter(this.storeDir, sample, dict, BAI_LINEAR_WINDOW)) {
+			for(int tid=0;tid< n_ref;++tid) {
+				final int n_bin = bai.getInt();
+				// compressed offset of the end of the last read on this contig
+				long contig_end = 0L;
+				for(int i=0;i< n_bin;i++) {
+					final int bin = bai.getInt();
+					final int n_chunk = bai.getInt();
+					if(bin==GenomicIndexUtil.MAX_BINS) {
+						// pseudo-bin: contains the number of mapped/unmapped reads, not offsets
+						bai.position(bai.position() + n_chunk * 2 * Long.BYTES);
+						continue;
+						}
+					for(int j=0;j< n_chunk;j++) {
+						bai.getLong();//chunk_beg
+						contig_end = Math.max(contig_end, bai.getLong() >>> 16);
+						}
+					}
+				final int n_intv = bai.getInt();
+				final long[] offsets = new long[n_intv];
+				for(int i=0;i< n_intv;i++) {
+					// compressed offset of the virtual file offset
+					offsets[i] = bai.getLong() >>> 16;
+					}
+				final SAMSequenceRecord ssr = dict.getSequence(tid);
+				final int n_bins = Math.min(n_intv,BinnedDepthStore.getBinCount(ssr.getSequenceLength(), BAI_LINEAR_WINDOW));
+				w.setContig(ssr.getSequenceName());
+				for(int i=0;i < n_bins;i++) {
+					final long next = (i+1 < n_intv ? offsets[i+1] : contig_end);
+					w.add(Math.max(0L, next - offsets[i]));
+					}
+				}
+			}
+		}
+	
+	@Override
+	public int doWork(final List<String> args) {
+		ExecutorService executorService = null;
+		try {
+			if(this.use_bai) this.bin_size = BAI_LINEAR_WINDOW;
+			if(this.bin_size<1) {
+				LOG.error("bad bin size");
+				return -1;
+				}
+			final SAMSequenceDictionary dict = SequenceDictionaryUtils.extractRequired(this.refPath);
+			final List<Path> inputBams = IOUtils.unrollPaths(args);
+			if(inputBams.isEmpty()) {
+				LOG.error("input is missing");
+				return -1;
+				}
+			// check the existing samples of the store
+			final Set<String> samples = new HashSet<>();
+			if(Files.isDirectory(this.storeDir)) {
+				try(BinnedDepthStore store = BinnedDepthStore.open(this.storeDir)) {
+					if(!store.getSamples().isEmpty()) {
+						if(store.getBinSize()!=this.bin_size) {
+							LOG.error("bin size in store is "+store.getBinSize()+" but user specified "+this.bin_size);
+							return -1;
+							}
+						if(!dict.isSameDictionary(store.getSequenceDictionary())) {
+							throw new JvarkitException.DictionariesAreNotTheSame(dict, store.getSequenceDictionary());
+							}
+						}
+					if(!this.force_replace) samples.addAll(store.getSamples());
+					}
+				}
+			for(final Path path:inputBams) {
+				try(SamReader sr = openSamReader(path)) {
+					for(final String sn: getSamples(sr.getFileHeader(),path)) {
+						if(!samples.add(sn)) {
+							LOG.error("duplicate sample "+sn+" in "+path+". (Use --force to replace a sample in the store).");
+							return -1;
+							}
+						}
+					}
+				}
+			
+			final int nThreads = this.nJobs < 1 ? Runtime.getRuntime().availableProcessors() : this.nJobs;
+			executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(nThreads, inputBams.size())));
+			final List<Future<Void>> futures = new ArrayList<>(inputBams.size());
+			for(final Path path:inputBams) {
+				final Callable<Void> task = ()->{
+					if(this.use_bai) {
+						readBai(path,dict);
+						}
+					else
+						{
+						readBam(path,dict);
+						}
+					return null;
+					};
+				futures.add(executorService.submit(task));
+				}
+			for(final Future<Void> f:futures) {
+				f.get();
+				}
+			executorService.shutdown();
+			executorService = null;
+			
+			try(BinnedDepthStore store = BinnedDepthStore.open(this.storeDir)) {
+				LOG.info(store.toString());
+				}
+			return 0;
+			}
+		catch(final Throwable err) {
+			LOG.error(err);
+			return -1;
+			}
+		finally {
+			if(executorService!=null) executorService.shutdownNow();
+			}
+		}
+	
+	public static void main(final String[] args) {
+		new BamToDepthStore().instanceMainWithExit(args);
+		}
+	}
@@ -25,27 +25,35 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.tools.structvar;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
-import java.io.EOFException;
-import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.OptionalDouble;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
 import com.github.lindenb.jvarkit.io.ArchiveFactory;
 import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.lang.JvarkitException;
 import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.lang.primitive.IntArray;
 import com.github.lindenb.jvarkit.math.DiscreteMedian;
 import com.github.lindenb.jvarkit.math.stats.Percentile;
+import com.github.lindenb.jvarkit.samtools.DepthAccumulator;
 import com.github.lindenb.jvarkit.samtools.SAMRecordDefaultFilter;
 import com.github.lindenb.jvarkit.tools.structvar.indexcov.IndexCovUtils;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
@@ -54,17 +62,12 @@ import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
 import com.github.lindenb.jvarkit.util.bio.bed.BedLine;
 import com.github.lindenb.jvarkit.util.bio.bed.BedLineCodec;
 import com.github.lindenb.jvarkit.util.bio.fasta.ContigNameConverter;
-import com.github.lindenb.jvarkit.util.iterator.EqualRangeIterator;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.jcommander.NoSplitter;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
-import com.github.lindenb.jvarkit.util.picard.AbstractDataCodec;
 import com.github.lindenb.jvarkit.variant.variantcontext.writer.WritingVariantsDelegate;
 
-import htsjdk.samtools.Cigar;
-import htsjdk.samtools.CigarElement;
-import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMSequenceDictionary;
@@ -75,7 +78,6 @@ import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.SequenceUtil;
-import htsjdk.samtools.util.SortingCollection;
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.tribble.readers.TabixReader;
 import htsjdk.variant.variantcontext.Allele;
@@ -101,6 +103,10 @@ BEGIN_DOC
  java -jar dist/coveragematrix.jar -R src/test/resources/rotavirus_rf.fa --exclude gaps.tsv.gz src/test/resources/S*.bam
 ```
 
+## Parallelization
+
+Each BAM is read only once, by one of the `--jobs` workers. A worker writes the normalized depth of each bin in a temporary file (one column per sample).
+The columns are then merged to produce the VCF. The number of files opened at the same time during the merge is the number of BAMs.
 
 END_DOC 
  */
@@ -109,7 +115,7 @@ END_DOC
 	description="generate a VCF file from bam coverage",
 	keywords={"cnv","bam","depth","coverage"},
 	creationDate="20200618",
-	modificationDate="20200618",
+	modificationDate="20221019",
 	generate_doc=false
 	)
 public class CoverageMatrix extends Launcher {
@@ -130,71 +136,220 @@ public class CoverageMatrix extends Launcher {
 	private String restrictContig = null;
 	@Parameter(names = {"--treshold"}, description = IndexCovUtils.TRESHOLD_OPT_DESC)
 	private double indexCovTreshold = IndexCovUtils.DEFAULT_TRESHOLD;
+	@Parameter(names={"-j","--jobs"},description="Number of parallel jobs. Each BAM is read once by one job. A value lower than 1 means use all procs available.")
+	private int nJobs = 1;
 	@ParametersDelegate
 	private WritingSortingCollection writingSortingCollection= new WritingSortingCollection();
 	@ParametersDelegate
 	private WritingVariantsDelegate writingVariantsDelegate = new WritingVariantsDelegate();
 
-
-	
-
-	private static class CovItem {
-		int sample_idx;
-		int pos;
-		float depth;
-		float stddev;
-		int compare0(CovItem item) {
-			int i = Integer.compare(this.pos, item.pos);
-			if(i!=0) return i;
-			return  Integer.compare(this.sample_idx, item.sample_idx);
+	/** bins of one contig. The bins are the same for all the samples */
+	private static class ContigBins {
+		final SAMSequenceRecord ssr;
+		/** sorted 0-based [start,end[ black-listed intervals */
+		final List<int[]> blackListed;
+		/** 0-based start of the bins */
+		final IntArray binStarts = new IntArray();
+		ContigBins(final SAMSequenceRecord ssr,final List<int[]> blackListed,final int bin_size) {
+			this.ssr = ssr;
+			this.blackListed = new ArrayList<>(blackListed);
+			this.blackListed.sort((A,B)->Integer.compare(A[0], B[0]));
+			// bins are consecutive and cannot overlap a black-listed region
+			final int contigLength = ssr.getSequenceLength();
+			int idx = 0;
+			int pos0 = 0;
+			while(pos0 < contigLength) {
+				while(idx < this.blackListed.size() && this.blackListed.get(idx)[1] <= pos0) idx++;
+				if(idx < this.blackListed.size() && this.blackListed.get(idx)[0] <= pos0) {
+					pos0 = this.blackListed.get(idx)[1];
+					continue;
+					}
+				final int end0 = (idx < this.blackListed.size() ? this.blackListed.get(idx)[0] : contigLength);
+				while(pos0 + bin_size <= end0) {
+					this.binStarts.add(pos0);
+					pos0 += bin_size;
+					}
+				pos0 = end0;
+				}
 			}
 		}
 
-	private static class CovItemCodec extends AbstractDataCodec<CovItem> {
+	/** receives the depth of each position of a contig for one sample and collects the bins */
+	private class BinCollector implements DepthAccumulator.DepthConsumer {
+		private final ContigBins contigBins;
+		private int blackListedIdx = 0;
+		/** index of the current bin */
+		private int bin_idx = 0;
+		/** median depth over the whole contig */
+		final DiscreteMedian<Integer> contigMedian = new DiscreteMedian<>();
+		private final DiscreteMedian<Integer> localMedian = new DiscreteMedian<>();
+		/** median depth of the bins */
+		final float[] binMedians;
+		/** standard deviation of the bins */
+		final float[] binStdDevs;
+		
+		BinCollector(final ContigBins contigBins) {
+			this.contigBins = contigBins;
+			this.binMedians = new float[contigBins.binStarts.size()];
+			this.binStdDevs = new float[contigBins.binStarts.size()];
+			}
+		
+		private boolean isBlackListed(final int pos0) {
+			for(;;) {
+				if(this.blackListedIdx >= this.contigBins.blackListed.size()) return false;
+				final int[] rgn = this.contigBins.blackListed.get(this.blackListedIdx);
+				if(pos0 < rgn[0]) return false;
+				if(pos0 < rgn[1]) return true;
+				this.blackListedIdx++;
+				}
+			}
+		
 		@Override
-		public CovItem decode(final DataInputStream dis) throws IOException
-			{
-			final CovItem item = new CovItem();
-			try {
-				item.sample_idx = dis.readInt();
+		public void accept(final int pos1,final int depth) {
+			final int pos0 = pos1 - 1;
+			if(!isBlackListed(pos0) && depth <= max_depth) {
+				this.contigMedian.add(depth);
 				}
-			catch(EOFException err) {
-				return null;
+			if(this.bin_idx >= this.binMedians.length) return;
+			final int bin_start0 = this.contigBins.binStarts.get(this.bin_idx);
+			if(pos0 < bin_start0) return;
+			// consider max_depth here ?
+			this.localMedian.add(depth);
+			if(1 + pos0 - bin_start0 == bin_size) {
+				this.binMedians[this.bin_idx] = (float)this.localMedian.getMedian().orElse(0.0);
+				this.binStdDevs[this.bin_idx] = (float)this.localMedian.getStandardDeviation().orElse(-1.0);
+				this.localMedian.clear();
+				this.bin_idx++;
 				}
-			item.pos= dis.readInt();
-			item.depth = dis.readFloat();
-			item.stddev = dis.readFloat();
-			return item;
 			}
-		@Override
-		public void encode(final DataOutputStream dos,final  CovItem o) throws IOException
-			{
-			dos.writeInt(o.sample_idx);
-			dos.writeInt(o.pos);
-			dos.writeFloat(o.depth);
-			dos.writeFloat(o.stddev);
+		}
+	
+	/** read one BAM, once, and write the normalized depth and the standard deviation of each bin in a temporary file */
+	private class SampleWorker implements Callable<Path> {
+		private final SAMSequenceDictionary dict;
+		private final List<ContigBins> contigs;
+		private final Path bamPath;
+		private final String sample;
+		private final Path tmpFile;
+		private DepthAccumulator depthAccumulator = null;
+		private BinCollector binCollector = null;
+		SampleWorker(final SAMSequenceDictionary dict,final List<ContigBins> contigs,final Path bamPath,final String sample,final Path tmpFile) {
+			this.dict = dict;
+			this.contigs = contigs;
+			this.bamPath = bamPath;
+			this.sample = sample;
+			this.tmpFile = tmpFile;
+			}
+		
+		private void beginContig(final ContigBins contigBins) {
+			this.binCollector = new BinCollector(contigBins);
+			this.depthAccumulator = new DepthAccumulator(this.binCollector).reset(contigBins.ssr.getSequenceLength());
 			}
+		
+		private void finishContig(final ContigBins contigBins,final DataOutputStream dos) throws java.io.IOException {
+			if(this.binCollector==null) beginContig(contigBins);
+			this.depthAccumulator.finish();
+			final double median = this.binCollector.contigMedian.getMedian().orElse(1.0);
+			LOG.info(this.sample+ " :"+contigBins.ssr.getSequenceName()+" median depth:"+median);
+			for(int i=0;i< this.binCollector.binMedians.length;i++) {
+				dos.writeFloat((float)(this.binCollector.binMedians[i]/median));
+				dos.writeFloat(this.binCollector.binStdDevs[i]);
+				}
+			this.binCollector = null;
+			this.depthAccumulator = null;
+			}
+		
 		@Override
-		public CovItemCodec clone()
-			{
-			return new CovItemCodec();
+		public Path call() throws Exception {
+			LOG.info("reading "+this.bamPath);
+			try(SamReader sr = openSamReader(this.bamPath)) {
+				final SAMFileHeader header= sr.getFileHeader();
+				SequenceUtil.assertSequenceDictionariesEqual(this.dict,header.getSequenceDictionary());
+				JvarkitException.BamBadSortOrder.verify(SAMFileHeader.SortOrder.coordinate, header);
+				try(DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(this.tmpFile)));
+					CloseableIterator<SAMRecord> siter = (StringUtils.isBlank(restrictContig)?
+						sr.iterator():
+						sr.queryOverlapping(restrictContig, 1, this.dict.getSequence(restrictContig).getSequenceLength()))
+					) {
+					int contig_idx = 0;
+					while(siter.hasNext()) {
+						final SAMRecord rec= siter.next();
+						if(rec.getReadUnmappedFlag()) continue;
+						if(!SAMRecordDefaultFilter.accept(rec, min_mapq)) continue;
+						final int tid = rec.getReferenceIndex();
+						while(contig_idx < this.contigs.size() && this.contigs.get(contig_idx).ssr.getSequenceIndex() < tid) {
+							finishContig(this.contigs.get(contig_idx),dos);
+							contig_idx++;
+							}
+						if(contig_idx >= this.contigs.size()) break;
+						if(this.contigs.get(contig_idx).ssr.getSequenceIndex() != tid) continue;
+						if(this.binCollector==null) beginContig(this.contigs.get(contig_idx));
+						this.depthAccumulator.add(rec);
+						this.depthAccumulator.advance(rec.getStart());
+						}
+					while(contig_idx < this.contigs.size()) {
+						finishContig(this.contigs.get(contig_idx),dos);
+						contig_idx++;
+						}
+					dos.flush();
+					}
+				}
+			LOG.info("done reading "+this.bamPath);
+			return this.tmpFile;
 			}
 		}
 	
-
+	private SamReader openSamReader(final Path path) {
+		return SamReaderFactory.
+				makeDefault().
+				referenceSequence(this.refPath).
+				validationStringency(ValidationStringency.LENIENT).
+				open(path);
+		}
+	
+	/** load the black-listed intervals for this contig */
+	private List<int[]> getBlackListed(final SAMSequenceRecord ssr) {
+		final List<int[]> blackListed = new ArrayList<>();
+		if(this.blackListedPath==null) return blackListed;
+		try(TabixReader tbr= new TabixReader(this.blackListedPath.toString())) {
+			final ContigNameConverter cvt = ContigNameConverter.fromContigSet(tbr.getChromosomes());
+			final String ctg = cvt.apply(ssr.getSequenceName());
+			if(!StringUtils.isBlank(ctg)) {
+				final BedLineCodec codec = new BedLineCodec();
+				final TabixReader.Iterator tbxr = tbr.query(ctg,1, ssr.getSequenceLength());
+				for(;;) {
+					final String line = tbxr.next();
+					if(line==null) break;
+					final BedLine bed = codec.decode(line);
+					if(bed==null) continue;
+					final int start0 = Math.max(bed.getStart(),1) - 1;
+					final int end0 = Math.min(bed.getEnd(), ssr.getSequenceLength());
+					if(start0 >= end0) continue;
+					blackListed.add(new int[] {start0,end0});
+					}
+				}
+			}
+		catch(Throwable err) {
+			LOG.warn(err);
+			}
+		return blackListed;
+		}
+	
 	@Override
 	public int doWork(final List<String> args) {
-		
+		if(this.nJobs<1)
+			{
+			this.nJobs = Math.max(1, Runtime.getRuntime().availableProcessors());
+			LOG.info("setting njobs to "+this.nJobs);
+			}
 		VariantContextWriter w = null;
+		ExecutorService executorService = null;
+		final List<Path> tmpFiles = new ArrayList<>();
+		final List<DataInputStream> columns = new ArrayList<>();
 		try
 			{
 			final IndexCovUtils indexCovUtils = new IndexCovUtils(this.indexCovTreshold);
 			final SAMSequenceDictionary dict = SequenceDictionaryUtils.extractRequired(this.refPath);
-			final SamReaderFactory samReaderFactory = SamReaderFactory.
-						makeDefault().
-						referenceSequence(CoverageMatrix.this.refPath).
-						validationStringency(ValidationStringency.LENIENT)
-						;
 			
 			 final List<Path> inputBams =  IOUtils.unrollPaths(args);
 			
@@ -202,11 +357,15 @@ public class CoverageMatrix extends Launcher {
 				LOG.error("not enough input bam file defined.");
 				return -1;
 				}
+			if(!StringUtils.isBlank(this.restrictContig) && dict.getSequence(this.restrictContig)==null) {
+				LOG.error(JvarkitException.ContigNotFoundInDictionary.getMessage(this.restrictContig, dict));
+				return -1;
+				}
 			
 			final Set<String> sampleSet = new TreeSet<>();
 			final List<String> idx2samples= new ArrayList<String>(inputBams.size());
 			for(final Path path: inputBams) {
-				try(SamReader sr = samReaderFactory.open(path)) {
+				try(SamReader sr = openSamReader(path)) {
 					final SAMFileHeader header= sr.getFileHeader();
 					
 					final String sample = header.getReadGroups().stream().
@@ -223,6 +382,31 @@ public class CoverageMatrix extends Launcher {
 					}
 				}
 			
+			final List<ContigBins> contigs = new ArrayList<>();
+			for(final SAMSequenceRecord ssr: dict.getSequences()) {
+				if(!StringUtils.isBlank(restrictContig) && !restrictContig.equals(ssr.getSequenceName())) continue;
+				contigs.add(new ContigBins(ssr, getBlackListed(ssr), this.bin_size));
+				}
+			
+			/* read each BAM once, in parallel */
+			executorService = Executors.newFixedThreadPool(this.nJobs);
+			final List<Future<Path>> results = new ArrayList<>(inputBams.size());
+			for(int bam_idx=0;bam_idx<inputBams.size();++bam_idx) {
+				final Path tmpFile = Files.createTempFile(this.writingSortingCollection.getTmpPath(), "coverage.", ".bin");
+				tmpFiles.add(tmpFile);
+				results.add(executorService.submit(new SampleWorker(dict, contigs, inputBams.get(bam_idx), idx2samples.get(bam_idx), tmpFile)));
+				}
+			executorService.shutdown();
+			for(final Future<Path> result:results) {
+				try {
+					result.get();
+					}
+				catch(final ExecutionException err) {
+					throw err.getCause();
+					}
+				}
+			executorService = null;
+			
 			final Set<VCFHeaderLine> metaData = new HashSet<>();
 			
 			w = this.writingVariantsDelegate.dictionary(dict).open(this.outputFile);
@@ -251,193 +435,85 @@ public class CoverageMatrix extends Launcher {
 			JVarkitVersion.getInstance().addMetaData(this, vcfheader);
 			w.writeHeader(vcfheader);
 			
-			for(final SAMSequenceRecord ssr: dict.getSequences()) {
-				if(!StringUtils.isBlank(restrictContig) && !restrictContig.equals(ssr.getSequenceName())) continue;
-				final int depth[]= new int[ssr.getSequenceLength()];
-				final BitSet blackListedPositions = new BitSet(depth.length);
-								
-				// fill black listed regions
-				if(this.blackListedPath!=null) {
-					try(TabixReader tbr= new TabixReader(this.blackListedPath.toString())) {
-						final ContigNameConverter cvt = ContigNameConverter.fromContigSet(tbr.getChromosomes());
-						final String ctg = cvt.apply(ssr.getSequenceName());
-						if(!StringUtils.isBlank(ctg)) {
-							final BedLineCodec codec = new BedLineCodec();
-							final TabixReader.Iterator tbxr = tbr.query(ctg,1, ssr.getSequenceLength());
-							for(;;) {
-								final String line = tbxr.next();
-								if(line==null) break;
-								final BedLine bed = codec.decode(line);
-								if(bed==null) continue;
-								int p1 = Math.max(bed.getStart(),1);
-								while(p1 <= ssr.getSequenceLength()  && p1 <= bed.getEnd()) {
-									blackListedPositions.set(p1-1);
-									++p1;
-									}
-								}
-							}
+			/* merge the columns */
+			for(final Path tmpFile:tmpFiles) {
+				columns.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(tmpFile))));
+				}
+			final int n_samples = inputBams.size();
+			final double depths[] = new double[n_samples];
+			final float stddevs[] = new float[n_samples];
+			final Allele REF = Allele.create("N", true);
+			final Allele DEL = Allele.create("<DEL>", false);
+			final Allele DUP = Allele.create("<DUP>", false);
+			for(final ContigBins contigBins : contigs) {
+				final SAMSequenceRecord ssr = contigBins.ssr;
+				for(int bin_idx=0;bin_idx< contigBins.binStarts.size();++bin_idx) {
+					for(int i=0;i< n_samples;i++) {
+						final DataInputStream dis = columns.get(i);
+						depths[i] = dis.readFloat();
+						stddevs[i] = dis.readFloat();
 						}
-					catch(Throwable err) {
-						LOG.warn(err);
+					final int bin_start0 = contigBins.binStarts.get(bin_idx);
+					final double avg_depth = Arrays.stream(depths).average().orElse(0);
+					final double sum =  Arrays.stream(depths).map(D->Math.pow(D - avg_depth,2.0)).sum();
+					final double stdDev = Math.sqrt(sum/n_samples);
+					
+					final OptionalDouble optMedianOfmedian = Percentile.median().evaluate(depths);
+					final double medianOfmedian = optMedianOfmedian.orElse(1.0);
+					if(medianOfmedian<=0) continue;
+					for(int i=0;i< n_samples;i++) {
+						depths[i] = (float)(depths[i]/medianOfmedian);
 						}
-					}
-				
-				final SortingCollection<CovItem> sorter = SortingCollection.newInstance(
-						CovItem.class, new CovItemCodec(),
-						(A,B)->A.compare0(B),
-						this.writingSortingCollection.getMaxRecordsInRam(),
-						this.writingSortingCollection.getTmpPaths()
-						);
-				
+					if( Arrays.stream(depths).allMatch(D->Double.isNaN(D) || Double.isInfinite(D))) continue;
+					
+					final VariantContextBuilder vcb = new VariantContextBuilder();
+					vcb.chr(ssr.getContig());
+					vcb.start(bin_start0+1);
+					vcb.stop(bin_start0+this.bin_size);
+					vcb.attribute(VCFConstants.END_KEY, bin_start0+this.bin_size);
+					vcb.attribute(infoStdDev.getID(), stdDev);
+					vcb.attribute(infoMedianD.getID(), medianOfmedian);
+					
+					final Set<Allele> alleles = new HashSet<>();
+					alleles.add(REF);
+					final List<Genotype> genotypes = new ArrayList<>(n_samples);
+					final Set<String> affected= new TreeSet<>();
 				
-				for(int bam_idx=0;bam_idx<inputBams.size();++bam_idx) {
-					final Path path = inputBams.get(bam_idx);
-					LOG.info(ssr.getContig()+":"+path+" "+bam_idx+"/"+inputBams.size());
-					try(SamReader sr = samReaderFactory.open(path)) {
-						final SAMFileHeader header= sr.getFileHeader();
-						
-						SequenceUtil.assertSequenceDictionariesEqual(dict,header.getSequenceDictionary());
-						Arrays.fill(depth, 0);
-						try(CloseableIterator<SAMRecord> siter = sr.queryOverlapping(ssr.getContig(), 1, ssr.getLengthOnReference())) {
-							while(siter.hasNext()) {
-								final SAMRecord rec= siter.next();
-								if(rec.getReadUnmappedFlag()) continue;
-								if(!SAMRecordDefaultFilter.accept(rec, this.min_mapq)) continue;
-								int ref=rec.getStart();
-								final Cigar cigar = rec.getCigar();
-								if(cigar==null) continue;
-								
-								for(CigarElement ce:cigar) {
-									final CigarOperator op = ce.getOperator();
-									final int len = ce.getLength();
-									if(op.consumesReferenceBases()) {
-										if(op.consumesReadBases()) {
-											for(int i=0;i< len;i++) {
-												final int pos = ref+i;
-												if(pos < 1) continue;
-												if(pos > ssr.getLengthOnReference()) break;
-												depth[pos-1]++;
-												}
-											}
-										ref+=len;
-										}
-									}// loop cigar
-								}// end samItere
-						} // try
-		
-					final DiscreteMedian<Integer> discreteMedian = new DiscreteMedian<>();
-					int pos=0;
-					while(pos< depth.length) {
-						if(!blackListedPositions.get(pos) && depth[pos]<=this.max_depth) {
-							discreteMedian.add(depth[pos]);
+					for(int i=0;i< n_samples;i++) {
+						final float depth = (float)depths[i];
+						final String sn = idx2samples.get(i);
+						final GenotypeBuilder gb;
+						switch(indexCovUtils.getType(depth))
+							{
+							case AMBIGOUS: gb = new GenotypeBuilder(sn,Arrays.asList(Allele.NO_CALL,Allele.NO_CALL));break;
+							case HET_DEL: alleles.add(DEL);gb = new GenotypeBuilder(sn,Arrays.asList(REF,DEL));affected.add(sn);break;
+							case HOM_DEL: alleles.add(DEL);gb = new GenotypeBuilder(sn,Arrays.asList(DEL,DEL));affected.add(sn);break;
+							case HET_DUP: alleles.add(DUP);gb = new GenotypeBuilder(sn,Arrays.asList(REF,DUP));affected.add(sn);break;
+							case HOM_DUP: alleles.add(DUP);gb = new GenotypeBuilder(sn,Arrays.asList(DUP,DUP));affected.add(sn);break;
+							case REF: gb = new GenotypeBuilder(sn,Arrays.asList(REF,REF));break;
+							default: throw new IllegalStateException();
 							}
-						++pos;
+						gb.attribute(fmtNormDepth.getID(), depth);
+						gb.attribute(fmtStdDev.getID(), stddevs[i]);
+						genotypes.add(gb.make());
 						}
-					final double median = discreteMedian.getMedian().orElse(1.0);
-					LOG.info(idx2samples.get(bam_idx)+ " :"+ssr.getSequenceName()+" median depth:"+median);
+					if(affected.isEmpty()) continue;
 					
-					final DiscreteMedian<Integer> localMedian = new DiscreteMedian<>();
-					pos=0;
-					while(pos< depth.length) {
-						if(blackListedPositions.get(pos) /* non pas maxdepth */) {
-							++pos;
-							continue;
-							}
-						int pos2=pos;
-						localMedian.clear();
-						while(pos2 -pos < this.bin_size && pos2< depth.length && !blackListedPositions.get(pos2)) {
-							// consider this.max_depth here ?
-							localMedian.add(depth[pos2]);
-							++pos2;
-							}
-						if(pos2 -pos == this.bin_size) {
-							final double localMed = localMedian.getMedian().orElse(0.0);
-							final CovItem item = new CovItem();
-							item.pos = pos;
-							item.sample_idx = bam_idx;
-							item.depth = (float)(localMed/median);
-							item.stddev = (float)localMedian.getStandardDeviation().orElse(-1.0);
-							sorter.add(item);
-							}
-						pos = pos2;
+					if(affected.size()==n_samples) {
+						vcb.filter(filterAll.getID());
 						}
-					}//end loop over samples
-				}//end loop over bams
-			sorter.doneAdding();
-			sorter.setDestructiveIteration(true);
-				
-			final CloseableIterator<CovItem> iter = sorter.iterator();
-			final EqualRangeIterator<CovItem> iter2 = new EqualRangeIterator<>(iter,(A,B)->Integer.compare(A.pos, B.pos));
-			final Allele REF = Allele.create("N", true);
-			final Allele DEL = Allele.create("<DEL>", false);
-			final Allele DUP = Allele.create("<DUP>", false);
-			while(iter2.hasNext()) {
-				final List<CovItem> list = iter2.next();
-				final CovItem first = list.get(0);
-				final double avg_depth = list.stream().mapToDouble(F->F.depth).average().orElse(0);
-				final double sum =  list.stream().mapToDouble(F->F.depth).map(D->Math.pow(D - avg_depth,2.0)).sum();
-				final double stdDev = Math.sqrt(sum/list.size());
-				
-				final OptionalDouble optMedianOfmedian = Percentile.median().evaluate(list.stream().mapToDouble(I->I.depth));
-				final double medianOfmedian = optMedianOfmedian.orElse(1.0);
-				if(medianOfmedian<=0) continue;
-				for(int i=0;i< list.size();i++) {
-					list.get(i).depth/=medianOfmedian;
-					}
-				if( list.stream().allMatch(F->Float.isNaN(F.depth) || Float.isInfinite(F.depth))) continue;
-				
-				final VariantContextBuilder vcb = new VariantContextBuilder();
-				vcb.chr(ssr.getContig());
-				vcb.start(first.pos+1);
-				vcb.stop(first.pos+this.bin_size);
-				vcb.attribute(VCFConstants.END_KEY, first.pos+this.bin_size);
-				vcb.attribute(infoStdDev.getID(), stdDev);
-				vcb.attribute(infoMedianD.getID(), medianOfmedian);
-				
-				final Set<Allele> alleles = new HashSet<>();
-				alleles.add(REF);
-				final List<Genotype> genotypes = new ArrayList<>(list.size());
-				final Set<String> affected= new TreeSet<>();
-			
-				for(int i=0;i< list.size();i++) {
-					final CovItem item = list.get(i);
-					final String sn = idx2samples.get(item.sample_idx);
-					final GenotypeBuilder gb;
-					switch(indexCovUtils.getType(item.depth))
+					else
 						{
-						case AMBIGOUS: gb = new GenotypeBuilder(sn,Arrays.asList(Allele.NO_CALL,Allele.NO_CALL));break;
-						case HET_DEL: alleles.add(DEL);gb = new GenotypeBuilder(sn,Arrays.asList(REF,DEL));affected.add(sn);break;
-						case HOM_DEL: alleles.add(DEL);gb = new GenotypeBuilder(sn,Arrays.asList(DEL,DEL));affected.add(sn);break;
-						case HET_DUP: alleles.add(DUP);gb = new GenotypeBuilder(sn,Arrays.asList(REF,DUP));affected.add(sn);break;
-						case HOM_DUP: alleles.add(DUP);gb = new GenotypeBuilder(sn,Arrays.asList(DUP,DUP));affected.add(sn);break;
-						case REF: gb = new GenotypeBuilder(sn,Arrays.asList(REF,REF));break;
-						default: throw new IllegalStateException();
+						vcb.passFilters();
 						}
-					gb.attribute(fmtNormDepth.getID(), item.depth);
-					gb.attribute(fmtStdDev.getID(), item.stddev);
-					genotypes.add(gb.make());
-					}
-				if(affected.isEmpty()) continue;
-				
-				if(affected.size()==inputBams.size()) {
-					vcb.filter(filterAll.getID());
-					}
-				else
-					{
-					vcb.passFilters();
+					vcb.attribute(infoSamples.getID(), new ArrayList<>(affected));
+					vcb.attribute(infoNSamples.getID(), affected.size());
+					
+					vcb.genotypes(genotypes);
+					vcb.alleles(alleles);
+					w.add(vcb.make());
 					}
-				vcb.attribute(infoSamples.getID(), new ArrayList<>(affected));
-				vcb.attribute(infoNSamples.getID(), affected.size());
-				
-				vcb.genotypes(genotypes);
-				vcb.alleles(alleles);
-				w.add(vcb.make());
-				}
-			iter2.close();
-			iter.close();
-			sorter.cleanup();
-			System.gc();
-			}// end while iter
+				}// end loop over contigs
 			w.close();w=null;
 			return 0;
 			}
@@ -448,6 +524,12 @@ public class CoverageMatrix extends Launcher {
 			}
 		finally
 			{
+			if(executorService!=null) executorService.shutdownNow();
+			CloserUtil.close(columns);
+			for(final Path tmpFile:tmpFiles) {
+				try { Files.deleteIfExists(tmpFile);}
+				catch(final Throwable err) {LOG.warn(err);}
+				}
 			CloserUtil.close(w);
 			}
 		}
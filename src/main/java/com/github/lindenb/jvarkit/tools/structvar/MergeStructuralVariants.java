@@ -24,6 +24,8 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.tools.structvar;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -35,6 +37,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -50,23 +56,19 @@ import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.jcommander.NoSplitter;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
-import com.github.lindenb.jvarkit.util.samtools.ContigDictComparator;
+import com.github.lindenb.jvarkit.util.picard.AbstractDataCodec;
 import com.github.lindenb.jvarkit.variant.variantcontext.writer.WritingVariantsDelegate;
 import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
 
 import htsjdk.samtools.SAMSequenceDictionary;
-import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CoordMath;
-import htsjdk.samtools.util.Interval;
-import htsjdk.samtools.util.IntervalTreeMap;
-import htsjdk.samtools.util.Locatable;
-import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.PeekableIterator;
 import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.SortingCollection;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
-import htsjdk.variant.variantcontext.GenotypeType;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
@@ -86,8 +88,12 @@ BEGIN_DOC
 
 Experimental SV/CNV merger.
 
+## How it works
 
-
+Each input VCF is read once (`--jobs` VCFs are read in parallel) and the calls are sorted on disk.
+The sorted calls are then merged by a sweep line: only the calls overlapping the current call are kept in memory
+and a merged call is written as soon as the sweep has passed it. The size of the set of active calls is bounded by
+`--max-length`, so this option is recommended for large cohorts. The output doesn't depend on the number of jobs.
 
 END_DOC
 
@@ -96,7 +102,7 @@ END_DOC
 @Program(name="mergesv",
 description="Experimental SV/CNV merger.",
 keywords= {"cnv","indel","sv"},
-modificationDate="20211109",
+modificationDate="20221019",
 creationDate="20181109"
 )
 public class MergeStructuralVariants extends Launcher{
@@ -107,99 +113,49 @@ public class MergeStructuralVariants extends Launcher{
 	private int max_distance = 1;
 	@Parameter(names={"-f","--fraction"},description="Two CNV/DEL/.. variants are the same if they share 'x' fraction of their size. " + FractionConverter.OPT_DESC,converter=FractionConverter.class, splitter=NoSplitter.class )
 	private double max_fraction = 0.80;
-	@Parameter(names={"-m","--max-length"},description="ignore variant longer than 'x' bases. Ignore this parameter if 'x' <=0 ")
+	@Parameter(names={"-m","--max-length"},description="ignore variant longer than 'x' bases. Ignore this parameter if 'x' <=0 . It also bounds the number of calls kept in memory during the merge.")
 	private int max_variant_length = -1;
+	@Parameter(names={"-j","--jobs"},description="Number of VCFs read in parallel. A value lower than 1 means use all procs available.")
+	private int nJobs = 1;
+	@ParametersDelegate
+	private WritingSortingCollection writingSortingCollection= new WritingSortingCollection();
 	@ParametersDelegate
 	private WritingVariantsDelegate writingVariantsDelegate = new WritingVariantsDelegate();
 
-	private class VcfInput implements AutoCloseable {
-		//final Path path;
-		final SAMSequenceDictionary dict;
-		final String sample;
-		final VCFReader reader;
-		final IntervalTreeMap<CnvCall> callMap=new IntervalTreeMap<>();
-		
-		VcfInput(final Path path) {
-			try {
-				this.reader = VCFReaderFactory.makeDefault().open(path,true);
-				final VCFHeader header = this.reader.getHeader();
-				
-				this.dict = SequenceDictionaryUtils.extractRequired(header);
-				
-				if(!header.hasGenotypingData()) {
-					this.sample = path.toString();
-					}
-				else if(header.getNGenotypeSamples()!=1) {
-					this.reader.close();
-					throw new IllegalArgumentException("Expected one and only one genotyped sample in "+path);
-					}
-				else
-					{
-					this.sample = header.getGenotypeSamples().get(0);
-					}
-				
-				}
-			catch(final Exception err) {
-				throw new RuntimeIOException(err);
-				}
-			}
-		void loadVariants(final Locatable rgn) {
-			this.callMap.clear();
-			try(CloseableIterator<VariantContext> iter = this.reader.query(rgn)) {
-				iter.stream().
-					filter(V->V.getStructuralVariantType()!=null).
-					filter(V->max_variant_length<=0 || (V.getEnd()-V.getStart()+1)<= max_variant_length).
-					map(V->new CnvCall(V,sample)).
-					forEach(V->{
-						final int extend = getExtendFor(V);
-						
-						final Interval key = new Interval(V.getContig(), 
-								Math.max(1,V.getStart()-extend),
-								V.getEnd()+extend
-								);
-						this.callMap.put(key,V);
-						});
-				}
-			}
-		@Override
-		public void close() throws IOException {
-			this.reader.close();
-			}
-		}
-	
-	private class CnvCall implements Locatable
+	private static class CnvCall
 		{
-		//private final VariantContext ctx;
-		private final Interval _startInterval;
-		private final Interval _endInterval;
-		private final String sample;
-		private final String svType;
-		@SuppressWarnings("unused")
-		private final GenotypeType genotypeType;
+		final int tid;
+		/** start and end of the CIPOS interval */
+		final int start0;
+		final int end0;
+		/** start and end of the CIEND interval */
+		final int start1;
+		final int end1;
+		final int sampleIndex;
+		final String svType;
 		boolean echoed_flag = false;
-		CnvCall(final VariantContext ctx,final String sample) {
-			//this.ctx = ctx;
-			this.sample = sample;
-			this.svType = ctx.getAttributeAsString(VCFConstants.SVTYPE, "");
-			this._startInterval = _getInterval(ctx,ctx.getStart(), "CIPOS");
-			this._endInterval = _getInterval(ctx,ctx.getEnd(), "CIEND");
-			if(ctx.hasGenotypes()) {
-				genotypeType = ctx.getGenotype(0).getType();
-				}
-			else
-				{
-				genotypeType = GenotypeType.HET;
-				}
-			}
-		public String getSample() {
-			return sample;
+		CnvCall(final int tid,final int start0,final int end0,final int start1,final int end1,final String svType,final int sampleIndex) {
+			this.tid = tid;
+			this.start0 = start0;
+			this.end0 = end0;
+			this.start1 = start1;
+			this.end1 = end1;
+			this.svType = svType;
+			this.sampleIndex = sampleIndex;
 			}
-		@Override
-		public String getContig() {
-			return this._startInterval.getContig();
+		CnvCall(final int tid,final VariantContext ctx,final int sampleIndex) {
+			this.tid = tid;
+			this.sampleIndex = sampleIndex;
+			this.svType = ctx.getAttributeAsString(VCFConstants.SVTYPE, "");
+			final int[] x = _getInterval(ctx,ctx.getStart(), "CIPOS");
+			this.start0 = x[0];
+			this.end0 = x[1];
+			final int[] y = _getInterval(ctx,ctx.getEnd(), "CIEND");
+			this.start1 = y[0];
+			this.end1 = y[1];
 			}
 		
-		private Interval _getInterval(final VariantContext ctx,final int pos,final String att)
+		private static int[] _getInterval(final VariantContext ctx,final int pos,final String att)
 			{
 			int x0 = 0;
 			int x1 = 0;
@@ -219,104 +175,269 @@ public class MergeStructuralVariants extends Launcher{
 						}
 					}
 				}
-			return new Interval(ctx.getContig(),Math.max(1,pos+x0),pos+x1);
+			return new int[] {Math.max(1,pos+x0),pos+x1};
 			}
 		
-		public Interval getStartInterval() {
-			return this._startInterval;
+		int getStart() {
+			return Math.min(this.start0,this.start1);
+			}
+		int getEnd() {
+			return Math.max(this.end0,this.end1);
 			}
 		
-		public Interval getEndInterval() {
-			return this._endInterval;
+		String getType() {
+			return svType;
 			}
 		
-		@Override
-		public int getStart() {
-			return Math.min(
-				getStartInterval().getStart(),
-				getEndInterval().getStart()
-				);
+		/** same contig, bounds and type */
+		boolean hasSameKey(final CnvCall other) {
+			return this.tid == other.tid &&
+				this.getStart() == other.getStart() &&
+				this.getEnd() == other.getEnd() &&
+				this.getType().equals(other.getType());
 			}
+		
 		@Override
-		public int getEnd() {
-			return Math.max(
-				getStartInterval().getEnd(),
-				getEndInterval().getEnd()
-				);
+		public String toString() {
+			return tid+":"+getStart()+":"+getEnd();
 			}
-		
-		String getType() {
-			return svType;
 		}
-		
+	
+	private static class CnvCallCodec extends AbstractDataCodec<CnvCall> {
 		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + getContig().hashCode();
-			result = prime * result + Integer.hashCode(getStart());
-			result = prime * result + Integer.hashCode(getEnd());
-			result = prime * result + getType().hashCode();
-			// sample NON
-			return result;
+		public void encode(final DataOutputStream dos,final CnvCall c) throws IOException {
+			dos.writeInt(c.tid);
+			dos.writeInt(c.start0);
+			dos.writeInt(c.end0);
+			dos.writeInt(c.start1);
+			dos.writeInt(c.end1);
+			dos.writeUTF(c.svType);
+			dos.writeInt(c.sampleIndex);
 			}
-	
 		@Override
-		public boolean equals(final Object obj) {
-			if (this == obj)  return true;
-			if (obj == null)  return false;
-			if (!(obj instanceof CnvCall)) {
-				return false;
+		public CnvCall decode(final DataInputStream dis) throws IOException {
+			final int tid;
+			try {
+				tid = dis.readInt();
 				}
-			final CnvCall other = (CnvCall) obj;
-			if (getEnd() != other.getEnd()) {
-				return false;
+			catch(final IOException err) {
+				return null;
 				}
-			if (getStart() != other.getStart()) {
-				return false;
+			final int start0 = dis.readInt();
+			final int end0 = dis.readInt();
+			final int start1 = dis.readInt();
+			final int end1 = dis.readInt();
+			final String svType = dis.readUTF();
+			return new CnvCall(tid, start0, end0, start1, end1, svType, dis.readInt());
+			}
+		@Override
+		public AbstractDataCodec<CnvCall> clone() {
+			return new CnvCallCodec();
+			}
+		}
+	
+	/** sort on contig, start, end, type and sample */
+	private static int compareCalls(final CnvCall A,final CnvCall B) {
+		int i = Integer.compare(A.tid, B.tid);
+		if(i!=0) return i;
+		i = Integer.compare(A.getStart(), B.getStart());
+		if(i!=0) return i;
+		i = Integer.compare(A.getEnd(), B.getEnd());
+		if(i!=0) return i;
+		i = A.getType().compareTo(B.getType());
+		if(i!=0) return i;
+		return Integer.compare(A.sampleIndex, B.sampleIndex);
+		}
+	
+	/** header of an input VCF */
+	private static class VcfInput {
+		final SAMSequenceDictionary dict;
+		final String sample;
+		VcfInput(final Path path,final VCFHeader header) {
+			this.dict = SequenceDictionaryUtils.extractRequired(header);
+			if(!header.hasGenotypingData()) {
+				this.sample = path.toString();
 				}
-			if (!getContig().equals(other.getContig())) {
-				return false;
+			else if(header.getNGenotypeSamples()!=1) {
+				throw new IllegalArgumentException("Expected one and only one genotyped sample in "+path);
 				}
-			if (!getType().equals(other.getType())) {
-				return false;
+			else
+				{
+				this.sample = header.getGenotypeSamples().get(0);
 				}
-			// sample NON
-			return true;
 			}
-		@Override
-		public String toString() {
-			return getContig()+":"+getStart()+":"+getEnd();
+		}
+	
+	/** read the calls of one VCF */
+	private VcfInput readVcf(final Path path,final int sampleIndex,final SortingCollection<CnvCall> sorter) throws IOException {
+		try(VCFReader reader = VCFReaderFactory.makeDefault().open(path,false)) {
+			final VcfInput vcfInput = new VcfInput(path, reader.getHeader());
+			// for one sample, a call with the same bounds replaces the previous one
+			final Map<List<Integer>,CnvCall> calls = new HashMap<>();
+			try(CloseableIterator<VariantContext> iter = reader.iterator()) {
+				while(iter.hasNext()) {
+					final VariantContext V = iter.next();
+					if(V.getStructuralVariantType()==null) continue;
+					if(!(max_variant_length<=0 || (V.getEnd()-V.getStart()+1)<= max_variant_length)) continue;
+					final int tid = vcfInput.dict.getSequenceIndex(V.getContig());
+					if(tid<0) throw new JvarkitException.ContigNotFoundInDictionary(V.getContig(), vcfInput.dict);
+					final CnvCall call = new CnvCall(tid, V, sampleIndex);
+					calls.put(Arrays.asList(call.tid,call.getStart(),call.getEnd()), call);
+					}
+				}
+			synchronized(sorter) {
+				for(final CnvCall call: calls.values()) {
+					sorter.add(call);
+					}
+				}
+			return vcfInput;
 			}
 		}
 	
 	private boolean testOverlapping(final CnvCall a,final CnvCall b ) {
 		if(!a.svType.equals(b.svType)) return false;
-		if(!a.getContig().equals(b.getContig())) return false;
+		if(a.tid!=b.tid) return false;
 		
 		if(a.svType.equals("BND")) {
-			return  a.getStartInterval().withinDistanceOf(b.getStartInterval(), this.max_distance) &&
-					a.getEndInterval().withinDistanceOf(b.getEndInterval(), this.max_distance)
+			return  CoordMath.overlaps(a.start0, a.end0, b.start0 - this.max_distance, b.end0 + this.max_distance) &&
+					CoordMath.overlaps(a.start1, a.end1, b.start1 - this.max_distance, b.end1 + this.max_distance)
 					;
 			}
 		else
 			{
-			final Locatable interval1 = new Interval(a);
-			final Locatable interval2 = new Interval(b);
-			if(!interval1.overlaps(interval2)) return false;
-			final int p1 = Math.max(interval1.getStart(),interval2.getStart());
-			final int p2 = Math.min(interval1.getEnd(),interval2.getEnd());
+			if(!CoordMath.overlaps(a.getStart(), a.getEnd(), b.getStart(), b.getEnd())) return false;
+			final int p1 = Math.max(a.getStart(),b.getStart());
+			final int p2 = Math.min(a.getEnd(),b.getEnd());
 			final double len = CoordMath.getLength(p1,p2);
-			if(len/interval1.getLengthOnReference() < this.max_fraction ) return false; 
-			if(len/interval2.getLengthOnReference() < this.max_fraction ) return false; 
+			if(len/CoordMath.getLength(a.getStart(), a.getEnd()) < this.max_fraction ) return false; 
+			if(len/CoordMath.getLength(b.getStart(), b.getEnd()) < this.max_fraction ) return false; 
 			return true;
 			}
 		}
 	
-	private int getExtendFor(final CnvCall ctx) {
-		return 0;
-	}
-	
+	/** sweep over the sorted calls of one contig */
+	private void mergeContig(
+			final PeekableIterator<CnvCall> iter,
+			final SAMSequenceDictionary dict,
+			final List<String> samples,
+			final VariantContextWriter out) {
+		final int tid = iter.peek().tid;
+		final String contig = dict.getSequence(tid).getSequenceName();
+		/* sorted calls loaded from the iterator. Calls before 'base_idx' are kept only if they can still overlap a future call */
+		List<CnvCall> window = new ArrayList<>();
+		int base_idx = 0;
+		int last_compaction = 0;
+		CnvCall prevBase = null;
+		for(;;) {
+			if(base_idx == window.size()) {
+				if(!iter.hasNext() || iter.peek().tid!=tid) break;
+				window.add(iter.next());
+				}
+			final CnvCall baseCall = window.get(base_idx);
+			base_idx++;
+			// the first call of a group of calls with the same contig/bounds/type (lowest sample index) is the representative
+			final boolean representative = prevBase==null || !prevBase.hasSameKey(baseCall);
+			prevBase = baseCall;
+			if(!representative || baseCall.echoed_flag) continue;
+			
+			// load all the calls that can overlap baseCall
+			while(iter.hasNext() && iter.peek().tid==tid && iter.peek().getStart() <= baseCall.getEnd()) {
+				window.add(iter.next());
+				}
+			
+			final List<CnvCall> callsToPrint = window.stream().
+				filter(C->!C.echoed_flag).
+				filter(C->C.getStart() <= baseCall.getEnd() && C.getEnd() >= baseCall.getStart()).
+				filter(C->testOverlapping(C, baseCall)).
+				sorted((A,B)->{
+					// same order as the previous implementation: by sample, then by position
+					int i = Integer.compare(A.sampleIndex, B.sampleIndex);
+					if(i!=0) return i;
+					i = Integer.compare(A.getStart(), B.getStart());
+					if(i!=0) return i;
+					return Integer.compare(A.getEnd(), B.getEnd());
+					}).
+				collect(Collectors.toList());
+			
+			if(callsToPrint.isEmpty()) {
+				throw new IllegalStateException();
+				}
+			
+			final Allele ref = Allele.create("N",true); 
+			final Allele alt = Allele.create("<"+baseCall.svType+">",false); 
+			final List<Allele> alleles = Arrays.asList(ref,alt);
+			
+			final VariantContextBuilder vcb= new VariantContextBuilder();
+			vcb.chr(contig);
+			vcb.start(baseCall.getStart());
+			vcb.stop(baseCall.getEnd());
+			vcb.attribute(VCFConstants.END_KEY, baseCall.getEnd());
+			vcb.attribute(VCFConstants.SVTYPE, baseCall.getType());
+			vcb.attribute("SVLEN", CoordMath.getLength(baseCall.getStart(),baseCall.getEnd()));
+			
+			for(int side=0;side<2;side++)
+				{
+				final Function<CnvCall,Integer> coordExtractor;
+				if(side==0)
+					{
+					coordExtractor = C->C.getStart();
+					}
+				else
+					{
+					coordExtractor = C->C.getEnd();
+					}
+				final List<Integer> list = Arrays.asList(
+					callsToPrint.stream().
+						mapToInt(C->coordExtractor.apply(C)-coordExtractor.apply(baseCall)).
+						min().
+						orElse(0),
+					callsToPrint.stream().
+						mapToInt(C->coordExtractor.apply(C)-coordExtractor.apply(baseCall)).
+						max().
+						orElse(0)
+					);
+				vcb.attribute(
+						side==0?"CIPOS":"CIEND", 
+						list
+						);
+				}
+			vcb.attribute("IMPRECISE", true);
+			
+			final Map<String,Genotype> sample2gt = new HashMap<>(callsToPrint.size());
+			for(final CnvCall call: callsToPrint)
+				{
+				final String sample = samples.get(call.sampleIndex);
+				if(sample2gt.containsKey(sample))
+					{
+					LOG.warn("Sample "+sample+" exits twice at the same loc " + contig+":"+call.getStart()+"-"+call.getEnd()+" could be two small SV overlapping a big one.");
+					continue;
+					}
+				call.echoed_flag  = true;
+				final GenotypeBuilder gb = new GenotypeBuilder(sample,alleles);
+				sample2gt.put(sample,gb.make());
+				}
+			vcb.attribute("SAMPLES",new ArrayList<>(sample2gt.keySet()));
+			vcb.attribute("NSAMPLES",sample2gt.size());
+			vcb.genotypes(sample2gt.values());
+			vcb.alleles(alleles);
+			out.add(vcb.make());
+			
+			// remove the calls that cannot overlap the next calls (the start of the next calls is >= baseCall.getStart())
+			if(base_idx - last_compaction >= Math.max(1_000, window.size()/2)) {
+				final List<CnvCall> window2 = new ArrayList<>(window.size());
+				for(int i=0;i< base_idx;i++) {
+					final CnvCall c = window.get(i);
+					if(c.echoed_flag || c.getEnd() < baseCall.getStart()) continue;
+					window2.add(c);
+					}
+				final int n_kept = window2.size();
+				window2.addAll(window.subList(base_idx, window.size()));
+				window = window2;
+				base_idx = n_kept;
+				last_compaction = base_idx;
+				}
+			}
+		}
 
 	@Override
 	public int doWork(final List<String> args) {
@@ -324,22 +445,39 @@ public class MergeStructuralVariants extends Launcher{
 			LOG.error("bad max_distance :" +this.max_distance);
 			return -1;
 			}
-		final List<VcfInput> vcf_readers  = new ArrayList<>();
+		SortingCollection<CnvCall> sorter = null;
+		ExecutorService executorService = null;
 		try {
-			SAMSequenceDictionary dict = null;
-			
 			final List<Path> inputPaths=(IOUtils.unrollPaths(args));
 			if(inputPaths.isEmpty()) {
 				LOG.error("input is empty");
 				return -1;
 				}
 			
-			final Set<VCFHeaderLine> metadata = new HashSet<>();
+			sorter = SortingCollection.newInstance(
+					CnvCall.class,
+					new CnvCallCodec(),
+					MergeStructuralVariants::compareCalls,
+					this.writingSortingCollection.getMaxRecordsInRam(),
+					this.writingSortingCollection.getTmpPaths()
+					);
+			sorter.setDestructiveIteration(true);
 			
+			final int nThreads = this.nJobs < 1 ? Runtime.getRuntime().availableProcessors() : this.nJobs;
+			executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(nThreads, inputPaths.size())));
+			final List<Future<VcfInput>> futures = new ArrayList<>(inputPaths.size());
 			for(int i=0;i< inputPaths.size();i++) {
-				final VcfInput vcfInput = new VcfInput(inputPaths.get(i));
-				vcf_readers.add(vcfInput);
-				
+				final Path path = inputPaths.get(i);
+				final int sampleIndex = i;
+				final SortingCollection<CnvCall> sorter2 = sorter;
+				final Callable<VcfInput> task = ()->readVcf(path, sampleIndex, sorter2);
+				futures.add(executorService.submit(task));
+				}
+			SAMSequenceDictionary dict = null;
+			final List<String> samples = new ArrayList<>(inputPaths.size());
+			for(final Future<VcfInput> future: futures) {
+				final VcfInput vcfInput = future.get();
+				samples.add(vcfInput.sample);
 				if(dict==null)
 					{
 					dict = vcfInput.dict;
@@ -350,22 +488,11 @@ public class MergeStructuralVariants extends Launcher{
 					return -1;
 					}
 				}
+			executorService.shutdown();
+			executorService = null;
+			sorter.doneAdding();
 			
-			final Comparator<String> contigComparator = new ContigDictComparator(dict);
-			
-			
-			final Comparator<CnvCall> comparator = (A,B)->{
-				int i = contigComparator.compare(A.getContig(), B.getContig());
-				if(i!=0) return i;
-				i = Integer.compare(A.getStart(), B.getStart());
-				if(i!=0) return i;
-				i = Integer.compare(A.getEnd(), B.getEnd());
-				if(i!=0) return i;
-				i = A.getType().compareTo(B.getType());
-				return i;
-				};
-				
-			
+			final Set<VCFHeaderLine> metadata = new HashSet<>();
 			
 			VCFStandardHeaderLines.addStandardFormatLines(metadata, true, 
 					VCFConstants.GENOTYPE_KEY
@@ -407,12 +534,6 @@ public class MergeStructuralVariants extends Launcher{
 					"Imprecise structural variation"
 					));
 			
-			/*metadata.add(new VCFFormatHeaderLine(
-					"OV",1,
-					VCFHeaderLineType.Integer,
-					"Number calls (with different sample) overlapping this genotype"
-					));*/
-			
 			metadata.add(new VCFInfoHeaderLine(
 					VCFConstants.SVTYPE,1,
 					VCFHeaderLineType.String,
@@ -421,7 +542,7 @@ public class MergeStructuralVariants extends Launcher{
 			
 			final VCFHeader header = new VCFHeader(
 					metadata,
-					(Set<String>)vcf_readers.stream().map(F->F.sample).collect(Collectors.toCollection(TreeSet::new))
+					(Set<String>)samples.stream().collect(Collectors.toCollection(TreeSet::new))
 					);
 			
 			header.setSequenceDictionary(dict);
@@ -429,116 +550,23 @@ public class MergeStructuralVariants extends Launcher{
 			
 			try(VariantContextWriter out =  this.writingVariantsDelegate.open(this.outputFile)) {
 				out.writeHeader(header);
-				for(int tid = 0; tid < dict.size(); tid++) {
-					final SAMSequenceRecord ssr = dict.getSequence(tid);
-					for(VcfInput vin: vcf_readers) {
-						vin.loadVariants(ssr);
+				try(CloseableIterator<CnvCall> iter0 = sorter.iterator()) {
+					final PeekableIterator<CnvCall> iter = new PeekableIterator<>(iter0);
+					while(iter.hasNext()) {
+						mergeContig(iter, dict, samples, out);
 						}
-
-					final List<CnvCall> intervals_list =  vcf_readers.stream().
-						flatMap(F->F.callMap.values().stream()).
-						collect(Collectors.toSet()).
-						stream().
-						sorted(comparator).
-						collect(Collectors.toList());
-
-				
-					for(final CnvCall baseCall:intervals_list) {
-						if(baseCall.echoed_flag) continue;
-						
-						final Allele ref = Allele.create("N",true); 
-						final Allele alt = Allele.create("<"+baseCall.svType+">",false); 
-		
-						final List<Allele> alleles = Arrays.asList(ref,alt);
-						
-						
-						final List<CnvCall> callsToPrint = vcf_readers.stream().
-							flatMap(F->F.callMap.getOverlapping(baseCall).stream().
-								filter(C->C.getType().equals(baseCall.getType())).
-								filter(C->!C.echoed_flag).
-								filter(C->testOverlapping(C, baseCall)) ).collect(Collectors.toList());
-						
-						if(callsToPrint.isEmpty()) {
-							throw new IllegalStateException();
-							}
-						
-						
-						final VariantContextBuilder vcb= new VariantContextBuilder();
-						vcb.chr(baseCall.getContig());
-						vcb.start(baseCall.getStart());
-						vcb.stop(baseCall.getEnd());
-						vcb.attribute(VCFConstants.END_KEY, baseCall.getEnd());
-						vcb.attribute(VCFConstants.SVTYPE, baseCall.getType());
-						vcb.attribute("SVLEN", CoordMath.getLength(baseCall.getStart(),baseCall.getEnd()));
-						
-						for(int side=0;side<2;side++)
-							{
-							final Function<CnvCall,Integer> coordExtractor;
-							if(side==0)
-								{
-								coordExtractor = C->C.getStart();
-								}
-							else
-								{
-								coordExtractor = C->C.getEnd();
-								}
-							final List<Integer> list = Arrays.asList(
-								callsToPrint.stream().
-									mapToInt(C->coordExtractor.apply(C)-coordExtractor.apply(baseCall)).
-									min().
-									orElse(0),
-								callsToPrint.stream().
-									mapToInt(C->coordExtractor.apply(C)-coordExtractor.apply(baseCall)).
-									max().
-									orElse(0)
-								);
-							vcb.attribute(
-									side==0?"CIPOS":"CIEND", 
-									list
-									);
-							}
-						vcb.attribute("IMPRECISE", true);
-						
-						final Map<String,Genotype> sample2gt = new HashMap<>(callsToPrint.size());
-						for(final CnvCall call: callsToPrint)
-							{
-							if(sample2gt.containsKey(call.getSample()))
-								{
-								LOG.warn("Sample "+call.getSample()+" exits twice at the same loc " + call+" could be two small SV overlapping a big one.");
-								continue;
-								}
-							call.echoed_flag  = true;
-							
-							//final List<Allele> alleles=Arrays.asList(ref,alt);
-							
-							final GenotypeBuilder gb = new GenotypeBuilder(call.sample,alleles);
-							
-							
-												
-							sample2gt.put(call.getSample(),gb.make());
-							}
-						vcb.attribute("SAMPLES",new ArrayList<>(sample2gt.keySet()));
-						vcb.attribute("NSAMPLES",sample2gt.size());
-						vcb.genotypes(sample2gt.values());
-						vcb.alleles(alleles);
-						out.add(vcb.make());				
-						} //end of loop interval
-				}
-				/*
-				all_calls.values().stream().
-					flatMap(C->C.stream()).
-					filter(C->!C.echoed_flag).
-					forEach(C->LOG.warn("Bug: Not printed "+C));
-				 */			
-				
+					iter.close();
+					}
 				}
+			sorter.cleanup();
+			sorter = null;
 			return 0;
 		} catch(final Throwable err) {
 			LOG.error(err);
 			return -1;
 		} finally {
-			for(VcfInput vi:vcf_readers) try {vi.close();}
-				catch(IOException err) {}
+			if(executorService!=null) executorService.shutdownNow();
+			if(sorter!=null) sorter.cleanup();
 			}
 		}
 	
@@ -32,7 +32,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -49,6 +51,7 @@ import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.util.log.ProgressFactory;
 import com.github.lindenb.jvarkit.variant.sv.StructuralVariantComparator;
+import com.github.lindenb.jvarkit.variant.sv.StructuralVariantPanel;
 import com.github.lindenb.jvarkit.variant.variantcontext.Breakend;
 import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
 import com.github.lindenb.jvarkit.samtools.util.IntervalListProvider;
@@ -83,6 +86,17 @@ java -Xmx3g -Djava.io.tmpdir=. -jar scansv.jar --controls controls.list -d2 25 -
 
 ```
 
+## Panel of controls
+
+The controls are read once and merged in memory. The merged panel can be saved with `--save-panel` and re-used with `--panel`, so the VCFs of the controls are not read again:
+
+```
+java -jar scansv.jar --controls controls.list --save-panel controls.svpanel
+java -jar scansv.jar --panel controls.svpanel cases1.vcf cases2.vcf > out.vcf
+```
+
+Note: with `--all`, the variants of the controls are printed without their original INFO attributes. Identical calls found in several controls are merged, they are printed with the ID, QUAL and FILTER of the first control.
+
 
 END_DOC
 
@@ -92,7 +106,7 @@ END_DOC
 description="Scan structural variants for case/controls data",
 keywords= {"cnv","indel","sv","pedigree"},
 creationDate="20190815",
-modificationDate="20200524"
+modificationDate="20221019"
 )
 public class ScanStructuralVariants extends Launcher{
 	private static final Logger LOG = Logger.build(ScanStructuralVariants.class).make();
@@ -111,10 +125,12 @@ public class ScanStructuralVariants extends Launcher{
 	private boolean print_all_ctx=false;
 	@Parameter(names={"--maf"},description="Max frequency of variants found in controls. 0:no control should carry the variant")
 	private double max_maf = 0.0;
-	@Parameter(names={"-L","--large"},description="Large number of controls: By default, all VCF readers for controls are opened and are kept opened."
-			+ " It's fast but requires a lot of resources. This option open+close the controls if needed but it makes things slower."
-			+ " It's the number of VCF that should be keept open, So '0' = ignore/all re-open+close (slow)")
+	@Parameter(names={"-L","--large"},description="Deprecated and ignored: the controls are now merged in memory once, see --panel.",hidden=true)
 	private int max_control_large_flag=0;
+	@Parameter(names={"--panel"},description="Use this panel of controls created with --save-panel instead of the VCFs of --controls.")
+	private Path panelPath = null;
+	@Parameter(names={"--save-panel"},description="Merge the controls into a panel, save it in this file (suffix '"+StructuralVariantPanel.SUFFIX+"') and use it. If there is no case, the program exits after saving the panel.")
+	private Path savePanelPath = null;
 
 	@ParametersDelegate
 	private StructuralVariantComparator svComparator = new StructuralVariantComparator();
@@ -122,78 +138,33 @@ public class ScanStructuralVariants extends Launcher{
 	private int ID_GENERATOR=0;
 
 
-	/** wrap a VCFReader to be used with option control_large_flag : will really close the vcf reader if needed */
-	private static class ShadowedVcfReader implements VCFReader {
-		private VCFReader vcfReader  = null;
-		final Path vcfPath;
-		private final boolean closeOnclose;
-		ShadowedVcfReader(final Path vcfPath,boolean closeOnclose) {
-			this.vcfPath=vcfPath;
-			this.closeOnclose = closeOnclose;
-			}
-		@Override
-		public CloseableIterator<VariantContext> query(String contig, int start, int end) {
-			if(this.vcfReader==null) {
-				this.vcfReader =  VCFReaderFactory.makeDefault().open(this.vcfPath,true);
-				}
-			return this.vcfReader.query(contig, start, end);
-			}
-		void realClose() {
-			if(this.vcfReader!=null)
-				{
-				try {this.vcfReader.close();} catch(Exception err) {}
-				this.vcfReader=null;
-				}
-			}
-		@Override
-		public void close()  {
-			if(closeOnclose) realClose();
-			}
-		@Override
-		public boolean isQueryable() {
-			return true;
-			}
-		@Override
-		public CloseableIterator<VariantContext> iterator() {
-			throw new IllegalStateException();
-			}
-		@Override
-		public VCFHeader getHeader() {
-			throw new IllegalStateException();
-			}	
-		}
-		
-
 	private int recursive(final VariantContext ctx,
 			final List<VariantContext> candidates,
 			final List<VCFReader> vcfFilesInput,
-			final List<ShadowedVcfReader> shadowControls,
+			final StructuralVariantPanel panel,
 			final VariantContextWriter out) {
 		if(candidates.size()==vcfFilesInput.size()) {
-			final int max_controls = (int)(shadowControls.size() * max_maf);
-			int count_matching_controls = 0;
-			for(final ShadowedVcfReader vcfReader: shadowControls) {
-				final CloseableIterator<VariantContext> iter = vcfReader.query(
-						ctx.getContig(),
-						Math.max(1,ctx.getStart()- this.svComparator.getBndDistance()),
-						ctx.getEnd()+ this.svComparator.getBndDistance()
-						);
-				while(iter.hasNext()) {
-					final VariantContext ctx3 = iter.next();
-					if(this.svComparator.test(ctx3, ctx)) {
-						count_matching_controls++;
-						candidates.add(new VariantContextBuilder(ctx3).
-							noGenotypes().
-							filter(ATT_CONTROL).
-							attribute(ATT_FILENAME, vcfReader.vcfPath.toString()).
-							make()
-							);
-						break;
-						}
+			final int max_controls = (int)(panel.getControls().size() * max_maf);
+			// first matching call for each control
+			final Map<Integer,StructuralVariantPanel.Call> control2call = new TreeMap<>();
+			for(final StructuralVariantPanel.Call call: panel.getOverlapping(
+					ctx.getContig(),
+					Math.max(1,ctx.getStart()- this.svComparator.getBndDistance()),
+					ctx.getEnd()+ this.svComparator.getBndDistance()
+					)) {
+				if(Arrays.stream(call.getControlIndexes()).allMatch(I->control2call.containsKey(I))) continue;
+				if(!this.svComparator.test(call.toVariantContext(), ctx)) continue;
+				for(final int controlId : call.getControlIndexes()) {
+					control2call.putIfAbsent(controlId, call);
 					}
-				iter.close();
-				vcfReader.close();
-				if(count_matching_controls > max_controls) return -1;
+				if(control2call.size() > max_controls) return -1;
+				}
+			for(final Map.Entry<Integer,StructuralVariantPanel.Call> kv: control2call.entrySet()) {
+				candidates.add(new VariantContextBuilder(kv.getValue().toVariantContext()).
+					filter(ATT_CONTROL).
+					attribute(ATT_FILENAME, panel.getControls().get(kv.getKey())).
+					make()
+					);
 				}
 			if(this.print_all_ctx) {
 				final String cluster = "CTX"+(++ID_GENERATOR);
@@ -268,7 +239,7 @@ public class ScanStructuralVariants extends Launcher{
 		iter.close();
 		if(ctx2==null) return -1;
 		candidates.add(ctx2);
-		return recursive(ctx,candidates,vcfFilesInput,shadowControls,out);
+		return recursive(ctx,candidates,vcfFilesInput,panel,out);
 		}
 	
 	
@@ -283,10 +254,6 @@ public class ScanStructuralVariants extends Launcher{
 		VariantContextWriter out = null;
 		try {
 			final List<Path> casesPaths=(IOUtils.unrollPaths(args));
-			if(casesPaths.isEmpty()) {
-				LOG.error("cases list is empty");
-				return -1;
-				}
 			
 			if(!print_all_ctx && casesPaths.size()==1) {
 				LOG.warning("One case: switching to --all");
@@ -300,26 +267,41 @@ public class ScanStructuralVariants extends Launcher{
 						collect(Collectors.toList());
 				}
 			
+			final StructuralVariantPanel panel;
+			if(this.panelPath!=null) {
+				if(!this.controlsPath.isEmpty()) {
+					LOG.error("--panel and --controls cannot be used at the same time");
+					return -1;
+					}
+				panel = StructuralVariantPanel.load(this.panelPath);
+				}
+			else
+				{
+				final StructuralVariantPanel.Builder builder = new StructuralVariantPanel.Builder();
+				for(final Path input: this.controlsPath) {
+					builder.add(input);
+					}
+				panel = builder.build();
+				}
+			LOG.info("controls: "+panel.getControls().size()+" merged calls: "+panel.getCalls().size());
+			if(this.savePanelPath!=null) {
+				panel.save(this.savePanelPath);
+				if(casesPaths.isEmpty()) return 0;
+				}
+			
+			if(casesPaths.isEmpty()) {
+				LOG.error("cases list is empty");
+				return -1;
+				}
+			
 			SAMSequenceDictionary dict = null;
 			
 			final Set<VCFHeaderLine> metadata = new HashSet<>();
 			
-			for(int side=0;side<2;side++) {
-			for(final Path input: (side==0?casesPaths:this.controlsPath)) {
+			for(final Path input: casesPaths) {
 				final VCFReader vcfInput = VCFReaderFactory.makeDefault().open(input);
-				
-				final VCFHeader header = vcfInput.getHeader();
-				
-				if(side==0)
-					{
-					casesFiles.add(vcfInput);
-					}
-				else
-					{
-					vcfInput.close();
-					}
-				
-				final SAMSequenceDictionary dict2 = SequenceDictionaryUtils.extractRequired(header);
+				casesFiles.add(vcfInput);
+				final SAMSequenceDictionary dict2 = SequenceDictionaryUtils.extractRequired(vcfInput.getHeader());
 				if(dict==null)
 					{
 					dict = dict2;
@@ -330,7 +312,10 @@ public class ScanStructuralVariants extends Launcher{
 					return -1;
 					}
 				}
-			}
+			if(!panel.getControls().isEmpty() && !SequenceUtil.areSequenceDictionariesEqual(dict, panel.getSequenceDictionary())) {
+				LOG.error(JvarkitException.DictionariesAreNotTheSame.getMessage(panel.getSequenceDictionary(), dict));
+				return -1;
+				}
 			
 			final IntervalTreeMap<Boolean> intervalTreeMap;
 			if(intervalListProvider!=null) {
@@ -419,13 +404,6 @@ public class ScanStructuralVariants extends Launcher{
 			JVarkitVersion.getInstance().addMetaData(this, header);
 			
 			
-			final List<ShadowedVcfReader> controlShadowReaders = new ArrayList<>(this.controlsPath.size());
-			for(int i=0;i< this.controlsPath.size();i++)
-				{
-				boolean large_flag = this.max_control_large_flag<0 || i>= this.max_control_large_flag;
-				controlShadowReaders.add(new ShadowedVcfReader(this.controlsPath.get(i), large_flag));
-				}
-			
 			out =  super.openVariantContextWriter(this.outputFile);
 			out.writeHeader(header);
 			final CloseableIterator<VariantContext> iter = casesFiles.get(0).iterator();
@@ -451,7 +429,7 @@ public class ScanStructuralVariants extends Launcher{
 				
 				final List<VariantContext> candidate = new ArrayList<>(casesFiles.size());
 				candidate.add(ctx);
-				recursive(ctx,candidate,casesFiles,controlShadowReaders,out);
+				recursive(ctx,candidate,casesFiles,panel,out);
 				}
 			iter.close();
 			progress.close();		
@@ -459,7 +437,6 @@ public class ScanStructuralVariants extends Launcher{
 			out.close();
 			out=null;
 			casesFiles.stream().forEach(F->{try{F.close();}catch(Exception err) {} });
-			controlShadowReaders.stream().forEach(F->F.realClose());
 			return 0;
 		} catch(final Throwable err) {
 			LOG.error(err);
@@ -41,6 +41,7 @@ import com.github.lindenb.jvarkit.util.JVarkitVersion;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.variant.variantcontext.Breakend;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.PeekIterator;
@@ -56,7 +57,6 @@ import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLineType;
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import htsjdk.variant.vcf.VCFIterator;
-import htsjdk.variant.vcf.VCFRecordCodec;
 
 /**
 BEGIN_DOC
@@ -138,7 +138,7 @@ public class VcfPostProcessSV extends OnePassVcfLauncher {
 			
 			sorter1 = SortingCollection.newInstance(
 					VariantContext.class,
-                    new VCFRecordCodec(header,true),
+                    new BinaryVariantContextCodec(header),
                     comparator,
                     this.writingSortingCollection.getMaxRecordsInRam(),
                     this.writingSortingCollection.getTmpPaths()
@@ -146,7 +146,7 @@ public class VcfPostProcessSV extends OnePassVcfLauncher {
 			
 			sorter2 = SortingCollection.newInstance(
 					VariantContext.class,
-                    new VCFRecordCodec(header,true),
+                    new BinaryVariantContextCodec(header),
                     header.getVCFRecordComparator(),
                     this.writingSortingCollection.getMaxRecordsInRam(),
                     this.writingSortingCollection.getTmpPaths()
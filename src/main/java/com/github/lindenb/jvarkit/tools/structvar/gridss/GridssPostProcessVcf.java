@@ -41,6 +41,7 @@ import com.github.lindenb.jvarkit.util.iterator.EqualRangeIterator;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.variant.variantcontext.Breakend;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.SortingCollection;
@@ -54,7 +55,6 @@ import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLineType;
 import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import htsjdk.variant.vcf.VCFIterator;
-import htsjdk.variant.vcf.VCFRecordCodec;
 import htsjdk.variant.vcf.VCFStandardHeaderLines;
 
 /**
@@ -190,7 +190,7 @@ public class GridssPostProcessVcf extends OnePassVcfLauncher {
 			final Comparator<VariantContext> comparator = (A,B)->  A.getAttributeAsString(EVENT_KEY, "").compareTo(B.getAttributeAsString(EVENT_KEY, ""));
 			sorter1 = SortingCollection.newInstance(
 					VariantContext.class,
-                    new VCFRecordCodec(header,true),
+                    new BinaryVariantContextCodec(header),
                     comparator,
                     this.writingSortingCollection.getMaxRecordsInRam(),
                     this.writingSortingCollection.getTmpPaths()
@@ -213,7 +213,7 @@ public class GridssPostProcessVcf extends OnePassVcfLauncher {
 			
 			sorter2 = SortingCollection.newInstance(
 					VariantContext.class,
-                    new VCFRecordCodec(header,true),
+                    new BinaryVariantContextCodec(header),
                     header.getVCFRecordComparator(),
                     this.writingSortingCollection.getMaxRecordsInRam(),
                     this.writingSortingCollection.getTmpPaths()
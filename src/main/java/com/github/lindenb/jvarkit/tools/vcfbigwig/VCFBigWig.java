@@ -31,8 +31,8 @@ import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -41,22 +41,24 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.events.XMLEvent;
 
 import org.broad.igv.bbfile.BBFileReader;
+import org.broad.igv.bbfile.BBZoomLevelHeader;
+import org.broad.igv.bbfile.BBZoomLevels;
 import org.broad.igv.bbfile.BigWigIterator;
 import org.broad.igv.bbfile.WigItem;
+import org.broad.igv.bbfile.ZoomDataRecord;
+import org.broad.igv.bbfile.ZoomLevelIterator;
 
 import com.beust.jcommander.Parameter;
 import com.github.lindenb.jvarkit.jcommander.OnePassVcfLauncher;
 import com.github.lindenb.jvarkit.lang.JvarkitException;
 import com.github.lindenb.jvarkit.math.stats.Percentile;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
+import com.github.lindenb.jvarkit.util.bio.DistanceParser;
 import com.github.lindenb.jvarkit.util.bio.fasta.ContigNameConverter;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 
-import htsjdk.samtools.util.AbstractIterator;
 import htsjdk.samtools.util.CloserUtil;
-import htsjdk.samtools.util.Interval;
-import htsjdk.samtools.util.Locatable;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -94,6 +96,22 @@ A	33926	.	G	A	182	.	GERP=-6.35(...)
 A	45365	.	A	G	222	.	GERP=-3.55(...)
 ```
 
+## Performance
+
+The wig items are decoded for a window of `--bufferSize` bases and kept in memory: when the input VCF is sorted,
+the bigwig file is read in one linear scan instead of a random access for each variant.
+
+## Window and zoom levels
+
+With `--window N`, the value is computed for the N bases centered on the variant instead of the variant itself.
+For long windows, `--zoom` computes the aggregation ('avg', 'min' or 'max') from the pre-computed
+zoom levels (summaries) of the bigwig file: the coarsest zoom level whose resolution is at most 1/10th of the
+queried length is used. The 'avg' is then weighted by the number of bases covered by each summary.
+
+```bash
+ java -jar dist/vcfbigwig.jar --window 10kb --zoom -a max -B gerp.bw input.vcf.gz 
+```
+
 
 END_DOC
 */
@@ -101,27 +119,11 @@ END_DOC
 	description="Annotate a VCF with values from a bigwig file",
 	keywords={"vcf","wig","wiggle","bigwig"},
 	creationDate="20200506",
-	modificationDate="20220110"
+	modificationDate="20261019"
 	)
 public class VCFBigWig extends OnePassVcfLauncher {
 	private static final Logger LOG = Logger.build(VCFBigWig.class).make();
 
-	/** wraps a BigWigIterator */
-	private static class WigItemIterator
-		extends AbstractIterator<WigItem>
-		{
-		private final BigWigIterator delegate;
-		WigItemIterator(final BigWigIterator delegate ){
-			this.delegate  = delegate;
-			}
-		@Override
-		protected WigItem advance() {
-			if(this.delegate==null) return null;
-			if(!this.delegate.hasNext()) return null;
-			return this.delegate.next();
-			}
-		}
-	
 	/** describe a BigWig Resource */
 	private static class BigWigResource
 		implements Closeable
@@ -132,6 +134,20 @@ public class VCFBigWig extends OnePassVcfLauncher {
 		private BBFileReader bbFileReader=null;
 		private ContigNameConverter contigNameConverter = null;
 		private final Set<String> userContigsNotFound = new HashSet<>();
+		/** zoom level used to answer the queries, or 0 for the raw wig data */
+		private int zoomLevel = 0;
+		/* decoded items for the current window, sorted on start. Coordinates are 0-based, end exclusive */
+		private String bufferContig = null;
+		private int bufferStart = 0;
+		private int bufferEnd = -1;
+		private int bufferCount = 0;
+		private int maxItemLength = 0;
+		private int[] itemStarts = new int[1_000];
+		private int[] itemEnds = new int[1_000];
+		private float[] itemMins = new float[1_000];
+		private float[] itemMaxs = new float[1_000];
+		private float[] itemSums = new float[1_000];
+		private int[] itemCovered = new int[1_000];
 		
 	
 		public String getToken() {
@@ -175,15 +191,95 @@ public class VCFBigWig extends OnePassVcfLauncher {
 			return this;
 			}
 		
-		public Iterator<WigItem> iterator(final Locatable locatable,boolean contained)
-			{
-			return new WigItemIterator(this.bbFileReader.getBigWigIterator(
-					locatable.getContig(),
-					locatable.getStart()-1,
-					locatable.getContig(),
-					locatable.getEnd(),
-					contained
-					));
+		/** select the coarsest zoom level whose reduction is lower or equal than 'maxReduction'. Returns 0 if there is none */
+		int findZoomLevel(final int maxReduction) {
+			final BBZoomLevels zoomLevels = this.bbFileReader.getZoomLevels();
+			int best = 0;
+			int bestReduction = 0;
+			for(int level=1; zoomLevels!=null && level<=zoomLevels.getZoomHeaderCount();++level) {
+				final BBZoomLevelHeader zh = zoomLevels.getZoomLevelHeader(level);
+				if(zh==null) continue;
+				final int reduction = zh.getReductionLevel();
+				if(reduction > maxReduction || reduction <= bestReduction) continue;
+				best = level;
+				bestReduction = reduction;
+				}
+			return best;
+			}
+		
+		private void push(final int start0,final int end0,final float min,final float max,final float sum,final int covered) {
+			if(this.bufferCount==this.itemStarts.length) {
+				final int n = this.bufferCount*2;
+				this.itemStarts = Arrays.copyOf(this.itemStarts, n);
+				this.itemEnds = Arrays.copyOf(this.itemEnds, n);
+				this.itemMins = Arrays.copyOf(this.itemMins, n);
+				this.itemMaxs = Arrays.copyOf(this.itemMaxs, n);
+				this.itemSums = Arrays.copyOf(this.itemSums, n);
+				this.itemCovered = Arrays.copyOf(this.itemCovered, n);
+				}
+			this.itemStarts[this.bufferCount] = start0;
+			this.itemEnds[this.bufferCount] = end0;
+			this.itemMins[this.bufferCount] = min;
+			this.itemMaxs[this.bufferCount] = max;
+			this.itemSums[this.bufferCount] = sum;
+			this.itemCovered[this.bufferCount] = covered;
+			this.maxItemLength = Math.max(this.maxItemLength, end0-start0);
+			this.bufferCount++;
+			}
+		
+		/** decode the items overlapping contig:start0-end0 (0-based) unless they're already in the buffer */
+		private void fill(final String contig,final int start0,final int end0,final int bufferSize) {
+			if(contig.equals(this.bufferContig) && this.bufferStart<=start0 && end0<=this.bufferEnd) return;
+			this.bufferContig = contig;
+			this.bufferStart = start0;
+			this.bufferEnd = Math.max(end0, start0 + bufferSize);
+			this.bufferCount = 0;
+			this.maxItemLength = 0;
+			if(this.zoomLevel>0) {
+				final ZoomLevelIterator iter = this.bbFileReader.getZoomLevelIterator(this.zoomLevel, contig, this.bufferStart, contig, this.bufferEnd, false);
+				while(iter.hasNext()) {
+					final ZoomDataRecord rec = iter.next();
+					push(rec.getChromStart(),rec.getChromEnd(),rec.getMinVal(),rec.getMaxVal(),rec.getSumData(),rec.getBasesCovered());
+					}
+				}
+			else
+				{
+				final BigWigIterator iter = this.bbFileReader.getBigWigIterator(contig, this.bufferStart, contig, this.bufferEnd, false);
+				while(iter!=null && iter.hasNext()) {
+					final WigItem item = iter.next();
+					final float v = item.getWigValue();
+					final int len = item.getEndBase()-item.getStartBase();
+					push(item.getStartBase(),item.getEndBase(),v,v,v*len,len);
+					}
+				}
+			}
+		
+		/** return the index of the first item in the buffer that may overlap 'start0' */
+		private int lowerBound(final int start0) {
+			final int target = start0 - this.maxItemLength;
+			int lo = 0;
+			int hi = this.bufferCount;
+			while(lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if(this.itemStarts[mid] < target) {
+					lo = mid + 1;
+					}
+				else
+					{
+					hi = mid;
+					}
+				}
+			return lo;
+			}
+		
+		/** visit the indexes of the items overlapping (or contained in) contig:start0-end0 (0-based) */
+		void query(final String contig,final int start0,final int end0,final boolean contained,final int bufferSize,final java.util.function.IntPredicate visitor) {
+			fill(contig, start0, end0, bufferSize);
+			for(int i=lowerBound(start0);i< this.bufferCount && this.itemStarts[i] < end0;++i) {
+				if(this.itemEnds[i] <= start0) continue;
+				if(contained && (this.itemStarts[i] < start0 || this.itemEnds[i] > end0)) continue;
+				if(!visitor.test(i)) break;
+				}
 			}
 		
 		@Override
@@ -213,9 +309,21 @@ public class VCFBigWig extends OnePassVcfLauncher {
 	@Parameter(names={"-C","--contained"},description="Specifies wig values must be contained by region. if false: return any intersecting region values")
 	private boolean contained = false;
 	
-	@Parameter(names={"-a","--aggregate"},description="How to aggregate overlapping values: 'avg' average; 'median': median, 'first': use first, 'all' : print all the data")
+	@Parameter(names={"-a","--aggregate"},description="How to aggregate overlapping values: 'avg' average; 'median': median, 'first': use first, 'all' : print all the data, 'min': minimum, 'max': maximum")
 	private AggregateMethod aggregateMethod  = AggregateMethod.avg;
 
+	@Parameter(names={"--bufferSize"},description= "Decode the wig items in a window of 'N' bases and keep them in memory instead of doing a random access for each variant. "
+			+ "Most efficient when the VCF is sorted. "+
+			DistanceParser.OPT_DESCRIPTION,converter=DistanceParser.StringConverter.class,splitter=com.github.lindenb.jvarkit.util.jcommander.NoSplitter.class)
+	private int bufferSize= 10_000;
+
+	@Parameter(names={"-W","--window"},description= "[20261019] If greater than 0, compute the value for the 'N' bases centered on the variant instead of the variant itself. "+
+			DistanceParser.OPT_DESCRIPTION,converter=DistanceParser.StringConverter.class,splitter=com.github.lindenb.jvarkit.util.jcommander.NoSplitter.class)
+	private int windowSize= 0;
+
+	@Parameter(names={"-Z","--zoom"},description="[20261019] Use the zoom levels (pre-computed summaries) of the bigwig file to compute the aggregation. Only 'avg', 'min' and 'max' are supported. See online doc.")
+	private boolean useZoomLevels = false;
+
 	@Parameter(names={"-t","--transform"},description="Deprecated",hidden=true)
 	private String _convertChrName = null;
 
@@ -307,9 +415,25 @@ public class VCFBigWig extends OnePassVcfLauncher {
 					this.bigwigResources.add(rsrc);
 					}
 				
+				if(this.useZoomLevels) {
+					switch(this.aggregateMethod) {
+						case avg: case min: case max: break;
+						default: LOG.error("--zoom is not supported with aggregate method "+this.aggregateMethod);return -1;
+						}
+					}
+				
 				this.bigwigResources.stream().forEach(BB->{
 					BB.open();
 					});
+				if(this.useZoomLevels) {
+					final int queryLength = Math.max(1,this.windowSize);
+					for(final BigWigResource rsrc: this.bigwigResources) {
+						rsrc.zoomLevel = rsrc.findZoomLevel(queryLength/10);
+						if(rsrc.zoomLevel==0) {
+							LOG.warn("no suitable zoom level for "+rsrc.getPath()+". Using the raw data.");
+							}
+						}
+					}
 				return 0;
 				}
 			catch(final Throwable err)
@@ -328,7 +452,7 @@ public class VCFBigWig extends OnePassVcfLauncher {
 	
 	private enum AggregateMethod
 		{
-		avg,median,first,all
+		avg,median,first,all,min,max
 		}
 	public VCFBigWig()
 		{
@@ -368,13 +492,22 @@ public class VCFBigWig extends OnePassVcfLauncher {
 		JVarkitVersion.getInstance().addMetaData(this, h2);
 		w.writeHeader(h2);
 		
-		long count=0L;
 		final List<Float> values = new ArrayList<>();
+		final double[] summary = new double[4];//min,max,sum,covered for zoom levels
 		while(r.hasNext())
 			{
 			final VariantContext ctx = r.next();
 			VariantContextBuilder vcb = null;
 			
+			/* 0-based interval to be queried */
+			int start0 = ctx.getStart()-1;
+			int end0 = ctx.getEnd();
+			if(this.windowSize>0) {
+				final int mid0 = start0 + (end0-start0)/2;
+				start0 = Math.max(0, mid0 - this.windowSize/2);
+				end0 = start0 + this.windowSize;
+				}
+			
 			for(final BigWigResource rsrc: this.bigwigResources) {
 				values.clear();
 				final String variantChrom=  rsrc.contigNameConverter.apply(ctx.getContig());
@@ -388,19 +521,36 @@ public class VCFBigWig extends OnePassVcfLauncher {
 					continue;
 					}
 				
-				
-				final Iterator<WigItem> iter=rsrc.iterator(
-						new Interval(variantChrom,ctx.getStart(),ctx.getEnd()),
-						this.contained
-						);
-				while(iter!=null && iter.hasNext())
-					{
-					final WigItem item=iter.next();
-					final float v=item.getWigValue();
-					values.add(v);
-					if(this.aggregateMethod.equals(AggregateMethod.first)) break;
+				if(rsrc.zoomLevel>0) {
+					summary[0] = Double.POSITIVE_INFINITY;
+					summary[1] = Double.NEGATIVE_INFINITY;
+					summary[2] = 0.0;
+					summary[3] = 0.0;
+					rsrc.query(variantChrom, start0, end0, this.contained, this.bufferSize, IDX->{
+						if(rsrc.itemCovered[IDX]<=0) return true;
+						summary[0] = Math.min(summary[0], rsrc.itemMins[IDX]);
+						summary[1] = Math.max(summary[1], rsrc.itemMaxs[IDX]);
+						summary[2] += rsrc.itemSums[IDX];
+						summary[3] += rsrc.itemCovered[IDX];
+						return true;
+						});
+					if(summary[3]<=0.0) continue;
+					if(vcb==null) vcb=new VariantContextBuilder(ctx);
+					switch(this.aggregateMethod)
+						{
+						case avg: vcb.attribute(rsrc.getToken(),(float)(summary[2]/summary[3])); break;
+						case min: vcb.attribute(rsrc.getToken(),(float)summary[0]); break;
+						case max: vcb.attribute(rsrc.getToken(),(float)summary[1]); break;
+						default: throw new IllegalStateException();
+						}
+					continue;
 					}
 				
+				rsrc.query(variantChrom, start0, end0, this.contained, this.bufferSize, IDX->{
+					values.add(rsrc.itemMins[IDX]);
+					return !this.aggregateMethod.equals(AggregateMethod.first);
+					});
+				
 				if(values.isEmpty())
 					{
 					continue;
@@ -410,7 +560,7 @@ public class VCFBigWig extends OnePassVcfLauncher {
 				switch(this.aggregateMethod)
 					{
 					case all:
-						vcb.attribute(rsrc.getToken(),values);
+						vcb.attribute(rsrc.getToken(),new ArrayList<>(values));
 						break;
 					case avg:
 						vcb.attribute(rsrc.getToken(),
@@ -423,6 +573,12 @@ public class VCFBigWig extends OnePassVcfLauncher {
 						vcb.attribute(rsrc.getToken(),
 								(float)Percentile.median().evaluate(values.stream().mapToDouble(V->V.doubleValue()).toArray()).getAsDouble());
 						break;
+					case min:
+						vcb.attribute(rsrc.getToken(),(float)values.stream().mapToDouble(V->V.doubleValue()).min().getAsDouble());
+						break;
+					case max:
+						vcb.attribute(rsrc.getToken(),(float)values.stream().mapToDouble(V->V.doubleValue()).max().getAsDouble());
+						break;
 					default: throw new IllegalStateException();
 					}
 				}
@@ -434,12 +590,6 @@ public class VCFBigWig extends OnePassVcfLauncher {
 				{
 				w.add(vcb.make());
 				}
-			
-			// JVM crash sometimes ? suspect there is a memory leak ?
-			if(++count%1000L==0)
-				{
-				System.gc();
-				}
 			}
 		w.close();
 		
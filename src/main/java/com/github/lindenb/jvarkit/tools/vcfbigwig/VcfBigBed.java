@@ -95,7 +95,7 @@ END_DOC
 	description="Annotate a VCF with values from a bigbed file",
 	keywords={"vcf","wig","wiggle","bigbed","bed"},
 	creationDate="20220107",
-	modificationDate="20220107"
+	modificationDate="20261019"
 	)
 public class VcfBigBed extends OnePassVcfLauncher {
 	private static final Logger LOG = Logger.build(VcfBigBed.class).make();
@@ -151,24 +151,48 @@ public class VcfBigBed extends OnePassVcfLauncher {
 				return Collections.emptyIterator();
 				}
 			if(this.lastInterval==null || !this.lastInterval.contains(ctx)) {
-				this.buffer.clear();
+				final Locatable previous = this.lastInterval;
 				this.lastInterval = new SimpleInterval(variantChrom, ctx.getStart(), Math.max(ctx.getEnd(), ctx.getStart()+VcfBigBed.this.bigbedBufferSize));
+				final boolean sweep = previous!=null &&
+					previous.getContig().equals(variantChrom) &&
+					previous.getStart() <= ctx.getStart() &&
+					ctx.getStart() <= previous.getEnd();
+				final int fetchStart;
+				if(sweep) {
+					/* sorted input: keep the features overlapping the new window, only fetch the new bases */
+					final int newStart = ctx.getStart();
+					this.buffer.removeIf(B->B.getEnd() < newStart);
+					fetchStart = previous.getEnd()+1;
+					}
+				else
+					{
+					this.buffer.clear();
+					fetchStart = this.lastInterval.getStart();
+					}
 				final Iterator<BedFeature> iter = this.bbFileReader.getBigBedIterator(
 						variantChrom,
-						this.lastInterval.getStart()-1,
+						fetchStart-1,
 						this.lastInterval.getContig(),
 						this.lastInterval.getEnd(),
 						false
 						);
 			
 				while(iter.hasNext()) {
-					this.buffer.add(new BigBedFeatureAsList(iter.next()));
+					final BedFeature feat = iter.next();
+					/* features starting before 'fetchStart' overlapped the previous window: they're already in the buffer */
+					if(sweep && feat.getStartBase()+1 < fetchStart) continue;
+					this.buffer.add(new BigBedFeatureAsList(feat));
 					}
 				}
-			return this.buffer.stream().
-					filter(B->B.overlaps(ctx)).
-					filter(B->testFinerIntersection(ctx,B)).
-					iterator();
+			final List<BigBedFeatureAsList> hits = new ArrayList<>();
+			for(final BigBedFeatureAsList B: this.buffer) {
+				/* buffer is sorted on start */
+				if(B.getStart() > ctx.getEnd()) break;
+				if(!B.overlaps(ctx)) continue;
+				if(!testFinerIntersection(ctx,B)) continue;
+				hits.add(B);
+				}
+			return hits.iterator();
 			}
 
 		
@@ -227,7 +251,8 @@ public class VcfBigBed extends OnePassVcfLauncher {
 			)
 	private String formatPattern = "bed.get(0)+\":\"+bed.get(1)+\"-\"+bed.get(2)";
 	@Parameter(names={"--bufferSize"},description= "When we're looking for bed in a lare bigbed file,"
-			+ " load the bed items in an interval of 'N' bases instead of doing a random access for each variant. "+
+			+ " load the bed items in an interval of 'N' bases instead of doing a random access for each variant. "
+			+ "[20261019] When the VCF is sorted, the window slides forward and only the new bases are read. "+
 			DistanceParser.OPT_DESCRIPTION,converter=DistanceParser.StringConverter.class,splitter=com.github.lindenb.jvarkit.util.jcommander.NoSplitter.class)
 	private int bigbedBufferSize= 10_000;
 
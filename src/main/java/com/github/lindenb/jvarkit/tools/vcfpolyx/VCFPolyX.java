@@ -27,7 +27,6 @@ package com.github.lindenb.jvarkit.tools.vcfpolyx;
 import java.nio.file.Path;
 
 
-import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -41,13 +40,11 @@ import htsjdk.variant.vcf.VCFInfoHeaderLine;
 import com.beust.jcommander.Parameter;
 import com.github.lindenb.jvarkit.jcommander.OnePassVcfLauncher;
 import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.samtools.reference.ReferenceChunkCache;
 import com.github.lindenb.jvarkit.util.JVarkitVersion;
-import com.github.lindenb.jvarkit.util.bio.ChromosomeSequence;
-import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
 import com.github.lindenb.jvarkit.util.bio.fasta.ContigNameConverter;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
-import com.github.lindenb.jvarkit.util.picard.GenomicSequence;
 
 import htsjdk.variant.vcf.VCFIterator;
 
@@ -76,7 +73,7 @@ END_DOC
 	description="Number of repeated REF bases around POS.",
 	keywords={"vcf","repeat"},
 	creationDate="20200930",
-	modificationDate="20211102"
+	modificationDate="20221019"
 	)
 public class VCFPolyX extends OnePassVcfLauncher
 	{
@@ -111,9 +108,9 @@ public class VCFPolyX extends OnePassVcfLauncher
 		
 		try
 			{
-			try(ReferenceSequenceFile  referenceSequenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(this.faixPath)) {
+			try(ReferenceChunkCache referenceChunkCache = new ReferenceChunkCache(ReferenceSequenceFileFactory.getReferenceSequenceFile(this.faixPath))) {
 				
-				final ContigNameConverter contigNameConverter = ContigNameConverter.fromOneDictionary(SequenceDictionaryUtils.extractRequired(referenceSequenceFile));
+				final ContigNameConverter contigNameConverter = ContigNameConverter.fromOneDictionary(referenceChunkCache.getSequenceDictionary());
 	
 				
 				final VCFHeader h2 = new VCFHeader(r.getHeader());
@@ -134,7 +131,6 @@ public class VCFPolyX extends OnePassVcfLauncher
 				if( this.filterTrehsold>-1) {
 					h2.addMetaDataLine(filterHeaderLine);
 					}
-				ChromosomeSequence genomicContig=null;
 				JVarkitVersion.getInstance().addMetaData(this, h2);
 				w.writeHeader(h2);
 				while(r.hasNext())
@@ -152,45 +148,21 @@ public class VCFPolyX extends OnePassVcfLauncher
 						continue;
 						}
 					
-					if(genomicContig==null || !genomicContig.hasName(normalizedContig))
-						{
-						genomicContig= new GenomicSequence(referenceSequenceFile, normalizedContig);
-						}
-					
 					final VariantContextBuilder b = new VariantContextBuilder(ctx);
 	
 					// https://github.com/lindenb/jvarkit/issues/165
 					final boolean indel_flag = ctx.isIndel();
 					
-					int count=1;
-					int pos0 = ctx.getStart()-1;
-					// https://github.com/lindenb/jvarkit/issues/165
-					if(indel_flag) {
-						pos0++;
-						}
-					char c0 = Character.toUpperCase(genomicContig.charAt(pos0));
+					final int shift = (indel_flag?1:0);
+					final int contigLength = referenceChunkCache.getSequenceDictionary().getSequence(normalizedContig).getSequenceLength();
 					//go left
-					pos0--;
-					while(pos0>=0 && c0==Character.toUpperCase(genomicContig.charAt(pos0)))
-						{
-						++count;
-						pos0--;
-						}
+					final int left_pos1 = ctx.getStart() + shift;
+					final int count_left = left_pos1 <= contigLength ? referenceChunkCache.getHomopolymerLeft(normalizedContig, left_pos1) : 0;
 					//go right
-					pos0 = ctx.getEnd()-1;
-					// https://github.com/lindenb/jvarkit/issues/165
-					if(indel_flag) {
-						pos0++;
-						}
-					
-					c0 = Character.toUpperCase(genomicContig.charAt(pos0));
-					pos0++;
-					while(pos0< genomicContig.length()
-						&& c0==Character.toUpperCase(genomicContig.charAt(pos0)))
-						{
-						++count;
-						++pos0;
-						}
+					final int right_pos1 = ctx.getEnd() + shift;
+					final int count_right = right_pos1 <= contigLength ? referenceChunkCache.getHomopolymerRight(normalizedContig, right_pos1) : 0;
+					// one base is always counted, the bases at left_pos1 and right_pos1 are counted only once
+					final int count = 1 + Math.max(0, count_left - 1) + Math.max(0, count_right - 1);
 					b.attribute(infoHeaderLine.getID(),count);
 					
 					/* filter */
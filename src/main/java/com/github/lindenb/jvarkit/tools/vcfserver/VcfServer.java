@@ -59,7 +59,7 @@ import com.github.lindenb.jvarkit.tools.vcf2table.VcfToTable;
 import com.github.lindenb.jvarkit.util.jcommander.Launcher;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
-import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
+import com.github.lindenb.jvarkit.variant.vcf.VariantTileCache;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
@@ -71,7 +71,6 @@ import htsjdk.variant.variantcontext.VariantContextUtils.JexlVCMatchExp;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.filter.JavascriptVariantFilter;
 import htsjdk.variant.vcf.VCFHeader;
-import htsjdk.variant.vcf.VCFReader;
 
 
 /**
@@ -108,6 +107,13 @@ $ java -jar dist/vcfserver.jar input.vcf.gz
 
 ```
 
+## Cache
+
+The variants are shared by all the users of the server: each VCF is split into tiles of `--tile-size` bases,
+the variants of a tile are decoded once and kept in memory (LRU, at most `--cache-size` variants + genotypes).
+The VCF readers are pooled instead of being opened for each request.
+The pages are sent with an `ETag` header: a browser asking again for the same page will get a `304 Not Modified` response.
+
 
 END_DOC
 
@@ -140,6 +146,14 @@ private long timeout_seconds =60;
 private boolean use_jexl = false;
 @Parameter(names={"--url"},description=Launcher.USER_CUSTOM_INTERVAL_URL_DESC)
 private String userCustomUrl=null;
+@Parameter(names={"--tile-size"},description=VariantTileCache.OPT_TILE_SIZE_DESC)
+private int tileSize = VariantTileCache.DEFAULT_TILE_SIZE;
+@Parameter(names={"--cache-size"},description=VariantTileCache.OPT_CACHE_SIZE_DESC)
+private long cacheSize = VariantTileCache.DEFAULT_CACHE_SIZE;
+
+/** shared by all the jetty threads */
+private VariantTileCache tileCache = null;
+private volatile Server server = null;
 
 /** used to escape the text output in pre tag */
 private static class EscapeXmlOutputStream
@@ -599,12 +613,10 @@ private class ViewVcfHandler extends AbstractHandler
 			flush();
 			
 			
-			VCFReader reader=null;
 			CloseableIterator<VariantContext> iter=null;
 			try
 				{
-				reader = VCFReaderFactory.makeDefault().open(vcfFile, true);
-				final VCFHeader header = reader.getHeader();
+				final VCFHeader header = VcfServer.this.tileCache.getHeader(vcfFile.toPath());
 				if(header==null)
 					{
 					writeError("Cannot get header of "+header);
@@ -696,7 +708,8 @@ private class ViewVcfHandler extends AbstractHandler
 				vcfToTable.setOutputStream(newOut);
 				vcfToTable.setHideHtmlHeader(true);//always
 				vcfToTable.setPrintHeader("true".equals(this.request.getParameter(SHOW_HEADER_PARAM)));
-				vcfToTable.setHideGenotypes("true".equals(this.request.getParameter(HIDE_GENOTYPES_PARAM)));
+				final boolean hide_genotypes = "true".equals(this.request.getParameter(HIDE_GENOTYPES_PARAM));
+				vcfToTable.setHideGenotypes(hide_genotypes);
 				vcfToTable.setHideHomRefGenotypes("true".equals(this.request.getParameter(HIDE_HOMREF_PARAM)));
 				vcfToTable.setHideNoCallGenotypes("true".equals(this.request.getParameter(HIDE_NOCALL_PARAM)));
 				vcfToTable.setUseANSIColors(!text_output);
@@ -709,11 +722,11 @@ private class ViewVcfHandler extends AbstractHandler
 					}
 				if(interval==null)
 					{
-					iter = reader.iterator();
+					iter = VcfServer.this.tileCache.iterator(vcfFile.toPath());
 					}
 				else
 					{
-					iter = reader.query(interval.getContig(), interval.getStart(), interval.getEnd());
+					iter = VcfServer.this.tileCache.query(vcfFile.toPath(), interval, hide_genotypes);
 					}
 				int limit=DEFAULT_LIMIT;
 				final String limit_str = request.getParameter(LIMIT_PARAM);
@@ -784,7 +797,6 @@ private class ViewVcfHandler extends AbstractHandler
 			finally
 				{
 				CloserUtil.close(iter);
-				CloserUtil.close(reader);
 				}
 			}
 		}
@@ -820,6 +832,16 @@ private class ViewVcfHandler extends AbstractHandler
 			}
 		else 
 			{
+			/* the page only depends on the file and on the parameters */
+			final String etag = VcfServer.this.tileCache.getETag(file.toPath(), req.getQueryString());
+			if(etag.equals(req.getHeader("If-None-Match")))
+				{
+				res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				jetty.setHandled(true);
+				return;
+				}
+			res.setHeader("ETag", etag);
+			res.setHeader("Cache-Control", "no-cache");
 			delegate = new ShowVcfHandler(req,res);
 			}
 		/*if(delegate==null)
@@ -841,7 +863,6 @@ private class ViewVcfHandler extends AbstractHandler
 	}
 @Override
 public int doWork(final List<String> args) {
-	Server server = null;
 	try
 		{
 		final List<File> vcfFiles = IOUtil.unrollFiles(args.stream().
@@ -855,8 +876,10 @@ public int doWork(final List<String> args) {
 			return -1;
 			}
 		vcfFiles.forEach(F->IOUtil.assertFileIsReadable(F));
+		this.tileCache = new VariantTileCache(this.tileSize, this.cacheSize);
 		
-		server = new Server(this.port);
+		final Server server = new Server(this.port);
+		this.server = server;
 		final HandlerList handlers = new HandlerList();
 		handlers.addHandler(new ViewVcfHandler(vcfFiles));
 		server.setHandler(handlers);
@@ -871,14 +894,24 @@ public int doWork(final List<String> args) {
 		}
 	finally
 		{
-		if(server!=null)
+		if(this.server!=null)
 			{
-			
-			server.destroy();
+			this.server.destroy();
+			this.server = null;
+			}
+		if(this.tileCache!=null)
+			{
+			this.tileCache.close();
+			this.tileCache = null;
 			}
 		}
 	}
 
+/** the running jetty server, or null */
+Server getServer() {
+	return this.server;
+	}
+
 public static void main(final String args[]) {
 	new VcfServer().instanceMainWithExit(args);
 	}
@@ -36,6 +36,9 @@ import com.github.lindenb.jvarkit.util.JVarkitVersion;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.variant.variantcontext.AttributeCleaner;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLine;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineReader;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLineWriter;
 
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.VCFHeader;
@@ -70,6 +73,7 @@ chrX	17819377	.	T	C	7515.25	.	AF=1.00;DP=319;Dels=0.00;FS=0.000;HRun=1;Haplotype
 ## History
 
 * April 2017 : switched to BCFTOOLS syntax
+* October 2026 : when no FORMAT field is removed and the input/output are text VCFs, the lines are not decoded by htsjdk, the genotypes are copied verbatim. Use `--no-line-mode` to use the htsjdk decoder.
 
 END_DOC
 
@@ -78,7 +82,7 @@ END_DOC
 	description="Removes one or more field from the INFO/FORMAT column of a VCF.",
 	deprecatedMsg="Use bcftools annotate -x ",
 	keywords={"vcf"},
-	modificationDate="20191127"
+	modificationDate="20261019"
 	)
 public class VCFStripAnnotations extends OnePassVcfLauncher
 	{
@@ -106,6 +110,25 @@ public class VCFStripAnnotations extends OnePassVcfLauncher
 		return 0;
 		}
 	
+	@Override
+	protected boolean isVcfLineModeSupported() {
+		return !this.cleaner.isCleaningGenotypes();
+		}
+	
+	@Override
+	protected int doVcfLinesToVcfLines(final String inputName, final VcfLineReader in, final VcfLineWriter out) {
+		final VCFHeader h2 = this.cleaner.cleanHeader(in.getHeader());
+		JVarkitVersion.getInstance().addMetaData(this, h2);
+		out.writeHeader(h2);
+		while(in.hasNext())
+			{
+			final VcfLine line = in.next();
+			this.cleaner.cleanVcfLine(line);
+			out.add(line);
+			}
+		return 0;
+		}
+	
 	@Override
 	protected int beforeVcf() {
 		this.cleaner = AttributeCleaner.compile(this.pattern);
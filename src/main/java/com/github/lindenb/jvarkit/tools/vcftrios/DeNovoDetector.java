@@ -25,6 +25,7 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.tools.vcftrios;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -38,6 +39,10 @@ import htsjdk.variant.variantcontext.VariantContext;
 
 /** utility detecting denovo mutations */
 public class DeNovoDetector {
+/** allele code of a NO_CALL allele in {@link #encodeGenotypes(VariantContext, int[])} */
+private static final int CODE_NO_CALL = -1;
+/** allele code of a genotype that doesn't have the expected ploidy in {@link #encodeGenotypes(VariantContext, int[])} */
+private static final int CODE_BAD_PLOIDY = -2;
 	
 public static interface DeNovoMutation
 	{
@@ -270,6 +275,136 @@ private Genotype fixNoCall(final VariantContext vc,final Genotype gt) {
 	}
 
 
+/**
+ * Encode all the genotypes of a variant as an array of allele codes, so many trios can be tested
+ * with {@link #isDeNovo(int[], int, int, int)} without any Genotype lookup or Allele comparison.
+ * The code of an allele is its index in vc.getAlleles(). The genotype of the sample at index 'i'
+ * is stored in codes[i*2] and codes[i*2+1]. The conversions (NO_CALL to HOM_REF, fixing ploidy) are applied.
+ * 
+ * @param vc the variant
+ * @param codes buffer that will be re-used if it is large enough. Can be null.
+ * @return the array of codes
+ */
+public int[] encodeGenotypes(final VariantContext vc,int[] codes) {
+	final int nSamples = vc.getNSamples();
+	if(codes==null || codes.length < nSamples*2) {
+		codes = new int[nSamples*2];
+		}
+	final List<Allele> alleles = vc.getAlleles();
+	List<Allele> extraAlleles = null;
+	for(int i=0;i< nSamples;i++) {
+		final Genotype gt = vc.getGenotype(i);
+		final int ploidy = gt.getPloidy();
+		if(isFixingPloidy() && ploidy==1) {
+			codes[i*2  ] = alleleCode(alleles,gt.getAllele(0));
+			if(codes[i*2]<0 && !gt.getAllele(0).isNoCall()) {
+				if(extraAlleles==null) extraAlleles = new ArrayList<>();
+				codes[i*2] = extraAlleleCode(alleles,extraAlleles,gt.getAllele(0));
+				}
+			codes[i*2+1] = alleleCode(alleles,Allele.SPAN_DEL);
+			if(codes[i*2+1]<0) {
+				if(extraAlleles==null) extraAlleles = new ArrayList<>();
+				codes[i*2+1] = extraAlleleCode(alleles,extraAlleles,Allele.SPAN_DEL);
+				}
+			}
+		else if(ploidy!=this.getPloidy()) {
+			codes[i*2  ] = CODE_BAD_PLOIDY;
+			codes[i*2+1] = CODE_BAD_PLOIDY;
+			}
+		else if(isConvertingNoCallToHomRef() && gt.isNoCall()) {
+			codes[i*2  ] = 0;
+			codes[i*2+1] = 0;
+			}
+		else
+			{
+			for(int j=0;j< 2;j++) {
+				final Allele a = gt.getAllele(j);
+				int code = alleleCode(alleles,a);
+				if(code<0 && !a.isNoCall()) {
+					if(extraAlleles==null) extraAlleles = new ArrayList<>();
+					code = extraAlleleCode(alleles,extraAlleles,a);
+					}
+				codes[i*2+j] = code;
+				}
+			}
+		}
+	return codes;
+	}
+
+/** index of 'a' in the alleles of the variant, or CODE_NO_CALL */
+private static int alleleCode(final List<Allele> alleles,final Allele a) {
+	if(a.isNoCall()) return CODE_NO_CALL;
+	for(int i=0;i< alleles.size();i++) {
+		if(alleles.get(i).equals(a)) return i;
+		}
+	return CODE_NO_CALL;
+	}
+
+/** code of an allele found in a genotype but not in the variant (e.g. a spanning deletion) */
+private static int extraAlleleCode(final List<Allele> alleles,final List<Allele> extraAlleles,final Allele a) {
+	int idx = extraAlleles.indexOf(a);
+	if(idx<0) {
+		idx = extraAlleles.size();
+		extraAlleles.add(a);
+		}
+	return alleles.size() + idx;
+	}
+
+/**
+ * Test a trio using the allele codes generated by {@link #encodeGenotypes(VariantContext, int[])}.
+ * Same result as <code>test(vc, fatherGt, motherGt, childGt)!=null</code>.
+ * 
+ * @param codes the allele codes
+ * @param fatherIdx the index of the father in the VCF or -1
+ * @param motherIdx the index of the mother in the VCF or -1
+ * @param childIdx the index of the child in the VCF
+ * @return true if there is a de novo mutation
+ */
+public boolean isDeNovo(final int[] codes,final int fatherIdx,final int motherIdx,final int childIdx) {
+	final int c1 = codes[childIdx*2];
+	final int c2 = codes[childIdx*2+1];
+	if(c1==CODE_BAD_PLOIDY) return false;
+	int f1 = CODE_NO_CALL;
+	int f2 = CODE_NO_CALL;
+	if(fatherIdx>=0) {
+		f1 = codes[fatherIdx*2];
+		f2 = codes[fatherIdx*2+1];
+		if(f1==CODE_BAD_PLOIDY) return false;
+		}
+	int m1 = CODE_NO_CALL;
+	int m2 = CODE_NO_CALL;
+	if(motherIdx>=0) {
+		m1 = codes[motherIdx*2];
+		m2 = codes[motherIdx*2+1];
+		if(m1==CODE_BAD_PLOIDY) return false;
+		}
+	final boolean fatherCalled = !(f1==CODE_NO_CALL && f2==CODE_NO_CALL);
+	final boolean motherCalled = !(m1==CODE_NO_CALL && m2==CODE_NO_CALL);
+	final boolean childNoCall = (c1==CODE_NO_CALL && c2==CODE_NO_CALL);
+	if(!fatherCalled && !motherCalled) {
+		return false;
+		}
+	else if(!fatherCalled || !motherCalled) {
+		/* duo */
+		if(childNoCall) return true;
+		final int p1 = fatherCalled?f1:m1;
+		final int p2 = fatherCalled?f2:m2;
+		return !(c1==p1 || c1==p2 || c2==p1 || c2==p2);
+		}
+	else
+		{
+		if(childNoCall) return true;
+		return !(sameUnorderedPair(f1,m1,c1,c2) ||
+				sameUnorderedPair(f1,m2,c1,c2) ||
+				sameUnorderedPair(f2,m1,c1,c2) ||
+				sameUnorderedPair(f2,m2,c1,c2));
+		}
+	}
+
+private static boolean sameUnorderedPair(final int a1,final int a2,final int b1,final int b2) {
+	return (a1==b1 && a2==b2) || (a1==b2 && a2==b1);
+	}
+
 private String gtToString(final Genotype g) {
 	if(g==null) return "(null)";
 	if(g.isNoCall()) return "[NO_CALL]";
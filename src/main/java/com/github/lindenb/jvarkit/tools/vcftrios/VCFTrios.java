@@ -46,7 +46,6 @@ import com.github.lindenb.jvarkit.util.log.ProgressFactory;
 import htsjdk.variant.vcf.VCFIterator;
 
 import htsjdk.samtools.util.StringUtil;
-import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
@@ -121,6 +120,7 @@ $12	SAMPLE_P	1/1:53:0,0,27,26:81,99,0,.,.,.:81
 ```
 ## History
 
+  * [20261019] genotypes are encoded once per variant as allele indexes
   * [20180907] moved to the new DeNovoDetector
   * [20180704] changing the arguments that are not really clear.
 
@@ -133,7 +133,7 @@ END_DOC
 		description="Find mendelian incompatibilitie / denovo variants in a VCF",
 		keywords={"vcf","mendelian","pedigree","denovo"},
 		creationDate="20130705",
-		modificationDate="20200624"
+		modificationDate="20261019"
 		)
 public class VCFTrios extends OnePassVcfLauncher
 	{
@@ -154,19 +154,11 @@ public class VCFTrios extends OnePassVcfLauncher
 	@Parameter(names={"-hr","--hom-ref"},description="[20180705] treat NO_CALL genotypes as HOM_REF (when individual VCF/Sample have been merged).")
 	private boolean nocall_to_homref = false;
 	
-	private static class TrioTriple
-		{
-		int father_id = -1;
-		int mother_id = -1;
-		int child_id = -1;
-		}
-	
 	@Override
 	public int doVcfToVcf(final String inputName, VCFIterator r, final VariantContextWriter w) {
 		long count_incompats=0L;
 		final Set<String> sampleNotFoundInVcf = new HashSet<>();
 		Pedigree pedigree=null;
-		final List<TrioTriple> trios = new ArrayList<>();
 		
 		try		{
 				final DeNovoDetector detector = new DeNovoDetector();
@@ -202,27 +194,42 @@ public class VCFTrios extends OnePassVcfLauncher
 				
 				
 				
+				/* indexes of the samples in the VCF, trio 'i' is (fathers[i],mothers[i],children[i]) , -1 if parent is missing */
+				final List<int[]> trioList = new ArrayList<>();
 				for(final Trio pedTrio: pedigree.getTrios())
 					{
-					final TrioTriple trio = new TrioTriple();
 					final Sample child = pedTrio.getChild();
-					trio.child_id = header.getSampleNameToOffset().getOrDefault(child.getId(),-1);
-					if(trio.child_id<0) continue;
+					final int child_id = header.getSampleNameToOffset().getOrDefault(child.getId(),-1);
+					if(child_id<0) continue;
+					int father_id = -1;
+					int mother_id = -1;
 					if(pedTrio.hasFather()) {
 						final Sample parent = pedTrio.getFather();
-						trio.father_id = header.getSampleNameToOffset().getOrDefault(parent.getId(),-1);
+						father_id = header.getSampleNameToOffset().getOrDefault(parent.getId(),-1);
 						}
 					if(pedTrio.hasMother()) {
 						final Sample parent = pedTrio.getMother();
-						trio.mother_id = header.getSampleNameToOffset().getOrDefault(parent.getId(),-1);
+						mother_id = header.getSampleNameToOffset().getOrDefault(parent.getId(),-1);
 						}
-					if(trio.father_id==-1 && trio.mother_id==-1) {
+					if(father_id==-1 && mother_id==-1) {
 						continue;
 						}
-					trios.add(trio);
+					trioList.add(new int[] {father_id,mother_id,child_id});
+					}
+				final int nTrios = trioList.size();
+				final int[] fathers = new int[nTrios];
+				final int[] mothers = new int[nTrios];
+				final int[] children = new int[nTrios];
+				for(int i=0;i< nTrios;i++) {
+					fathers[i] = trioList.get(i)[0];
+					mothers[i] = trioList.get(i)[1];
+					children[i] = trioList.get(i)[2];
 					}
+				final List<String> sampleNames = header.getGenotypeSamples();
+				/* genotypes of the current variant, encoded as allele indexes */
+				int[] alleleCodes = null;
 			
-				LOG.info("trios(s) in pedigree: "+trios.size());
+				LOG.info("trios(s) in pedigree: "+nTrios);
 				final ProgressFactory.Watcher<VariantContext> progress = 
 						ProgressFactory.newInstance().
 						dictionary(header).
@@ -235,20 +242,16 @@ public class VCFTrios extends OnePassVcfLauncher
 								
 					final Set<String> incompatibilities = new HashSet<String>();
 					
-					
-					for(final TrioTriple trio : trios)
-						{
-						final Genotype gChild = ctx.getGenotype(trio.child_id);
-						if(gChild==null) throw new IllegalStateException();
-						final Genotype gFather = trio.father_id<0?null:ctx.getGenotype(trio.father_id);
-						final Genotype gMother = trio.mother_id<0?null:ctx.getGenotype(trio.mother_id);
-						final DeNovoDetector.DeNovoMutation mut = detector.test(ctx, gFather, gMother, gChild);	
-						
-						if(mut!=null)
+					if(nTrios>0) {
+						alleleCodes = detector.encodeGenotypes(ctx, alleleCodes);
+						for(int i=0;i< nTrios;i++)
 							{
-							incompatibilities.add(gChild.getSampleName());
+							if(detector.isDeNovo(alleleCodes, fathers[i], mothers[i], children[i]))
+								{
+								incompatibilities.add(sampleNames.get(children[i]));
+								}
 							}
-						}	
+						}
 					
 					final VariantContextBuilder vcb=new VariantContextBuilder(ctx);
 					if(!incompatibilities.isEmpty()) {
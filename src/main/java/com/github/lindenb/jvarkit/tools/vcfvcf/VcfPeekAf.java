@@ -49,12 +49,14 @@ import com.github.lindenb.jvarkit.util.jcommander.NoSplitter;
 import com.github.lindenb.jvarkit.util.jcommander.Program;
 import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.util.log.ProgressFactory;
+import com.github.lindenb.jvarkit.variant.af.AlleleFrequencyStore;
 
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 
 import com.github.lindenb.jvarkit.variant.vcf.BufferedVCFReader;
+import com.github.lindenb.jvarkit.variant.vcf.SortedVCFReader;
 import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
 
 import htsjdk.variant.vcf.VCFIterator;
@@ -72,6 +74,16 @@ import htsjdk.variant.vcf.VCFInfoHeaderLine;
 /**
 BEGIN_DOC
 ALLELE_FREQUENCY_KEY
+
+## Allele frequency store
+
+Since 20261019, the AF can be read from a store created with `vcf2afstore` (option `--store`) instead of a VCF database.
+The alleles are matched on CHROM:POS:REF:ALT, there is no need for an indexed VCF and no variant is decoded.
+
+```
+$ java -jar dist/jvarkit.jar vcfpeekaf --store gnomad.afstore --store-population AF_NFE -t 0.01 input.vcf
+```
+
 END_DOC
 
  */
@@ -79,23 +91,29 @@ END_DOC
 		description="Peek the AF from another VCF",
 		keywords={"vcf","annotation","af"},
 		creationDate="20200624",
-		modificationDate="20200904"
+		modificationDate="20261019"
 		)
 public class VcfPeekAf extends OnePassVcfLauncher
 	{
 	private static final Logger LOG = Logger.build(VcfPeekAf.class).make();
 
-	@Parameter(names={"-F","--database","--tabix","--resource"},description="An indexed VCF file. Source of the annotations",required=true)
+	@Parameter(names={"-F","--database","--tabix","--resource"},description="An indexed VCF file. Source of the annotations. Required unless --store is used.")
 	private Path resourceVcfFile = null;
+	@Parameter(names={"--store"},description="[20261019] Use this allele frequency store created with vcf2afstore instead of a VCF database. Alleles are matched on CHROM:POS:REF:ALT.")
+	private Path afStorePath = null;
+	@Parameter(names={"--store-population"},description="[20261019] Population of the allele frequency store. Can be omitted if the store contains only one population.")
+	private String afStorePopulation = "";
 	@Parameter(names={"-T","--tag"},description="INFO tag to put found frequency. empty: no extra tag.")
 	private String frequencyTag = "";
 	@Parameter(names={"-f","--filter"},description="soft FILTER the variant of this data if AF is not found or it greater > max-af or lower than min-af. If empty, just DISCARD the variant")
 	private String filterStr = "";
 	@Parameter(names={"-b","--buffer-size"},converter=DistanceParser.StringConverter.class, description=BufferedVCFReader.OPT_BUFFER_DESC+" "+DistanceParser.OPT_DESCRIPTION,splitter=NoSplitter.class)
 	private int buffer_size = 10_000;
+	@Parameter(names={"--sorted"},description=SortedVCFReader.OPT_SORTED_DESC)
+	private boolean sorted_merge_join = false;
 	@Parameter(names={"-l","--list"},description="List available AF peekers and exit.",help=true)
 	private boolean list_peekers = false;
-	@Parameter(names={"-p","--peeker"},description="AF Peeker name. Use option --list to get a list of peekers.",required=true)
+	@Parameter(names={"-p","--peeker"},description="AF Peeker name. Use option --list to get a list of peekers. Required unless --store is used.")
 	private String peekerName = null;
 	@Parameter(names={"-t","--treshold","--max-af"},description="AF max treshold. Variant is accepted is computed AF <= treshold.",converter=FractionConverter.class,required=true)
 	private double af_maximum = 1.0;
@@ -501,7 +519,56 @@ public class VcfPeekAf extends OnePassVcfLauncher
 			}
 		}
 
-	private BufferedVCFReader indexedVcfFileReader=null;
+	/** peek the AF in an AlleleFrequencyStore. The 'overlappers' are always empty */
+	private class StorePeeker extends AFPeeker
+		{
+		private final AlleleFrequencyStore store;
+		private final int populationIndex;
+		private final float[] afs;
+		StorePeeker(final AlleleFrequencyStore store,final int populationIndex) {
+			this.store = store;
+			this.populationIndex = populationIndex;
+			this.afs = new float[store.getPopulations().size()];
+			}
+		@Override
+		String getName() { return "STORE:"+this.store.getPopulations().get(this.populationIndex);}
+		@Override
+		String getDescription() { return "use the allele frequency store defined with option --store";}
+		@Override
+		void initialize(final VCFHeader h) {
+			}
+		@Override
+		VariantContext sanitize(final VariantContext ctx) {
+			return ctx;
+			}
+		/** return the AF of this ALT allele in the store, or NaN */
+		private double getFrequency(final VariantContext ctx,final Allele alt) {
+			if(alt.equals(Allele.SPAN_DEL) || alt.isSymbolic()) return Double.NaN;
+			if(!this.store.get(AlleleFrequencyStore.hash(ctx, alt), this.afs)) return Double.NaN;
+			return this.afs[this.populationIndex];
+			}
+		@Override
+		VariantContext applyIgnoringAlt(final VariantContext ctx,final List<VariantContext> overlappers) {
+			final OptionalDouble optFreq = ctx.getAlternateAlleles().stream().
+					mapToDouble(A->getFrequency(ctx,A)).
+					filter(F->!Double.isNaN(F)).
+					min();
+			return addFiltersIgnoreAlt(ctx,optFreq);
+			}
+		@Override
+		VariantContext applyAlt(final VariantContext ctx,final List<VariantContext> overlappers) {
+			final List<Allele> alt_alleles = ctx.getAlternateAlleles();
+			final Map<Allele,Double> allele2freq = new HashMap<>(alt_alleles.size());
+			for(final Allele ctx_alt : alt_alleles) {
+				final double af = getFrequency(ctx,ctx_alt);
+				if(!Double.isNaN(af)) allele2freq.put(ctx_alt, af);
+				}
+			return addFilters(ctx,allele2freq);
+			}
+		}
+
+	private VCFReader indexedVcfFileReader=null;
+	private AlleleFrequencyStore afStore = null;
 	private AFPeeker peeker;
 	
 	public VcfPeekAf()
@@ -542,15 +609,16 @@ public class VcfPeekAf extends OnePassVcfLauncher
 		try
 			{
 			final VCFHeader h = vcfIn.getHeader();
-			final SAMSequenceDictionary dictDatabase = this.indexedVcfFileReader.getHeader().getSequenceDictionary();  
+			final SAMSequenceDictionary dictDatabase = this.indexedVcfFileReader==null?null:this.indexedVcfFileReader.getHeader().getSequenceDictionary();  
 			final ContigNameConverter dbCtgConverter = dictDatabase==null || dictDatabase.isEmpty()?
 					ContigNameConverter.getIdentity():
 					ContigNameConverter.fromOneDictionary(dictDatabase)
 					;
 			
 			final VCFHeader h2 = new VCFHeader(h);
+			final Path source = this.afStore==null?this.resourceVcfFile:this.afStorePath;
 			if(!StringUtils.isBlank(this.frequencyTag)) {
-				final String msg="Allele Frequency found in "+resourceVcfFile+" with peeker: "+this.peeker.getName();
+				final String msg="Allele Frequency found in "+source+" with peeker: "+this.peeker.getName();
 				if(this.disable_alt_concordance) {
 					h2.addMetaDataLine(new VCFInfoHeaderLine(this.frequencyTag,1,VCFHeaderLineType.Float,"Min "+msg));
 					} 
@@ -559,7 +627,7 @@ public class VcfPeekAf extends OnePassVcfLauncher
 					}
 			}
 			if(!StringUtils.isBlank(this.filterStr)) {
-				h2.addMetaDataLine(new VCFFilterHeaderLine(this.filterStr,"Allele Frequency found in "+resourceVcfFile+" with peeker failing the following state: "+					
+				h2.addMetaDataLine(new VCFFilterHeaderLine(this.filterStr,"Allele Frequency found in "+source+" with peeker failing the following state: "+					
 						this.af_minimum + " <= "+ this.peeker.getName()+" <= "+this.af_maximum));
 			}
 			
@@ -582,7 +650,7 @@ public class VcfPeekAf extends OnePassVcfLauncher
 
 				final List<VariantContext> overlappers;
 				
-				if(StringUtils.isBlank(dbContig))
+				if(this.indexedVcfFileReader==null || StringUtils.isBlank(dbContig))
 					{
 					overlappers = Collections.emptyList();
 					}
@@ -632,6 +700,7 @@ public class VcfPeekAf extends OnePassVcfLauncher
 		all_peekers.add(new GtPeeker());
 		all_peekers.add(new CustomInfoPeeker());
 		this.indexedVcfFileReader = null;
+		this.afStore = null;
 		if(this.buffer_size<1) {
 			LOG.error("bad buffer-size");
 			return -1;
@@ -646,6 +715,39 @@ public class VcfPeekAf extends OnePassVcfLauncher
 			System.exit(0);
 			}
 			
+			if(this.afStorePath!=null) {
+				if(this.resourceVcfFile!=null || !StringUtils.isBlank(this.peekerName)) {
+					LOG.error("--store cannot be used with a VCF database or a peeker");
+					return -1;
+					}
+				if(this.peek_variant_id) {
+					LOG.error("--peek-id cannot be used with --store: the store doesn't contain the variant IDs");
+					return -1;
+					}
+				this.afStore = AlleleFrequencyStore.open(this.afStorePath);
+				final int popIndex;
+				if(StringUtils.isBlank(this.afStorePopulation)) {
+					if(this.afStore.getPopulations().size()!=1) {
+						LOG.error("option --store-population is required. Available: "+String.join(" ",this.afStore.getPopulations()));
+						return -1;
+						}
+					popIndex = 0;
+					}
+				else
+					{
+					popIndex = this.afStore.getPopulationIndex(this.afStorePopulation);
+					if(popIndex<0) {
+						LOG.error("population "+this.afStorePopulation+" not found in "+this.afStorePath+". Available: "+String.join(" ",this.afStore.getPopulations()));
+						return -1;
+						}
+					}
+				this.peeker = new StorePeeker(this.afStore, popIndex);
+				return 0;
+				}
+			if(this.resourceVcfFile==null) {
+				LOG.error("VCF database is undefined (or use --store)");
+				return -1;
+				}
 			if(StringUtils.isBlank(this.peekerName)) {
 				LOG.error("peeker name is empty");
 				return -1;
@@ -661,10 +763,18 @@ public class VcfPeekAf extends OnePassVcfLauncher
 				return -1;
 				}
 						
-			final VCFReader reader0 = VCFReaderFactory.makeDefault().open(this.resourceVcfFile,true);
-			this.indexedVcfFileReader = new BufferedVCFReader(reader0,this.buffer_size);
-			this.peeker.initialize(this.indexedVcfFileReader.getHeader());
-			this.indexedVcfFileReader.setSimplifier(peeker::sanitize);
+			if(this.sorted_merge_join) {
+				final SortedVCFReader reader = SortedVCFReader.open(this.resourceVcfFile);
+				this.peeker.initialize(reader.getHeader());
+				this.indexedVcfFileReader = reader.setSimplifier(peeker::sanitize);
+				}
+			else
+				{
+				final VCFReader reader0 = VCFReaderFactory.makeDefault().open(this.resourceVcfFile,true);
+				final BufferedVCFReader reader = new BufferedVCFReader(reader0,this.buffer_size);
+				this.peeker.initialize(reader.getHeader());
+				this.indexedVcfFileReader = reader.setSimplifier(peeker::sanitize);
+				}
 			return 0;
 			} 
 		catch(final Throwable err)
@@ -677,6 +787,8 @@ public class VcfPeekAf extends OnePassVcfLauncher
 	protected void afterVcf() {
 		CloserUtil.close(this.indexedVcfFileReader);
 		this.indexedVcfFileReader=null;
+		CloserUtil.close(this.afStore);
+		this.afStore=null;
 		}
 	
 	
@@ -54,6 +54,7 @@ import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.StringUtil;
 
 import com.github.lindenb.jvarkit.util.vcf.VCFUtils;
+import com.github.lindenb.jvarkit.variant.vcf.SortedVCFReader;
 import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
 
 import htsjdk.variant.vcf.VCFIterator;
@@ -98,6 +99,7 @@ grep NCBI135_
 
 ## History
 
+2026-10-19: option --sorted: sorted merge-join with the database
 2018-10-31: add buffered list to speed up things
 2017-06-08: more intelligent for AlleleCount.A and AlleleCount.R
 2018-07-13: ignore spanning deletions, (for @SolenaSLS)
@@ -108,13 +110,13 @@ END_DOC
 @Program(name="vcfpeekvcf",
 		description="Get the INFO from a VCF and use it for another VCF",
 		keywords={"vcf","annotation"},
-		modificationDate="20200624"
+		modificationDate="20261019"
 		)
 public class VcfPeekVcf extends OnePassVcfLauncher
 	{
 	private static final Logger LOG = Logger.build(VcfPeekVcf.class).make();
 	
-	@Parameter(names={"-f","--tabix","--resource"},description="The VCF file indexed with TABIX or tribble. Source of the annotations",required=true)
+	@Parameter(names={"-f","--tabix","--resource"},description="The VCF file indexed with TABIX or tribble (no index is required with option --sorted). Source of the annotations",required=true)
 	private Path resourceVcfFile = null;
 	
 	@Parameter(names={"-t","--tags"},description="tag1,tag2,tag... the INFO keys to peek from the indexed file")
@@ -139,6 +141,8 @@ public class VcfPeekVcf extends OnePassVcfLauncher
 	
 	@Parameter(names={"-b","--buffer-size"},converter=DistanceParser.StringConverter.class, description="buffer size (in bp). We don't do a random access for each variant. Instead of this, load all the variants in a defined window. "+DistanceParser.OPT_DESCRIPTION,splitter=NoSplitter.class)
 	private int buffer_size = 100_000;
+	@Parameter(names={"--sorted"},description=SortedVCFReader.OPT_SORTED_DESC)
+	private boolean sorted_merge_join = false;
 	@Parameter(names={"--default-int"},description="default value for Type=Integer")
 	private Integer defaultInteger = null;
 	@Parameter(names={"--default-float"},description="default value for Type=Float")
@@ -170,6 +174,11 @@ public class VcfPeekVcf extends OnePassVcfLauncher
 			final int start,
 			final int end
 			) {
+		if(this.sorted_merge_join) {
+			try( CloseableIterator<VariantContext> t = this.indexedVcfFileReader.query(contig,start,end)) {
+				return t.stream().collect(Collectors.toList());
+				}
+			}
 		if(	!(
 			this.last_buffer_interval!=null &&
 			this.last_buffer_interval.getContig().equals(contig) &&
@@ -482,7 +491,14 @@ public class VcfPeekVcf extends OnePassVcfLauncher
 				{
 				LOG.warn("No tag defined");
 				}
-			this.indexedVcfFileReader = VCFReaderFactory.makeDefault().open(resourceVcfFile,true);
+			if(this.sorted_merge_join) {
+				this.indexedVcfFileReader = SortedVCFReader.open(this.resourceVcfFile).
+					setSimplifier(V->V.hasGenotypes()?new VariantContextBuilder(V).noGenotypes().make():V);
+				}
+			else
+				{
+				this.indexedVcfFileReader = VCFReaderFactory.makeDefault().open(resourceVcfFile,true);
+				}
 			return 0;
 			} 
 		catch(final Throwable err)
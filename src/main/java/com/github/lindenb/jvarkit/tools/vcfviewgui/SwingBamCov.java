@@ -52,6 +52,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -97,7 +98,9 @@ import javax.xml.stream.XMLStreamWriter;
 import com.beust.jcommander.Parameter;
 import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.math.stats.Percentile;
 import com.github.lindenb.jvarkit.samtools.CoverageFactory;
+import com.github.lindenb.jvarkit.samtools.CoveragePyramid;
 import com.github.lindenb.jvarkit.samtools.reference.SwingSequenceDictionaryTableModel;
 import com.github.lindenb.jvarkit.samtools.util.IntervalParserFactory;
 import com.github.lindenb.jvarkit.samtools.util.Pileup;
@@ -130,6 +133,7 @@ import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IterableAdapter;
 import htsjdk.samtools.util.Locatable;
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.SequenceUtil;
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.tribble.readers.TabixIteratorLineReader;
 import htsjdk.tribble.readers.TabixReader;
@@ -146,6 +150,16 @@ BEGIN_DOC
 java -jar dist/swingbamcov.jar -R ref.fa *.bam
 ```
 
+## Coverage pyramid
+
+Drawing the coverage of a large region needs to scan all the reads of each BAM. With `--build-pyramid`, a sidecar file `*.covpyr` is built once for each BAM,
+containing the mean coverage in bins of `--pyramid-bin-size` bases, and bins twice as large at each level. When the region is large,
+the viewer reads the coarsest level whose bins are not larger than one pixel. The pyramids are used as long as the BAM and the `--mapq` are unchanged.
+
+```
+java -jar dist/swingbamcov.jar --build-pyramid -R ref.fa *.bam
+```
+
 ## Screenshot
 
  * https://twitter.com/yokofakun/status/1392173415684100105
@@ -158,7 +172,7 @@ END_DOC
 description="Bam coverage viewer using Java Swing UI",
 keywords={"bam","alignment","graphics","visualization","swing"},
 creationDate="20210420",
-modificationDate="20211201",
+modificationDate="20261019",
 generate_doc=true
 )
 public class SwingBamCov extends Launcher
@@ -175,9 +189,16 @@ public class SwingBamCov extends Launcher
 	@Parameter(names={"--small"},description="Display the reads when the region is small than 'x' bp. " + DistanceParser.OPT_DESCRIPTION,splitter=NoSplitter.class,converter=DistanceParser.StringConverter.class)
 	private int smallRegionLength = 200;
 	
+	@Parameter(names={"--build-pyramid"},description="Before opening the window, build the missing or outdated coverage pyramids (sidecar files '*"+CoveragePyramid.SUFFIX+"' next to the BAMs). See --pyramid-bin-size.")
+	private boolean buildPyramid = false;
+	@Parameter(names={"--pyramid-bin-size"},description="Size of the smallest bin when building a coverage pyramid with --build-pyramid. "+ DistanceParser.OPT_DESCRIPTION,splitter=NoSplitter.class,converter=DistanceParser.StringConverter.class)
+	private int pyramidBinSize = CoveragePyramid.DEFAULT_BIN_SIZE;
+	
 	private static class BamInfo {
 		final Path bamPath;
 		String sample;
+		/** optional coverage pyramid, may be null */
+		CoveragePyramid pyramid = null;
 		BamInfo(final Path bamPath) {
 			this.bamPath = bamPath;
 			}
@@ -624,71 +645,87 @@ public class SwingBamCov extends Launcher
 			final Shape oldClip = g.getClip();
 			g.setClip(rect);
 			try {
-				try(SamReader sr=this.srf.open(bam.bamPath)) {
-					if(!sr.hasIndex()) return;			
-					final CoverageFactory covFactory = new CoverageFactory().
-							setMappingQuality(XFrame.this.minMapq);
-					final CoverageFactory.SimpleCoverage cov = covFactory.getSimpleCoverage(sr, loc, bam.sample);
-					
-					final double[] depths = cov.scaleMedian((int)rect.getWidth());
-					final double maxDepth0 = Arrays.stream(depths).max().orElse(1.0);
-					final double maxDepth = this.optCap.isPresent()?
-							Math.min(optCap.getAsInt(), maxDepth0):
-							maxDepth0;
-					final ToDoubleFunction<Double> toYPixel = DP ->{
-						double y = rect.getMaxY() - (DP/maxDepth)*rect.getHeight();
-						return y;
-					};
-					
-					
-					final GeneralPath gp = new GeneralPath();
-					gp.moveTo(rect.getX(), rect.getMaxY());
-					for(int i=0;i< depths.length;i++) {
-						double y = toYPixel.applyAsDouble(depths[i]);
-						if(y<rect.getY()) y = rect.getY();//capping
-						gp.lineTo(rect.getX()+i, y );
-						}
-					gp.lineTo(rect.getMaxX(),rect.getMaxY());
-					gp.closePath();
-					g.setColor(Color.LIGHT_GRAY);
-					Color colors[]=new Color[]{Color.LIGHT_GRAY,Color.GRAY};
-					final Paint oldPaint = g.getPaint();
-					g.setPaint(new LinearGradientPaint(0,(float)rect.getY(),0,(float)rect.getMaxY(),new float[]{0.0f,1.0f},colors));
-					g.fill(gp);
-					g.setPaint(oldPaint);
-					
-					
-					OptionalDouble mean = cov.getMedian();
-					if(mean.isPresent()) {
-						g.setColor(Color.RED);
-						final double y = toYPixel.applyAsDouble(mean.getAsDouble());
-						if(y>=rect.getY()) g.draw(new Line2D.Double(rect.getX(), y, rect.getMaxX(), y));
-						}
-					
-					mean = cov.getAverage();
-					if(mean.isPresent()) {
-						g.setColor(Color.GREEN);
-						final double y = toYPixel.applyAsDouble(mean.getAsDouble());
-						if(y>=rect.getY()) g.draw(new Line2D.Double(rect.getX(), y, rect.getMaxX(), y));
+				double[] depths = null;
+				OptionalDouble median = OptionalDouble.empty();
+				OptionalDouble average = OptionalDouble.empty();
+				/* use the pyramid if its smallest bins are small enough for the current scale */
+				final int level = bam.pyramid==null?-1:bam.pyramid.chooseLevel(loc.getLengthOnReference()/Math.max(1.0,rect.getWidth()));
+				if(level>=0) {
+					depths = bam.pyramid.getDepths(loc, (int)Math.max(1,rect.getWidth()), level);
+					bam.pyramid.prefetch(loc, level);
+					median = Percentile.median().evaluate(depths);
+					average = Percentile.average().evaluate(depths);
+					}
+				else
+					{
+					try(SamReader sr=this.srf.open(bam.bamPath)) {
+						if(!sr.hasIndex()) return;			
+						final CoverageFactory covFactory = new CoverageFactory().
+								setMappingQuality(XFrame.this.minMapq);
+						final CoverageFactory.SimpleCoverage cov = covFactory.getSimpleCoverage(sr, loc, bam.sample);
+						depths = cov.scaleMedian((int)rect.getWidth());
+						median = cov.getMedian();
+						average = cov.getAverage();
 						}
-					
-					writeGenes(g,loc,rect);
-					
-					g.setColor(Color.BLUE);
-					final int fontSize=Math.min(12,(int)(rect.getHeight()/10.0));
-					g.setFont(new Font("Courier",Font.PLAIN,fontSize));
-					g.drawString(bam.sample+" (max DP: " + (int)maxDepth0+") "+ getGenes(loc).
-							filter(G->G.getType().equals("gene")).
-							map(G->G.getName()).
-							filter(S->!StringUtils.isBlank(S)).
-							collect(Collectors.toSet()).
-							stream().
-							collect(Collectors.joining(",")),
-							(int)rect.getX()+5,(int)rect.getMaxY()-1);
-					//frame
-					g.setColor(Color.DARK_GRAY);
-					g.draw(rect);
 					}
+				if(!isCurrentThread()) return;
+				final double maxDepth0 = Arrays.stream(depths).max().orElse(1.0);
+				final double maxDepth = this.optCap.isPresent()?
+						Math.min(optCap.getAsInt(), maxDepth0):
+						maxDepth0;
+				final ToDoubleFunction<Double> toYPixel = DP ->{
+					double y = rect.getMaxY() - (DP/maxDepth)*rect.getHeight();
+					return y;
+				};
+				
+				
+				final GeneralPath gp = new GeneralPath();
+				gp.moveTo(rect.getX(), rect.getMaxY());
+				for(int i=0;i< depths.length;i++) {
+					double y = toYPixel.applyAsDouble(depths[i]);
+					if(y<rect.getY()) y = rect.getY();//capping
+					gp.lineTo(rect.getX()+i, y );
+					}
+				gp.lineTo(rect.getMaxX(),rect.getMaxY());
+				gp.closePath();
+				g.setColor(Color.LIGHT_GRAY);
+				Color colors[]=new Color[]{Color.LIGHT_GRAY,Color.GRAY};
+				final Paint oldPaint = g.getPaint();
+				g.setPaint(new LinearGradientPaint(0,(float)rect.getY(),0,(float)rect.getMaxY(),new float[]{0.0f,1.0f},colors));
+				g.fill(gp);
+				g.setPaint(oldPaint);
+				
+				
+				OptionalDouble mean = median;
+				if(mean.isPresent()) {
+					g.setColor(Color.RED);
+					final double y = toYPixel.applyAsDouble(mean.getAsDouble());
+					if(y>=rect.getY()) g.draw(new Line2D.Double(rect.getX(), y, rect.getMaxX(), y));
+					}
+				
+				mean = average;
+				if(mean.isPresent()) {
+					g.setColor(Color.GREEN);
+					final double y = toYPixel.applyAsDouble(mean.getAsDouble());
+					if(y>=rect.getY()) g.draw(new Line2D.Double(rect.getX(), y, rect.getMaxX(), y));
+					}
+				
+				writeGenes(g,loc,rect);
+				
+				g.setColor(Color.BLUE);
+				final int fontSize=Math.min(12,(int)(rect.getHeight()/10.0));
+				g.setFont(new Font("Courier",Font.PLAIN,fontSize));
+				g.drawString(bam.sample+" (max DP: " + (int)maxDepth0+")"+(level>=0?" [pyramid bin:"+StringUtils.niceInt((int)bam.pyramid.getBinSize(level))+"bp]":"")+" "+ getGenes(loc).
+						filter(G->G.getType().equals("gene")).
+						map(G->G.getName()).
+						filter(S->!StringUtils.isBlank(S)).
+						collect(Collectors.toSet()).
+						stream().
+						collect(Collectors.joining(",")),
+						(int)rect.getX()+5,(int)rect.getMaxY()-1);
+				//frame
+				g.setColor(Color.DARK_GRAY);
+				g.draw(rect);
 				repaintDrawingArea();
 				}
 			catch(final Throwable err) {
@@ -774,6 +811,26 @@ public class SwingBamCov extends Launcher
 		}
 		
 		
+		/** open the sidecar pyramid of a bam if it exists and if it is up to date */
+		private CoveragePyramid openPyramid(final Path bam,final int minMapq) {
+			final Path p = CoveragePyramid.getSidecar(bam);
+			if(!Files.exists(p)) return null;
+			try {
+				final CoveragePyramid pyramid = CoveragePyramid.open(p);
+				if(!pyramid.isUpToDate(bam) || pyramid.getMinMappingQuality()!=minMapq ||
+					!SequenceUtil.areSequenceDictionariesEqual(pyramid.getSequenceDictionary(),this.dict)) {
+					LOG.warning("ignoring outdated pyramid "+p);
+					pyramid.close();
+					return null;
+					}
+				return pyramid;
+				}
+			catch(final IOException err) {
+				LOG.warning("cannot open pyramid "+p+" "+err.getMessage());
+				return null;
+				}
+			}
+		
 		XFrame(final Path referenceFile,
 				final List<Path> bamPaths,
 				String defaultLoc,
@@ -805,6 +862,7 @@ public class SwingBamCov extends Launcher
 				catch(IOException err) {
 					throw new RuntimeIOException(err);
 					}
+				bi.pyramid = openPyramid(bi.bamPath, minMapq);
 				}
 			Collections.sort(this.bamPaths,(A,B)->A.sample.compareTo(B.sample));
 					
@@ -1111,6 +1169,26 @@ public class SwingBamCov extends Launcher
 				LOG.error("no BAM/CRAM was provided");
 				return -1;
 				}
+			if(this.buildPyramid) {
+				final SamReaderFactory srf = SamReaderFactory.makeDefault().
+						referenceSequence(this.referenceFile).
+						validationStringency(ValidationStringency.LENIENT);
+				for(final Path bam:paths) {
+					final Path sidecar = CoveragePyramid.getSidecar(bam);
+					if(Files.exists(sidecar)) {
+						try(CoveragePyramid pyramid = CoveragePyramid.open(sidecar)) {
+							if(pyramid.isUpToDate(bam) && pyramid.getMinMappingQuality()==this.minmapq) continue;
+							}
+						catch(final IOException err) {
+							//rebuild
+							}
+						}
+					LOG.info("building coverage pyramid "+sidecar);
+					try(SamReader sr= srf.open(bam)) {
+						CoveragePyramid.build(sr, bam, sidecar, this.pyramidBinSize, this.minmapq);
+						}
+					}
+				}
 			JFrame.setDefaultLookAndFeelDecorated(true);
 			final XFrame frame = new XFrame(this.referenceFile,paths,defaultRegion,this.minmapq,this.gffPath,this.smallRegionLength);
 			final Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
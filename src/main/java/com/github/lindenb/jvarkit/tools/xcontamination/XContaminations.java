@@ -79,6 +79,7 @@ import com.github.lindenb.jvarkit.util.log.Logger;
 import com.github.lindenb.jvarkit.util.picard.SAMSequenceDictionaryProgress;
 import com.github.lindenb.jvarkit.util.vcf.JexlGenotypePredicate;
 import com.github.lindenb.jvarkit.util.vcf.JexlVariantPredicate;
+import com.github.lindenb.jvarkit.variant.vcf.BcfIteratorBuilder;
 import htsjdk.variant.vcf.VCFIterator;
 
 /**
@@ -209,7 +210,8 @@ END_DOC
 
 @Program(name="xcontaminations",
 	description="For @AdrienLeger2 : cross contamination between samples by looking at the homozygous genotypes.",
-	keywords= {"sam","bam","vcf","contamination"}
+	keywords= {"sam","bam","vcf","contamination"},
+	modificationDate="20261019"
 	)
 public class XContaminations extends Launcher
 	{
@@ -220,8 +222,8 @@ public class XContaminations extends Launcher
 	private SamRecordFilter filter  = SamRecordJEXLFilter.buildDefault();
 	@Parameter(names={"-sample","--sample","--sample-only"},description="Just use sample's name. Don't use lane/flowcell/etc... data.")
 	private boolean use_only_sample_name = false;
-	@Parameter(names={"-vf","--variant-filter"},description=JexlVariantPredicate.PARAMETER_DESCRIPTION,converter=JexlVariantPredicate.Converter.class)
-	private Predicate<VariantContext> variantFilter = JexlVariantPredicate.create("");
+	@Parameter(names={"-vf","--variant-filter"},description=JexlVariantPredicate.PARAMETER_DESCRIPTION)
+	private String variantFilterExpr = "";
 	@Parameter(names={"-gf","--genotype-filter"},description=JexlGenotypePredicate.PARAMETER_DESCRIPTION,converter=JexlGenotypePredicate.Converter.class)
 	private BiPredicate<VariantContext,Genotype> genotypeFilter = JexlGenotypePredicate.create("");
 	@Parameter(names={"-ov","--output-vcf"},description="output results as a vcf file; only is --sample option is set.")
@@ -558,44 +560,16 @@ public class XContaminations extends Launcher
 		Map<String,SamReader> sample2samReader=new HashMap<>();
 		VariantContextWriter vcfw = null;
 		try {
+			final Predicate<VariantContext> variantFilter = JexlVariantPredicate.create(this.variantFilterExpr);
 			final SamReaderFactory srf= super.createSamReaderFactory();
 			if(refFaidx!=null) srf.referenceSequence(this.refFaidx);
 			
-			if(args.get(0).equals("-"))
-				{
-				in = super.openVCFIterator(null);
-				}
-			else
-				{
-				in = super.openVCFIterator(args.get(0));
-				}
-			
-			
-			VCFHeader vcfHeader=in.getHeader();
-			final SAMSequenceDictionary dict1= SequenceDictionaryUtils.extractRequired(vcfHeader);
-			
-			
-			final Set<String> sampleNames= new HashSet<>(vcfHeader.getSampleNamesInOrder());
-			if( sampleNames.isEmpty())
-				{
-				LOG.error("VCF contains no sample");
-				return -1;
-				}
-			
+			final Map<String,Path> sample2bamFile = new HashMap<>();
 			for(final Path bamFile:bamFiles)
 				{
 				LOG.info("Opening "+bamFile);
 				final SamReader samReader=srf.open(bamFile);
 				final SAMFileHeader samHeader= samReader.getFileHeader();
-				final SAMSequenceDictionary dict2= SequenceDictionaryUtils.extractRequired(samHeader);
-				
-				
-				if(!SequenceUtil.areSequenceDictionariesEqual(dict1, dict2))
-					{
-					samReader.close();
-					LOG.error(JvarkitException.DictionariesAreNotTheSame.getMessage(dict1, dict2));
-					return -1;
-					}
 				
 				if(!samReader.hasIndex())
 					{
@@ -625,12 +599,6 @@ public class XContaminations extends Launcher
 					LOG.error("No sample in "+bamFile);
 					continue;//skip this bam
 					}
-				if(!sampleNames.contains(sampleName))
-					{
-					samReader.close();
-					LOG.error("Not in VCF header: sample "+sampleName+" "+bamFile);
-					continue;//skip this bam
-					}
 				if(sample2samReader.containsKey(sampleName))
 					{
 					samReader.close();
@@ -639,6 +607,56 @@ public class XContaminations extends Launcher
 					}
 				
 				sample2samReader.put(sampleName, samReader);
+				sample2bamFile.put(sampleName, bamFile);
+				}
+			
+			/* only the genotypes of the samples having a BAM will be decoded, unless
+			 * the other genotypes are needed by --singleton or by a JEXL expression on the variant */
+			final boolean all_genotypes_needed = this.use_singleton || !StringUtil.isBlank(this.variantFilterExpr);
+			final Set<String> sampleNames= new HashSet<>();
+			final BcfIteratorBuilder bcb = new BcfIteratorBuilder().setSampleSelector(H->{
+				sampleNames.addAll(H.getSampleNamesInOrder());
+				if(all_genotypes_needed) return null;
+				return H.getSampleNamesInOrder().stream().
+						filter(S->sample2samReader.containsKey(S)).
+						collect(Collectors.toList());
+				});
+			if(args.get(0).equals("-"))
+				{
+				in = bcb.open(stdin());
+				}
+			else
+				{
+				in = bcb.open(args.get(0));
+				}
+			
+			
+			VCFHeader vcfHeader=in.getHeader();
+			final SAMSequenceDictionary dict1= SequenceDictionaryUtils.extractRequired(vcfHeader);
+			
+			if( sampleNames.isEmpty())
+				{
+				LOG.error("VCF contains no sample");
+				return -1;
+				}
+			
+			for(final String sampleName: new ArrayList<>(sample2samReader.keySet()))
+				{
+				final Path bamFile = sample2bamFile.get(sampleName);
+				final SamReader samReader = sample2samReader.get(sampleName);
+				final SAMSequenceDictionary dict2= SequenceDictionaryUtils.extractRequired(samReader.getFileHeader());
+				if(!SequenceUtil.areSequenceDictionariesEqual(dict1, dict2))
+					{
+					LOG.error(JvarkitException.DictionariesAreNotTheSame.getMessage(dict1, dict2));
+					return -1;
+					}
+				if(!sampleNames.contains(sampleName))
+					{
+					samReader.close();
+					sample2samReader.remove(sampleName);
+					LOG.error("Not in VCF header: sample "+sampleName+" "+bamFile);
+					continue;//skip this bam
+					}
 				}
 			
 			if(sample2samReader.size()<2)
@@ -704,7 +722,7 @@ public class XContaminations extends Launcher
 			while(in.hasNext())
 				{
 				final VariantContext ctx= progress.watch(in.next());
-				if(!ctx.isSNP() || ctx.isFiltered() || !ctx.isBiallelic() || ctx.isSymbolic() || !this.variantFilter.test(ctx)) {
+				if(!ctx.isSNP() || ctx.isFiltered() || !ctx.isBiallelic() || ctx.isSymbolic() || !variantFilter.test(ctx)) {
 					continue;
 				}
 				
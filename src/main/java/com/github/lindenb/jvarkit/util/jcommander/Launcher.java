@@ -54,6 +54,7 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.ParametersDelegate;
+import com.github.lindenb.jvarkit.io.ParallelBlockCompressedOutputStream;
 import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.JvarkitException;
 import com.github.lindenb.jvarkit.lang.StringUtils;
@@ -62,6 +63,7 @@ import com.github.lindenb.jvarkit.tests.TestRunnerImpl;
 import com.github.lindenb.jvarkit.util.bio.bed.BedLineCodec;
 import com.github.lindenb.jvarkit.util.bio.samfilter.SamRecordFilterFactory;
 import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.util.log.MetricsRegistry;
 import com.github.lindenb.jvarkit.util.vcf.VCFUtils;
 import com.github.lindenb.jvarkit.variant.variantcontext.writer.WritingVariantsDelegate;
 import com.github.lindenb.jvarkit.util.jcommander.CmdUsageBuilder;
@@ -134,6 +136,12 @@ private final JCommander jcommander = new MyJCommander();
 @Parameter(description = "Files")
 private List<String> files = new ArrayList<>();
 
+@Parameter(names={"--metrics-output"},description="Save the metrics of the program at exit (records per second for each stage, time spent to decode/encode the records, bytes read and written, GC, peak heap...). The format is Prometheus text if the file ends with '.prom' or '.txt', JSON otherwise. The metrics are also exposed as a MBean if the property `-Djvarkit.metrics.jmx=true` is defined.",hidden=true)
+private Path metricsOutput = null;
+
+@Parameter(names={"--bgzf-threads"},description="Number of threads used to compress the BGZF blocks of the VCF.gz/bgz outputs. 0 or 1: no parallel compression. BAM outputs only use an asynchronous writer. The default value can also be set with the property `-Djvarkit.bgzf.threads=N`.",hidden=true)
+private int bgzfThreads = ParallelBlockCompressedOutputStream.getDefaultThreadCount();
+
 private String programName="";
 
 public static class CompressionArgs
@@ -226,6 +234,8 @@ public class WritingBamArgs
 		if(n<0) n= Deflater.NO_COMPRESSION;
 		if(n>9) n= Deflater.BEST_COMPRESSION;
 		sfw.setCompressionLevel(n);
+		// htsjdk's BAM writer owns its BGZF stream: at least move the compression to another thread
+		if(ParallelBlockCompressedOutputStream.getDefaultThreadCount() > 1) sfw.setUseAsyncIo(true);
 		return sfw;
 		}
 	
@@ -781,6 +791,12 @@ public int instanceMain(final String args[]) {
 			case OK:break;
 			}
 		
+		ParallelBlockCompressedOutputStream.setDefaultThreadCount(this.bgzfThreads);
+		
+		final MetricsRegistry metrics = MetricsRegistry.getInstance();
+		metrics.reset(getProgramName(), this.metricsOutput!=null || MetricsRegistry.isDefaultJmx());
+		if(MetricsRegistry.isDefaultJmx()) metrics.registerMBean();
+		
 		try 
 			{
 			ret = initialize();
@@ -805,10 +821,26 @@ public int instanceMain(final String args[]) {
 	finally
 		{
 		cleanup();
+		saveMetrics();
 		}
 	return 0;
 	}
 
+/** save the metrics if `--metrics-output` was defined and release the MBean */
+private void saveMetrics() {
+	final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	if(!metrics.isEnabled()) return;
+	if(this.metricsOutput!=null) {
+		try {
+			metrics.save(this.metricsOutput);
+			}
+		catch(final Throwable err) {
+			LOG.warning("Cannot save metrics to "+this.metricsOutput+" "+err.getMessage());
+			}
+		}
+	metrics.unregisterMBean();
+	}
+
 public List<String> getFilenames() {
 	return Collections.unmodifiableList(files);
 	}
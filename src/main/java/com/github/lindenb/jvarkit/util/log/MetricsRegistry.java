@@ -0,0 +1,373 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.util.log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.RuntimeOperationsException;
+
+import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.lang.StringUtils;
+
+/**
+ * Registry of the metrics of the current program: counters, timers and gauges.
+ * 
+ * The registry is reset by the Launcher each time a program starts. Instrumented code
+ * should check {@link #isEnabled()} before measuring anything, so the metrics cost nothing
+ * when nobody asked for them.
+ * 
+ * The metrics are exposed as a platform MBean if the property `-Djvarkit.metrics.jmx=true` is
+ * defined and/or they can be saved at exit as a JSON or a Prometheus text file.
+ */
+public class MetricsRegistry {
+	private static final Logger LOG = Logger.build(MetricsRegistry.class).make();
+	private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+	/** JMX domain */
+	public static final String JMX_DOMAIN = "com.github.lindenb.jvarkit";
+	
+	private String programName = "jvarkit";
+	private long startMillisec = System.currentTimeMillis();
+	private boolean enabled = false;
+	private ObjectName objectName = null;
+	private final Map<String,LongAdder> counters = new ConcurrentHashMap<>();
+	private final Map<String,Timer> timers = new ConcurrentHashMap<>();
+	private final Map<String,Supplier<Number>> gauges = new ConcurrentHashMap<>();
+	
+	/** accumulates a duration and a number of calls */
+	public static class Timer {
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder calls = new LongAdder();
+		/** return the current time, to be passed to {@link #stop(long)} */
+		public long start() {
+			return System.nanoTime();
+			}
+		/** add the time elapsed since 'start' */
+		public void stop(final long start) {
+			add(System.nanoTime() - start);
+			}
+		/** add the time elapsed since 'start' without incrementing the number of calls */
+		public void resume(final long start) {
+			this.nanos.add(System.nanoTime() - start);
+			}
+		public void add(final long durationNanos) {
+			this.nanos.add(durationNanos);
+			this.calls.increment();
+			}
+		public long getNanos() {
+			return this.nanos.sum();
+			}
+		public long getCalls() {
+			return this.calls.sum();
+			}
+		}
+	
+	private MetricsRegistry() {
+		}
+	
+	public static MetricsRegistry getInstance() {
+		return INSTANCE;
+		}
+	
+	/** default is false, unless ` -Djvarkit.metrics.jmx=true` is defined */
+	public static boolean isDefaultJmx() {
+		try {
+			if("true".equals(System.getProperty("jvarkit.metrics.jmx", ""))) return true;
+		} catch (final Throwable e) {
+			//ignore
+		}
+		return false;
+		}
+	
+	/** clear all the metrics, called when a new program starts */
+	public synchronized MetricsRegistry reset(final String programName,final boolean enabled) {
+		unregisterMBean();
+		this.programName = StringUtils.isBlank(programName)?"jvarkit":programName;
+		this.startMillisec = System.currentTimeMillis();
+		this.counters.clear();
+		this.timers.clear();
+		this.gauges.clear();
+		this.enabled = enabled;
+		return this;
+		}
+	
+	/** return true if something will consume the metrics */
+	public boolean isEnabled() {
+		return this.enabled;
+		}
+	
+	public String getProgramName() {
+		return this.programName;
+		}
+	
+	/** get or create a counter */
+	public LongAdder counter(final String name) {
+		return this.counters.computeIfAbsent(name, K->new LongAdder());
+		}
+	
+	/** get or create a timer */
+	public Timer timer(final String name) {
+		return this.timers.computeIfAbsent(name, K->new Timer());
+		}
+	
+	/** register a value that will be computed when the metrics are read, e.g. the size of a queue */
+	public void gauge(final String name,final Supplier<Number> supplier) {
+		this.gauges.put(name, supplier);
+		}
+	
+	/** register a stage of the program reading some records. 'name' is made unique if a stage with the same name already exists */
+	public synchronized void stage(final String name,final LongSupplier count,final LongSupplier elapsedMillisec) {
+		final String base = "stage."+name.replaceAll("[^A-Za-z0-9_]+", "_");
+		String key = base;
+		int n = 1;
+		while(this.gauges.containsKey(key+".records")) {
+			key = base+"."+(++n);
+			}
+		gauge(key+".records",()->count.getAsLong());
+		gauge(key+".records_per_second",()->{
+			final long millisec = elapsedMillisec.getAsLong();
+			return millisec<=0L?0.0:count.getAsLong()/(millisec/1000.0);
+			});
+		}
+	
+	/** read 'rchar' and 'wchar' in /proc/self/io (linux only) */
+	private static void readProcIO(final Map<String,Number> map) {
+		final Path procio = Paths.get("/proc/self/io");
+		if(!Files.isReadable(procio)) return;
+		try(BufferedReader br = Files.newBufferedReader(procio)) {
+			String line;
+			while((line=br.readLine())!=null) {
+				if(line.startsWith("rchar:")) {
+					map.put("io.read.bytes", Long.parseLong(line.substring(6).trim()));
+					}
+				else if(line.startsWith("wchar:")) {
+					map.put("io.write.bytes", Long.parseLong(line.substring(6).trim()));
+					}
+				}
+			}
+		catch(final IOException|NumberFormatException err) {
+			//ignore
+			}
+		}
+	
+	/** return the current value of all the metrics, sorted on their names */
+	public SortedMap<String,Number> snapshot() {
+		final SortedMap<String,Number> map = new TreeMap<>();
+		map.put("elapsed.seconds",(System.currentTimeMillis()-this.startMillisec)/1000.0);
+		for(final Map.Entry<String,LongAdder> kv:this.counters.entrySet()) {
+			map.put(kv.getKey(), kv.getValue().sum());
+			}
+		for(final Map.Entry<String,Timer> kv:this.timers.entrySet()) {
+			map.put(kv.getKey()+".seconds", kv.getValue().getNanos()/1E9);
+			map.put(kv.getKey()+".calls", kv.getValue().getCalls());
+			}
+		for(final Map.Entry<String,Supplier<Number>> kv:this.gauges.entrySet()) {
+			try {
+				final Number value = kv.getValue().get();
+				if(value!=null) map.put(kv.getKey(), value);
+				}
+			catch(final Throwable err) {
+				//ignore
+				}
+			}
+		readProcIO(map);
+		long gcCount=0L;
+		long gcMillisec=0L;
+		for(final GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+			if(gc.getCollectionCount()<0L) continue;
+			gcCount += gc.getCollectionCount();
+			gcMillisec += Math.max(0L,gc.getCollectionTime());
+			}
+		map.put("jvm.gc.count", gcCount);
+		map.put("jvm.gc.seconds", gcMillisec/1000.0);
+		long peakHeap = 0L;
+		for(final MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+			if(!pool.getType().equals(MemoryType.HEAP) || pool.getPeakUsage()==null) continue;
+			peakHeap += pool.getPeakUsage().getUsed();
+			}
+		map.put("jvm.heap.peak.bytes", peakHeap);
+		map.put("jvm.heap.used.bytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+		return map;
+		}
+	
+	private static String toString(final Number n) {
+		if(n instanceof Double || n instanceof Float) {
+			final double v = n.doubleValue();
+			if(Double.isNaN(v) || Double.isInfinite(v)) return "0";
+			return String.valueOf(v);
+			}
+		return String.valueOf(n.longValue());
+		}
+	
+	/** write the metrics as JSON */
+	public void writeJson(final PrintWriter pw) {
+		pw.print("{\"program\":\"");
+		pw.print(StringUtils.escapeC(this.programName));
+		pw.print("\",\"metrics\":{");
+		boolean first = true;
+		for(final Map.Entry<String,Number> kv:snapshot().entrySet()) {
+			if(!first) pw.print(",");
+			first = false;
+			pw.print("\"");
+			pw.print(StringUtils.escapeC(kv.getKey()));
+			pw.print("\":");
+			pw.print(toString(kv.getValue()));
+			}
+		pw.println("}}");
+		pw.flush();
+		}
+	
+	/** write the metrics using the Prometheus text format */
+	public void writePrometheus(final PrintWriter pw) {
+		final String label = "{program=\""+StringUtils.escapeC(this.programName)+"\"}";
+		for(final Map.Entry<String,Number> kv:snapshot().entrySet()) {
+			final String name = "jvarkit_"+kv.getKey().replaceAll("[^A-Za-z0-9_]", "_");
+			pw.print("# TYPE ");
+			pw.print(name);
+			pw.println(" gauge");
+			pw.print(name);
+			pw.print(label);
+			pw.print(" ");
+			pw.println(toString(kv.getValue()));
+			}
+		pw.flush();
+		}
+	
+	/** save the metrics. The format is Prometheus if the file ends with '.prom' or '.txt', JSON otherwise */
+	public void save(final Path path) throws IOException {
+		final String fname = path.getFileName().toString();
+		try(PrintWriter pw = IOUtils.openPathForPrintWriter(path)) {
+			if(fname.endsWith(".prom") || fname.endsWith(".txt")) {
+				writePrometheus(pw);
+				}
+			else
+				{
+				writeJson(pw);
+				}
+			}
+		}
+	
+	/** register the metrics in the platform MBean server */
+	public synchronized void registerMBean() {
+		unregisterMBean();
+		try {
+			final MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(JMX_DOMAIN+":type=Metrics,name="+ObjectName.quote(this.programName));
+			if(mbs.isRegistered(name)) mbs.unregisterMBean(name);
+			mbs.registerMBean(new MetricsMBean(), name);
+			this.objectName = name;
+			LOG.info("metrics registered as "+name);
+			}
+		catch(final Throwable err) {
+			LOG.warning("Cannot register the metrics as a MBean "+err.getMessage());
+			}
+		}
+	
+	public synchronized void unregisterMBean() {
+		if(this.objectName==null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+			}
+		catch(final Throwable err) {
+			//ignore
+			}
+		this.objectName = null;
+		}
+	
+	/** read-only dynamic MBean. The attributes are the names of the metrics */
+	private class MetricsMBean implements DynamicMBean {
+		@Override
+		public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+			if(attribute == null) throw new RuntimeOperationsException(new IllegalArgumentException("attribute cannot be null"));
+			final Number value = snapshot().get(attribute);
+			if(value==null) throw new AttributeNotFoundException("Cannot find " + attribute);
+			return value;
+			}
+		@Override
+		public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("Attribute " + (attribute==null?"null":attribute.getName()) + " is read only");
+			}
+		@Override
+		public AttributeList getAttributes(final String[] attributes) {
+			final SortedMap<String,Number> map = snapshot();
+			final AttributeList L = new AttributeList();
+			if(attributes==null) return L;
+			for(final String att:attributes) {
+				final Number value = map.get(att);
+				if(value!=null) L.add(new Attribute(att, value));
+				}
+			return L;
+			}
+		@Override
+		public AttributeList setAttributes(final AttributeList attributes) {
+			return new AttributeList();
+			}
+		@Override
+		public Object invoke(final String actionName,final Object[] params,final String[] signature) {
+			throw new UnsupportedOperationException(actionName);
+			}
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			final List<MBeanAttributeInfo> atts = new ArrayList<>();
+			for(final Map.Entry<String,Number> kv : snapshot().entrySet()) {
+				atts.add(new MBeanAttributeInfo(kv.getKey(), kv.getValue().getClass().getName(), kv.getKey(), true, false, false));
+				}
+			return new MBeanInfo(
+				MetricsRegistry.class.getName(),
+				"Metrics of "+MetricsRegistry.this.programName,
+				atts.toArray(new MBeanAttributeInfo[atts.size()]),
+				null,
+				new MBeanOperationInfo[0],
+				null);
+			}
+		}
+	}
@@ -258,6 +258,10 @@ public <T extends Locatable> Watcher<T> build() {
 	w._threaded = this.isThreaded();
 
 	w._logPrefix=(StringUtil.isBlank( this.getPrefix())?"":"["+ this.getPrefix()+"]");
+	final MetricsRegistry metrics = MetricsRegistry.getInstance();
+	if(metrics.isEnabled()) {
+		metrics.stage(StringUtil.isBlank(this.getPrefix())?"main":this.getPrefix(), ()->w.count_items, ()->w.getElapsedMillisec());
+		}
 	return w;
 	}
 
@@ -296,6 +300,7 @@ private static class WatcherImpl<T extends Locatable>
 	private T previousLocatable = null;
 	private long count_items = 0L;
 	private long startMillisec = System.currentTimeMillis();
+	private long endMillisec = -1L;
 	private transient long lastCallMillisec = startMillisec;
 	private boolean dataAreSorted=true;
 	private long cumulLengthDone[]=null;
@@ -303,6 +308,12 @@ private static class WatcherImpl<T extends Locatable>
 	private String _logPrefix = null;
 
 	
+	/** time elapsed since the first record */
+	long getElapsedMillisec() {
+		if(this.firstCall) return 0L;
+		return (this.endMillisec<0L?System.currentTimeMillis():this.endMillisec) - this.startMillisec;
+		}
+	
 	@Override
 	public void run() {
 		if(this.EOF_flag) return;
@@ -434,6 +445,7 @@ private static class WatcherImpl<T extends Locatable>
 			this.scheduledExecutorService=null;
 			}
 		this.previousLocatable=null;
+		this.endMillisec = System.currentTimeMillis();
 		this._logger.info(this._logPrefix +". Completed. N="+format(count_items)+". That took:"+duration(System.currentTimeMillis()-this.startMillisec));
 		this.EOF_flag=true;
 		}
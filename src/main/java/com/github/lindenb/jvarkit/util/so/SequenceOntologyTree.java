@@ -53,6 +53,7 @@ import javax.xml.stream.events.XMLEvent;
 
 import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.JvarkitException;
+import com.github.lindenb.jvarkit.lang.TransitiveClosure;
 import com.github.lindenb.jvarkit.util.log.Logger;
 
 import htsjdk.samtools.util.CloserUtil;
@@ -68,6 +69,8 @@ public class SequenceOntologyTree
 	private static SequenceOntologyTree INSTANCE=null;
 	private final Map<String,TermImpl> acn2term=new HashMap<>(3000);
 	private final Map<String,TermImpl> label2term=new HashMap<>(3000);
+	/** transitive closure of the tree, built once all the terms were loaded */
+	private TransitiveClosure closure = null;
 	
 	
 	public interface Term
@@ -94,6 +97,10 @@ public class SequenceOntologyTree
 		String label;
 		final Set<Term> parents=new HashSet<>();
 		final Set<Term> children=new HashSet<>();
+		/** index in the transitive closure */
+		int index = -1;
+		/** shared, unmodifiable set of all the descendants, including this */
+		Set<Term> allDescendants = null;
 		
 		TermImpl(final String accession,final String label) {
 			this.accession = accession;
@@ -122,19 +129,26 @@ public class SequenceOntologyTree
 			return Collections.unmodifiableSet(this.children);
 			}
 		
-		/** recursive operation on getChildren, including self */
+		/** recursive operation on getChildren, including self. The returned set is unmodifiable and pre-computed */
 		@Override
 		public Set<Term> getAllDescendants()
 			{
-			final Set<Term> set=new HashSet<Term>();
-			_getAllDescendants(this,set);
-			return set;
+			return this.allDescendants;
 			}
 		/** return true if term is children of parent */
 		public boolean isChildrenOf(final Term t) {
-			return _isChildrenOf(this,t);
+			final TermImpl parent = (t instanceof TermImpl && TermImpl.class.cast(t).getOwner()==getOwner()?
+					TermImpl.class.cast(t) :
+					getOwner().acn2term.get(t.getAcn())
+					);
+			if(parent==null) return false;
+			return getOwner().closure.isAncestorOf(parent.index, this.index);
 			}	
 
+		private SequenceOntologyTree getOwner() {
+			return SequenceOntologyTree.this;
+			}
+
 		
 		@Override
 		public Set<Term> getParents()
@@ -167,23 +181,25 @@ public class SequenceOntologyTree
 	
 
 	
-	private static void _getAllDescendants(final Term term,final Set<Term> set)
+	/** build the transitive closure and the sets of descendants. Must be called once the tree is complete */
+	private SequenceOntologyTree buildIndex()
 		{
-		set.add(term);
-		for(final Term c:term.getChildren())
-			{
-			_getAllDescendants(c,set);
+		final List<TermImpl> terms = new ArrayList<>(this.acn2term.values());
+		for(int i=0;i< terms.size();i++) {
+			terms.get(i).index = i;
 			}
-		}
-
-	private static boolean _isChildrenOf(final Term term,final Term parent)
-		{
-		if(parent.equals(term)) return true;
-		for(final Term c:parent.getChildren())
-			{
-			if(_isChildrenOf(term,c)) return true;
+		final int[][] parents = new int[terms.size()][];
+		for(int i=0;i< terms.size();i++) {
+			parents[i] = terms.get(i).parents.stream().mapToInt(T->TermImpl.class.cast(T).index).toArray();
+			}
+		this.closure = new TransitiveClosure(parents);
+		final int[][] descendants = this.closure.getDescendants();
+		for(int i=0;i< terms.size();i++) {
+			final Set<Term> set = new HashSet<>(descendants[i].length);
+			for(final int j: descendants[i]) set.add(terms.get(j));
+			terms.get(i).allDescendants = Collections.unmodifiableSet(set);
 			}
-		return false;
+		return this;
 		}
 	
 	/*
@@ -2483,7 +2499,7 @@ public class SequenceOntologyTree
 			if(t.label==null) throw new JvarkitException.ProgrammingError("term "+t.accession+" has no label");
 			if(t!=tree.getTermByLabel(t.label)) throw new JvarkitException.ProgrammingError("???");
 		}
-		return tree;
+		return tree.buildIndex();
 	 }
 		
 	
@@ -2602,7 +2618,7 @@ public class SequenceOntologyTree
 				final SequenceOntologyTree t2 = this.tree;
 				this.tree = null;
 				this.uri2terms.clear();
-				return t2;
+				return t2.buildIndex();
 				}
 	
 		}
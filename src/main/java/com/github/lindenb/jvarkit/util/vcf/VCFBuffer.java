@@ -24,20 +24,26 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.util.vcf;
 
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import com.github.lindenb.jvarkit.util.log.Logger;
-import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
+import com.github.lindenb.jvarkit.variant.vcf.BinaryVariantContextCodec;
 
-import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.IterableAdapter;
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.TempStreamFactory;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.vcf.VCFHeader;
@@ -61,8 +67,10 @@ private final List<VariantContext> buffer = new ArrayList<>();
 private File tmpFile = null;
 /** directory where to create tmpFile */
 private final File tmpDir;
-/** variant context writer. Null if buffered in memory */
-private VariantContextWriter variantContextWriter= null;
+/** binary codec writing to tmpFile. Null if buffered in memory */
+private BinaryVariantContextCodec tmpCodec= null;
+/** stream of the binary codec */
+private DataOutputStream tmpOut = null;
 /** max number of variants in memory */
 private final int maxRecordsInRam;
 /** done adding , we can always call 'iterator()' */
@@ -106,10 +114,9 @@ public Stream<VariantContext> stream()
 		}
 	else
 		{
-		final htsjdk.variant.vcf.VCFReader reader= VCFReaderFactory.makeDefault().open(this.tmpFile,false);
-		final CloseableIterator<VariantContext> iter = reader.iterator();
+		final VCFIterator iter = new BinaryFileIterator();
 		return  StreamSupport.stream(new IterableAdapter<VariantContext>(iter).spliterator(), false).onClose(
-				()->{CloserUtil.close(iter);CloserUtil.close(reader);}
+				()->{CloserUtil.close(iter);}
 				);
 		}
 	}
@@ -126,11 +133,7 @@ if(this.tmpFile==null)
 	}
 else
 	{
-	try {
-		return VCFUtils.createVCFIteratorFromFile(this.tmpFile);
-	} catch (final IOException e) {
-		throw new RuntimeIOException(e);
-	}
+	return new BinaryFileIterator();
 	}
 }
 
@@ -153,8 +156,17 @@ public VCFHeader getHeader()
 
 @Override
 public void close() {
-	CloserUtil.close(this.variantContextWriter);
-	this.variantContextWriter=null;
+	if(this.tmpOut!=null) {
+		try {
+			this.tmpOut.flush();
+			this.tmpOut.close();
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		}
+	this.tmpOut=null;
+	this.tmpCodec=null;
 	this.done_adding=true;
 	}
 
@@ -166,22 +178,23 @@ public boolean checkError() {
 public void add(final VariantContext vc) {
 	if(this.done_adding) throw new IllegalArgumentException("iterator() already called");
 	if(this.header==null) throw new IllegalArgumentException("Header wasn't set");
-	if(this.variantContextWriter!=null) {
-		this.variantContextWriter.add(vc);
+	if(this.tmpCodec!=null) {
+		this.tmpCodec.encode(vc);
 		}
 	else if(this.buffer.size()+1>= this.maxRecordsInRam )
 		{
 		try {
-			this.tmpFile = File.createTempFile("buffer.", ".vcf.gz",this.tmpDir);
+			this.tmpFile = File.createTempFile("buffer.", ".bin",this.tmpDir);
 			LOG.debug("Flushing to disk "+this.tmpFile);
 			this.tmpFile.deleteOnExit();
-			this.variantContextWriter = VCFUtils.createVariantContextWriter(this.tmpFile);
-			this.variantContextWriter.writeHeader(this.header);
+			this.tmpOut = new DataOutputStream(new TempStreamFactory().wrapTempOutputStream(new FileOutputStream(this.tmpFile), 65536));
+			this.tmpCodec = new BinaryVariantContextCodec(this.header);
+			this.tmpCodec.setOutputStream(this.tmpOut);
 			for(final VariantContext bvc:this.buffer) {
-				this.variantContextWriter.add(bvc);
+				this.tmpCodec.encode(bvc);
 			}
 			this.buffer.clear();
-			this.variantContextWriter.add(vc);
+			this.tmpCodec.encode(vc);
 		} catch (IOException e) {
 			throw new RuntimeIOException(e);
 			}
@@ -192,6 +205,55 @@ public void add(final VariantContext vc) {
 		}
 	}
 
+/** read the variants saved in tmpFile */
+private class BinaryFileIterator implements VCFIterator {
+	private final InputStream in;
+	private final BinaryVariantContextCodec codec;
+	private VariantContext next = null;
+	private boolean eof = false;
+	BinaryFileIterator() {
+		try {
+			this.in = new TempStreamFactory().wrapTempInputStream(new BufferedInputStream(new FileInputStream(VCFBuffer.this.tmpFile)), 65536);
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		this.codec = new BinaryVariantContextCodec(VCFBuffer.this.header);
+		this.codec.setInputStream(this.in);
+		}
+	@Override
+	public VCFHeader getHeader() {
+		return VCFBuffer.this.header;
+		}
+	@Override
+	public boolean hasNext() {
+		if(this.next==null && !this.eof) {
+			this.next = this.codec.decode();
+			if(this.next==null) {
+				this.eof = true;
+				close();
+				}
+			}
+		return this.next!=null;
+		}
+	@Override
+	public VariantContext next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		final VariantContext ctx = this.next;
+		this.next = null;
+		return ctx;
+		}
+	@Override
+	public VariantContext peek() {
+		if(!hasNext()) throw new NoSuchElementException();
+		return this.next;
+		}
+	@Override
+	public void close() {
+		CloserUtil.close(this.in);
+		}
+	}
+
 private class ArrayIterator implements VCFIterator {
 	int index=-1;
 	
@@ -65,6 +65,12 @@ private SnpEffLofNmdParser lofSnpeffParser=null;
 private SnpEffLofNmdParser nmdSnpeffParser=null;
 private SmooveGenesParser smooveGenesParser=null;
 private final DeNovoDetector deNovoDetector = new DeNovoDetector();
+/** last variant for which the predictions were parsed. The predictions are parsed once per variant, this class is not thread-safe */
+private VariantContext lastPredictionCtx = null;
+private List<AnnPredictionParser.AnnPrediction> lastAnnPredictions = null;
+private List<VepPredictionParser.VepPrediction> lastVepPredictions = null;
+private List<SnpEffPredictionParser.SnpEffPrediction> lastSnpEffPredictions = null;
+private List<BcfToolsPredictionParser.BcfToolsPrediction> lastBcftoolsPredictions = null;
 public VcfTools() {
 	init(null);
 	}
@@ -85,6 +91,17 @@ public void init(final VCFHeader header) {
 	this.lofSnpeffParser = SnpEffLofNmdParser.createLofParser(header);
 	this.nmdSnpeffParser = SnpEffLofNmdParser.createNmdParser(header);
 	this.smooveGenesParser = new SmooveGenesParser(header);
+	this.lastPredictionCtx = null;
+	}
+
+/** reset the cached predictions if 'ctx' is not the last variant seen */
+private void syncPredictionCache(final VariantContext ctx) {
+	if(ctx==this.lastPredictionCtx) return;
+	this.lastPredictionCtx = ctx;
+	this.lastAnnPredictions = null;
+	this.lastVepPredictions = null;
+	this.lastSnpEffPredictions = null;
+	this.lastBcftoolsPredictions = null;
 	}
 
 public SnpEffLofNmdParser getLofSnpeffParser() {
@@ -127,6 +144,7 @@ public void initSnpEffParser(final String definition)
 			);
 	header.addMetaDataLine(info);
 	this.vepPredictionParser=new VepPredictionParserFactory(header).get();
+	this.lastPredictionCtx = null;
 	}
 protected static void failIf(boolean testFailed, String msg) {
 	if (!testFailed)
@@ -138,24 +156,44 @@ public SequenceOntologyTree getSequenceOntologyTree() {
 	return  SequenceOntologyTree.getInstance();
 }
 
+/** return the ANN predictions. The returned list is unmodifiable and is parsed only once for the last variant */
 public List<AnnPredictionParser.AnnPrediction> getAnnPredictions(final VariantContext ctx) {
 	if(this.annPredictionParser==null) return Collections.emptyList();
-	return this.annPredictionParser.getPredictions(ctx);
+	syncPredictionCache(ctx);
+	if(this.lastAnnPredictions==null) {
+		this.lastAnnPredictions = Collections.unmodifiableList(this.annPredictionParser.getPredictions(ctx));
+		}
+	return this.lastAnnPredictions;
 	}
 
+/** return the VEP predictions. The returned list is unmodifiable and is parsed only once for the last variant */
 public List<VepPredictionParser.VepPrediction> getVepPredictions(final VariantContext ctx) {
 	if(this.getVepPredictionParser()==null) return Collections.emptyList();
-	return this.getVepPredictionParser().getPredictions(ctx);
+	syncPredictionCache(ctx);
+	if(this.lastVepPredictions==null) {
+		this.lastVepPredictions = Collections.unmodifiableList(this.getVepPredictionParser().getPredictions(ctx));
+		}
+	return this.lastVepPredictions;
 	}
 
+/** return the SnpEff predictions. The returned list is unmodifiable and is parsed only once for the last variant */
 public List<SnpEffPredictionParser.SnpEffPrediction> getSnpEffPredictions(final VariantContext ctx) {
 	if(this.getSnpEffPredictionParser()==null) return Collections.emptyList();
-	return this.getSnpEffPredictionParser().getPredictions(ctx);
+	syncPredictionCache(ctx);
+	if(this.lastSnpEffPredictions==null) {
+		this.lastSnpEffPredictions = Collections.unmodifiableList(this.getSnpEffPredictionParser().getPredictions(ctx));
+		}
+	return this.lastSnpEffPredictions;
 	}
 
+/** return the bcftools csq predictions. The returned list is unmodifiable and is parsed only once for the last variant */
 public List<BcfToolsPredictionParser.BcfToolsPrediction> getBcftoolsPredictions(final VariantContext ctx) {
 	if(this.getBcftoolsPredictionParser()==null) return Collections.emptyList();
-	return this.getBcftoolsPredictionParser().getPredictions(ctx);
+	syncPredictionCache(ctx);
+	if(this.lastBcftoolsPredictions==null) {
+		this.lastBcftoolsPredictions = Collections.unmodifiableList(this.getBcftoolsPredictionParser().getPredictions(ctx));
+		}
+	return this.lastBcftoolsPredictions;
 	}
 
 /** return true if variant has any prediction with a SO term (or its children) with this label */
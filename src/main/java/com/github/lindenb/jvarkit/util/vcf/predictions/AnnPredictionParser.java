@@ -33,7 +33,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import htsjdk.samtools.util.StringUtil;
@@ -80,8 +82,11 @@ public class AnnPredictionParser
 		}
 	private static final Logger LOG=Logger.build(AnnPredictionParser.class).make();
 
-	private final CharSplitter pipeRegex= CharSplitter.PIPE;
 	private final CharSplitter ampRegex = CharSplitter.of('&');
+	/** SO-terms column to the shared, unmodifiable set of terms */
+	private final Map<String,Set<SequenceOntologyTree.Term>> soTermsCache = new ConcurrentHashMap<>();
+	/** pool of shared strings for the genes, features and biotypes */
+	private final Map<String,String> stringPool = new ConcurrentHashMap<>();
 
 	private final String tag;
 	private final boolean valid;
@@ -94,6 +99,7 @@ public class AnnPredictionParser
 	
 	public AnnPredictionParser sequenceOntologyTree( final SequenceOntologyTree soTree) {
 		this.soTree = soTree;
+		this.soTermsCache.clear();
 		return this;
 		}
 	
@@ -168,8 +174,7 @@ public class AnnPredictionParser
 			return parseOnePrediction( o.toString());
 			}
 		final String s=String.class.cast(o).trim();
-		final List<CharSequence> tokens=this.pipeRegex.splitAsCharSequenceList(s);
-		return new AnnPrediction(s,tokens);
+		return new AnnPrediction(new DelimitedFields(s,'|'));
 		}
 	
 	/*
@@ -184,17 +189,21 @@ public class AnnPredictionParser
 	public class AnnPrediction
 		implements Prediction
 		{
-		private final String originalStr;
-		private final List<CharSequence> _tokens;
-		private AnnPrediction(final String originalStr,final List<CharSequence> tokens)
+		private final DelimitedFields fields;
+		private AnnPrediction(final DelimitedFields fields)
 			{
-			this.originalStr = originalStr;
-			this._tokens=tokens;
+			this.fields = fields;
 			}
 		
 		private String at(int i)
 			{
-			return(i<0 || i>=_tokens.size() ? null:_tokens.get(i).toString());
+			return this.fields.get(i);
+			}
+		
+		/** same as at but the string is shared with the other predictions */
+		private String shared(int i)
+			{
+			return this.fields.get(i, AnnPredictionParser.this.stringPool);
 			}
 		
 		public String getAllele()
@@ -276,11 +285,11 @@ public class AnnPredictionParser
 		/** return true if SO-term-string is and is only equals to 'intergenic_region' */
 		public boolean isIntergenicRegion()
 			{
-			return "intergenic_region".equals(this.getSOTermsString());
+			return this.fields.equalsAt(1,"intergenic_region");
 			}
 		
 		public String getSOTermsString() {
-			final String so = at(1);
+			final String so = shared(1);
 			return so==null?"":so;
 			}
 		
@@ -290,8 +299,15 @@ public class AnnPredictionParser
 			return AnnPredictionParser.this.ampRegex.splitAsStringList(soterms);
 			}
 		
-		//@Override
+		/** the returned set is unmodifiable and shared with the other predictions having the same SO terms */
 		public Set<SequenceOntologyTree.Term> getSOTerms()
+			{
+			final String soterms = getSOTermsString();
+			if(StringUtil.isBlank(soterms)) return Collections.emptySet();
+			return AnnPredictionParser.this.soTermsCache.computeIfAbsent(soterms, S->Collections.unmodifiableSet(parseSOTerms()));
+			}
+		
+		private Set<SequenceOntologyTree.Term> parseSOTerms()
 			{
 			final List<String> effects = getSOTermsStrings();
 			if(effects.isEmpty()) return Collections.emptySet();
@@ -312,23 +328,23 @@ public class AnnPredictionParser
 		
 		public Impact getPutativeImpact()
 			{
-			final String s=this.at(2);
+			final String s=this.shared(2);
 			if(s==null || s.isEmpty() )return Impact.UNDEFINED;
 			return Impact.valueOf(s.toUpperCase().trim());
 			}
 		
 		public String getGeneName()
 			{
-			return at(3);
+			return shared(3);
 			}
 		
 		public String getGeneId()
 			{
-			return at(4);
+			return shared(4);
 			}
 		public String getFeatureType()
 			{
-			return at(5);
+			return shared(5);
 			}
 		
 		public String getFeatureId()
@@ -338,7 +354,7 @@ public class AnnPredictionParser
 		
 		public String getTranscriptBioType()
 			{
-			return this.at(7);
+			return this.shared(7);
 			}
 		
 		public String getRank()
@@ -404,12 +420,12 @@ public class AnnPredictionParser
 		/** return the prediction encoded in the original VariantContext */
 		public String getOriginalAttributeAsString()
 			{
-			return this.originalStr;
+			return this.fields.getSource();
 			}
 		
 		@Override
 		public String toString() {
-			return this.originalStr;
+			return this.fields.getSource();
 			}
 		}
 	
@@ -26,7 +26,6 @@ SOFTWARE.
 package com.github.lindenb.jvarkit.util.vcf.predictions;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -34,6 +33,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.variant.variantcontext.VariantContext;
@@ -57,6 +59,10 @@ public class BcfToolsPredictionParser implements PredictionParser
 	private final Map<String, Integer> col2colidx=new HashMap<String, Integer>();
 	private final CharSplitter pipe= CharSplitter.PIPE;
 	private final CharSplitter ampRegex = CharSplitter.of('&');
+	/** Consequence column to the shared, unmodifiable set of terms */
+	private final Map<String,Set<SequenceOntologyTree.Term>> soTermsCache = new ConcurrentHashMap<>();
+	/** pool of shared strings for the genes, biotypes, consequences... */
+	private final Map<String,String> stringPool = new ConcurrentHashMap<>();
 	private final String tag;
 	private SequenceOntologyTree soTree = SequenceOntologyTree.getInstance();
 	private final boolean valid;
@@ -69,6 +75,7 @@ public class BcfToolsPredictionParser implements PredictionParser
 	
 	public BcfToolsPredictionParser sequenceOntologyTree( final SequenceOntologyTree soTree) {
 		this.soTree = soTree;
+		this.soTermsCache.clear();
 		return this;
 		}
 	
@@ -159,8 +166,7 @@ public class BcfToolsPredictionParser implements PredictionParser
 			return parseOnePrediction(ctx,o.toString());
 			}
 		final String s=String.class.cast(o).trim();
-		final String tokens[]= this.pipe.split(s);
-		return new BcfToolsPrediction(ctx,s,tokens);
+		return new BcfToolsPrediction(ctx,new DelimitedFields(s,'|'));
 		}
 	
 	private void _predictions(final List<BcfToolsPrediction> preds,final Object o,final VariantContext ctx)
@@ -173,12 +179,10 @@ public class BcfToolsPredictionParser implements PredictionParser
 	public class BcfToolsPrediction
 		implements Prediction
 		{
-		private final String originalAttributeAsString;
-		private final String tokens[];
+		private final DelimitedFields tokens;
 		private final VariantContext ctx;
-		BcfToolsPrediction(final VariantContext ctx,final String originalAttributeAsString,final String tokens[])
+		BcfToolsPrediction(final VariantContext ctx,final DelimitedFields tokens)
 			{
-			this.originalAttributeAsString = originalAttributeAsString;
 			this.tokens=tokens;
 			this.ctx = ctx;
 			}
@@ -186,8 +190,16 @@ public class BcfToolsPredictionParser implements PredictionParser
 		public String getByCol(final String col)
 			{
 			final Integer idx=col2colidx.get(col);
-			if(idx==null || idx>=this.tokens.length || tokens[idx].isEmpty()) return null;
-			return tokens[idx];
+			if(idx==null || this.tokens.isEmpty(idx)) return null;
+			return tokens.get(idx);
+			}
+		
+		/** same as getByCol but the string is shared with the other predictions */
+		private String getSharedByCol(final String col)
+			{
+			final Integer idx=col2colidx.get(col);
+			if(idx==null || this.tokens.isEmpty(idx)) return null;
+			return tokens.get(idx,BcfToolsPredictionParser.this.stringPool);
 			}
 		
 		public boolean isIntergenicRegion() {
@@ -196,19 +208,19 @@ public class BcfToolsPredictionParser implements PredictionParser
 		
 		public String getGeneName()
 			{
-			return getByCol("gene");
+			return getSharedByCol("gene");
 			}
 		public String getTranscript()
 			{
 			return getByCol("transcript");
 			}
 		public String getTranscriptBioType() {
-			return getByCol("biotype");
+			return getSharedByCol("biotype");
 		}
 		
 		public String getOriginalAttributeAsString()
 			{
-			return originalAttributeAsString;
+			return this.tokens.getSource();
 			}
 		
 		public String getStrand() {
@@ -228,8 +240,8 @@ public class BcfToolsPredictionParser implements PredictionParser
 			for(final String c: col2colidx.keySet())
 				{
 				int idx=col2colidx.get(c);
-				if(idx>=this.tokens.length) continue;
-				hash.put(c, tokens[idx]);
+				if(idx>=this.tokens.size()) continue;
+				hash.put(c, tokens.get(idx));
 				}
 			return hash;
 			}
@@ -237,8 +249,8 @@ public class BcfToolsPredictionParser implements PredictionParser
 		public String getSOTermsString()
 			{
 			/* reference to another position */
-			if(this.originalAttributeAsString.startsWith("@")) return null;
-			final String s = getByCol("Consequence");
+			if(this.tokens.startsWith(0,"@")) return null;
+			final String s = getSharedByCol("Consequence");
 			// " The consequence can start with the asterisk '*' prefix indicating a consequence downstream from a stop"
 			if(s==null ) return null;
 			return s.startsWith("*")?s.substring(1):s;
@@ -251,8 +263,9 @@ public class BcfToolsPredictionParser implements PredictionParser
 		}
 		/** Consequences of compound variants which span multiple sites are printed in one record only, the remaining records link to it by '@position */
 		public OptionalInt getReferencePosition() {
-			if(!this.originalAttributeAsString.startsWith("@")) return OptionalInt.empty();
-			return OptionalInt.of(Integer.parseInt(this.originalAttributeAsString.substring(1)));
+			final String s = this.tokens.getSource();
+			if(!s.startsWith("@")) return OptionalInt.empty();
+			return OptionalInt.of(Integer.parseInt(s.substring(1)));
 		}
 		
 		/** BCFtools csq doesn't use SO !!! */
@@ -260,10 +273,16 @@ public class BcfToolsPredictionParser implements PredictionParser
 			return bcftools2so.getOrDefault(s, s);
 		}
 		
+		/** the returned set is unmodifiable and shared with the other predictions having the same consequences */
 		public Set<SequenceOntologyTree.Term> getSOTerms()
 			{
 			final String EFFs=getSOTermsString();
 			if(StringUtil.isBlank(EFFs)) return Collections.emptySet();
+			return BcfToolsPredictionParser.this.soTermsCache.computeIfAbsent(EFFs, S->Collections.unmodifiableSet(parseSOTerms(S)));
+			}
+		
+		private Set<SequenceOntologyTree.Term> parseSOTerms(final String EFFs)
+			{
 			final String tokens[] = ampRegex.split(EFFs);
 			final Set<SequenceOntologyTree.Term> set=new LinkedHashSet<>(tokens.length);
 
@@ -296,7 +315,7 @@ public class BcfToolsPredictionParser implements PredictionParser
 		
 		@Override
 		public String toString() {
-			return getMap().toString()+ " "+Arrays.asList(tokens);
+			return getMap().toString()+ " "+IntStream.range(0, this.tokens.size()).mapToObj(this.tokens::get).collect(Collectors.toList());
 			}
 		}
 		
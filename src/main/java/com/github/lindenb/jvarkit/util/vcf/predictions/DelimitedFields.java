@@ -0,0 +1,137 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.util.vcf.predictions;
+
+import java.util.Map;
+
+/**
+ * Zero-copy view of one delimited prediction string (e.g. one item of ANN or CSQ).
+ * The delimiters are located once; a String is only created when a field is requested,
+ * and it is then kept for the next calls. As with CharSplitter, trailing delimiters are ignored.
+ */
+final class DelimitedFields {
+	/** max number of strings in a pool before it is cleared */
+	private static final int MAX_POOL_SIZE = 100_000;
+	private final String source;
+	/** starts[i] is the offset of the field 'i'. starts[count] is the end of the string + 1 */
+	private final int[] starts;
+	private final int count;
+	private final String[] cache;
+
+	DelimitedFields(final String source,final char delim) {
+		this.source = source;
+		int len = source.length();
+		while(len-1>=0 && source.charAt(len-1)==delim) {
+			len--;
+			}
+		int n=1;
+		for(int i=0;i< len;i++) {
+			if(source.charAt(i)==delim) n++;
+			}
+		this.count = n;
+		this.starts = new int[n+1];
+		n=1;
+		for(int i=0;i< len;i++) {
+			if(source.charAt(i)==delim) this.starts[n++] = i+1;
+			}
+		this.starts[this.count] = len+1;
+		this.cache = new String[this.count];
+		}
+
+	/** number of fields */
+	int size() {
+		return this.count;
+		}
+
+	/** length of the field 'i' or -1 if out of range */
+	int length(final int i) {
+		if(i<0 || i>=this.count) return -1;
+		if(this.cache[i]!=null) return this.cache[i].length();
+		return (this.starts[i+1]-1) - this.starts[i];
+		}
+
+	/** return true if the field 'i' is out of range or empty. No String is created */
+	boolean isEmpty(final int i) {
+		return length(i)<=0;
+		}
+
+	/** return true if the field 'i' is equal to 's'. No String is created */
+	boolean equalsAt(final int i,final String s) {
+		final int len = length(i);
+		if(len<0 || len!=s.length()) return false;
+		if(this.cache[i]!=null) return this.cache[i].equals(s);
+		return this.source.regionMatches(this.starts[i], s, 0, len);
+		}
+
+	/** return true if the field 'i' starts with 's'. No String is created */
+	boolean startsWith(final int i,final String s) {
+		final int len = length(i);
+		if(len<s.length()) return false;
+		if(this.cache[i]!=null) return this.cache[i].startsWith(s);
+		return this.source.regionMatches(this.starts[i], s, 0, s.length());
+		}
+
+	/** get the field 'i' or null if out of range */
+	String get(final int i) {
+		if(i<0 || i>=this.count) return null;
+		String s = this.cache[i];
+		if(s==null) {
+			s = this.source.substring(this.starts[i], this.starts[i+1]-1);
+			this.cache[i] = s;
+			}
+		return s;
+		}
+
+	/** get the field 'i' or null if out of range. The string is shared with the other predictions using the same 'pool' (e.g. gene names) */
+	String get(final int i,final Map<String,String> pool) {
+		if(i<0 || i>=this.count) return null;
+		String s = this.cache[i];
+		if(s==null) {
+			s = this.source.substring(this.starts[i], this.starts[i+1]-1);
+			if(pool.size()>=MAX_POOL_SIZE) pool.clear();
+			final String prev = pool.putIfAbsent(s, s);
+			if(prev!=null) s = prev;
+			this.cache[i] = s;
+			}
+		return s;
+		}
+
+	/** overwrite the value of field 'i' */
+	void set(final int i,final String value) {
+		if(i<0 || i>=this.count) throw new IndexOutOfBoundsException("0<="+i+"<"+this.count);
+		this.cache[i] = value;
+		}
+
+	/** get the original string */
+	String getSource() {
+		return this.source;
+		}
+
+	@Override
+	public String toString() {
+		return this.source;
+		}
+	}
@@ -36,6 +36,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.variant.variantcontext.Allele;
@@ -91,6 +92,10 @@ public class VepPredictionParser implements PredictionParser
 	private final Map<String, Integer> col2colidx=new HashMap<String, Integer>();
 	private final CharSplitter pipe= CharSplitter.PIPE;
 	private final CharSplitter ampRegex = CharSplitter.of('&');
+	/** Consequence column to the shared, unmodifiable set of terms */
+	private final Map<String,Set<SequenceOntologyTree.Term>> soTermsCache = new ConcurrentHashMap<>();
+	/** pool of shared strings for the genes, symbols, consequences... */
+	private final Map<String,String> stringPool = new ConcurrentHashMap<>();
 	private final String tag;
 	private SequenceOntologyTree soTree = SequenceOntologyTree.getInstance();
 	private final boolean valid;
@@ -102,6 +107,7 @@ public class VepPredictionParser implements PredictionParser
 	
 	public VepPredictionParser sequenceOntologyTree( final SequenceOntologyTree soTree) {
 		this.soTree = soTree;
+		this.soTermsCache.clear();
 		return this;
 		}
 	
@@ -178,8 +184,7 @@ public class VepPredictionParser implements PredictionParser
 			return parseOnePrediction(ctx,o.toString());
 			}
 		final String s=String.class.cast(o).trim();
-		final String tokens[]= this.pipe.split(s);
-		return new VepPrediction(tokens,s,ctx);
+		return new VepPrediction(new DelimitedFields(s,'|'),ctx);
 		}
 	
 	private void _predictions(final List<VepPrediction> preds,final Object o,final VariantContext ctx)
@@ -192,27 +197,24 @@ public class VepPredictionParser implements PredictionParser
 	public class VepPrediction
 		implements Prediction
 		{
-		private final String source;
-		private final String tokens[];
+		private final DelimitedFields tokens;
 		private final List<Allele> alleles;
-		VepPrediction(final String tokens[],final String source,final VariantContext ctx)
+		VepPrediction(final DelimitedFields tokens,final VariantContext ctx)
 			{
-			this.source=source;
 			this.tokens=tokens;
 			this.alleles = Collections.unmodifiableList(ctx.getAlleles());
 			/** special case for ALT, can be '-' */
 			Integer idx_allele = VepPredictionParser.this.col2colidx.get("Allele");
 			if(	idx_allele!=null && 
-				idx_allele<tokens.length &&
-				tokens[idx_allele].equals("-"))
+				tokens.equalsAt(idx_allele,"-"))
 				{
 				if(ctx.getAlternateAlleles().size()==1)
 					{
-					this.tokens[idx_allele]=ctx.getAlternateAlleles().get(0).getDisplayString();
+					this.tokens.set(idx_allele,ctx.getAlternateAlleles().get(0).getDisplayString());
 					}
 				else
 					{
-					this.tokens[idx_allele]=INDEL_SYMBOL_STR;
+					this.tokens.set(idx_allele,INDEL_SYMBOL_STR);
 					}
 				}
 			}
@@ -220,11 +222,22 @@ public class VepPredictionParser implements PredictionParser
 			{
 			if(col==null || col.isEmpty()) return null;
 			final Integer idx= VepPredictionParser.this.col2colidx.get(col);
-			if(idx==null || idx>=tokens.length || tokens[idx].isEmpty())
+			if(idx==null || tokens.isEmpty(idx))
 				{
 				return null;
 				}
-			return this.tokens[idx];
+			return this.tokens.get(idx);
+			}
+		
+		/** same as getByCol but the string is shared with the other predictions */
+		private String getSharedByCol(final String col)
+			{
+			final Integer idx= VepPredictionParser.this.col2colidx.get(col);
+			if(idx==null || tokens.isEmpty(idx))
+				{
+				return null;
+				}
+			return this.tokens.get(idx,VepPredictionParser.this.stringPool);
 			}
 		
 		/** alias of getByColl */
@@ -316,14 +329,14 @@ public class VepPredictionParser implements PredictionParser
 		/**  getHGNC || getSymbol */
 		public String getGeneName()
 			{
-			String s= getByCol("HGNC");
+			String s= getSharedByCol("HGNC");
 			if(StringUtils.isBlank(s)) s = getSymbol();
 			return s;
 			}
 		
 		public String getHGNC()
 			{
-			return getByCol("HGNC");
+			return getSharedByCol("HGNC");
 			}
 		public String getHgncId()
 			{
@@ -332,7 +345,7 @@ public class VepPredictionParser implements PredictionParser
 		
 		public String getSymbol()
 			{
-			return getByCol("SYMBOL");
+			return getSharedByCol("SYMBOL");
 			}
 		
 		public String getRefSeq()
@@ -346,12 +359,12 @@ public class VepPredictionParser implements PredictionParser
 			}
 		public String getFeatureType()
 			{
-			return getByCol("Feature_type");
+			return getSharedByCol("Feature_type");
 			}
 
 		public String getGene()
 			{
-			return getByCol("Gene");
+			return getSharedByCol("Gene");
 			}
 		
 		public String getENSP()
@@ -370,8 +383,8 @@ public class VepPredictionParser implements PredictionParser
 			for(final String c: col2colidx.keySet())
 				{
 				final int idx=col2colidx.get(c);
-				if(idx>=this.tokens.length) continue;
-				hash.put(c, tokens[idx]);
+				if(idx>=this.tokens.size()) continue;
+				hash.put(c, tokens.get(idx));
 				}
 			return hash;
 			}
@@ -414,7 +427,7 @@ public class VepPredictionParser implements PredictionParser
 		/** return the "Consequence" String or NULL if not found */
 		public String getSOTermsString()
 		{
-			return getByCol("Consequence");
+			return getSharedByCol("Consequence");
 		}
 		
 		/** return the "Consequence" splitted, as an array of String, empty if consequence is not found */
@@ -425,8 +438,16 @@ public class VepPredictionParser implements PredictionParser
 			return VepPredictionParser.this.ampRegex.splitAsStringList(EFF);
 		}
 	
-		/** convert the list of getConsequences() to a list of SequenceOntology Terms */
+		/** convert the list of getConsequences() to a list of SequenceOntology Terms.
+		 * The returned set is unmodifiable and shared with the other predictions having the same consequences */
 		public Set<SequenceOntologyTree.Term> getSOTerms()
+			{
+			final String EFF = getSOTermsString();
+			if(EFF==null || EFF.isEmpty()) return Collections.emptySet();
+			return VepPredictionParser.this.soTermsCache.computeIfAbsent(EFF, S->Collections.unmodifiableSet(parseSOTerms()));
+			}
+		
+		private Set<SequenceOntologyTree.Term> parseSOTerms()
 			{
 			final List<String> effects = getSOTermsStrings();
 			if(effects.isEmpty()) return Collections.emptySet();
@@ -497,11 +518,11 @@ public class VepPredictionParser implements PredictionParser
 	/** return the prediction encoded in the original VariantContext */
 	public String getOriginalAttributeAsString()
 		{
-		return this.source;
+		return this.tokens.getSource();
 		}
 	@Override
 	public String toString() {
-		return this.source;
+		return this.tokens.getSource();
 		}
 	}
 		
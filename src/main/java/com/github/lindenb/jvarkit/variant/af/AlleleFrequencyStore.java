@@ -0,0 +1,247 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.af;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+
+/**
+ * A compact, memory-mapped store of allele frequencies.
+ *
+ * The store is one file (suffix {@value #SUFFIX}) mapping a 64 bits hash of 'contig:pos:ref:alt' to one float AF per population.
+ * The file contains: a header (populations), the records (hash + AFs) sorted on the hash, and a footer indexing the records
+ * in 2^bits buckets on the highest bits of the hash. A lookup is a binary search in one small bucket of the mapped file.
+ * Contigs are normalized by removing the 'chr' prefix. Missing AFs are stored as NaN.
+ * A collision between two 64 bits hashes is possible but very unlikely (about n/2^64 per query).
+ * The store is created with {@link #createWriter(Path, List, int, Path)}.
+ *
+ * Instances are thread-safe.
+ */
+public class AlleleFrequencyStore implements Closeable {
+	public static final String SUFFIX = ".afstore";
+	static final byte[] MAGIC = "JVKAFSTO".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	/** max size of a mapped segment */
+	private static final long SEGMENT_SIZE = 1L<<30;
+
+	private final Path path;
+	private final List<String> populations;
+	private FileChannel channel;
+	private final long n_records;
+	private final int bits;
+	private final int recordSize;
+	private final int recordsPerSegment;
+	private final MappedByteBuffer[] segments;
+	/** start of each bucket, (2^bits)+1 values */
+	private final IntBuffer bucketStarts;
+
+	private AlleleFrequencyStore(final Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			final long size = this.channel.size();
+			final ByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0L, Math.min(size, 1_000_000L));
+			final byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if(!Arrays.equals(magic, MAGIC)) throw new IOException("not an AF store "+path);
+			final int version = header.getInt();
+			if(version!=VERSION) throw new IOException("unsupported version "+version+" in "+path);
+			final int n_pops = header.getInt();
+			final List<String> pops = new ArrayList<>(n_pops);
+			for(int i=0;i< n_pops;i++) {
+				final byte[] array = new byte[header.getShort() & 0xFFFF];
+				header.get(array);
+				pops.add(new String(array, StandardCharsets.UTF_8));
+				}
+			this.populations = Collections.unmodifiableList(pops);
+			final long records_offset = header.position();
+			this.recordSize = Long.BYTES + n_pops * Float.BYTES;
+			// footer
+			final ByteBuffer last = this.channel.map(FileChannel.MapMode.READ_ONLY, size - Long.BYTES, Long.BYTES);
+			final long footer_offset = last.getLong();
+			final ByteBuffer footer = this.channel.map(FileChannel.MapMode.READ_ONLY, footer_offset, size - Long.BYTES - footer_offset);
+			this.n_records = footer.getLong();
+			this.bits = footer.getInt();
+			this.bucketStarts = footer.slice().asIntBuffer();
+			if(this.bucketStarts.capacity() != (1<<this.bits)+1) throw new IOException("bad footer in "+path);
+			if(records_offset + this.n_records * this.recordSize != footer_offset) throw new IOException("bad number of records in "+path);
+			// records
+			this.recordsPerSegment = (int)(SEGMENT_SIZE / this.recordSize);
+			final int n_segments = (int)((this.n_records + this.recordsPerSegment - 1) / this.recordsPerSegment);
+			this.segments = new MappedByteBuffer[n_segments];
+			for(int i=0;i< n_segments;i++) {
+				final long first = (long)i * this.recordsPerSegment;
+				final long count = Math.min(this.recordsPerSegment, this.n_records - first);
+				this.segments[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, records_offset + first * this.recordSize, count * this.recordSize);
+				}
+			}
+		catch(final IOException|RuntimeException err) {
+			this.channel.close();
+			throw err;
+			}
+		}
+
+	/** open an existing store */
+	public static AlleleFrequencyStore open(final Path path) throws IOException {
+		return new AlleleFrequencyStore(path);
+		}
+
+	/** create a writer for a new store. 'tmpDir' is used to sort the records */
+	public static AlleleFrequencyStoreWriter createWriter(final Path path,final List<String> populations,final int maxRecordsInRam,final Path tmpDir) throws IOException {
+		return new AlleleFrequencyStoreWriter(path, populations, maxRecordsInRam, tmpDir);
+		}
+
+	/** remove the 'chr' prefix */
+	static String normalizeContig(final String contig) {
+		if(contig.length()>3 && contig.regionMatches(true, 0, "chr", 0, 3)) return contig.substring(3);
+		return contig;
+		}
+
+	private static long fnv(long h,final CharSequence s) {
+		for(int i=0;i< s.length();i++) {
+			h ^= Character.toUpperCase(s.charAt(i));
+			h *= 0x100000001b3L;
+			}
+		return h;
+		}
+
+	/** hash of contig:pos:ref:alt , contig is normalized, alleles are case insensitive */
+	public static long hash(final String contig,final int pos,final String ref,final String alt) {
+		long h = 0xcbf29ce484222325L;
+		h = fnv(h, normalizeContig(contig));
+		h ^= ':';
+		h *= 0x100000001b3L;
+		h ^= pos;
+		h *= 0x100000001b3L;
+		h = fnv(h, ref);
+		h ^= ':';
+		h *= 0x100000001b3L;
+		h = fnv(h, alt);
+		// splitmix64 finalizer, spreads the highest bits used by the buckets
+		h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+		h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+		return h ^ (h >>> 31);
+		}
+
+	/** hash of an ALT allele of a variant */
+	public static long hash(final VariantContext ctx,final Allele alt) {
+		return hash(ctx.getContig(), ctx.getStart(), ctx.getReference().getDisplayString(), alt.getDisplayString());
+		}
+
+	public Path getPath() {
+		return this.path;
+		}
+
+	public List<String> getPopulations() {
+		return this.populations;
+		}
+
+	/** return the index of the population or -1 */
+	public int getPopulationIndex(final String pop) {
+		return this.populations.indexOf(pop);
+		}
+
+	/** number of records */
+	public long size() {
+		return this.n_records;
+		}
+
+	private long getHashAt(final long idx) {
+		final int seg = (int)(idx / this.recordsPerSegment);
+		return this.segments[seg].getLong((int)(idx % this.recordsPerSegment) * this.recordSize);
+		}
+
+	/** return the index of the record with this hash or -1 */
+	private long find(final long hash) {
+		final int bucket = this.bits==0 ? 0 : (int)(hash >>> (64 - this.bits));
+		long lo = this.bucketStarts.get(bucket) & 0xFFFFFFFFL;
+		long hi = this.bucketStarts.get(bucket+1) & 0xFFFFFFFFL;
+		while(lo < hi) {
+			final long mid = (lo + hi) >>> 1;
+			final int cmp = Long.compareUnsigned(getHashAt(mid), hash);
+			if(cmp==0) return mid;
+			if(cmp<0) {
+				lo = mid + 1;
+				}
+			else
+				{
+				hi = mid;
+				}
+			}
+		return -1L;
+		}
+
+	/** fill 'dest' with the AFs of all the populations for this hash. Return false if the variant is not in the store */
+	public boolean get(final long hash,final float[] dest) {
+		final long idx = find(hash);
+		if(idx<0L) return false;
+		final MappedByteBuffer segment = this.segments[(int)(idx / this.recordsPerSegment)];
+		final int offset = (int)(idx % this.recordsPerSegment) * this.recordSize + Long.BYTES;
+		for(int i=0;i< this.populations.size();i++) {
+			dest[i] = segment.getFloat(offset + i * Float.BYTES);
+			}
+		return true;
+		}
+
+	/** return the AFs of all the populations for this variant or null if the variant is not in the store */
+	public float[] get(final String contig,final int pos,final String ref,final String alt) {
+		final float[] array = new float[this.populations.size()];
+		return get(hash(contig, pos, ref, alt), array) ? array : null;
+		}
+
+	/** return the AF of the population for this variant, NaN if it was not found */
+	public float get(final String contig,final int pos,final String ref,final String alt,final int populationIndex) {
+		final long idx = find(hash(contig, pos, ref, alt));
+		if(idx<0L) return Float.NaN;
+		final MappedByteBuffer segment = this.segments[(int)(idx / this.recordsPerSegment)];
+		return segment.getFloat((int)(idx % this.recordsPerSegment) * this.recordSize + Long.BYTES + populationIndex * Float.BYTES);
+		}
+
+	@Override
+	public void close() throws IOException {
+		if(this.channel!=null) this.channel.close();
+		this.channel = null;
+		}
+
+	@Override
+	public String toString() {
+		return "AlleleFrequencyStore("+this.path+") populations:"+this.populations+" records:"+this.n_records;
+		}
+	}
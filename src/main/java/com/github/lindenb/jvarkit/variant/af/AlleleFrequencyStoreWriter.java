@@ -0,0 +1,190 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.af;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.lindenb.jvarkit.util.picard.AbstractDataCodec;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.SortingCollection;
+
+/**
+ * Writes an {@link AlleleFrequencyStore}. The records can be added in any order, they are
+ * sorted on their hash with a SortingCollection. The file is written in a temporary file and
+ * moved to its final path on {@link #close()}. When the same variant is added twice, the first record is kept.
+ */
+public class AlleleFrequencyStoreWriter implements Closeable {
+	/** max number of bits for the buckets of the footer */
+	private static final int MAX_BITS = 24;
+	private final Path finalPath;
+	private final List<String> populations;
+	private final SortingCollection<Entry> sorter;
+	private long n_added = 0L;
+	private long n_duplicates = 0L;
+	private boolean closed = false;
+
+	private static class Entry {
+		final long hash;
+		/** insertion order, the SortingCollection is not stable */
+		final long index;
+		final float[] afs;
+		Entry(final long hash,final long index,final float[] afs) {
+			this.hash = hash;
+			this.index = index;
+			this.afs = afs;
+			}
+		}
+
+	private static class EntryCodec extends AbstractDataCodec<Entry> {
+		private final int n_pops;
+		EntryCodec(final int n_pops) {
+			this.n_pops = n_pops;
+			}
+		@Override
+		public Entry decode(final DataInputStream dis) throws IOException {
+			final long hash = dis.readLong();
+			final long index = dis.readLong();
+			final float[] afs = new float[this.n_pops];
+			for(int i=0;i< afs.length;i++) afs[i] = dis.readFloat();
+			return new Entry(hash, index, afs);
+			}
+		@Override
+		public void encode(final DataOutputStream dos,final Entry object) throws IOException {
+			dos.writeLong(object.hash);
+			dos.writeLong(object.index);
+			for(final float f:object.afs) dos.writeFloat(f);
+			}
+		@Override
+		public EntryCodec clone() {
+			return new EntryCodec(this.n_pops);
+			}
+		}
+
+	AlleleFrequencyStoreWriter(final Path finalPath,final List<String> populations,final int maxRecordsInRam,final Path tmpDir) throws IOException {
+		if(populations.isEmpty()) throw new IllegalArgumentException("no population defined");
+		this.finalPath = finalPath;
+		this.populations = new ArrayList<>(populations);
+		this.sorter = SortingCollection.newInstance(
+				Entry.class,
+				new EntryCodec(populations.size()),
+				(A,B)->{
+					final int i = Long.compareUnsigned(A.hash, B.hash);
+					if(i!=0) return i;
+					return Long.compare(A.index, B.index);
+					},
+				maxRecordsInRam,
+				tmpDir==null?Paths.get(System.getProperty("java.io.tmpdir")):tmpDir
+				);
+		this.sorter.setDestructiveIteration(true);
+		}
+
+	public List<String> getPopulations() {
+		return this.populations;
+		}
+
+	/** add the AFs of each population for the variant. Missing values must be NaN */
+	public void add(final String contig,final int pos,final String ref,final String alt,final float[] afs) {
+		if(afs.length!=this.populations.size()) throw new IllegalArgumentException("expected "+this.populations.size()+" AFs but got "+afs.length);
+		this.sorter.add(new Entry(AlleleFrequencyStore.hash(contig, pos, ref, alt), this.n_added, afs.clone()));
+		this.n_added++;
+		}
+
+	/** number of duplicate variants that were ignored. Available after {@link #close()} */
+	public long getDuplicateCount() {
+		return this.n_duplicates;
+		}
+
+	@Override
+	public void close() throws IOException {
+		if(this.closed) return;
+		this.closed = true;
+		this.sorter.doneAdding();
+		int bits = 0;
+		while(bits < MAX_BITS && (1L<<bits) < this.n_added/2L) bits++;
+		final int[] bucketStarts = new int[(1<<bits)+1];
+		final Path tmpPath = Files.createTempFile(this.finalPath.toAbsolutePath().getParent(), "tmp.", AlleleFrequencyStore.SUFFIX+".tmp");
+		try {
+			final long recordSize = Long.BYTES + this.populations.size() * Float.BYTES;
+			long n_records = 0L;
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), 1<<20))) {
+				out.write(AlleleFrequencyStore.MAGIC);
+				out.writeInt(AlleleFrequencyStore.VERSION);
+				out.writeInt(this.populations.size());
+				for(final String pop: this.populations) {
+					final byte[] array = pop.getBytes(StandardCharsets.UTF_8);
+					out.writeShort(array.length);
+					out.write(array);
+					}
+				final long headerSize = out.size();
+				long prev_hash = 0L;
+				try(CloseableIterator<Entry> iter = this.sorter.iterator()) {
+					while(iter.hasNext()) {
+						final Entry e = iter.next();
+						if(n_records>0L && e.hash==prev_hash) {
+							this.n_duplicates++;
+							continue;
+							}
+						if(n_records >= 0xFFFFFFFFL) throw new IOException("too many records in "+this.finalPath);
+						prev_hash = e.hash;
+						out.writeLong(e.hash);
+						for(final float f:e.afs) out.writeFloat(f);
+						final int bucket = bits==0 ? 0 : (int)(e.hash >>> (64 - bits));
+						// count, converted to starts below
+						bucketStarts[bucket+1]++;
+						n_records++;
+						}
+					}
+				for(int i=1;i< bucketStarts.length;i++) {
+					bucketStarts[i] += bucketStarts[i-1];
+					}
+				/* DataOutputStream.size() is an int, the offset of the footer is computed */
+				final long footerOffset = headerSize + n_records * recordSize;
+				out.writeLong(n_records);
+				out.writeInt(bits);
+				for(final int b:bucketStarts) out.writeInt(b);
+				out.writeLong(footerOffset);
+				out.flush();
+				}
+			Files.move(tmpPath, this.finalPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		finally {
+			this.sorter.cleanup();
+			Files.deleteIfExists(tmpPath);
+			}
+		}
+	}
@@ -0,0 +1,153 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.bcf;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+
+/**
+ * The header of a BCF file: the VCF header and the two dictionaries
+ * used by the BCF records: the contigs and the IDs of the FILTER/INFO/FORMAT lines.
+ *
+ * The dictionaries follow the BCF specification: 'PASS' is the first string,
+ * the other IDs are numbered in the order of the header unless an 'IDX' attribute is defined.
+ */
+public class BcfHeader {
+	private final VCFHeader header;
+	private final String[] strings;
+	private final String[] contigs;
+	private final String[] samples;
+
+	/** @param text the text of the header, as stored in the BCF file */
+	public BcfHeader(final String text) {
+		final VCFCodec codec = new VCFCodec();
+		this.header = (VCFHeader)codec.readActualHeader(new LineIteratorImpl(new SynchronousLineReader(new StringReader(text))));
+		final Map<Integer,String> stringMap = new HashMap<>();
+		final Map<String,Integer> stringIds = new HashMap<>();
+		final Map<Integer,String> contigMap = new HashMap<>();
+		stringMap.put(0, VCFConstants.PASSES_FILTERS_v4);
+		stringIds.put(VCFConstants.PASSES_FILTERS_v4, 0);
+		for(final String line: text.split("\n")) {
+			if(!line.startsWith("##")) continue;
+			final boolean isContig = line.startsWith("##contig=<");
+			if(!(isContig ||
+				line.startsWith("##FILTER=<") ||
+				line.startsWith("##INFO=<") ||
+				line.startsWith("##FORMAT=<"))) continue;
+			final String id = getField(line, "ID");
+			if(id==null) continue;
+			final String idxStr = getField(line, "IDX");
+			if(isContig) {
+				final int idx = idxStr==null?contigMap.size():Integer.parseInt(idxStr);
+				contigMap.put(idx, id);
+				}
+			else if(!stringIds.containsKey(id))
+				{
+				final int idx = idxStr==null?stringMap.size():Integer.parseInt(idxStr);
+				stringMap.put(idx, id);
+				stringIds.put(id, idx);
+				}
+			}
+		this.strings = toArray(stringMap);
+		this.contigs = toArray(contigMap);
+		this.samples = this.header.getGenotypeSamples().toArray(new String[this.header.getNGenotypeSamples()]);
+		}
+
+	private static String[] toArray(final Map<Integer,String> map) {
+		final int n = map.keySet().stream().mapToInt(I->I.intValue()+1).max().orElse(0);
+		final String[] array = new String[n];
+		for(final Map.Entry<Integer,String> kv:map.entrySet()) array[kv.getKey()] = kv.getValue();
+		return array;
+		}
+
+	/** extract the value of a key in a structured header line like {@code ##INFO=<ID=x,...>} */
+	private static String getField(final String line,final String key) {
+		final int lt = line.indexOf('<');
+		if(lt==-1) return null;
+		final List<String> tokens = new ArrayList<>();
+		final StringBuilder sb = new StringBuilder();
+		boolean in_quote = false;
+		for(int i=lt+1;i< line.length();i++) {
+			final char c = line.charAt(i);
+			if(c=='\\' && in_quote && i+1< line.length()) {
+				sb.append(c).append(line.charAt(++i));
+				}
+			else if(c=='\"') {
+				in_quote = !in_quote;
+				sb.append(c);
+				}
+			else if(!in_quote && (c==',' || c=='>')) {
+				tokens.add(sb.toString());
+				sb.setLength(0);
+				if(c=='>') break;
+				}
+			else
+				{
+				sb.append(c);
+				}
+			}
+		for(final String token:tokens) {
+			if(token.startsWith(key) && token.length()>key.length() && token.charAt(key.length())=='=') {
+				return token.substring(key.length()+1);
+				}
+			}
+		return null;
+		}
+
+	public VCFHeader getVCFHeader() {
+		return this.header;
+		}
+
+	/** return the ID of a FILTER/INFO/FORMAT for the given index in the dictionary */
+	public String getString(final int idx) {
+		if(idx<0 || idx>=this.strings.length || this.strings[idx]==null) throw new IllegalArgumentException("undefined string in BCF dictionary idx="+idx);
+		return this.strings[idx];
+		}
+
+	/** return the contig for the given index in the dictionary */
+	public String getContig(final int idx) {
+		if(idx<0 || idx>=this.contigs.length || this.contigs[idx]==null) throw new IllegalArgumentException("undefined contig in BCF dictionary idx="+idx);
+		return this.contigs[idx];
+		}
+
+	/** return the name of the sample at index 'idx' */
+	public String getSample(final int idx) {
+		return this.samples[idx];
+		}
+
+	public int getNSamples() {
+		return this.samples.length;
+		}
+	}
@@ -0,0 +1,505 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.bcf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCompoundHeaderLine;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFFormatHeaderLine;
+import htsjdk.variant.vcf.VCFHeaderLineType;
+import htsjdk.variant.vcf.VCFInfoHeaderLine;
+
+/**
+ * A typed view over the bytes of one BCF record (BCF 2.1 or 2.2).
+ *
+ * The buffer contains the record as it is stored in the file: two uint32 for the length of the
+ * shared and of the individual blocks, followed by the blocks. The buffer is recycled by the
+ * {@link BcfRecordReader}: the typed accessors are only valid until the next record is read.
+ * {@link #toVariantContext()} creates an independent htsjdk object.
+ */
+public class BcfRecord {
+	/* BCF2 types */
+	static final int BT_NULL = 0;
+	static final int BT_INT8 = 1;
+	static final int BT_INT16 = 2;
+	static final int BT_INT32 = 3;
+	static final int BT_FLOAT = 5;
+	static final int BT_CHAR = 7;
+	private static final int FLOAT_MISSING = 0x7F800001;
+	private static final int FLOAT_EOV = 0x7F800002;
+	/** offset of the shared block */
+	private static final int SHARED = 8;
+	/** offset of the ID in the shared block */
+	private static final int ID_OFFSET = SHARED + 24;
+
+	private final BcfHeader header;
+	private ByteBuffer buffer;
+	/** offset after the alleles and the filters, -1 if not computed */
+	private int infoOffset = -1;
+	/** offset of the alleles, -1 if not computed */
+	private int allelesOffset = -1;
+
+	/** a typed value in the buffer */
+	private static class Typed {
+		int type;
+		int count;
+		/** offset of the first value */
+		int offset;
+		/** offset after the values */
+		int end() {
+			return this.offset + this.count * sizeOf(this.type);
+			}
+		}
+
+	public BcfRecord(final BcfHeader header) {
+		this.header = header;
+		this.buffer = ByteBuffer.allocateDirect(10_000).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+	public BcfHeader getHeader() {
+		return this.header;
+		}
+
+	/** return a direct buffer of at least 'capacity' bytes, the content of the buffer is undefined */
+	ByteBuffer ensureCapacity(final int capacity) {
+		if(this.buffer.capacity() < capacity) {
+			this.buffer = ByteBuffer.allocateDirect(Math.max(capacity, this.buffer.capacity()*2)).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		this.buffer.clear();
+		return this.buffer;
+		}
+
+	/** called when the buffer was filled with a new record */
+	void reset() {
+		this.infoOffset = -1;
+		this.allelesOffset = -1;
+		}
+
+	static int sizeOf(final int type) {
+		switch(type) {
+			case BT_NULL: return 0;
+			case BT_INT8: case BT_CHAR: return 1;
+			case BT_INT16: return 2;
+			case BT_INT32: case BT_FLOAT: return 4;
+			default: throw new IllegalArgumentException("unsupported BCF type "+type);
+			}
+		}
+
+	private int getSharedLength() {
+		return this.buffer.getInt(0);
+		}
+
+	/** offset of the individual block */
+	private int getIndivOffset() {
+		return SHARED + getSharedLength();
+		}
+
+	/** decode a type descriptor at 'offset' */
+	private Typed readTyped(final int offset,final Typed t) {
+		final int b = this.buffer.get(offset) & 0xFF;
+		t.type = b & 0x0F;
+		t.count = (b >> 4) & 0x0F;
+		t.offset = offset + 1;
+		if(t.count==15) {
+			final Typed n = new Typed();
+			readTyped(t.offset, n);
+			t.count = getInt(n.type, n.offset);
+			t.offset = n.end();
+			}
+		return t;
+		}
+
+	/** return the integer at 'offset', Integer.MIN_VALUE for a missing value, Integer.MIN_VALUE+1 for the end of a vector */
+	private int getInt(final int type,final int offset) {
+		switch(type) {
+			case BT_INT8: {
+				final byte v = this.buffer.get(offset);
+				if(v==Byte.MIN_VALUE) return Integer.MIN_VALUE;
+				if(v==Byte.MIN_VALUE+1) return Integer.MIN_VALUE+1;
+				return v;
+				}
+			case BT_INT16: {
+				final short v = this.buffer.getShort(offset);
+				if(v==Short.MIN_VALUE) return Integer.MIN_VALUE;
+				if(v==Short.MIN_VALUE+1) return Integer.MIN_VALUE+1;
+				return v;
+				}
+			case BT_INT32: return this.buffer.getInt(offset);
+			default: throw new IllegalArgumentException("not an integer type "+type);
+			}
+		}
+
+	private static boolean isMissing(final int v) {
+		return v==Integer.MIN_VALUE;
+		}
+
+	private static boolean isEOV(final int v) {
+		return v==Integer.MIN_VALUE+1;
+		}
+
+	private String getString(final int offset,int len) {
+		final byte[] array = new byte[len];
+		for(int i=0;i< len;i++) {
+			array[i] = this.buffer.get(offset+i);
+			if(array[i]==0) {
+				len = i;
+				break;
+				}
+			}
+		return new String(array, 0, len, StandardCharsets.UTF_8);
+		}
+
+	private String getString(final Typed t) {
+		if(t.type!=BT_CHAR) throw new IllegalStateException("expected a string but got BCF type "+t.type);
+		return getString(t.offset, t.count);
+		}
+
+	public int getContigIndex() {
+		return this.buffer.getInt(SHARED);
+		}
+
+	public String getContig() {
+		return this.header.getContig(getContigIndex());
+		}
+
+	/** return the 1-based start position */
+	public int getStart() {
+		return this.buffer.getInt(SHARED+4) + 1;
+		}
+
+	/** return the length of the reference allele on the reference */
+	public int getReferenceLength() {
+		return this.buffer.getInt(SHARED+8);
+		}
+
+	/** return the 1-based end position */
+	public int getEnd() {
+		return getStart() + getReferenceLength() - 1;
+		}
+
+	public boolean hasQual() {
+		return this.buffer.getInt(SHARED+12)!=FLOAT_MISSING;
+		}
+
+	/** return QUAL or Float.NaN if it is missing */
+	public float getQual() {
+		return hasQual()?this.buffer.getFloat(SHARED+12):Float.NaN;
+		}
+
+	public int getNInfo() {
+		return this.buffer.getInt(SHARED+16) & 0xFFFF;
+		}
+
+	public int getNAlleles() {
+		return (this.buffer.getInt(SHARED+16) >>> 16) & 0xFFFF;
+		}
+
+	public int getNSamples() {
+		return this.buffer.getInt(SHARED+20) & 0xFFFFFF;
+		}
+
+	public int getNFormat() {
+		return (this.buffer.getInt(SHARED+20) >>> 24) & 0xFF;
+		}
+
+	/** return the ID or null */
+	public String getId() {
+		final Typed t = readTyped(ID_OFFSET, new Typed());
+		if(t.count==0 || t.type==BT_NULL) return null;
+		final String s = getString(t);
+		return s.isEmpty() || s.equals(VCFConstants.EMPTY_ID_FIELD)?null:s;
+		}
+
+	private int getAllelesOffset() {
+		if(this.allelesOffset<0) {
+			this.allelesOffset = readTyped(ID_OFFSET, new Typed()).end();
+			}
+		return this.allelesOffset;
+		}
+
+	/** return the alleles as strings, the first one is the reference */
+	public List<String> getAlleles() {
+		final int n = getNAlleles();
+		final List<String> L = new ArrayList<>(n);
+		final Typed t = new Typed();
+		int offset = getAllelesOffset();
+		for(int i=0;i< n;i++) {
+			readTyped(offset, t);
+			L.add(getString(t));
+			offset = t.end();
+			}
+		return L;
+		}
+
+	/** offset of the FILTER vector */
+	private int getFiltersOffset() {
+		final int n = getNAlleles();
+		final Typed t = new Typed();
+		int offset = getAllelesOffset();
+		for(int i=0;i< n;i++) {
+			offset = readTyped(offset, t).end();
+			}
+		return offset;
+		}
+
+	/** return the indexes of the FILTERs in the dictionary. An empty array means that the FILTER is missing */
+	public int[] getFilterIndexes() {
+		final Typed t = readTyped(getFiltersOffset(), new Typed());
+		final int[] array = new int[t.count];
+		int n = 0;
+		for(int i=0;i< t.count;i++) {
+			final int v = getInt(t.type, t.offset + i*sizeOf(t.type));
+			if(isMissing(v) || isEOV(v)) continue;
+			array[n++] = v;
+			}
+		return n==array.length?array:Arrays.copyOf(array, n);
+		}
+
+	/** return the FILTERs, empty if the FILTER is missing */
+	public List<String> getFilters() {
+		final int[] array = getFilterIndexes();
+		final List<String> L = new ArrayList<>(array.length);
+		for(int idx:array) L.add(this.header.getString(idx));
+		return L;
+		}
+
+	private int getInfoOffset() {
+		if(this.infoOffset<0) {
+			this.infoOffset = readTyped(getFiltersOffset(), new Typed()).end();
+			}
+		return this.infoOffset;
+		}
+
+	/** return the value of the typed vector. Flags are decoded as Boolean.TRUE, missing values as null */
+	private Object decodeValue(final Typed t) {
+		if(t.type==BT_NULL || t.count==0) return Boolean.TRUE;
+		if(t.type==BT_CHAR) return getString(t);
+		final List<Object> L = new ArrayList<>(t.count);
+		final int size = sizeOf(t.type);
+		for(int i=0;i< t.count;i++) {
+			final int offset = t.offset + i*size;
+			if(t.type==BT_FLOAT) {
+				final int bits = this.buffer.getInt(offset);
+				if(bits==FLOAT_EOV) break;
+				L.add(bits==FLOAT_MISSING?VCFConstants.MISSING_VALUE_v4:(Object)toDouble(Float.intBitsToFloat(bits)));
+				}
+			else
+				{
+				final int v = getInt(t.type, offset);
+				if(isEOV(v)) break;
+				L.add(isMissing(v)?VCFConstants.MISSING_VALUE_v4:(Object)Integer.valueOf(v));
+				}
+			}
+		if(L.isEmpty()) return null;
+		if(L.size()==1) return L.get(0);
+		return L;
+		}
+
+	/** convert a float to a double without the noise of the float to double conversion, e.g. 0.1f is 0.1 and not 0.10000000149 */
+	private static double toDouble(final float f) {
+		return Double.parseDouble(Float.toString(f));
+		}
+
+	/** like htsjdk for a VCF, split the strings on comma if the header line allows more than one value */
+	private static Object splitString(final VCFCompoundHeaderLine hl,final Object o) {
+		if(hl==null || !(o instanceof String)) return o;
+		String s = (String)o;
+		if(s.indexOf(',')==-1 || (hl.isFixedCount() && hl.getCount()==1)) return o;
+		/* htsjdk writes the lists of strings with a leading comma */
+		if(s.startsWith(",")) s = s.substring(1);
+		return s.indexOf(',')==-1?s:Arrays.asList(s.split("[,]"));
+		}
+
+	/** return the INFO attributes. Flags are decoded as Boolean.TRUE, numbers as Integer/Double, vectors as List */
+	public Map<String,Object> getInfo() {
+		final int n = getNInfo();
+		final Map<String,Object> map = new HashMap<>(n);
+		final Typed key = new Typed();
+		final Typed value = new Typed();
+		int offset = getInfoOffset();
+		for(int i=0;i< n;i++) {
+			readTyped(offset, key);
+			readTyped(key.end(), value);
+			offset = value.end();
+			final String id = this.header.getString(getInt(key.type, key.offset));
+			final VCFInfoHeaderLine hl = this.header.getVCFHeader().getInfoHeaderLine(id);
+			if(hl!=null && hl.getType()==VCFHeaderLineType.Flag) {
+				/* htsjdk writes the flags as an int8 '1' */
+				map.put(id, Boolean.TRUE);
+				continue;
+				}
+			final Object o = splitString(hl, decodeValue(value));
+			if(o==null) continue;
+			map.put(id, o);
+			}
+		return map;
+		}
+
+	/** decode the genotypes */
+	private List<Genotype> getGenotypes(final List<Allele> alleles) {
+		final int nSamples = getNSamples();
+		if(nSamples==0) return Collections.emptyList();
+		final GenotypeBuilder[] builders = new GenotypeBuilder[nSamples];
+		for(int i=0;i< nSamples;i++) {
+			builders[i] = new GenotypeBuilder(this.header.getSample(i));
+			}
+		final int nFormat = getNFormat();
+		final Typed key = new Typed();
+		final Typed value = new Typed();
+		int offset = getIndivOffset();
+		final List<Allele> gtAlleles = new ArrayList<>();
+		for(int f=0;f< nFormat;f++) {
+			readTyped(offset, key);
+			readTyped(key.end(), value);
+			final String fmt = this.header.getString(getInt(key.type, key.offset));
+			final VCFFormatHeaderLine formatLine = this.header.getVCFHeader().getFormatHeaderLine(fmt);
+			final int sampleSize = value.count * sizeOf(value.type);
+			for(int i=0;i< nSamples;i++) {
+				final Typed v = new Typed();
+				v.type = value.type;
+				v.count = value.count;
+				v.offset = value.offset + i*sampleSize;
+				if(fmt.equals(VCFConstants.GENOTYPE_KEY)) {
+					gtAlleles.clear();
+					boolean phased = false;
+					for(int j=0;j< v.count;j++) {
+						final int gt = getInt(v.type, v.offset + j*sizeOf(v.type));
+						if(isEOV(gt)) break;
+						if(isMissing(gt) || (gt>>1)==0) {
+							gtAlleles.add(Allele.NO_CALL);
+							}
+						else
+							{
+							gtAlleles.add(alleles.get((gt>>1)-1));
+							}
+						if(j>0 && (gt & 1)==1) phased = true;
+						}
+					builders[i].alleles(new ArrayList<>(gtAlleles)).phased(phased);
+					continue;
+					}
+				final Object o = splitString(formatLine, decodeValue(v));
+				if(o==null || o.equals(VCFConstants.MISSING_VALUE_v4)) continue;
+				if(fmt.equals(VCFConstants.GENOTYPE_FILTER_KEY)) {
+					builders[i].filter(o.toString());
+					}
+				else if(fmt.equals(VCFConstants.DEPTH_KEY) && o instanceof Integer) {
+					builders[i].DP((Integer)o);
+					}
+				else if(fmt.equals(VCFConstants.GENOTYPE_QUALITY_KEY) && o instanceof Integer) {
+					builders[i].GQ((Integer)o);
+					}
+				else if((fmt.equals(VCFConstants.GENOTYPE_ALLELE_DEPTHS) || fmt.equals(VCFConstants.GENOTYPE_PL_KEY)) && v.type!=BT_CHAR && v.type!=BT_FLOAT) {
+					final int[] array = toIntArray(o);
+					if(array==null) continue;
+					if(fmt.equals(VCFConstants.GENOTYPE_PL_KEY)) {
+						builders[i].PL(array);
+						}
+					else
+						{
+						builders[i].AD(array);
+						}
+					}
+				else
+					{
+					builders[i].attribute(fmt, o);
+					}
+				}
+			offset = value.offset + nSamples * sampleSize;
+			}
+		final List<Genotype> L = new ArrayList<>(nSamples);
+		for(final GenotypeBuilder gb:builders) L.add(gb.make());
+		return L;
+		}
+
+	/** convert an Integer or a List of Integer to an array. Return null if a value is missing */
+	private static int[] toIntArray(final Object o) {
+		if(o instanceof Integer) return new int[] {(Integer)o};
+		final List<?> L = (List<?>)o;
+		final int[] array = new int[L.size()];
+		for(int i=0;i< L.size();i++) {
+			if(!(L.get(i) instanceof Integer)) return null;
+			array[i] = (Integer)L.get(i);
+			}
+		return array;
+		}
+
+	/** decode this record as a htsjdk VariantContext */
+	public VariantContext toVariantContext() {
+		final List<String> alleleStrs = getAlleles();
+		final List<Allele> alleles = new ArrayList<>(alleleStrs.size());
+		for(int i=0;i< alleleStrs.size();i++) {
+			alleles.add(Allele.create(alleleStrs.get(i), i==0));
+			}
+		final int start = getStart();
+		final VariantContextBuilder vcb = new VariantContextBuilder(
+				"BCF",
+				getContig(),
+				start,
+				getEnd(),
+				alleles
+				);
+		final String id = getId();
+		if(id!=null) vcb.id(id);
+		if(hasQual()) vcb.log10PError(toDouble(getQual())/-10.0);
+		final List<String> filters = getFilters();
+		if(filters.isEmpty()) {
+			vcb.unfiltered();
+			}
+		else if(filters.size()==1 && filters.get(0).equals(VCFConstants.PASSES_FILTERS_v4)) {
+			vcb.passFilters();
+			}
+		else
+			{
+			final Set<String> set = new HashSet<>(filters);
+			set.remove(VCFConstants.PASSES_FILTERS_v4);
+			vcb.filters(set);
+			}
+		vcb.attributes(getInfo());
+		if(getNSamples()>0) vcb.genotypes(getGenotypes(alleles));
+		return vcb.make();
+		}
+
+	@Override
+	public String toString() {
+		return getContig()+":"+getStart()+":"+String.join(",", getAlleles());
+		}
+	}
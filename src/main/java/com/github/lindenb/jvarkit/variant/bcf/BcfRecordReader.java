@@ -0,0 +1,76 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.bcf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.github.lindenb.jvarkit.util.log.Logger;
+
+/**
+ * Reads the records of a BCF file as {@link BcfRecord}.
+ *
+ * Two backends are available: the htslib library through JNI, see {@link NativeBcfRecordReader}, and a pure java
+ * implementation, see {@link JavaBcfRecordReader}. The backend is selected by {@link #open(Path)}
+ * with the system property {@value #BACKEND_PROPERTY}: 'htslib', 'java' or 'auto' (default). 'auto' currently
+ * selects the java backend: the native backend must be requested explicitly. 'bcftools' disables those readers in {@link #isEnabled()}: the BCF files that cannot
+ * be read by htsjdk are then piped through a bcftools process.
+ */
+public abstract class BcfRecordReader implements Closeable {
+	private static final Logger LOG = Logger.build(BcfRecordReader.class).make();
+	/** system property used to select the backend */
+	public static final String BACKEND_PROPERTY = "jvarkit.bcf.backend";
+
+	/** return false if the user wants to read the BCF files with bcftools (-D{@value #BACKEND_PROPERTY}=bcftools) */
+	public static boolean isEnabled() {
+		return !"bcftools".equals(System.getProperty(BACKEND_PROPERTY));
+		}
+
+	/** return the header of the BCF */
+	public abstract BcfHeader getHeader();
+
+	/** read the next record into 'rec'. Return false at the end of the file */
+	public abstract boolean read(final BcfRecord rec) throws IOException;
+
+	/** create a new record that can be filled with {@link #read(BcfRecord)} */
+	public BcfRecord createRecord() {
+		return new BcfRecord(getHeader());
+		}
+
+	/** open a BCF file with the backend defined by {@value #BACKEND_PROPERTY} */
+	public static BcfRecordReader open(final Path path) throws IOException {
+		final String backend = System.getProperty(BACKEND_PROPERTY, "auto");
+		switch(backend) {
+			case "java": return new JavaBcfRecordReader(path);
+			case "htslib": return new NativeBcfRecordReader(path);
+			case "auto": return new JavaBcfRecordReader(path);
+			default:
+				LOG.warning("unknown value for -D"+BACKEND_PROPERTY+"="+backend+". Using java.");
+				return new JavaBcfRecordReader(path);
+			}
+		}
+	}
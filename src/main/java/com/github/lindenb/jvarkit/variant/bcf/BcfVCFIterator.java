@@ -0,0 +1,96 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.bcf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+
+/**
+ * A {@link VCFIterator} decoding the records of a {@link BcfRecordReader} as htsjdk VariantContexts.
+ */
+public class BcfVCFIterator implements VCFIterator {
+	private final BcfRecordReader reader;
+	private final BcfRecord record;
+	private VariantContext peeked = null;
+
+	public BcfVCFIterator(final BcfRecordReader reader) {
+		this.reader = reader;
+		this.record = reader.createRecord();
+		}
+
+	/** open a BCF file with the backend defined by {@link BcfRecordReader#open(Path)} */
+	public static BcfVCFIterator open(final Path path) throws IOException {
+		return new BcfVCFIterator(BcfRecordReader.open(path));
+		}
+
+	@Override
+	public VCFHeader getHeader() {
+		return this.reader.getHeader().getVCFHeader();
+		}
+
+	@Override
+	public boolean hasNext() {
+		if(this.peeked!=null) return true;
+		try {
+			if(!this.reader.read(this.record)) return false;
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		this.peeked = this.record.toVariantContext();
+		return true;
+		}
+
+	@Override
+	public VariantContext peek() {
+		return hasNext()?this.peeked:null;
+		}
+
+	@Override
+	public VariantContext next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		final VariantContext ctx = this.peeked;
+		this.peeked = null;
+		return ctx;
+		}
+
+	@Override
+	public void close() {
+		this.peeked = null;
+		try {
+			this.reader.close();
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		}
+	}
@@ -0,0 +1,118 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.bcf;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.CloserUtil;
+
+/**
+ * pure java implementation of {@link BcfRecordReader}, reading BCF 2.1 and 2.2.
+ */
+public class JavaBcfRecordReader extends BcfRecordReader {
+	private final InputStream in;
+	private final BcfHeader header;
+	private final byte[] array8 = new byte[8];
+	private byte[] buffer = new byte[10_000];
+
+	public JavaBcfRecordReader(final Path path) throws IOException {
+		this(Files.newInputStream(path));
+		}
+
+	/** @param in the stream, BGZF-compressed or not */
+	public JavaBcfRecordReader(final InputStream in) throws IOException {
+		final BufferedInputStream bin = new BufferedInputStream(in, 65_536);
+		this.in = BlockCompressedInputStream.isValidFile(bin)?new BlockCompressedInputStream(bin):bin;
+		try {
+			final byte[] magic = new byte[5];
+			readFully(magic, 5);
+			if(!(magic[0]=='B' && magic[1]=='C' && magic[2]=='F' && magic[3]==2 && (magic[4]==1 || magic[4]==2))) {
+				throw new IOException("not a BCF 2.1 or 2.2 file");
+				}
+			readFully(this.array8, 4);
+			final int l_text = ByteBuffer.wrap(this.array8, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+			final byte[] text = new byte[l_text];
+			readFully(text, l_text);
+			int len = l_text;
+			while(len>0 && text[len-1]==0) len--;
+			this.header = new BcfHeader(new String(text, 0, len, StandardCharsets.UTF_8));
+			}
+		catch(final IOException err) {
+			CloserUtil.close(this.in);
+			throw err;
+			}
+		}
+
+	/** read exactly 'len' bytes. return false if EOF was reached before the first byte */
+	private boolean readFully(final byte[] array,final int len) throws IOException {
+		int n = 0;
+		while(n < len) {
+			final int c = this.in.read(array, n, len-n);
+			if(c==-1) {
+				if(n==0) return false;
+				throw new EOFException("unexpected end of BCF file");
+				}
+			n += c;
+			}
+		return true;
+		}
+
+	@Override
+	public BcfHeader getHeader() {
+		return this.header;
+		}
+
+	@Override
+	public boolean read(final BcfRecord rec) throws IOException {
+		if(!readFully(this.array8, 8)) return false;
+		final ByteBuffer bb = ByteBuffer.wrap(this.array8).order(ByteOrder.LITTLE_ENDIAN);
+		final int l_shared = bb.getInt(0);
+		final int l_indiv = bb.getInt(4);
+		final int len = l_shared + l_indiv;
+		if(l_shared < 24 || l_indiv < 0 || len < 0) throw new IOException("bad BCF record size "+l_shared+"/"+l_indiv);
+		if(this.buffer.length < len) this.buffer = new byte[Math.max(len, this.buffer.length*2)];
+		if(!readFully(this.buffer, len)) throw new EOFException("unexpected end of BCF file");
+		final ByteBuffer dest = rec.ensureCapacity(8 + len);
+		dest.put(this.array8, 0, 8);
+		dest.put(this.buffer, 0, len);
+		rec.reset();
+		return true;
+		}
+
+	@Override
+	public void close() {
+		CloserUtil.close(this.in);
+		}
+	}
@@ -0,0 +1,100 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.bcf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import com.github.lindenb.jvarkit.htslib.HtsLib;
+
+/**
+ * {@link BcfRecordReader} using htslib through JNI. The BGZF blocks are decompressed by htslib
+ * with {@value #THREADS_PROPERTY} threads (default: 2) and the raw records are copied into the
+ * direct buffer of the {@link BcfRecord} without being decoded.
+ */
+public class NativeBcfRecordReader extends BcfRecordReader {
+	/** system property: number of threads used by htslib to decompress the BGZF blocks */
+	public static final String THREADS_PROPERTY = "jvarkit.bcf.threads";
+	private final String filename;
+	private long ptr;
+	private final BcfHeader header;
+
+	public NativeBcfRecordReader(final Path path) throws IOException {
+		if(!isAvailable()) throw new IOException("htslib native library is not available. See -D"+HtsLib.LIBRARY_PROPERTY);
+		this.filename = path.toString();
+		this.ptr = HtsLib.bcf_open(this.filename, false);
+		if(this.ptr==0L) throw new IOException("Cannot open "+this.filename+" with htslib");
+		final int nThreads = Integer.parseInt(System.getProperty(THREADS_PROPERTY, "2"));
+		if(nThreads>1 && HtsLib.bcf_set_threads(this.ptr, nThreads)!=0) {
+			close();
+			throw new IOException("Cannot set "+nThreads+" threads for "+this.filename);
+			}
+		final String text = HtsLib.bcf_hdr_to_string(this.ptr);
+		if(text==null) {
+			close();
+			throw new IOException("Cannot read header of "+this.filename);
+			}
+		this.header = new BcfHeader(text);
+		}
+
+	/** return true if the native library can be loaded */
+	public static boolean isAvailable() {
+		return HtsLib.isAvailable();
+		}
+
+	@Override
+	public BcfHeader getHeader() {
+		return this.header;
+		}
+
+	@Override
+	public boolean read(final BcfRecord rec) throws IOException {
+		if(this.ptr==0L) throw new IOException("reader was closed "+this.filename);
+		ByteBuffer buffer = rec.ensureCapacity(0);
+		int n = HtsLib.bcf_read_raw(this.ptr, buffer);
+		if(n < -1) {
+			buffer = rec.ensureCapacity(-n);
+			n = HtsLib.bcf_read_raw(this.ptr, buffer);
+			}
+		if(n==0) return false;
+		if(n < 0) throw new IOException("Cannot read BCF record in "+this.filename);
+		buffer.limit(n);
+		rec.reset();
+		return true;
+		}
+
+	@Override
+	public void close() {
+		if(this.ptr!=0L) HtsLib.bcf_close(this.ptr);
+		this.ptr = 0L;
+		}
+
+	@Override
+	public String toString() {
+		return "NativeBcfRecordReader("+this.filename+")";
+		}
+	}
@@ -0,0 +1,471 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.sv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.lindenb.jvarkit.lang.JvarkitException;
+import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.lang.primitive.IntArray;
+import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
+import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CoordMath;
+import htsjdk.samtools.util.IntervalTree;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFReader;
+
+/**
+ * An in-memory panel of structural variants merged from a set of control VCFs.
+ * 
+ * Identical calls (same contig, bounds, SVTYPE, alleles, CIPOS, CIEND, CHR2) found in several controls
+ * are stored once with the indexes of the controls carrying them. The calls are indexed by contig
+ * using an {@link IntervalTree}. The panel can be saved as a compact binary file and loaded again,
+ * so the controls are only read once.
+ */
+public class StructuralVariantPanel {
+	public static final String SUFFIX = ".svpanel";
+	private static final byte[] MAGIC = "JVKSVPNL".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	
+	private final SAMSequenceDictionary dict;
+	/** names of the controls */
+	private final List<String> controls;
+	private final List<Call> calls;
+	private final Map<String,IntervalTree<IntArray>> contig2tree = new HashMap<>();
+
+	/** a structural variant in the panel */
+	public static class Call implements Locatable {
+		private final String contig;
+		private final int start;
+		private final int end;
+		private final String id;
+		private final double qual;
+		private final String filters;
+		private final String svType;
+		private final String[] alleles;
+		private final int[] cipos;
+		private final int[] ciend;
+		private final String chr2;
+		/** indexes of the controls carrying this call */
+		private final int[] controlIds;
+		
+		private Call(final String contig,final int start,final int end,final String id,final double qual,final String filters,final String svType,final String[] alleles,final int[] cipos,final int[] ciend,final String chr2,final int[] controlIds) {
+			this.contig = contig;
+			this.start = start;
+			this.end = end;
+			this.id = id;
+			this.qual = qual;
+			this.filters = filters;
+			this.svType = svType;
+			this.alleles = alleles;
+			this.cipos = cipos;
+			this.ciend = ciend;
+			this.chr2 = chr2;
+			this.controlIds = controlIds;
+			}
+		@Override
+		public String getContig() {
+			return this.contig;
+			}
+		@Override
+		public int getStart() {
+			return this.start;
+			}
+		@Override
+		public int getEnd() {
+			return this.end;
+			}
+		/** ID of the first control carrying this call or null. QUAL and FILTER are also the ones of the first control. */
+		public String getId() {
+			return this.id;
+			}
+		/** INFO/SVTYPE */
+		public String getSvType() {
+			return this.svType;
+			}
+		/** CIPOS or null */
+		public int[] getCiPos() {
+			return this.cipos;
+			}
+		/** CIEND or null */
+		public int[] getCiEnd() {
+			return this.ciend;
+			}
+		/** indexes of the controls carrying this call */
+		public int[] getControlIndexes() {
+			return this.controlIds;
+			}
+		/** number of controls carrying this call */
+		public int getControlCount() {
+			return this.controlIds.length;
+			}
+		/** return the fraction of this call covered by 'loc' */
+		public double getOverlapFraction(final Locatable loc) {
+			if(!this.overlaps(loc)) return 0.0;
+			final int p1 = Math.max(this.getStart(), loc.getStart());
+			final int p2 = Math.min(this.getEnd(), loc.getEnd());
+			return CoordMath.getLength(p1, p2)/(double)this.getLengthOnReference();
+			}
+		private boolean isSameCall(final Call o) {
+			return this.start==o.start &&
+				this.end==o.end &&
+				this.contig.equals(o.contig) &&
+				this.svType.equals(o.svType) &&
+				Arrays.equals(this.alleles, o.alleles) &&
+				Arrays.equals(this.cipos, o.cipos) &&
+				Arrays.equals(this.ciend, o.ciend) &&
+				Objects.equals(this.chr2, o.chr2);
+			}
+		private int callHashCode() {
+			int h = this.contig.hashCode();
+			h = h*31 + this.start;
+			h = h*31 + this.end;
+			h = h*31 + this.svType.hashCode();
+			h = h*31 + Arrays.hashCode(this.alleles);
+			return h;
+			}
+		/** convert this call to a VariantContext without genotype that can be used by a {@link StructuralVariantComparator} */
+		public VariantContext toVariantContext() {
+			final VariantContextBuilder vcb = new VariantContextBuilder();
+			vcb.chr(this.contig);
+			vcb.start(this.start);
+			vcb.stop(this.end);
+			if(!StringUtils.isBlank(this.id)) vcb.id(this.id);
+			vcb.log10PError(this.qual);
+			if(this.filters!=null) {
+				if(this.filters.isEmpty()) {
+					vcb.passFilters();
+					}
+				else
+					{
+					vcb.filters(this.filters.split("[;]"));
+					}
+				}
+			final List<Allele> list = new ArrayList<>(this.alleles.length);
+			for(int i=0;i< this.alleles.length;i++) {
+				list.add(Allele.create(this.alleles[i], i==0));
+				}
+			vcb.alleles(list);
+			vcb.attribute(VCFConstants.END_KEY, this.end);
+			if(!this.svType.equals(VCFConstants.MISSING_VALUE_v4)) vcb.attribute(VCFConstants.SVTYPE, this.svType);
+			if(this.cipos!=null) vcb.attribute("CIPOS", Arrays.asList(this.cipos[0],this.cipos[1]));
+			if(this.ciend!=null) vcb.attribute("CIEND", Arrays.asList(this.ciend[0],this.ciend[1]));
+			if(this.chr2!=null) vcb.attribute("CHR2", this.chr2);
+			return vcb.make();
+			}
+		@Override
+		public String toString() {
+			return getContig()+":"+getStart()+"-"+getEnd()+":"+getSvType()+" N="+getControlCount();
+			}
+		}
+
+	/** wraps a call to be used as a key in a HashMap */
+	private static class CallKey {
+		final Call call;
+		final int hash;
+		CallKey(final Call call) {
+			this.call = call;
+			this.hash = call.callHashCode();
+			}
+		@Override
+		public int hashCode() {
+			return this.hash;
+			}
+		@Override
+		public boolean equals(final Object obj) {
+			return obj==this || (obj instanceof CallKey && CallKey.class.cast(obj).call.isSameCall(this.call));
+			}
+		}
+
+	/** build a panel from VCF files */
+	public static class Builder {
+		private SAMSequenceDictionary dict = null;
+		private final List<String> controls = new ArrayList<>();
+		private final Map<CallKey,IntArray> call2controls = new LinkedHashMap<>();
+		
+		private static int[] getCI(final VariantContext ctx,final String key) {
+			if(!ctx.hasAttribute(key)) return null;
+			try {
+				final List<Integer> L = ctx.getAttributeAsIntList(key, 0);
+				if(L.size()!=2) return null;
+				return new int[] {L.get(0),L.get(1)};
+				}
+			catch(final Throwable err) {
+				return null;
+				}
+			}
+		
+		/** add all the variants of a control VCF */
+		public Builder add(final Path vcfPath) throws IOException {
+			final int controlId = this.controls.size();
+			this.controls.add(vcfPath.toString());
+			try(VCFReader r = VCFReaderFactory.makeDefault().open(vcfPath,false)) {
+				final SAMSequenceDictionary dict2 = SequenceDictionaryUtils.extractRequired(r.getHeader());
+				if(this.dict==null) {
+					this.dict = dict2;
+					}
+				else if(!SequenceUtil.areSequenceDictionariesEqual(this.dict, dict2)) {
+					throw new JvarkitException.DictionariesAreNotTheSame(this.dict, dict2);
+					}
+				try(CloseableIterator<VariantContext> iter= r.iterator()) {
+					while(iter.hasNext()) {
+						add(iter.next(),controlId);
+						}
+					}
+				}
+			return this;
+			}
+		
+		private void add(final VariantContext ctx,final int controlId) {
+			final String chr2 = ctx.getAttributeAsString("CHR2", null);
+			final Call call = new Call(
+				ctx.getContig(),
+				ctx.getStart(),
+				ctx.getEnd(),
+				ctx.hasID()?ctx.getID():null,
+				ctx.getLog10PError(),
+				ctx.filtersWereApplied()?String.join(";",ctx.getFilters()):null,
+				ctx.getAttributeAsString(VCFConstants.SVTYPE, VCFConstants.MISSING_VALUE_v4),
+				ctx.getAlleles().stream().map(A->A.getDisplayString()).toArray(N->new String[N]),
+				getCI(ctx,"CIPOS"),
+				getCI(ctx,"CIEND"),
+				StringUtils.isBlank(chr2)?null:chr2,
+				null
+				);
+			final IntArray ids = this.call2controls.computeIfAbsent(new CallKey(call), K->new IntArray());
+			if(ids.isEmpty() || ids.get(ids.size()-1)!=controlId) ids.add(controlId);
+			}
+		
+		public StructuralVariantPanel build() {
+			if(this.dict==null) this.dict = new SAMSequenceDictionary();
+			final List<Call> calls = new ArrayList<>(this.call2controls.size());
+			for(final Map.Entry<CallKey,IntArray> kv: this.call2controls.entrySet()) {
+				final Call c = kv.getKey().call;
+				calls.add(new Call(c.contig, c.start, c.end, c.id, c.qual, c.filters, c.svType, c.alleles, c.cipos, c.ciend, c.chr2, kv.getValue().toArray()));
+				}
+			return new StructuralVariantPanel(this.dict, this.controls, calls);
+			}
+		}
+
+	private StructuralVariantPanel(final SAMSequenceDictionary dict,final List<String> controls,final List<Call> calls) {
+		this.dict = dict;
+		this.controls = Collections.unmodifiableList(new ArrayList<>(controls));
+		this.calls = new ArrayList<>(calls);
+		// sort on position, keep the input order for the same position
+		this.calls.sort((A,B)->{
+			final int i = Integer.compare(dict.getSequenceIndex(A.getContig()), dict.getSequenceIndex(B.getContig()));
+			if(i!=0) return i;
+			return Integer.compare(A.getStart(), B.getStart());
+			});
+		for(int i=0;i< this.calls.size();i++) {
+			final Call c = this.calls.get(i);
+			final IntervalTree<IntArray> tree = this.contig2tree.computeIfAbsent(c.getContig(), K->new IntervalTree<>());
+			final IntervalTree.Node<IntArray> node = tree.find(c.getStart(), c.getEnd());
+			if(node!=null) {
+				node.getValue().add(i);
+				}
+			else
+				{
+				final IntArray array = new IntArray(1);
+				array.add(i);
+				tree.put(c.getStart(), c.getEnd(), array);
+				}
+			}
+		}
+
+	public SAMSequenceDictionary getSequenceDictionary() {
+		return this.dict;
+		}
+
+	/** names of the controls */
+	public List<String> getControls() {
+		return this.controls;
+		}
+
+	/** all the calls, sorted on contig/start */
+	public List<Call> getCalls() {
+		return Collections.unmodifiableList(this.calls);
+		}
+
+	/** return the calls overlapping the interval, sorted on start */
+	public List<Call> getOverlapping(final String contig,final int start,final int end) {
+		final IntervalTree<IntArray> tree = this.contig2tree.get(contig);
+		if(tree==null) return Collections.emptyList();
+		final IntArray indexes = new IntArray();
+		final Iterator<IntervalTree.Node<IntArray>> iter = tree.overlappers(start, end);
+		while(iter.hasNext()) {
+			indexes.addAll(iter.next().getValue());
+			}
+		return Arrays.stream(indexes.toArray()).sorted().mapToObj(i->this.calls.get(i)).collect(Collectors.toList());
+		}
+
+	/** return the calls overlapping 'loc' where both the call and 'loc' share at least 'fraction' of their length */
+	public List<Call> getOverlapping(final Locatable loc,final double fraction) {
+		return getOverlapping(loc.getContig(), loc.getStart(), loc.getEnd()).stream().
+			filter(C->C.getOverlapFraction(loc) >= fraction && 
+				CoordMath.getLength(Math.max(C.getStart(), loc.getStart()), Math.min(C.getEnd(), loc.getEnd()))/(double)loc.getLengthOnReference() >= fraction).
+			collect(Collectors.toList());
+		}
+
+	private static void writeString(final DataOutputStream out,final String s) throws IOException {
+		if(s==null) {
+			out.writeInt(-1);
+			return;
+			}
+		final byte[] array = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(array.length);
+		out.write(array);
+		}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		final int n = in.readInt();
+		if(n<0) return null;
+		final byte[] array = new byte[n];
+		in.readFully(array);
+		return new String(array,StandardCharsets.UTF_8);
+		}
+
+	private static void writeCI(final DataOutputStream out,final int[] ci) throws IOException {
+		out.writeBoolean(ci!=null);
+		if(ci==null) return;
+		out.writeInt(ci[0]);
+		out.writeInt(ci[1]);
+		}
+
+	private static int[] readCI(final DataInputStream in) throws IOException {
+		if(!in.readBoolean()) return null;
+		return new int[] {in.readInt(),in.readInt()};
+		}
+
+	/** save this panel in a gzipped binary file */
+	public void save(final Path path) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(path))))) {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.dict.size());
+			for(final SAMSequenceRecord ssr:this.dict.getSequences()) {
+				writeString(out, ssr.getSequenceName());
+				out.writeInt(ssr.getSequenceLength());
+				}
+			out.writeInt(this.controls.size());
+			for(final String s: this.controls) writeString(out, s);
+			// svtypes are stored once
+			final List<String> svTypes = this.calls.stream().map(C->C.svType).distinct().collect(Collectors.toList());
+			out.writeInt(svTypes.size());
+			for(final String s:svTypes) writeString(out, s);
+			out.writeInt(this.calls.size());
+			for(final Call c:this.calls) {
+				out.writeInt(this.dict.getSequenceIndex(c.contig));
+				out.writeInt(c.start);
+				out.writeInt(c.end);
+				writeString(out, c.id);
+				out.writeDouble(c.qual);
+				writeString(out, c.filters);
+				out.writeInt(svTypes.indexOf(c.svType));
+				out.writeInt(c.alleles.length);
+				for(final String a:c.alleles) writeString(out, a);
+				writeCI(out,c.cipos);
+				writeCI(out,c.ciend);
+				writeString(out, c.chr2);
+				out.writeInt(c.controlIds.length);
+				for(int id:c.controlIds) out.writeInt(id);
+				}
+			out.flush();
+			}
+		}
+
+	/** load a panel saved with {@link #save(Path)} */
+	public static StructuralVariantPanel load(final Path path) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))))) {
+			final byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if(!Arrays.equals(magic, MAGIC)) throw new IOException("not a SV panel: "+path);
+			final int version = in.readInt();
+			if(version!=VERSION) throw new IOException("unsupported version "+version+" in "+path);
+			int n = in.readInt();
+			final List<SAMSequenceRecord> ssrs = new ArrayList<>(n);
+			for(int i=0;i< n;i++) {
+				final String name = readString(in);
+				ssrs.add(new SAMSequenceRecord(name, in.readInt()));
+				}
+			final SAMSequenceDictionary dict = new SAMSequenceDictionary(ssrs);
+			n = in.readInt();
+			final List<String> controls = new ArrayList<>(n);
+			for(int i=0;i< n;i++) controls.add(readString(in));
+			n = in.readInt();
+			final List<String> svTypes = new ArrayList<>(n);
+			for(int i=0;i< n;i++) svTypes.add(readString(in));
+			n = in.readInt();
+			final List<Call> calls = new ArrayList<>(n);
+			for(int i=0;i< n;i++) {
+				final String contig = dict.getSequence(in.readInt()).getSequenceName();
+				final int start = in.readInt();
+				final int end = in.readInt();
+				final String id = readString(in);
+				final double qual = in.readDouble();
+				final String filters = readString(in);
+				final String svType = svTypes.get(in.readInt());
+				final String[] alleles = new String[in.readInt()];
+				for(int j=0;j< alleles.length;j++) alleles[j] = readString(in);
+				final int[] cipos = readCI(in);
+				final int[] ciend = readCI(in);
+				final String chr2 = readString(in);
+				final int[] ids = new int[in.readInt()];
+				for(int j=0;j< ids.length;j++) ids[j] = in.readInt();
+				calls.add(new Call(contig, start, end, id, qual, filters, svType, alleles, cipos, ciend, chr2, ids));
+				}
+			return new StructuralVariantPanel(dict, controls, calls);
+			}
+		}
+	}
@@ -37,6 +37,7 @@ import java.util.stream.Collectors;
 
 import com.github.lindenb.jvarkit.lang.CharSplitter;
 import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.variant.vcf.VcfLine;
 
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeBuilder;
@@ -78,6 +79,12 @@ public default VariantContext apply(final VariantContext ctx) {
 	return cleanVariant(ctx);
 }
 
+/** return true if this cleaner removes some FORMAT fields. In that case {@link #cleanVcfLine(VcfLine)} cannot be used */
+public boolean isCleaningGenotypes();
+
+/** remove the fields from the text of a VCF line. The genotypes are not modified, see {@link #isCleaningGenotypes()} */
+public void cleanVcfLine(VcfLine line);
+
 /** compiles 'bctools annotate' like expression to a new AttributeCleaner */
 public static AttributeCleaner compile(final String pattern) {
 	if(pattern==null) return compile("");
@@ -311,6 +318,37 @@ static class AttributeCleanerImpl implements AttributeCleaner {
 		return vcb;
 	}
 	
+	@Override
+	public boolean isCleaningGenotypes() {
+		return this.remove_all_format || !this.formats.isEmpty();
+		}
+	
+	@Override
+	public void cleanVcfLine(final VcfLine line) {
+		if(isCleaningGenotypes()) throw new IllegalStateException("cannot remove FORMAT fields from a VCF line");
+		if(this.remove_qual) line.setColumn(VcfLine.QUAL, VCFConstants.MISSING_VALUE_v4);
+		if(this.remove_id) line.setColumn(VcfLine.ID, VCFConstants.EMPTY_ID_FIELD);
+		if(line.isFiltered() && (!this.filters.isEmpty() || this.remove_all_filters)) {
+			if(this.remove_all_filters) {
+				line.setFilter(VCFConstants.UNFILTERED);
+				}
+			else
+				{
+				final List<String> L = new ArrayList<>(line.getFilters());
+				L.removeIf(F->this.filters.contains(F) != this.inverse_filter);
+				line.setFilter(L.isEmpty()?VCFConstants.PASSES_FILTERS_v4:String.join(";", L));
+				}
+			}
+		if(this.remove_all_info)
+			{
+			line.setInfo(VCFConstants.EMPTY_INFO_FIELD);
+			}
+		else if(!this.infos.isEmpty())
+			{
+			line.removeInfoAttributes(K->this.infos.contains(K) != this.inverse_info);
+			}
+		}
+	
 	@Override
 	public String toString() {
 		return this.pattern;
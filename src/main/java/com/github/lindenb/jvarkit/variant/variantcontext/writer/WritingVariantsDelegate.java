@@ -24,11 +24,17 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.variant.variantcontext.writer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import com.beust.jcommander.Parameter;
+import com.github.lindenb.jvarkit.io.ParallelBlockCompressedOutputStream;
 
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.FileExtensions;
+import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 import htsjdk.variant.vcf.VCFHeader;
@@ -60,7 +66,19 @@ public VariantContextWriter open(final Path pathOrNull) {
 	if(this.dict!=null) vcwb.setReferenceDictionary(this.dict);
 	vcwb.clearOptions();
 	
-	if(pathOrNull!=null) {
+	if(pathOrNull!=null && !this.generate_md5 &&
+		ParallelBlockCompressedOutputStream.getDefaultThreadCount() > 1 &&
+		pathOrNull.getFileName().toString().endsWith(FileExtensions.COMPRESSED_VCF)) {
+		// bgzf blocks compressed by a pool of threads
+		vcwb.setCreateMD5(false);
+		try {
+			vcwb.setOutputVCFStream(openTextVcfStream(pathOrNull));
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		}
+	else if(pathOrNull!=null) {
 		vcwb.setCreateMD5(this.generate_md5);
 		// output type : Determines file type implicitly from the filename.
 		vcwb.setOutputPath(pathOrNull);
@@ -80,4 +98,22 @@ public VariantContextWriter open(final Path pathOrNull) {
 	
 	return vcwb.build();
 	}
+
+/** return true if {@link #open(Path)} would write a text VCF (plain or bgzipped) without any MD5 file */
+public boolean isTextVcfOutput(final Path pathOrNull) {
+	if(pathOrNull==null) return !this.force_bcf_output;
+	if(this.generate_md5) return false;
+	final String fn = pathOrNull.getFileName().toString();
+	return fn.endsWith(FileExtensions.VCF) || fn.endsWith(FileExtensions.COMPRESSED_VCF);
+	}
+
+/** open a stream for a text VCF. see {@link #isTextVcfOutput(Path)} */
+public OutputStream openTextVcfStream(final Path pathOrNull) throws IOException {
+	if(!isTextVcfOutput(pathOrNull)) throw new IllegalStateException("output is not a text VCF "+pathOrNull);
+	if(pathOrNull==null) return System.out;
+	if(pathOrNull.getFileName().toString().endsWith(FileExtensions.COMPRESSED_VCF)) {
+		return ParallelBlockCompressedOutputStream.open(Files.newOutputStream(pathOrNull), pathOrNull);
+		}
+	return Files.newOutputStream(pathOrNull);
+	}
 }
@@ -24,11 +24,18 @@ SOFTWARE.
 */
 package com.github.lindenb.jvarkit.variant.vcf;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.function.Function;
 
+import com.github.lindenb.jvarkit.io.IOUtils;
 import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.variant.bcf.BcfRecordReader;
+import com.github.lindenb.jvarkit.variant.bcf.BcfVCFIterator;
 
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
@@ -39,6 +46,61 @@ import htsjdk.variant.vcf.VCFIterator;
 import htsjdk.variant.vcf.VCFIteratorBuilder;
 
 public class BcfIteratorBuilder extends VCFIteratorBuilder {
+/** function selecting the samples to decode from the original header. May return null to keep all the samples */
+private Function<VCFHeader, Collection<String>> sampleSelector = null;
+
+/**
+ * only decode the genotypes of the samples returned by this function. The function receives the original header
+ * and may return null to keep all the samples. The header of the returned iterators only contains the selected samples.
+ * For a text VCF, the columns of the other samples are skipped without being decoded. See {@link SampleSubsetVCFIterator}.
+ */
+public BcfIteratorBuilder setSampleSelector(final Function<VCFHeader, Collection<String>> sampleSelector) {
+	this.sampleSelector = sampleSelector;
+	return this;
+	}
+
+/** only decode the genotypes of those samples. See {@link #setSampleSelector(Function)} */
+public BcfIteratorBuilder setSamples(final Collection<String> samples) {
+	return setSampleSelector(samples==null?null:H->samples);
+	}
+
+/** apply the sample selector to an iterator that is not backed by a text VCF */
+private VCFIterator subset(final VCFIterator iter) {
+	if(this.sampleSelector==null) return iter;
+	final Collection<String> samples = this.sampleSelector.apply(iter.getHeader());
+	if(samples==null) return iter;
+	return SampleSubsetVCFIterator.wrap(iter, samples);
+	}
+
+/** apply the sample selector to a text VCF. If 'all' is false and all the samples are selected, the reader is closed and null is returned */
+private VCFIterator subset(final VcfLineReader r,boolean all) {
+	try {
+		Collection<String> samples = this.sampleSelector.apply(r.getHeader());
+		if(samples==null) {
+			if(!all) {
+				r.close();
+				return null;
+				}
+			samples = r.getHeader().getSampleNamesInOrder();
+			}
+		return new SampleSubsetVCFIterator(r, samples);
+		}
+	catch(final RuntimeException err) {
+		r.close();
+		throw err;
+		}
+	}
+
+@Override
+public VCFIterator open(final InputStream in) throws IOException {
+	if(this.sampleSelector==null) return super.open(in);
+	final BufferedInputStream bin = new BufferedInputStream(IOUtils.uncompress(in));
+	if(VcfLineReader.isTextVcf(bin)) {
+		// the header will be consumed: we cannot go back to htsjdk if all the samples are selected
+		return subset(new VcfLineReader(bin), true);
+		}
+	return subset(super.open(bin));
+	}
 
 @Override
 public VCFIterator open(final String pathOrUrl) throws IOException {
@@ -51,11 +113,14 @@ public VCFIterator open(final String pathOrUrl) throws IOException {
 @Override
 public VCFIterator open(final Path path) throws IOException {
 	IOUtil.assertFileIsReadable(path);
+	if(BcfToolsUtils.isBcfToolsRequired(path) && BcfRecordReader.isEnabled()) {
+		return subset(BcfVCFIterator.open(path));
+		}
 	if(BcfToolsUtils.isBcfToolsRequired(path)) {
 		final BcfToolsReader br = new BcfToolsReader(path.toString());
 		final CloseableIterator<VariantContext> iter = br.iterator();
 		final PeekableIterator<VariantContext> peek=new PeekableIterator<>(iter);
-		return new VCFIterator() {
+		return subset(new VCFIterator() {
 			@Override
 			public VCFHeader getHeader() {
 				return br.getHeader();
@@ -78,9 +143,13 @@ public VCFIterator open(final Path path) throws IOException {
 				iter.close();
 				try {br.close(); } catch(IOException err) {}
 				}
-			};
+			});
+		}
+	if(this.sampleSelector!=null && VcfLineReader.isTextVcf(path)) {
+		final VCFIterator iter = subset(VcfLineReader.open(path), false);
+		if(iter!=null) return iter;
 		}
-	return super.open(path);
+	return subset(super.open(path));
 	}
 
 
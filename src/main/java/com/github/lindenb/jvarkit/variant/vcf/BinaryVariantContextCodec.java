@@ -0,0 +1,445 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.github.lindenb.jvarkit.util.picard.AbstractDataCodec;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFCompoundHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+
+/**
+ * Binary codec for {@link VariantContext} used by {@link htsjdk.samtools.util.SortingCollection}.
+ * 
+ * Unlike htsjdk's VCFRecordCodec, the variant is not converted to a VCF line and parsed again:
+ * the fields are written with their java type and the contigs, INFO keys, FORMAT keys, FILTERs and samples
+ * are stored as their index in the VCF header (or as a String if they're not defined in the header).
+ * The genotypes that were never decoded (lazy genotypes from a VCF file) are saved as the original text and
+ * they remain lazy after decoding.
+ */
+public class BinaryVariantContextCodec extends AbstractDataCodec<VariantContext> {
+	/* types of the attributes */
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_INT = 2;
+	private static final byte TYPE_DOUBLE = 3;
+	private static final byte TYPE_BOOLEAN = 4;
+	private static final byte TYPE_FLOAT = 5;
+	private static final byte TYPE_LONG = 6;
+	private static final byte TYPE_LIST = 7;
+	private static final byte TYPE_INT_ARRAY = 8;
+	private static final byte TYPE_DOUBLE_ARRAY = 9;
+	private static final byte TYPE_CHAR = 10;
+	/* how the genotypes are stored */
+	private static final byte GENOTYPES_NONE = 0;
+	private static final byte GENOTYPES_LAZY = 1;
+	private static final byte GENOTYPES_BINARY = 2;
+	/* how the FILTERs are stored */
+	private static final byte FILTERS_UNFILTERED = 0;
+	private static final byte FILTERS_PASS = 1;
+	private static final byte FILTERS_FILTERED = 2;
+	/* special allele codes in the genotypes */
+	private static final int ALLELE_NO_CALL = -1;
+	private static final int ALLELE_OTHER = -2;
+
+	private final VCFHeader header;
+	private final HeaderIndexes indexes;
+	/** used to decode the lazy genotypes */
+	private VCFCodec vcfCodec = null;
+
+	/** dictionaries extracted from the header, shared by the clones */
+	private static class HeaderIndexes {
+		final List<String> contigs;
+		final Map<String,Integer> contig2index;
+		final List<String> infoKeys;
+		final Map<String,Integer> info2index;
+		final List<String> formatKeys;
+		final Map<String,Integer> format2index;
+		final List<String> filters;
+		final Map<String,Integer> filter2index;
+		final List<String> samples;
+		final Map<String,Integer> sample2index;
+		HeaderIndexes(final VCFHeader header) {
+			final SAMSequenceDictionary dict = header.getSequenceDictionary();
+			this.contigs = dict==null ? Collections.emptyList() : dict.getSequences().stream().map(SSR->SSR.getSequenceName()).collect(Collectors.toList());
+			this.contig2index = toIndex(this.contigs);
+			this.infoKeys = header.getInfoHeaderLines().stream().map(VCFCompoundHeaderLine::getID).collect(Collectors.toList());
+			this.info2index = toIndex(this.infoKeys);
+			this.formatKeys = header.getFormatHeaderLines().stream().map(VCFCompoundHeaderLine::getID).collect(Collectors.toList());
+			this.format2index = toIndex(this.formatKeys);
+			this.filters = header.getFilterLines().stream().map(F->F.getID()).collect(Collectors.toList());
+			this.filter2index = toIndex(this.filters);
+			this.samples = new ArrayList<>(header.getGenotypeSamples());
+			this.sample2index = toIndex(this.samples);
+			}
+		private static Map<String,Integer> toIndex(final List<String> L) {
+			final Map<String,Integer> m = new HashMap<>(L.size());
+			for(int i=0;i< L.size();i++) m.putIfAbsent(L.get(i), i);
+			return m;
+			}
+		}
+
+	public BinaryVariantContextCodec(final VCFHeader header) {
+		this(header,new HeaderIndexes(header));
+		}
+
+	private BinaryVariantContextCodec(final VCFHeader header,final HeaderIndexes indexes) {
+		this.header = header;
+		this.indexes = indexes;
+		}
+
+	public VCFHeader getHeader() {
+		return this.header;
+		}
+
+	@Override
+	public BinaryVariantContextCodec clone() {
+		return new BinaryVariantContextCodec(this.header,this.indexes);
+		}
+
+	/* write a String that can be stored as an index in 'map' */
+	private static void writeIndexed(final DataOutputStream dos,final Map<String,Integer> map,final String s) throws IOException {
+		final Integer idx = map.get(s);
+		if(idx!=null) {
+			dos.writeInt(idx);
+			}
+		else
+			{
+			dos.writeInt(-1);
+			writeString(dos, s);
+			}
+		}
+
+	private static String readIndexed(final DataInputStream dis,final List<String> list) throws IOException {
+		final int idx = dis.readInt();
+		return idx<0 ? readString(dis) : list.get(idx);
+		}
+
+	private static void writeIntArray(final DataOutputStream dos,final int[] array) throws IOException {
+		if(array==null) {
+			dos.writeInt(-1);
+			return;
+			}
+		dos.writeInt(array.length);
+		for(int v:array) dos.writeInt(v);
+		}
+
+	private static int[] readIntArray(final DataInputStream dis) throws IOException {
+		final int n = dis.readInt();
+		if(n<0) return null;
+		final int[] array = new int[n];
+		for(int i=0;i< n;i++) array[i] = dis.readInt();
+		return array;
+		}
+
+	private static void writeAllele(final DataOutputStream dos,final Allele a) throws IOException {
+		dos.writeBoolean(a.isReference());
+		writeString(dos, a.getDisplayString());
+		}
+
+	private static Allele readAllele(final DataInputStream dis) throws IOException {
+		final boolean isRef = dis.readBoolean();
+		return Allele.create(readString(dis), isRef);
+		}
+
+	/** write an attribute using its java type */
+	private static void writeValue(final DataOutputStream dos,final Object o) throws IOException {
+		if(o==null) {
+			dos.writeByte(TYPE_NULL);
+			}
+		else if(o instanceof String) {
+			dos.writeByte(TYPE_STRING);
+			writeString(dos, (String)o);
+			}
+		else if(o instanceof Integer) {
+			dos.writeByte(TYPE_INT);
+			dos.writeInt((Integer)o);
+			}
+		else if(o instanceof Double) {
+			dos.writeByte(TYPE_DOUBLE);
+			dos.writeDouble((Double)o);
+			}
+		else if(o instanceof Boolean) {
+			dos.writeByte(TYPE_BOOLEAN);
+			dos.writeBoolean((Boolean)o);
+			}
+		else if(o instanceof Float) {
+			dos.writeByte(TYPE_FLOAT);
+			dos.writeFloat((Float)o);
+			}
+		else if(o instanceof Long) {
+			dos.writeByte(TYPE_LONG);
+			dos.writeLong((Long)o);
+			}
+		else if(o instanceof Character) {
+			dos.writeByte(TYPE_CHAR);
+			dos.writeChar((Character)o);
+			}
+		else if(o instanceof int[]) {
+			dos.writeByte(TYPE_INT_ARRAY);
+			writeIntArray(dos, (int[])o);
+			}
+		else if(o instanceof double[]) {
+			final double[] array = (double[])o;
+			dos.writeByte(TYPE_DOUBLE_ARRAY);
+			dos.writeInt(array.length);
+			for(double v:array) dos.writeDouble(v);
+			}
+		else if(o instanceof List) {
+			final List<?> L = (List<?>)o;
+			dos.writeByte(TYPE_LIST);
+			dos.writeInt(L.size());
+			for(final Object o2:L) writeValue(dos,o2);
+			}
+		else if(o instanceof Object[]) {
+			final Object[] array = (Object[])o;
+			dos.writeByte(TYPE_LIST);
+			dos.writeInt(array.length);
+			for(final Object o2:array) writeValue(dos,o2);
+			}
+		else
+			{
+			dos.writeByte(TYPE_STRING);
+			writeString(dos, String.valueOf(o));
+			}
+		}
+
+	private static Object readValue(final DataInputStream dis) throws IOException {
+		final byte type = dis.readByte();
+		switch(type) {
+			case TYPE_NULL: return null;
+			case TYPE_STRING: return readString(dis);
+			case TYPE_INT: return dis.readInt();
+			case TYPE_DOUBLE: return dis.readDouble();
+			case TYPE_BOOLEAN: return dis.readBoolean();
+			case TYPE_FLOAT: return dis.readFloat();
+			case TYPE_LONG: return dis.readLong();
+			case TYPE_CHAR: return dis.readChar();
+			case TYPE_INT_ARRAY: return readIntArray(dis);
+			case TYPE_DOUBLE_ARRAY: {
+				final double[] array = new double[dis.readInt()];
+				for(int i=0;i< array.length;i++) array[i] = dis.readDouble();
+				return array;
+				}
+			case TYPE_LIST: {
+				final int n = dis.readInt();
+				final List<Object> L = new ArrayList<>(n);
+				for(int i=0;i< n;i++) L.add(readValue(dis));
+				return L;
+				}
+			default: throw new IOException("unknown type "+type);
+			}
+		}
+
+	private void writeAttributes(final DataOutputStream dos,final Map<String,Integer> key2index,final Map<String,Object> atts) throws IOException {
+		dos.writeInt(atts.size());
+		for(final Map.Entry<String,Object> kv:atts.entrySet()) {
+			writeIndexed(dos, key2index, kv.getKey());
+			writeValue(dos, kv.getValue());
+			}
+		}
+
+	private Map<String,Object> readAttributes(final DataInputStream dis,final List<String> keys) throws IOException {
+		final int n = dis.readInt();
+		if(n==0) return Collections.emptyMap();
+		final Map<String,Object> atts = new LinkedHashMap<>(n);
+		for(int i=0;i< n;i++) {
+			final String key = readIndexed(dis, keys);
+			atts.put(key, readValue(dis));
+			}
+		return atts;
+		}
+
+	/** true if the genotypes can be saved as the original VCF text */
+	private boolean isLazyVcfGenotypes(final GenotypesContext gc) {
+		return gc.isLazyWithData() &&
+			(LazyGenotypesContext.class.cast(gc).getUnparsedGenotypeData() instanceof String) &&
+			this.header.getNGenotypeSamples() > 0 &&
+			gc.size() == this.header.getNGenotypeSamples();
+		}
+
+	@Override
+	public void encode(final DataOutputStream dos,final VariantContext ctx) throws IOException {
+		writeIndexed(dos, this.indexes.contig2index, ctx.getContig());
+		dos.writeInt(ctx.getStart());
+		dos.writeInt(ctx.getEnd());
+		writeString(dos, ctx.hasID()?ctx.getID():null);
+		final List<Allele> alleles = ctx.getAlleles();
+		dos.writeInt(alleles.size());
+		for(final Allele a:alleles) writeAllele(dos,a);
+		dos.writeDouble(ctx.getLog10PError());
+		if(!ctx.filtersWereApplied()) {
+			dos.writeByte(FILTERS_UNFILTERED);
+			}
+		else if(!ctx.isFiltered()) {
+			dos.writeByte(FILTERS_PASS);
+			}
+		else
+			{
+			final Set<String> filters = ctx.getFilters();
+			dos.writeByte(FILTERS_FILTERED);
+			dos.writeInt(filters.size());
+			for(final String f:filters) writeIndexed(dos, this.indexes.filter2index, f);
+			}
+		writeAttributes(dos, this.indexes.info2index, ctx.getAttributes());
+
+		final GenotypesContext gc = ctx.getGenotypes();
+		if(isLazyVcfGenotypes(gc)) {
+			dos.writeByte(GENOTYPES_LAZY);
+			writeString(dos, (String)LazyGenotypesContext.class.cast(gc).getUnparsedGenotypeData());
+			}
+		else if(gc.isEmpty()) {
+			dos.writeByte(GENOTYPES_NONE);
+			}
+		else
+			{
+			dos.writeByte(GENOTYPES_BINARY);
+			dos.writeInt(gc.size());
+			for(final Genotype g:gc) {
+				writeIndexed(dos, this.indexes.sample2index, g.getSampleName());
+				final List<Allele> galleles = g.getAlleles();
+				dos.writeInt(galleles.size());
+				for(final Allele a: galleles) {
+					if(a.isNoCall()) {
+						dos.writeInt(ALLELE_NO_CALL);
+						continue;
+						}
+					final int idx = alleles.indexOf(a);
+					if(idx>=0) {
+						dos.writeInt(idx);
+						}
+					else
+						{
+						dos.writeInt(ALLELE_OTHER);
+						writeAllele(dos, a);
+						}
+					}
+				dos.writeBoolean(g.isPhased());
+				dos.writeInt(g.hasGQ()?g.getGQ():-1);
+				dos.writeInt(g.hasDP()?g.getDP():-1);
+				writeIntArray(dos, g.hasAD()?g.getAD():null);
+				writeIntArray(dos, g.hasPL()?g.getPL():null);
+				writeString(dos, g.getFilters());
+				writeAttributes(dos, this.indexes.format2index, g.getExtendedAttributes());
+				}
+			}
+		}
+
+	@Override
+	public VariantContext decode(final DataInputStream dis) throws IOException {
+		final String contig = readIndexed(dis, this.indexes.contigs);
+		final int start = dis.readInt();
+		final int end = dis.readInt();
+		final String id = readString(dis);
+		final int nAlleles = dis.readInt();
+		final List<Allele> alleles = new ArrayList<>(nAlleles);
+		for(int i=0;i< nAlleles;i++) alleles.add(readAllele(dis));
+		final VariantContextBuilder vcb = new VariantContextBuilder(null, contig, start, end, alleles);
+		if(id!=null) vcb.id(id);
+		vcb.log10PError(dis.readDouble());
+		switch(dis.readByte()) {
+			case FILTERS_UNFILTERED: vcb.unfiltered(); break;
+			case FILTERS_PASS: vcb.passFilters(); break;
+			case FILTERS_FILTERED: {
+				final int n = dis.readInt();
+				for(int i=0;i< n;i++) vcb.filter(readIndexed(dis, this.indexes.filters));
+				break;
+				}
+			default: throw new IOException("bad filter type");
+			}
+		final Map<String,Object> atts = readAttributes(dis, this.indexes.infoKeys);
+		if(!atts.isEmpty()) vcb.attributes(atts);
+
+		switch(dis.readByte()) {
+			case GENOTYPES_NONE: break;
+			case GENOTYPES_LAZY: {
+				final String unparsed = readString(dis);
+				if(this.vcfCodec==null) {
+					this.vcfCodec = new VCFCodec();
+					this.vcfCodec.setVCFHeader(this.header, this.header.getVCFHeaderVersion()==null?VCFHeaderVersion.VCF4_2:this.header.getVCFHeaderVersion());
+					}
+				final VCFCodec codec = this.vcfCodec;
+				final LazyGenotypesContext.LazyParser parser = O->codec.createGenotypeMap((String)O, alleles, contig, start);
+				vcb.genotypesNoValidation(new LazyGenotypesContext(parser, unparsed, this.header.getNGenotypeSamples()));
+				break;
+				}
+			case GENOTYPES_BINARY: {
+				final int n = dis.readInt();
+				final List<Genotype> genotypes = new ArrayList<>(n);
+				for(int i=0;i< n;i++) {
+					final String sample = readIndexed(dis, this.indexes.samples);
+					final int ploidy = dis.readInt();
+					final List<Allele> galleles = new ArrayList<>(ploidy);
+					for(int j=0;j< ploidy;j++) {
+						final int code = dis.readInt();
+						if(code==ALLELE_NO_CALL) galleles.add(Allele.NO_CALL);
+						else if(code==ALLELE_OTHER) galleles.add(readAllele(dis));
+						else galleles.add(alleles.get(code));
+						}
+					final GenotypeBuilder gb = new GenotypeBuilder(sample, galleles);
+					gb.phased(dis.readBoolean());
+					final int gq = dis.readInt();
+					if(gq>=0) gb.GQ(gq);
+					final int dp = dis.readInt();
+					if(dp>=0) gb.DP(dp);
+					final int[] ad = readIntArray(dis);
+					if(ad!=null) gb.AD(ad);
+					final int[] pl = readIntArray(dis);
+					if(pl!=null) gb.PL(pl);
+					gb.filter(readString(dis));
+					final Map<String,Object> gatts = readAttributes(dis, this.indexes.formatKeys);
+					if(!gatts.isEmpty()) gb.attributes(gatts);
+					genotypes.add(gb.make());
+					}
+				vcb.genotypes(genotypes);
+				break;
+				}
+			default: throw new IOException("bad genotype type");
+			}
+		return vcb.make();
+		}
+	}
@@ -0,0 +1,189 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.github.lindenb.jvarkit.util.vcf.readers.DelegateVcfIterator;
+
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+
+/**
+ * A {@link VCFIterator} returning the variants with the genotypes of a subset of the samples.
+ *
+ * Reading a few samples from a wide VCF with htsjdk is slow because the whole line is split
+ * as soon as one genotype is needed. Here, the columns of the text line are located with
+ * {@link VcfLine}, only the 8 first columns, FORMAT and the columns of the selected samples
+ * are copied in a recycled buffer and this short line is then decoded by htsjdk. The other
+ * genotypes are never decoded.
+ *
+ * The header returned by {@link #getHeader()} only contains the selected samples, in the
+ * order of the original header.
+ */
+public class SampleSubsetVCFIterator implements VCFIterator {
+	private final VcfLineReader reader;
+	private final VCFHeader header;
+	/** 0-based index of the selected samples in the original header */
+	private final int[] sampleIndexes;
+	private final VCFCodec codec = new VCFCodec();
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(10_000);
+	private VariantContext peeked = null;
+
+	/**
+	 * @param reader the text VCF reader
+	 * @param samples the samples to keep. All the samples must be defined in the header.
+	 */
+	public SampleSubsetVCFIterator(final VcfLineReader reader,final Collection<String> samples) {
+		this.reader = reader;
+		final VCFHeader header0 = reader.getHeader();
+		final List<String> sampleNames = getSampleNames(header0, samples);
+		this.sampleIndexes = sampleNames.stream().
+			mapToInt(S->header0.getSampleNameToOffset().get(S)).
+			toArray();
+		this.header = new VCFHeader(header0.getMetaDataInInputOrder(), sampleNames);
+		this.codec.setVCFHeader(this.header, reader.getVersion());
+		}
+
+	/** return the selected samples, sorted in the order of the header */
+	private static List<String> getSampleNames(final VCFHeader header,final Collection<String> samples) {
+		final Set<String> set = new HashSet<>(samples);
+		for(final String sn:set) {
+			if(!header.getSampleNameToOffset().containsKey(sn)) {
+				throw new IllegalArgumentException("sample "+sn+" is not defined in the VCF header");
+				}
+			}
+		final List<String> L = new ArrayList<>(set.size());
+		for(final String sn:header.getSampleNamesInOrder()) {
+			if(set.contains(sn)) L.add(sn);
+			}
+		return L;
+		}
+
+	/**
+	 * fallback for the VCFIterators that are not backed by a text VCF (e.g. BCF). The header
+	 * is restricted to the samples and the variants are sub-setted with
+	 * {@link VariantContext#subContextFromSamples(Set, boolean)}; all the genotypes are still decoded.
+	 */
+	public static VCFIterator wrap(final VCFIterator delegate,final Collection<String> samples) {
+		final VCFHeader header0 = delegate.getHeader();
+		final List<String> sampleNames = getSampleNames(header0, samples);
+		final VCFHeader header = new VCFHeader(header0.getMetaDataInInputOrder(), sampleNames);
+		final Set<String> set = new HashSet<>(sampleNames);
+		return new DelegateVcfIterator(delegate) {
+			/** sub-setted variant, so peek() and next() return the same instance */
+			private VariantContext peeked = null;
+			@Override
+			public VCFHeader getHeader() {
+				return header;
+				}
+			@Override
+			public boolean hasNext() {
+				return this.peeked!=null || super.hasNext();
+				}
+			@Override
+			public VariantContext peek() {
+				if(this.peeked==null) {
+					if(!super.hasNext()) return null;
+					this.peeked = super.next().subContextFromSamples(set, false);
+					}
+				return this.peeked;
+				}
+			@Override
+			public VariantContext next() {
+				final VariantContext ctx = peek();
+				if(ctx==null) throw new NoSuchElementException();
+				this.peeked = null;
+				return ctx;
+				}
+			};
+		}
+
+	@Override
+	public VCFHeader getHeader() {
+		return this.header;
+		}
+
+	/** copy the required columns of the line into the buffer and decode it */
+	private VariantContext decode(final VcfLine line) throws IOException {
+		this.buffer.reset();
+		for(int col=0;col< VcfLine.FORMAT;col++) {
+			if(col>0) this.buffer.write('\t');
+			line.writeColumn(col, this.buffer);
+			}
+		if(this.sampleIndexes.length>0) {
+			this.buffer.write('\t');
+			line.writeColumn(VcfLine.FORMAT, this.buffer);
+			for(int idx:this.sampleIndexes) {
+				this.buffer.write('\t');
+				line.writeColumn(VcfLine.FORMAT + 1 + idx, this.buffer);
+				}
+			}
+		return this.codec.decode(this.buffer.toString(StandardCharsets.UTF_8.name()));
+		}
+
+	@Override
+	public boolean hasNext() {
+		if(this.peeked!=null) return true;
+		if(!this.reader.hasNext()) return false;
+		try {
+			this.peeked = decode(this.reader.next());
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		return true;
+		}
+
+	@Override
+	public VariantContext peek() {
+		return hasNext()?this.peeked:null;
+		}
+
+	@Override
+	public VariantContext next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		final VariantContext ctx = this.peeked;
+		this.peeked = null;
+		return ctx;
+		}
+
+	@Override
+	public void close() {
+		this.reader.close();
+		}
+	}
@@ -0,0 +1,203 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import com.github.lindenb.jvarkit.iterator.AbstractCloseableIterator;
+import com.github.lindenb.jvarkit.util.bio.SequenceDictionaryUtils;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+import htsjdk.variant.vcf.VCFReader;
+
+/**
+ * A VCFReader answering queries with a sorted merge-join: the queries must be sorted on the dictionary
+ * of the database, and the database is read once, sequentially. Only the variants that may overlap the
+ * next queries are kept in memory. The database doesn't need an index and can be a pipe.
+ *
+ */
+public class SortedVCFReader implements VCFReader {
+	public static final String OPT_SORTED_DESC = "Both VCFs are sorted on the same dictionary: read the database once, sequentially, instead of doing random accesses. The database doesn't need to be indexed and can be a pipe (e.g. /dev/stdin).";
+	private final VCFIterator delegate;
+	private final SAMSequenceDictionary dict;
+	/** variants on the current contig that may overlap the next queries, sorted on start */
+	private final List<VariantContext> buffer = new ArrayList<>();
+	private int buffer_tid = -1;
+	private int last_query_tid = -1;
+	private int last_query_start = 0;
+	/** last variant read from the delegate, to check the database is sorted */
+	private int last_db_tid = -1;
+	private int last_db_start = 0;
+	private String last_db_contig = null;
+	private UnaryOperator<VariantContext> simplifier = V->V;
+
+	private class MyIter extends AbstractCloseableIterator<VariantContext> {
+		int i=0;
+		final int start;
+		final int end;
+		MyIter(final int start,final int end) {
+			this.start = start;
+			this.end = end;
+			}
+		@Override
+		protected VariantContext advance() {
+			while(i< buffer.size()) {
+				final VariantContext ctx = buffer.get(i);
+				i++;
+				if(ctx.getStart()>this.end) {
+					close();
+					return null;
+					}
+				if(ctx.getEnd()>=this.start) return ctx;
+				}
+			return null;
+			}
+		@Override
+		public void close() {
+			i=buffer.size();
+			}
+		}
+
+	/** @param delegate the database, sorted on the dictionary of its header */
+	public SortedVCFReader(final VCFIterator delegate) {
+		this.delegate = delegate;
+		this.dict = SequenceDictionaryUtils.extractRequired(delegate.getHeader());
+		}
+
+	/** open a sorted vcf as a stream. No index is required */
+	public static SortedVCFReader open(final Path path) throws IOException {
+		return new SortedVCFReader(new BcfIteratorBuilder().open(path));
+		}
+
+	/** set a function to simplify (eg. remove genotypes) the variants. Variant will be ignored if returned value is null */
+	public SortedVCFReader setSimplifier(final UnaryOperator<VariantContext> simplifier) {
+		this.simplifier = simplifier;
+		return this;
+		}
+
+	@Override
+	public VCFHeader getHeader() {
+		return this.delegate.getHeader();
+		}
+
+	private int getDatabaseTid(final VariantContext ctx) {
+		final int tid = this.dict.getSequenceIndex(ctx.getContig());
+		if(tid<0) throw new IllegalStateException("contig "+ctx.getContig()+" is not defined in the dictionary of the database.");
+		return tid;
+		}
+
+	/** read the database until a variant is after 'tid:end' */
+	private void fill(final int tid,final int start,final int end) {
+		while(this.delegate.hasNext()) {
+			final VariantContext peek = this.delegate.peek();
+			final int peek_tid = peek.getContig().equals(this.last_db_contig)?this.last_db_tid:getDatabaseTid(peek);
+			if(peek_tid > tid) break;
+			if(peek_tid == tid && peek.getStart() > end) break;
+			this.delegate.next();
+			if(peek_tid < this.last_db_tid || (peek_tid==this.last_db_tid && peek.getStart() < this.last_db_start)) {
+				throw new IllegalStateException("database is not sorted on its dictionary: got "+peek.getContig()+":"+peek.getStart()+" after "+this.last_db_contig+":"+this.last_db_start);
+				}
+			this.last_db_contig = peek.getContig();
+			this.last_db_tid = peek_tid;
+			this.last_db_start = peek.getStart();
+			if(peek_tid < tid || peek.getEnd() < start) continue;
+			final VariantContext ctx = this.simplifier==null?peek:this.simplifier.apply(peek);
+			if(ctx==null) continue;
+			this.buffer.add(ctx);
+			}
+		}
+
+	@Override
+	public CloseableIterator<VariantContext> query(final String chrom, int start, int end) {
+		final int tid = this.dict.getSequenceIndex(chrom);
+		/* contig is not in the database: empty iterator */
+		if(tid<0) return new MyIter(Integer.MAX_VALUE, 0);
+		if(tid < this.last_query_tid || (tid==this.last_query_tid && start < this.last_query_start)) {
+			throw new IllegalStateException("queries are not sorted on the dictionary of the database: got "+chrom+":"+start+" after "+this.dict.getSequence(this.last_query_tid).getSequenceName()+":"+this.last_query_start+". Both VCFs must be sorted on the same dictionary.");
+			}
+		this.last_query_tid = tid;
+		this.last_query_start = start;
+		if(tid!=this.buffer_tid) {
+			this.buffer.clear();
+			this.buffer_tid = tid;
+			}
+		/* variants ending before 'start' can't overlap the next queries */
+		this.buffer.removeIf(V->V.getEnd() < start);
+		fill(tid, start, end);
+		return new MyIter(start, end);
+		}
+
+	/** always true: queries must be sorted */
+	@Override
+	public boolean isQueryable() {
+		return true;
+		}
+
+	/** read the database sequentially. The database is a stream, so this cannot be mixed with 'query' */
+	@Override
+	public CloseableIterator<VariantContext> iterator() {
+		if(this.last_query_tid>=0) {
+			throw new IllegalStateException("iterator() cannot be called after query() on "+getClass().getName());
+			}
+		this.buffer.clear();
+		this.buffer_tid = -1;
+		return new AbstractCloseableIterator<VariantContext>() {
+			@Override
+			protected VariantContext advance() {
+				while(delegate.hasNext()) {
+					final VariantContext ctx = delegate.next();
+					final VariantContext ctx2 = simplifier==null?ctx:simplifier.apply(ctx);
+					if(ctx2!=null) return ctx2;
+					}
+				return null;
+				}
+			@Override
+			public void close() {
+				// the delegate is closed by SortedVCFReader.close()
+				}
+			};
+		}
+
+	/** close this and the delegate */
+	@Override
+	public void close() throws IOException {
+		this.delegate.close();
+		this.buffer.clear();
+		}
+
+	@Override
+	public String toString() {
+		return this.delegate.toString();
+		}
+	}
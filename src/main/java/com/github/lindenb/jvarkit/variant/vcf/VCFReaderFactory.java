@@ -29,6 +29,9 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import com.github.lindenb.jvarkit.variant.bcf.BcfRecordReader;
+import com.github.lindenb.jvarkit.variant.bcf.BcfVCFIterator;
+
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.RuntimeIOException;
@@ -97,6 +100,14 @@ public abstract class VCFReaderFactory {
 	/** open new VCFReader */
 	public VCFReader open(final Path path,boolean requireIndex) {
 		if(BcfToolsUtils.isBcfToolsRequired(path)) {
+			if(!requireIndex && BcfRecordReader.isEnabled()) {
+				try {
+					return new SimpleVcfIteratorWrapper(BcfVCFIterator.open(path));
+					}
+				catch(IOException err) {
+					throw new RuntimeIOException(err);
+					}
+				}
 			return new BcfToolsReader(path.toString());
 			}
 		
@@ -0,0 +1,465 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.lindenb.jvarkit.iterator.AbstractCloseableIterator;
+import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFReader;
+
+/**
+ * A thread-safe cache of decoded variants shared by the threads of a server.
+ *
+ * Each indexed VCF is split into fixed-size tiles. A tile holds all the variants
+ * overlapping it, fully decoded so they can be shared between threads.
+ * Tiles are keyed by (file, contig, tile index, genotype visibility) and are evicted
+ * in LRU order when the total weight (variants + genotypes) exceeds the limit.
+ * The readers are pooled per file instead of being opened for each query.
+ */
+public class VariantTileCache implements Closeable {
+	public static final int DEFAULT_TILE_SIZE = 10_000;
+	public static final long DEFAULT_CACHE_SIZE = 10_000_000L;
+	public static final String OPT_TILE_SIZE_DESC = "Size of the tiles (in bp) used to cache the variants.";
+	public static final String OPT_CACHE_SIZE_DESC = "Max number of items (variants + genotypes) kept in the cache of variants. 0 disables the cache.";
+
+	private final int tileSize;
+	private final long maxWeight;
+	private final Map<Path, VCFReaderPool> pools = new ConcurrentHashMap<>();
+	/** access-ordered LRU map, guarded by 'this' */
+	private final LinkedHashMap<TileKey, Tile> lru = new LinkedHashMap<>(1_000, 0.75f, true);
+	/** tiles being loaded, guarded by 'this' */
+	private final Map<TileKey, FutureTask<Tile>> loading = new HashMap<>();
+	private long weight = 0L;
+	private final AtomicLong hits = new AtomicLong(0L);
+	private final AtomicLong misses = new AtomicLong(0L);
+	/** changes each time a cache is created, used to build the ETags */
+	private final String creationId = String.valueOf(System.nanoTime());
+
+	/** a pool of idle readers for one file. Readers are opened on demand and returned to the pool once the query is done. */
+	public static class VCFReaderPool implements Closeable {
+		private final Path path;
+		private final int maxIdle;
+		private final ConcurrentLinkedDeque<VCFReader> idle = new ConcurrentLinkedDeque<>();
+		private final VCFHeader header;
+		private volatile boolean closed = false;
+
+		/** a reader borrowed from the pool, the reader goes back into the pool on close */
+		public class Lease implements Closeable {
+			private VCFReader reader;
+			private Lease(final VCFReader reader) {
+				this.reader = reader;
+				}
+			public VCFReader getReader() {
+				if(this.reader==null) throw new IllegalStateException("lease was closed");
+				return this.reader;
+				}
+			@Override
+			public void close() {
+				if(this.reader==null) return;
+				release(this.reader);
+				this.reader = null;
+				}
+			}
+
+		VCFReaderPool(final Path path,final int maxIdle) {
+			this.path = path;
+			this.maxIdle = maxIdle;
+			final VCFReader r = open();
+			this.header = r.getHeader();
+			this.idle.push(r);
+			}
+		private VCFReader open() {
+			return VCFReaderFactory.makeDefault().open(this.path, true);
+			}
+		public Path getPath() {
+			return this.path;
+			}
+		public VCFHeader getHeader() {
+			return this.header;
+			}
+		/** borrow a reader, open a new one if no reader is idle */
+		public Lease borrow() {
+			if(this.closed) throw new IllegalStateException("pool was closed");
+			final VCFReader r = this.idle.poll();
+			return new Lease(r==null?open():r);
+			}
+		private void release(final VCFReader r) {
+			if(this.closed || this.idle.size() >= this.maxIdle) {
+				CloserUtil.close(r);
+				return;
+				}
+			this.idle.push(r);
+			if(this.closed) close();
+			}
+		/** number of idle readers */
+		public int getIdleCount() {
+			return this.idle.size();
+			}
+		@Override
+		public void close() {
+			this.closed = true;
+			VCFReader r;
+			while((r=this.idle.poll())!=null) {
+				CloserUtil.close(r);
+				}
+			}
+		}
+
+	private static class TileKey {
+		final Path path;
+		final String contig;
+		final int tile;
+		final boolean hideGenotypes;
+		final int hash;
+		TileKey(final Path path,final String contig,final int tile,final boolean hideGenotypes) {
+			this.path = path;
+			this.contig = contig;
+			this.tile = tile;
+			this.hideGenotypes = hideGenotypes;
+			this.hash = Objects.hash(path,contig,tile,hideGenotypes);
+			}
+		@Override
+		public int hashCode() {
+			return this.hash;
+			}
+		@Override
+		public boolean equals(final Object obj) {
+			if(obj==this) return true;
+			if(obj==null || !(obj instanceof TileKey)) return false;
+			final TileKey o = TileKey.class.cast(obj);
+			return this.tile==o.tile &&
+				this.hideGenotypes==o.hideGenotypes &&
+				this.contig.equals(o.contig) &&
+				this.path.equals(o.path);
+			}
+		}
+
+	private static class Tile {
+		/** variants overlapping the tile, sorted on start */
+		final List<VariantContext> variants;
+		final long weight;
+		Tile(final List<VariantContext> variants) {
+			this.variants = variants;
+			long w = 0L;
+			for(final VariantContext ctx:variants) {
+				w += 1 + ctx.getNSamples();
+				}
+			this.weight = w;
+			}
+		}
+
+	/**
+	 * @param tileSize size of a tile in bp
+	 * @param maxWeight max number of variants + genotypes in memory. 0 disables the cache but the readers are still pooled.
+	 */
+	public VariantTileCache(final int tileSize,final long maxWeight) {
+		if(tileSize<1) throw new IllegalArgumentException("bad tile size "+tileSize);
+		if(maxWeight<0L) throw new IllegalArgumentException("bad cache size "+maxWeight);
+		this.tileSize = tileSize;
+		this.maxWeight = maxWeight;
+		}
+
+	public VariantTileCache() {
+		this(DEFAULT_TILE_SIZE,DEFAULT_CACHE_SIZE);
+		}
+
+	public int getTileSize() {
+		return this.tileSize;
+		}
+
+	/** get or create the pool of readers for this path */
+	public VCFReaderPool getPool(final Path path) {
+		return this.pools.computeIfAbsent(path, P->new VCFReaderPool(P, Math.max(2, Runtime.getRuntime().availableProcessors())));
+		}
+
+	/** get the header of this VCF */
+	public VCFHeader getHeader(final Path path) {
+		return getPool(path).getHeader();
+		}
+
+	/** iterate over the whole VCF using a pooled reader. Variants are not cached. */
+	public CloseableIterator<VariantContext> iterator(final Path path) {
+		final VCFReaderPool.Lease lease = getPool(path).borrow();
+		return releaseOnClose(lease, lease.getReader().iterator());
+		}
+
+	/** the reader goes back into the pool when the iterator is closed */
+	private static CloseableIterator<VariantContext> releaseOnClose(final VCFReaderPool.Lease lease,final CloseableIterator<VariantContext> delegate) {
+		return AbstractCloseableIterator.wrap(delegate, ()->{
+			delegate.close();
+			lease.close();
+			});
+		}
+
+	/**
+	 * query the variants overlapping 'loc'. The returned variants are shared and must not be modified.
+	 * @param hideGenotypes if true, the genotypes are removed from the variants
+	 */
+	public CloseableIterator<VariantContext> query(final Path path,final Locatable loc,final boolean hideGenotypes) {
+		final VCFReaderPool pool = getPool(path);
+		final SAMSequenceDictionary dict = pool.getHeader().getSequenceDictionary();
+		final SAMSequenceRecord ssr = (dict==null?null:dict.getSequence(loc.getContig()));
+		if(ssr==null) {
+			// no contig length to bound the tiles (e.g: whole-contig query), do not cache
+			final VCFReaderPool.Lease lease = pool.borrow();
+			return releaseOnClose(lease, lease.getReader().query(loc));
+			}
+		if(loc.getEnd() > ssr.getSequenceLength()) {
+			if(loc.getStart() > ssr.getSequenceLength()) return AbstractCloseableIterator.empty();
+			return query(path, new SimpleInterval(loc.getContig(), loc.getStart(), ssr.getSequenceLength()), hideGenotypes);
+			}
+		if(this.maxWeight==0L) {
+			return new BufferIterator(load(pool,loc.getContig(),loc.getStart(),loc.getEnd(),hideGenotypes).variants,loc);
+			}
+		return new TileIterator(pool,loc,hideGenotypes);
+		}
+
+	private static class BufferIterator extends AbstractCloseableIterator<VariantContext> {
+		private final Iterator<VariantContext> delegate;
+		private final Locatable loc;
+		BufferIterator(final List<VariantContext> L,final Locatable loc) {
+			this.delegate = L.iterator();
+			this.loc = loc;
+			}
+		@Override
+		protected VariantContext advance() {
+			while(delegate.hasNext()) {
+				final VariantContext ctx = delegate.next();
+				if(ctx.overlaps(loc)) return ctx;
+				}
+			return null;
+			}
+		@Override
+		public void close() {
+			}
+		}
+
+	/** iterates over the tiles overlapping the query. A variant is only emitted from the first tile of the query or from the tile it starts in */
+	private class TileIterator extends AbstractCloseableIterator<VariantContext> {
+		private final VCFReaderPool pool;
+		private final Locatable loc;
+		private final boolean hideGenotypes;
+		private final int firstTile;
+		private final int lastTile;
+		private int nextTile;
+		private int currentTile = -1;
+		private Iterator<VariantContext> current = Collections.emptyIterator();
+		TileIterator(final VCFReaderPool pool,final Locatable loc,final boolean hideGenotypes) {
+			this.pool = pool;
+			this.loc = loc;
+			this.hideGenotypes = hideGenotypes;
+			this.firstTile = (Math.max(1, loc.getStart())-1)/tileSize;
+			this.lastTile = (Math.max(1, loc.getEnd())-1)/tileSize;
+			this.nextTile = this.firstTile;
+			}
+		@Override
+		protected VariantContext advance() {
+			for(;;) {
+				while(this.current.hasNext()) {
+					final VariantContext ctx = this.current.next();
+					if(ctx.getStart() > this.loc.getEnd()) {
+						close();
+						return null;
+						}
+					// already emitted with a previous tile
+					if(this.currentTile!=this.firstTile && ctx.getStart() <= this.currentTile*tileSize) continue;
+					if(!ctx.overlaps(this.loc)) continue;
+					return ctx;
+					}
+				if(this.nextTile > this.lastTile) return null;
+				this.currentTile = this.nextTile++;
+				this.current = getTile(this.pool, this.loc.getContig(), this.currentTile, this.hideGenotypes).variants.iterator();
+				}
+			}
+		@Override
+		public void close() {
+			this.current = Collections.emptyIterator();
+			this.nextTile = this.lastTile + 1;
+			}
+		}
+
+	private Tile load(final VCFReaderPool pool,final String contig,final int start,final int end,final boolean hideGenotypes) {
+		final VCFHeader header = pool.getHeader();
+		final List<VariantContext> L = new ArrayList<>();
+		try(VCFReaderPool.Lease lease = pool.borrow()) {
+			try(CloseableIterator<VariantContext> iter = lease.getReader().query(contig, start, end)) {
+				while(iter.hasNext()) {
+					VariantContext ctx = iter.next();
+					if(hideGenotypes) {
+						ctx = new VariantContextBuilder(ctx).noGenotypes().make();
+						}
+					// decode everything now, so the variant can be shared between threads
+					ctx = ctx.fullyDecode(header, false);
+					final GenotypesContext gc = ctx.getGenotypes();
+					// the indexes of the samples are lazily built and they're not thread-safe
+					gc.getSampleNamesOrderedByName();
+					gc.containsSample("");
+					L.add(ctx);
+					}
+				}
+			}
+		return new Tile(L);
+		}
+
+	private Tile getTile(final VCFReaderPool pool,final String contig,final int tileIdx,final boolean hideGenotypes) {
+		final TileKey key = new TileKey(pool.getPath(), contig, tileIdx, hideGenotypes);
+		final FutureTask<Tile> task;
+		boolean owner = false;
+		synchronized(this) {
+			final Tile tile = this.lru.get(key);
+			if(tile!=null) {
+				this.hits.incrementAndGet();
+				return tile;
+				}
+			final FutureTask<Tile> pending = this.loading.get(key);
+			if(pending!=null) {
+				task = pending;
+				}
+			else
+				{
+				this.misses.incrementAndGet();
+				final int start = tileIdx*this.tileSize + 1;
+				task = new FutureTask<>(()->load(pool,contig,start,start+this.tileSize-1,hideGenotypes));
+				this.loading.put(key, task);
+				owner = true;
+				}
+			}
+		if(owner) {
+			// the thread that created the task loads the tile, the others wait for it
+			task.run();
+			}
+		Tile tile;
+		try {
+			tile = task.get();
+			}
+		catch(final InterruptedException err) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeIOException(err);
+			}
+		catch(final ExecutionException err) {
+			if(owner) {
+				synchronized(this) {
+					this.loading.remove(key);
+					}
+				}
+			final Throwable cause = err.getCause();
+			if(cause instanceof RuntimeException) throw RuntimeException.class.cast(cause);
+			throw new RuntimeIOException(cause);
+			}
+		if(owner) {
+			synchronized(this) {
+				this.loading.remove(key);
+				this.lru.put(key, tile);
+				this.weight += tile.weight;
+				final Iterator<Tile> iter = this.lru.values().iterator();
+				while(this.weight > this.maxWeight && iter.hasNext()) {
+					final Tile old = iter.next();
+					// never evict the tile that was just loaded
+					if(old==tile) break;
+					this.weight -= old.weight;
+					iter.remove();
+					}
+				}
+			}
+		return tile;
+		}
+
+	/** number of queries served from the cache */
+	public long getHitCount() {
+		return this.hits.get();
+		}
+
+	/** number of tiles loaded from the files */
+	public long getMissCount() {
+		return this.misses.get();
+		}
+
+	/** current number of variants + genotypes in memory */
+	public synchronized long getWeight() {
+		return this.weight;
+		}
+
+	/** remove all the cached tiles */
+	public synchronized void clear() {
+		this.lru.clear();
+		this.weight = 0L;
+		}
+
+	/**
+	 * build an HTTP entity tag for this file and this query string.
+	 * The tag changes when the file is modified or when the cache is re-created (e.g. server restart).
+	 */
+	public String getETag(final Path path,final String query) {
+		long size = -1L;
+		long mtime = -1L;
+		try {
+			size = Files.size(path);
+			mtime = Files.getLastModifiedTime(path).toMillis();
+			}
+		catch(final IOException err) {
+			// ignore, tag will be based on the path
+			}
+		return "\"" + StringUtils.md5(this.creationId + "|" + path.toAbsolutePath() + "|" + size + "|" + mtime + "|" + StringUtils.ifBlank(query,"")) + "\"";
+		}
+
+	@Override
+	public void close() {
+		for(final VCFReaderPool pool:this.pools.values()) {
+			pool.close();
+			}
+		this.pools.clear();
+		clear();
+		}
+	}
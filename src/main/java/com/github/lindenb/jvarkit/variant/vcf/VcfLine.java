@@ -0,0 +1,375 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.variant.vcf.VCFConstants;
+
+/**
+ * A view over the bytes of one line of a VCF file.
+ *
+ * The columns are located lazily: asking for the INFO column only scans the bytes up to the
+ * 8th tab, the genotypes are never decoded. Columns can be replaced, and {@link #write(OutputStream)}
+ * copies the untouched columns verbatim. Instances are recycled by {@link VcfLineReader}, so
+ * a line must not be kept after the next call to {@link VcfLineReader#next()}.
+ */
+public class VcfLine {
+	public static final int CHROM = 0;
+	public static final int POS = 1;
+	public static final int ID = 2;
+	public static final int REF = 3;
+	public static final int ALT = 4;
+	public static final int QUAL = 5;
+	public static final int FILTER = 6;
+	public static final int INFO = 7;
+	public static final int FORMAT = 8;
+
+	private byte[] buffer = new byte[0];
+	private int length = 0;
+	/** position of the tabs found so far */
+	private int[] tabs = new int[16];
+	private int nTabs = 0;
+	/** true if all the tabs of the line were found */
+	private boolean scannedAll = false;
+	/** decoded columns, only the 9 first columns are kept */
+	private final String[] decoded = new String[FORMAT+1];
+	/** replaced columns or null */
+	private byte[][] replaced = new byte[FORMAT+1][];
+	/** index of the last replaced column or -1 */
+	private int lastReplaced = -1;
+	/** contig of the previous line, re-used if the contig didn't change */
+	private String previousContig = null;
+
+	VcfLine() {
+		}
+
+	/** creates a standalone line from a String, mostly for testing */
+	public VcfLine(final String line) {
+		final byte[] array = line.getBytes(StandardCharsets.UTF_8);
+		reset(array, array.length);
+		}
+
+	/** called by the reader with a new content. The buffer is not copied */
+	void reset(final byte[] buffer,final int length) {
+		this.buffer = buffer;
+		this.length = length;
+		this.nTabs = 0;
+		this.scannedAll = false;
+		if(this.decoded[CHROM]!=null) this.previousContig = this.decoded[CHROM];
+		Arrays.fill(this.decoded, null);
+		if(this.lastReplaced>=0) {
+			Arrays.fill(this.replaced, null);
+			this.lastReplaced = -1;
+			}
+		}
+
+	/** find the tabs until the end of column 'col' is known. return false if the line has no such column */
+	private boolean scan(final int col) {
+		if(col < this.nTabs) return true;
+		if(this.scannedAll) return col <= this.nTabs;
+		int i = (this.nTabs==0?0:this.tabs[this.nTabs-1]+1);
+		while(this.nTabs <= col) {
+			while(i < this.length && this.buffer[i]!='\t') i++;
+			if(i >= this.length) {
+				this.scannedAll = true;
+				return col <= this.nTabs;
+				}
+			if(this.nTabs==this.tabs.length) this.tabs = Arrays.copyOf(this.tabs, this.tabs.length*2);
+			this.tabs[this.nTabs++] = i;
+			i++;
+			}
+		return true;
+		}
+
+	private int columnStart(final int col) {
+		return col==0?0:this.tabs[col-1]+1;
+		}
+
+	private int columnEnd(final int col) {
+		return col < this.nTabs ? this.tabs[col] : this.length;
+		}
+
+	private void assertColumn(final int col) {
+		if(col<0 || !scan(col)) throw new IndexOutOfBoundsException("no column["+col+"] in "+this);
+		}
+
+	/** return the number of columns. This scans the whole line */
+	public int getColumnCount() {
+		scan(Integer.MAX_VALUE-1);
+		return this.nTabs+1;
+		}
+
+	/** return true if the line has at least 'n' columns. Only scans the line until the column is found. */
+	public boolean hasColumns(final int n) {
+		return n<=0 || scan(n-1);
+		}
+
+	/** get the value of the column, the 9 first columns are cached */
+	public String getColumn(final int col) {
+		assertColumn(col);
+		if(col<=this.lastReplaced && this.replaced[col]!=null) {
+			return new String(this.replaced[col], StandardCharsets.UTF_8);
+			}
+		if(col < this.decoded.length) {
+			if(this.decoded[col]==null) {
+				final int start = columnStart(col);
+				if(col==CHROM && sameContig(this.previousContig, columnEnd(col))) {
+					this.decoded[col] = this.previousContig;
+					}
+				else
+					{
+					this.decoded[col] = new String(this.buffer, start, columnEnd(col)-start, StandardCharsets.UTF_8);
+					}
+				}
+			return this.decoded[col];
+			}
+		final int start = columnStart(col);
+		return new String(this.buffer, start, columnEnd(col)-start, StandardCharsets.UTF_8);
+		}
+
+	/** compare the bytes of the first column with an (ascii) contig name */
+	private boolean sameContig(final String contig,final int end) {
+		if(contig==null || contig.length()!=end) return false;
+		for(int i=0;i< end;i++) {
+			if(contig.charAt(i)!=this.buffer[i]) return false;
+			}
+		return true;
+		}
+
+	/** replace the content of an existing column */
+	public VcfLine setColumn(final int col,final String value) {
+		assertColumn(col);
+		if(value==null || value.isEmpty() || value.indexOf('\t')!=-1 || value.indexOf('\n')!=-1) {
+			throw new IllegalArgumentException("bad value for column["+col+"]:\""+value+"\"");
+			}
+		if(col >= this.replaced.length) this.replaced = Arrays.copyOf(this.replaced, col+1);
+		this.replaced[col] = value.getBytes(StandardCharsets.UTF_8);
+		if(col < this.decoded.length) this.decoded[col] = value;
+		this.lastReplaced = Math.max(this.lastReplaced, col);
+		return this;
+		}
+
+	public String getContig() {
+		return getColumn(CHROM);
+		}
+
+	public VcfLine setContig(final String contig) {
+		return setColumn(CHROM, contig);
+		}
+
+	/** parse the POS column without creating a String */
+	public int getStart() {
+		assertColumn(POS);
+		if(POS<=this.lastReplaced && this.replaced[POS]!=null) return Integer.parseInt(getColumn(POS));
+		int n = 0;
+		final int end = columnEnd(POS);
+		for(int i=columnStart(POS);i< end;i++) {
+			final int c = this.buffer[i] - '0';
+			if(c<0 || c>9) throw new NumberFormatException("bad POS in "+this);
+			n = n*10 + c;
+			}
+		return n;
+		}
+
+	public String getId() {
+		return getColumn(ID);
+		}
+
+	public String getReference() {
+		return getColumn(REF);
+		}
+
+	public String getAlt() {
+		return getColumn(ALT);
+		}
+
+	public String getQual() {
+		return getColumn(QUAL);
+		}
+
+	public String getFilter() {
+		return getColumn(FILTER);
+		}
+
+	public VcfLine setFilter(final String filter) {
+		return setColumn(FILTER, filter);
+		}
+
+	/** return true if FILTER is neither '.' nor 'PASS' */
+	public boolean isFiltered() {
+		final String f = getFilter();
+		return !(f.equals(VCFConstants.UNFILTERED) || f.equals(VCFConstants.PASSES_FILTERS_v4) || f.equals(VCFConstants.PASSES_FILTERS_v3));
+		}
+
+	/** return the FILTERs, empty if the variant is not filtered */
+	public List<String> getFilters() {
+		if(!isFiltered()) return Collections.emptyList();
+		return Arrays.asList(getFilter().split("[;]"));
+		}
+
+	public String getInfo() {
+		return getColumn(INFO);
+		}
+
+	public VcfLine setInfo(final String info) {
+		return setColumn(INFO, info);
+		}
+
+	/** return the FORMAT column or null if there is no genotype */
+	public String getFormat() {
+		return hasColumns(FORMAT+1)?getColumn(FORMAT):null;
+		}
+
+	/** return the number of genotype columns. This scans the whole line */
+	public int getGenotypeCount() {
+		return Math.max(0, getColumnCount() - (FORMAT+1));
+		}
+
+	/** split the INFO column, return an empty list for '.' */
+	private List<String> getInfoItems() {
+		final String info = getInfo();
+		if(info.equals(VCFConstants.EMPTY_INFO_FIELD)) return new ArrayList<>();
+		return new ArrayList<>(Arrays.asList(info.split("[;]")));
+		}
+
+	private static String infoKey(final String item) {
+		final int eq = item.indexOf('=');
+		return eq==-1?item:item.substring(0,eq);
+		}
+
+	private VcfLine setInfoItems(final List<String> items) {
+		return setInfo(items.isEmpty()?VCFConstants.EMPTY_INFO_FIELD:String.join(";", items));
+		}
+
+	/** return true if the INFO column contains this key */
+	public boolean hasInfoAttribute(final String key) {
+		return getInfoItems().stream().anyMatch(S->infoKey(S).equals(key));
+		}
+
+	/** return the raw value of the INFO attribute, empty string for a flag, null if the key is missing */
+	public String getInfoAttribute(final String key) {
+		for(final String item:getInfoItems()) {
+			if(!infoKey(item).equals(key)) continue;
+			final int eq = item.indexOf('=');
+			return eq==-1?"":item.substring(eq+1);
+			}
+		return null;
+		}
+
+	/**
+	 * set an INFO attribute. A null value sets a flag.
+	 * A new key is inserted before the first key that is greater, so a sorted INFO column remains sorted.
+	 */
+	public VcfLine putInfoAttribute(final String key,final String value) {
+		final List<String> items = getInfoItems();
+		final String item = value==null?key:key+"="+value;
+		int insert = items.size();
+		for(int i=0;i< items.size();i++) {
+			final String k = infoKey(items.get(i));
+			if(k.equals(key)) {
+				items.set(i, item);
+				return setInfoItems(items);
+				}
+			if(insert==items.size() && k.compareTo(key) > 0) insert = i;
+			}
+		items.add(insert, item);
+		return setInfoItems(items);
+		}
+
+	/** remove the INFO attributes whose key is accepted by the predicate */
+	public VcfLine removeInfoAttributes(final Predicate<String> keys) {
+		final List<String> items = getInfoItems();
+		if(items.removeIf(S->keys.test(infoKey(S)))) {
+			setInfoItems(items);
+			}
+		return this;
+		}
+
+	/** write the content of one column, without any delimiter */
+	public void writeColumn(final int col,final OutputStream out) throws IOException {
+		assertColumn(col);
+		if(col<=this.lastReplaced && this.replaced[col]!=null) {
+			out.write(this.replaced[col]);
+			}
+		else
+			{
+			final int start = columnStart(col);
+			out.write(this.buffer, start, columnEnd(col)-start);
+			}
+		}
+
+	/** write the line followed by a new line. Untouched columns are copied verbatim */
+	public void write(final OutputStream out) throws IOException {
+		if(this.lastReplaced < 0) {
+			out.write(this.buffer, 0, this.length);
+			}
+		else
+			{
+			for(int col=0;col<=this.lastReplaced;col++) {
+				if(col>0) out.write('\t');
+				if(this.replaced[col]!=null) {
+					out.write(this.replaced[col]);
+					}
+				else
+					{
+					final int start = columnStart(col);
+					out.write(this.buffer, start, columnEnd(col)-start);
+					}
+				}
+			if(this.lastReplaced < this.nTabs) {
+				// remaining columns, including the first tab
+				final int start = this.tabs[this.lastReplaced];
+				out.write(this.buffer, start, this.length-start);
+				}
+			}
+		out.write('\n');
+		}
+
+	/** return the line, including the replaced columns */
+	@Override
+	public String toString() {
+		if(this.lastReplaced < 0) return new String(this.buffer, 0, this.length, StandardCharsets.UTF_8);
+		final ByteArrayOutputStream os = new ByteArrayOutputStream(this.length);
+		try {
+			write(os);
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		final byte[] array = os.toByteArray();
+		return new String(array, 0, array.length-1, StandardCharsets.UTF_8);
+		}
+	}
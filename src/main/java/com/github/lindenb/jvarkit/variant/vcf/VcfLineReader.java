@@ -0,0 +1,231 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import com.github.lindenb.jvarkit.io.IOUtils;
+
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import htsjdk.variant.vcf.VCFIterator;
+
+/**
+ * Reads a text VCF as {@link VcfLine}. Only the header is decoded by htsjdk,
+ * the variants are returned as raw bytes. The same {@link VcfLine} is recycled at each call of {@link #hasNext()} or {@link #next()}.
+ */
+public class VcfLineReader implements Closeable {
+	private final InputStream in;
+	private final VCFHeader header;
+	private final VCFHeaderVersion version;
+	private final byte[] inBuffer = new byte[65_536];
+	private int inPos = 0;
+	private int inLength = 0;
+	private byte[] lineBuffer = new byte[1_000];
+	private int lineLength = 0;
+	private final VcfLine line = new VcfLine();
+	/** true if lineBuffer contains a line that was not returned */
+	private boolean pending = false;
+	private Consumer<VcfLine> listener = null;
+
+	/** @param in the uncompressed input stream */
+	public VcfLineReader(final InputStream in) throws IOException {
+		this.in = in;
+		final List<String> headerLines = new ArrayList<>();
+		for(;;) {
+			if(!readLine()) throw new IOException("Cannot find the #CHROM line in the VCF header");
+			if(this.lineLength==0) continue;
+			if(this.lineBuffer[0]!='#') throw new IOException("Cannot find the #CHROM line in the VCF header");
+			final String s = new String(this.lineBuffer, 0, this.lineLength, StandardCharsets.UTF_8);
+			headerLines.add(s);
+			if(s.startsWith("#CHROM")) break;
+			}
+		final VCFCodec codec = new VCFCodec();
+		this.header = (VCFHeader)codec.readActualHeader(new LineIteratorImpl(new SynchronousLineReader(new StringReader(String.join("\n", headerLines)))));
+		this.version = codec.getVersion();
+		}
+
+	/** open a VCF file, gzipped or not */
+	public static VcfLineReader open(final Path path) throws IOException {
+		final InputStream in = IOUtils.openPathForReading(path);
+		try {
+			return new VcfLineReader(in);
+			}
+		catch(final IOException err) {
+			CloserUtil.close(in);
+			throw err;
+			}
+		}
+
+	/** return true if the first bytes of this uncompressed stream look like a text VCF. The stream must support mark/reset */
+	public static boolean isTextVcf(final InputStream in) throws IOException {
+		if(!in.markSupported()) throw new IllegalArgumentException("mark is not supported");
+		final byte[] magic = new byte[2];
+		in.mark(magic.length);
+		int n = 0;
+		while(n < magic.length) {
+			final int c = in.read();
+			if(c==-1) break;
+			magic[n++] = (byte)c;
+			}
+		in.reset();
+		return n==magic.length && magic[0]=='#' && magic[1]=='#' ;
+		}
+
+	/** return true if the file name looks like a text VCF */
+	public static boolean isTextVcf(final Path path) {
+		final String fn = path.getFileName().toString();
+		return fn.endsWith(".vcf") || fn.endsWith(".vcf.gz");
+		}
+
+	/** set a listener called for each line returned by {@link #next()}, e.g. to log the progress */
+	public VcfLineReader setListener(final Consumer<VcfLine> listener) {
+		this.listener = listener;
+		return this;
+		}
+
+	public VCFHeader getHeader() {
+		return this.header;
+		}
+
+	/** return the version of the VCF found in the header */
+	public VCFHeaderVersion getVersion() {
+		return this.version;
+		}
+
+	/** read the next line in lineBuffer, return false at EOF */
+	private boolean readLine() throws IOException {
+		this.lineLength = 0;
+		boolean found = false;
+		for(;;) {
+			if(this.inPos >= this.inLength) {
+				this.inLength = this.in.read(this.inBuffer);
+				this.inPos = 0;
+				if(this.inLength <= 0) {
+					this.inLength = 0;
+					break;
+					}
+				}
+			found = true;
+			int i = this.inPos;
+			while(i < this.inLength && this.inBuffer[i]!='\n') i++;
+			final int n = i - this.inPos;
+			if(this.lineLength + n > this.lineBuffer.length) {
+				this.lineBuffer = Arrays.copyOf(this.lineBuffer, Math.max(this.lineBuffer.length*2, this.lineLength + n));
+				}
+			System.arraycopy(this.inBuffer, this.inPos, this.lineBuffer, this.lineLength, n);
+			this.lineLength += n;
+			this.inPos = i;
+			if(i < this.inLength) {
+				// skip '\n'
+				this.inPos++;
+				break;
+				}
+			}
+		if(this.lineLength>0 && this.lineBuffer[this.lineLength-1]=='\r') this.lineLength--;
+		return found;
+		}
+
+	public boolean hasNext() {
+		if(this.pending) return true;
+		try {
+			while(readLine()) {
+				if(this.lineLength==0) continue;
+				this.pending = true;
+				return true;
+				}
+			return false;
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		}
+
+	/** return the next line. The returned object is recycled at the next call of hasNext() or next() */
+	public VcfLine next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		this.pending = false;
+		this.line.reset(this.lineBuffer, this.lineLength);
+		if(this.listener!=null) this.listener.accept(this.line);
+		return this.line;
+		}
+
+	/** return a {@link VCFIterator} decoding the remaining lines with htsjdk. Closing the iterator closes this reader */
+	public VCFIterator asVCFIterator() {
+		final VCFCodec codec = new VCFCodec();
+		codec.setVCFHeader(this.header, this.version);
+		return new VCFIterator() {
+			private VariantContext peeked = null;
+			@Override
+			public VCFHeader getHeader() {
+				return VcfLineReader.this.getHeader();
+				}
+			@Override
+			public VariantContext peek() {
+				if(this.peeked==null && VcfLineReader.this.hasNext()) {
+					this.peeked = codec.decode(VcfLineReader.this.next().toString());
+					}
+				return this.peeked;
+				}
+			@Override
+			public boolean hasNext() {
+				return peek()!=null;
+				}
+			@Override
+			public VariantContext next() {
+				final VariantContext ctx = peek();
+				if(ctx==null) throw new NoSuchElementException();
+				this.peeked = null;
+				return ctx;
+				}
+			@Override
+			public void close() {
+				VcfLineReader.this.close();
+				}
+			};
+		}
+
+	@Override
+	public void close() {
+		CloserUtil.close(this.in);
+		}
+	}
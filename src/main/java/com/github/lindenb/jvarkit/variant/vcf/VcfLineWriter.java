@@ -0,0 +1,98 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.github.lindenb.jvarkit.io.IOUtils;
+
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFHeader;
+
+/**
+ * Writes {@link VcfLine} to a text VCF. The header is written by htsjdk, the lines are copied as bytes.
+ */
+public class VcfLineWriter implements Closeable {
+	private final OutputStream out;
+	private boolean header_written = false;
+
+	/** @param out the output stream, it will be closed by {@link #close()} */
+	public VcfLineWriter(final OutputStream out) {
+		this.out = (out instanceof BufferedOutputStream?out:new BufferedOutputStream(out, 65_536));
+		}
+
+	private VariantContextWriter openVariantContextWriter() {
+		final VariantContextWriterBuilder vcwb = new VariantContextWriterBuilder();
+		vcwb.clearOptions();
+		vcwb.setOutputVCFStream(IOUtils.uncloseableOutputStream(this.out));
+		return vcwb.build();
+		}
+
+	public void writeHeader(final VCFHeader header) {
+		if(this.header_written) throw new IllegalStateException("header was already written");
+		// closing the writer flushes the header in 'out'
+		try(VariantContextWriter w = openVariantContextWriter()) {
+			w.writeHeader(header);
+			}
+		this.header_written = true;
+		}
+
+	/**
+	 * return a htsjdk writer writing the header and the variants in this stream, for the tools that need to decode the variants.
+	 * It must be closed before this writer. Closing it doesn't close this writer.
+	 */
+	public VariantContextWriter asVariantContextWriter() {
+		if(this.header_written) throw new IllegalStateException("header was already written");
+		this.header_written = true;
+		return openVariantContextWriter();
+		}
+
+	public void add(final VcfLine line) {
+		if(!this.header_written) throw new IllegalStateException("header was not written");
+		try {
+			line.write(this.out);
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		}
+
+	@Override
+	public void close() {
+		try {
+			this.out.flush();
+			this.out.close();
+			}
+		catch(final IOException err) {
+			throw new RuntimeIOException(err);
+			}
+		}
+	}
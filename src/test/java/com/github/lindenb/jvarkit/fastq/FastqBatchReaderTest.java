@@ -0,0 +1,105 @@
+package com.github.lindenb.jvarkit.fastq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.tools.fastq.FastqEntropy;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+import htsjdk.samtools.fastq.FastqReader;
+import htsjdk.samtools.fastq.FastqRecord;
+
+public class FastqBatchReaderTest {
+	private final TestSupport support = new TestSupport();
+
+	@DataProvider(name = "src1")
+	public Object[][] listFastqs() {
+		return new Object[][] {
+			{"S1.R1.fq.gz"},
+			{"SAMPLE1_GATGAATC_L002_R1_001.fastq.gz"}
+			};
+		}
+
+	private List<FastqRecord> readAll(final FastqBatchReader r,final FastqArena arena) throws IOException {
+		final List<FastqRecord> L = new ArrayList<>();
+		while(r.read(arena)>0) {
+			Assert.assertTrue(arena.size()<=arena.getMaxRecords());
+			arena.forEach(V->L.add(V.toFastqRecord()));
+			}
+		Assert.assertTrue(arena.isEmpty());
+		return L;
+		}
+
+	@Test(dataProvider = "src1")
+	public void testJavaReader(final String fq) throws IOException {
+		final Path path = Paths.get(support.resource(fq));
+		final List<FastqRecord> expect = new ArrayList<>();
+		try(FastqReader r = new FastqReader(path.toFile())) {
+			while(r.hasNext()) expect.add(r.next());
+			}
+		// tiny arena: the data array must grow
+		try(FastqBatchReader r = new JavaFastqBatchReader(IOUtils.openPathForReading(path))) {
+			final List<FastqRecord> L = readAll(r, new FastqArena(7, 10));
+			Assert.assertEquals(L.size(), expect.size());
+			for(int i=0;i< L.size();i++) {
+				Assert.assertEquals(L.get(i).getReadName(), expect.get(i).getReadName());
+				Assert.assertEquals(L.get(i).getReadString(), expect.get(i).getReadString());
+				Assert.assertEquals(L.get(i).getBaseQualityString(), expect.get(i).getBaseQualityString());
+				}
+			}
+		}
+
+	@Test
+	public void testView() throws IOException {
+		final String fq = "@r1 comment\r\nACGT\r\n+r1\r\nIIII\r\n\n@r2\nA\n+\n#\n";
+		try(FastqBatchReader r = new JavaFastqBatchReader(new ByteArrayInputStream(fq.getBytes(StandardCharsets.US_ASCII)))) {
+			final FastqArena arena = new FastqArena(10, 1);
+			Assert.assertEquals(r.read(arena), 2);
+			final FastqRecordView v = arena.get(0);
+			Assert.assertEquals(v.getName().toString(), "r1");
+			Assert.assertEquals(v.getReadName(), "r1 comment");
+			Assert.assertEquals(v.getReadBases().toString(), "ACGT");
+			Assert.assertEquals(v.getBaseQualities().toString(), "IIII");
+			Assert.assertEquals(v.getBase(2), (byte)'G');
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			arena.get(1).write(out);
+			Assert.assertEquals(new String(out.toByteArray(), StandardCharsets.US_ASCII), "@r2\nA\n+\n#\n");
+			Assert.assertEquals(r.read(arena), 0);
+			}
+		}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testBadQualities() throws IOException {
+		final String fq = "@r1\nACGT\n+\nIII\n";
+		try(FastqBatchReader r = new JavaFastqBatchReader(new ByteArrayInputStream(fq.getBytes(StandardCharsets.US_ASCII)))) {
+			r.read(new FastqArena());
+			}
+		}
+
+	@Test
+	public void testFastqEntropy() throws IOException {
+		try {
+			final String fq = support.resource("S1.R1.fq.gz");
+			final Path out1 = support.createTmpPath(".txt");
+			Assert.assertEquals(new FastqEntropy().instanceMain(new String[] {"-o",out1.toString(),fq}),0);
+			final Path out2 = support.createTmpPath(".txt");
+			Assert.assertEquals(new FastqEntropy().instanceMain(new String[] {"--batch-reader","-o",out2.toString(),fq}),0);
+			Assert.assertEquals(Files.readAllLines(out2), Files.readAllLines(out1));
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
@@ -0,0 +1,70 @@
+package com.github.lindenb.jvarkit.go;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class GOParserTest {
+	private static final String OBO = 
+		"format-version: 1.2\n"+
+		"\n"+
+		"[Term]\n"+
+		"id: GO:0000001\n"+
+		"name: root\n"+
+		"namespace: biological_process\n"+
+		"def: \"root\" []\n"+
+		"\n"+
+		"[Term]\n"+
+		"id: GO:0000002\n"+
+		"name: left\n"+
+		"namespace: biological_process\n"+
+		"def: \"left\" []\n"+
+		"is_a: GO:0000001 ! root\n"+
+		"\n"+
+		"[Term]\n"+
+		"id: GO:0000003\n"+
+		"name: right\n"+
+		"namespace: biological_process\n"+
+		"def: \"right\" []\n"+
+		"is_a: GO:0000001 ! root\n"+
+		"\n"+
+		"[Term]\n"+
+		"id: GO:0000004\n"+
+		"name: bottom\n"+
+		"namespace: biological_process\n"+
+		"def: \"bottom\" []\n"+
+		"is_a: GO:0000002 ! left\n"+
+		"relationship: part_of GO:0000003 ! right\n"+
+		"\n"+
+		"[Term]\n"+
+		"id: GO:0000005\n"+
+		"name: other\n"+
+		"namespace: molecular_function\n"+
+		"def: \"other\" []\n"+
+		"\n";
+	
+	@Test
+	public void testDescendants() throws IOException {
+		final GOOntology go;
+		try(BufferedReader br = new BufferedReader(new StringReader(OBO))) {
+			go = new GOParser().parseOBO(br);
+			}
+		Assert.assertEquals(go.size(), 5);
+		final GOOntology.Term root = go.getTermByAccession("GO:0000001");
+		final GOOntology.Term left = go.getTermByAccession("GO:0000002");
+		final GOOntology.Term right = go.getTermByAccession("GO:0000003");
+		final GOOntology.Term bottom = go.getTermByName("bottom");
+		final GOOntology.Term other = go.getTermByAccession("GO:0000005");
+		Assert.assertTrue(bottom.isDescendantOf(root));
+		Assert.assertTrue(bottom.isDescendantOf(left));
+		Assert.assertTrue(bottom.isDescendantOf(right));
+		Assert.assertTrue(bottom.isDescendantOf(bottom));
+		Assert.assertFalse(root.isDescendantOf(bottom));
+		Assert.assertFalse(left.isDescendantOf(right));
+		Assert.assertFalse(other.isDescendantOf(root));
+		Assert.assertEquals(bottom.getMinDepth(), 2);
+		}
+	}
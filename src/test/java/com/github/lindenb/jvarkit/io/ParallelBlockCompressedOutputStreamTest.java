@@ -0,0 +1,131 @@
+package com.github.lindenb.jvarkit.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.IOUtil;
+
+public class ParallelBlockCompressedOutputStreamTest {
+
+	@DataProvider(name="threads")
+	public Object[][] getThreads() {
+		return new Object[][] {{1},{2},{4}};
+	}
+	
+	/** write the same data with random write sizes, flushes, and record the file pointers */
+	private List<Long> write(final OutputStream os,final long seed) throws IOException {
+		final Random rand = new Random(seed);
+		final List<Long> pointers = new ArrayList<>();
+		final byte[] buffer = new byte[200_000];
+		for(int i=0;i< 100;i++) {
+			final int len = rand.nextInt(buffer.length);
+			for(int j=0;j< len;j++) {
+				// half random bytes, half compressible text
+				buffer[j] = (byte)(i%2==0?rand.nextInt(256):'A'+rand.nextInt(4));
+				}
+			if(rand.nextInt(10)==0) {
+				for(int j=0;j< len;j++) os.write(buffer[j]);
+				}
+			else
+				{
+				os.write(buffer, 0, len);
+				}
+			if(rand.nextInt(5)==0) os.flush();
+			if(os instanceof BlockCompressedOutputStream) {
+				pointers.add(BlockCompressedOutputStream.class.cast(os).getFilePointer());
+				}
+			else if(os instanceof ParallelBlockCompressedOutputStream) {
+				pointers.add(ParallelBlockCompressedOutputStream.class.cast(os).getFilePointer());
+				}
+			}
+		return pointers;
+	}
+
+	@Test(dataProvider="threads")
+	public void testSameAsHtsjdk(final int nThreads) throws IOException {
+		final ByteArrayOutputStream expect = new ByteArrayOutputStream();
+		final List<Long> expectPointers;
+		try(BlockCompressedOutputStream os = new BlockCompressedOutputStream(expect, (Path)null)) {
+			expectPointers = write(os, 42L);
+			}
+		final ByteArrayOutputStream found = new ByteArrayOutputStream();
+		final List<Long> foundPointers;
+		try(ParallelBlockCompressedOutputStream os = new ParallelBlockCompressedOutputStream(found, BlockCompressedOutputStream.getDefaultCompressionLevel(), nThreads)) {
+			foundPointers = write(os, 42L);
+			}
+		Assert.assertEquals(foundPointers, expectPointers);
+		Assert.assertEquals(found.toByteArray(), expect.toByteArray());
+	}
+	
+	@Test
+	public void testStreamsWithDifferentThreads() throws IOException {
+		final ByteArrayOutputStream expect = new ByteArrayOutputStream();
+		try(BlockCompressedOutputStream os = new BlockCompressedOutputStream(expect, (Path)null)) {
+			write(os, 1L);
+			}
+		final ByteArrayOutputStream found1 = new ByteArrayOutputStream();
+		final ByteArrayOutputStream found2 = new ByteArrayOutputStream();
+		try(ParallelBlockCompressedOutputStream os1 = new ParallelBlockCompressedOutputStream(found1, BlockCompressedOutputStream.getDefaultCompressionLevel(), 2)) {
+			os1.write(1);
+			// a stream with another number of threads must not break the first one
+			try(ParallelBlockCompressedOutputStream os2 = new ParallelBlockCompressedOutputStream(found2, BlockCompressedOutputStream.getDefaultCompressionLevel(), 5)) {
+				write(os2, 1L);
+				}
+			write(os1, 1L);
+			}
+		Assert.assertEquals(found2.toByteArray(), expect.toByteArray());
+		Assert.assertTrue(found1.size() > 0);
+	}
+	
+	@Test
+	public void testEmpty() throws IOException {
+		final ByteArrayOutputStream found = new ByteArrayOutputStream();
+		try(ParallelBlockCompressedOutputStream os = new ParallelBlockCompressedOutputStream(found, 5, 3)) {
+			Assert.assertEquals(os.getFilePointer(), 0L);
+			}
+		final ByteArrayOutputStream expect = new ByteArrayOutputStream();
+		new BlockCompressedOutputStream(expect, (Path)null).close();
+		Assert.assertEquals(found.toByteArray(), expect.toByteArray());
+	}
+	
+	@Test
+	public void testOpenPath() throws IOException {
+		final int prev = ParallelBlockCompressedOutputStream.getDefaultThreadCount();
+		final Path tmp = Files.createTempFile("tmp.", ".gz");
+		try {
+			ParallelBlockCompressedOutputStream.setDefaultThreadCount(3);
+			final ByteArrayOutputStream expect = new ByteArrayOutputStream();
+			try(OutputStream os = ParallelBlockCompressedOutputStream.open(tmp)) {
+				Assert.assertTrue(os instanceof ParallelBlockCompressedOutputStream);
+				for(int i=0;i< 100_000;i++) {
+					final byte[] b = ("line "+i+"\n").getBytes();
+					os.write(b);
+					expect.write(b);
+					}
+				}
+			Assert.assertTrue(IOUtil.isBlockCompressed(tmp));
+			try(InputStream in = new BlockCompressedInputStream(tmp.toFile())) {
+				final ByteArrayOutputStream found = new ByteArrayOutputStream();
+				IOUtil.copyStream(in, found);
+				Assert.assertEquals(found.toByteArray(), expect.toByteArray());
+				}
+			}
+		finally {
+			ParallelBlockCompressedOutputStream.setDefaultThreadCount(prev);
+			Files.delete(tmp);
+			}
+	}
+}
@@ -0,0 +1,49 @@
+package com.github.lindenb.jvarkit.lang;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TransitiveClosureTest {
+	@Test
+	public void testDiamond() {
+		/* 0 is root ; 1 and 2 are children of 0 ; 3 is child of 1 and 2 ; 4 is alone */
+		final TransitiveClosure c = new TransitiveClosure(new int[][] {
+			null,
+			{0},
+			{0},
+			{1,2},
+			{}
+			});
+		Assert.assertEquals(c.size(), 5);
+		Assert.assertTrue(c.isAncestorOf(0, 3));
+		Assert.assertTrue(c.isAncestorOf(1, 3));
+		Assert.assertTrue(c.isAncestorOf(2, 3));
+		Assert.assertTrue(c.isAncestorOf(3, 3));
+		Assert.assertFalse(c.isAncestorOf(3, 0));
+		Assert.assertFalse(c.isAncestorOf(1, 2));
+		Assert.assertFalse(c.isAncestorOf(0, 4));
+		Assert.assertEquals(c.getAncestors(3), new int[] {0,1,2,3});
+		Assert.assertEquals(c.getAncestorCount(4), 1);
+		final int[][] desc = c.getDescendants();
+		Assert.assertEquals(desc[0], new int[] {0,1,2,3});
+		Assert.assertEquals(desc[1], new int[] {1,3});
+		Assert.assertEquals(desc[4], new int[] {4});
+		}
+	@Test
+	public void testCycle() {
+		final TransitiveClosure c = new TransitiveClosure(new int[][] {
+			{2},
+			{0},
+			{1}
+			});
+		for(int i=0;i< 3;i++) {
+			for(int j=0;j< 3;j++) {
+				Assert.assertTrue(c.isAncestorOf(i, j));
+				}
+			}
+		}
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void testBadIndex() {
+		new TransitiveClosure(new int[][] {{1}});
+		}
+	}
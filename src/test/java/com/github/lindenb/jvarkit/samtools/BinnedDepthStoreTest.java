@@ -0,0 +1,111 @@
+package com.github.lindenb.jvarkit.samtools;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+
+public class BinnedDepthStoreTest {
+@Test
+public void testRoundTrip() throws IOException {
+	final Path dir = Files.createTempDirectory("tmp.");
+	try {
+		final SAMSequenceDictionary dict = new SAMSequenceDictionary(Arrays.asList(
+			new SAMSequenceRecord("A", 1_005),
+			new SAMSequenceRecord("B", 333),
+			new SAMSequenceRecord("C", 10)
+			));
+		final int binSize = 10;
+		final Random rand = new Random(0L);
+		final float[][] expect = new float[2][BinnedDepthStore.getBinCount(1_005, binSize)];
+		for(int s=0;s< 2;s++) {
+			try(BinnedDepthWriter w = new BinnedDepthWriter(dir.resolve("S"+s+BinnedDepthStore.SUFFIX), "S"+s, dict, binSize, 7, false)) {
+				w.setContig("A");
+				// the last bins are not written
+				for(int i=0;i+3< expect[s].length;i++) {
+					expect[s][i] = rand.nextFloat()*100f;
+					w.add(expect[s][i]);
+					}
+				w.setContig("B");
+				w.add(1f);
+				}
+			}
+		// add a new sample
+		try(BinnedDepthWriter w = BinnedDepthStore.createWriter(dir, "S2", dict, binSize)) {
+			w.setContig("C");
+			w.add(5f);
+			}
+		try(BinnedDepthStore store = BinnedDepthStore.open(dir)) {
+			Assert.assertEquals(store.getSamples(), Arrays.asList("S0","S1","S2"));
+			Assert.assertEquals(store.getBinSize(), binSize);
+			Assert.assertEquals(store.getBinCount("A"), 101);
+			Assert.assertTrue(store.getSequenceDictionary().isSameDictionary(dict));
+			for(int s=0;s< 2;s++) {
+				Assert.assertEquals(store.getBins(s, new SimpleInterval("A",1,1_005)), expect[s]);
+				for(int i=0;i< expect[s].length;i++) {
+					Assert.assertEquals(store.get(s,"A",i), expect[s][i]);
+					}
+				final float[] sub = store.getBins(s, new SimpleInterval("A",95,201));
+				Assert.assertEquals(store.getFirstBinIndex(new SimpleInterval("A",95,201)), 9);
+				Assert.assertEquals(sub, Arrays.copyOfRange(expect[s], 9, 21));
+				Assert.assertEquals(store.get(s,"B",0), 1f);
+				Assert.assertEquals(store.get(s,"B",1), 0f);
+				Assert.assertEquals(store.get(s,"C",0), 0f);
+				}
+			Assert.assertEquals(store.get(2,"C",0), 5f);
+			Assert.assertEquals(store.getMatrix(new SimpleInterval("C",1,10))[2][0], 5f);
+			}
+		}
+	finally {
+		try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+			for(final Path p:ds) Files.delete(p);
+			}
+		Files.delete(dir);
+		}
+	}
+
+@Test
+public void testSameCleanedName() throws IOException {
+	final Path dir = Files.createTempDirectory("tmp.");
+	try {
+		final SAMSequenceDictionary dict = new SAMSequenceDictionary(Arrays.asList(
+			new SAMSequenceRecord("A", 100)
+			));
+		// both writers are open at the same time, as with --jobs
+		try(BinnedDepthWriter w1 = BinnedDepthStore.createWriter(dir, "a b", dict, 10)) {
+			try(BinnedDepthWriter w2 = BinnedDepthStore.createWriter(dir, "a_b", dict, 10)) {
+				w1.setContig("A");
+				w1.add(1f);
+				w2.setContig("A");
+				w2.add(2f);
+				}
+			}
+		// replace an existing sample
+		try(BinnedDepthWriter w = BinnedDepthStore.createWriter(dir, "a b", dict, 10)) {
+			w.setContig("A");
+			w.add(3f);
+			}
+		try(BinnedDepthStore store = BinnedDepthStore.open(dir)) {
+			Assert.assertEquals(store.getSamples().size(), 2);
+			Assert.assertEquals(store.get(store.getSampleIndex("a b"),"A",0), 3f);
+			Assert.assertEquals(store.get(store.getSampleIndex("a_b"),"A",0), 2f);
+			}
+		}
+	finally {
+		try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+			for(final Path p:ds) Files.delete(p);
+			}
+		Files.delete(dir);
+		}
+	}
+}
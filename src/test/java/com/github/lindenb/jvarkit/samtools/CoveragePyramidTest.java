@@ -0,0 +1,77 @@
+package com.github.lindenb.jvarkit.samtools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+public class CoveragePyramidTest {
+	private final TestSupport support = new TestSupport();
+
+	@Test
+	public void testBuild() throws IOException {
+		try {
+			final Path bam = Paths.get(support.resource("S1.bam"));
+			final Path out = support.createTmpPath(CoveragePyramid.SUFFIX);
+			final int binSize = 16;
+			try(SamReader sr = SamReaderFactory.makeDefault().open(bam)) {
+				CoveragePyramid.build(sr, bam, out, binSize, 1);
+				final SAMSequenceRecord ssr = sr.getFileHeader().getSequenceDictionary().getSequence(0);
+				// naive depth
+				final int[] depth = new int[ssr.getSequenceLength()];
+				try(SAMRecordIterator iter = sr.query(ssr.getSequenceName(), 0, 0, false)) {
+					while(iter.hasNext()) {
+						final SAMRecord rec = iter.next();
+						if(rec.getReadUnmappedFlag() || rec.getDuplicateReadFlag() || rec.isSecondaryOrSupplementary() || rec.getReadFailsVendorQualityCheckFlag() || rec.getMappingQuality()<1) continue;
+						int ref1 = rec.getAlignmentStart();
+						for(final CigarElement ce:rec.getCigar()) {
+							if(!ce.getOperator().consumesReferenceBases()) continue;
+							for(int i=0;i< ce.getLength();i++) {
+								if(ce.getOperator().consumesReadBases() && ref1+i<=depth.length) depth[ref1+i-1]++;
+								}
+							ref1+=ce.getLength();
+							}
+						}
+					}
+				try(CoveragePyramid pyramid = CoveragePyramid.open(out)) {
+					Assert.assertTrue(pyramid.isUpToDate(bam));
+					Assert.assertEquals(pyramid.getMinMappingQuality(), 1);
+					Assert.assertTrue(pyramid.getSequenceDictionary().isSameDictionary(sr.getFileHeader().getSequenceDictionary()));
+					Assert.assertEquals(pyramid.chooseLevel(binSize-1), -1);
+					Assert.assertEquals(pyramid.chooseLevel(binSize), 0);
+					Assert.assertEquals(pyramid.chooseLevel(binSize*5), 2);
+					for(int level=0;level< pyramid.getLevelCount();level++) {
+						final int bs = (int)pyramid.getBinSize(level);
+						for(int bin=0;(long)bin*bs < depth.length;bin++) {
+							double sum=0;
+							int n=0;
+							for(int x=bin*bs;x< Math.min(depth.length,(bin+1)*bs);x++) {
+								sum+=depth[x];
+								n++;
+								}
+							Assert.assertEquals(pyramid.get(0, level, bin), sum/n, 0.01);
+							}
+						}
+					final double[] pixels = pyramid.getDepths(new SimpleInterval(ssr.getSequenceName(),1,binSize*10), 10, 0);
+					Assert.assertEquals(pixels.length, 10);
+					Assert.assertEquals(pixels[3], pyramid.get(0, 0, 3), 0.0001);
+					}
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
@@ -0,0 +1,34 @@
+package com.github.lindenb.jvarkit.samtools;
+
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class DepthAccumulatorTest {
+@Test
+public void test01() {
+	final int contigLength = 10_000;
+	final Random rand = new Random(0L);
+	final int expect[] = new int[contigLength];
+	final int observed[] = new int[contigLength];
+	final int count[] = new int[]{0};
+	final DepthAccumulator acc = new DepthAccumulator((P,D)->{
+		Assert.assertEquals(P, count[0]+1);
+		observed[P-1]=D;
+		count[0]++;
+		});
+	acc.reset(contigLength);
+	int start1 = 1;
+	for(int i=0;i< 5_000;i++) {
+		start1 += rand.nextInt(5);
+		final int len = 1 + rand.nextInt(i%100==0?3_000:150);
+		acc.add(start1, len);
+		for(int x=start1;x< start1+len && x<=contigLength;x++) expect[x-1]++;
+		acc.advance(start1);
+		}
+	acc.finish();
+	Assert.assertEquals(count[0], contigLength);
+	Assert.assertEquals(observed, expect);
+	}
+}
@@ -0,0 +1,147 @@
+package com.github.lindenb.jvarkit.samtools;
+
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+
+public class PileupAccumulatorTest {
+	private static final byte BASES[] = "ACGTNR".getBytes();
+
+	@Test
+	public void testBaseCode() {
+		Assert.assertEquals(PileupAccumulator.baseToCode('A'), PileupAccumulator.BASE_A);
+		Assert.assertEquals(PileupAccumulator.baseToCode('c'), PileupAccumulator.BASE_C);
+		Assert.assertEquals(PileupAccumulator.baseToCode('G'), PileupAccumulator.BASE_G);
+		Assert.assertEquals(PileupAccumulator.baseToCode('t'), PileupAccumulator.BASE_T);
+		Assert.assertEquals(PileupAccumulator.baseToCode('N'), PileupAccumulator.BASE_N);
+		Assert.assertEquals(PileupAccumulator.baseToCode('='), PileupAccumulator.BASE_OTHER);
+		Assert.assertEquals(PileupAccumulator.baseToCode(-1), PileupAccumulator.BASE_OTHER);
+	}
+
+	/** compare with a pileup stored in a whole array */
+	@Test
+	public void testRandomReads() {
+		final int contigLength = 5_000;
+		final int nSamples = 3;
+		final int minQual = 10;
+		final Random rand = new Random(0L);
+		final SAMFileHeader header = new SAMFileHeader(new SAMSequenceDictionary(java.util.Collections.singletonList(new SAMSequenceRecord("chr1", contigLength))));
+		// [pos][sample][code][strand]
+		final int expectCounts[][][][] = new int[contigLength+1][nSamples][PileupAccumulator.NUM_CODES][2];
+		final int expectQuals[][][][] = new int[contigLength+1][nSamples][PileupAccumulator.NUM_CODES][2];
+		final boolean visited[] = new boolean[contigLength+1];
+		final int prev[] = new int[] {0};
+		final PileupAccumulator acc = new PileupAccumulator(nSamples, C->{
+			Assert.assertTrue(C.getPosition() > prev[0]);
+			prev[0] = C.getPosition();
+			visited[C.getPosition()] = true;
+			for(int s=0;s< nSamples;s++) {
+				int depth = 0;
+				for(int code=0;code< PileupAccumulator.NUM_CODES;code++) {
+					for(int strand=0;strand<2;strand++) {
+						Assert.assertEquals(C.getCount(s, code, strand==1), expectCounts[C.getPosition()][s][code][strand]);
+						Assert.assertEquals(C.getQualitySum(s, code, strand==1), expectQuals[C.getPosition()][s][code][strand]);
+						if(code!=PileupAccumulator.DELETION) depth += expectCounts[C.getPosition()][s][code][strand];
+						}
+					}
+				Assert.assertEquals(C.getDepth(s), depth);
+				Assert.assertEquals(C.getBaseCount(s, 'a'), C.getCount(s, PileupAccumulator.BASE_A));
+				}
+			});
+		acc.setMinBaseQuality(minQual);
+		acc.reset(contigLength);
+		int start1 = 1;
+		for(int i=0;i< 2_000;i++) {
+			start1 += rand.nextInt(4);
+			final int sample = rand.nextInt(nSamples);
+			final boolean negativeStrand = rand.nextBoolean();
+			final Cigar cigar = new Cigar();
+			cigar.add(new CigarElement(1+rand.nextInt(5), CigarOperator.S));
+			final int nElements = 1 + rand.nextInt(5);
+			for(int j=0;j< nElements;j++) {
+				final CigarOperator op = j%2==0?CigarOperator.M:
+					(CigarOperator.values()[rand.nextInt(CigarOperator.values().length)]);
+				if(op.isClipping() || op.isPadding()) continue;
+				cigar.add(new CigarElement(1+rand.nextInt(i%100==0?2_000:100), op));
+				}
+			cigar.add(new CigarElement(1+rand.nextInt(50), CigarOperator.M));
+			final byte bases[] = new byte[cigar.getReadLength()];
+			final byte quals[] = new byte[bases.length];
+			for(int j=0;j< bases.length;j++) {
+				bases[j] = BASES[rand.nextInt(BASES.length)];
+				quals[j] = (byte)rand.nextInt(40);
+				}
+			final SAMRecord rec = new SAMRecord(header);
+			rec.setReadName("R"+i);
+			rec.setReferenceIndex(0);
+			rec.setAlignmentStart(start1);
+			rec.setCigar(cigar);
+			rec.setReadBases(bases);
+			rec.setBaseQualities(quals);
+			rec.setReadNegativeStrandFlag(negativeStrand);
+			rec.setMappingQuality(60);
+			acc.advance(start1);
+			acc.add(sample, rec);
+
+			int ref1 = start1;
+			int readpos = 0;
+			final int strand = negativeStrand?1:0;
+			for(final CigarElement ce:cigar) {
+				final CigarOperator op = ce.getOperator();
+				for(int j=0;j< ce.getLength();j++) {
+					final int pos1 = ref1 + j;
+					if(pos1 > contigLength) continue;
+					if(op.consumesReadBases() && op.consumesReferenceBases()) {
+						if(quals[readpos+j] < minQual) continue;
+						final int code = PileupAccumulator.baseToCode(bases[readpos+j]);
+						expectCounts[pos1][sample][code][strand]++;
+						expectQuals[pos1][sample][code][strand] += quals[readpos+j];
+						}
+					else if(op.equals(CigarOperator.D)) {
+						expectCounts[pos1][sample][PileupAccumulator.DELETION][strand]++;
+						}
+					}
+				if(op.consumesReferenceBases()) ref1 += ce.getLength();
+				if(op.consumesReadBases()) readpos += ce.getLength();
+				}
+			}
+		acc.finish();
+		Assert.assertEquals(acc.getPosition(), contigLength+1);
+		for(int pos1=1;pos1<=contigLength;pos1++) {
+			boolean covered = false;
+			for(int s=0;s< nSamples;s++) {
+				for(int code=0;code< PileupAccumulator.NUM_CODES;code++) {
+					covered |= expectCounts[pos1][s][code][0]+expectCounts[pos1][s][code][1] > 0;
+					}
+				}
+			Assert.assertEquals(visited[pos1], covered, "pos:"+pos1);
+			}
+	}
+
+	@Test
+	public void testUnsortedWholeContig() {
+		final int contigLength = 100;
+		final int depth[] = new int[contigLength+1];
+		final PileupAccumulator acc = new PileupAccumulator(2, contigLength+1, C->depth[C.getPosition()] = C.getDepth(0) + C.getDepth(1));
+		acc.reset(contigLength);
+		acc.add(1, 50, (byte)'A', 30, false);
+		acc.add(0, 10, (byte)'C', 30, true);
+		acc.add(0, 50, (byte)'G', 30, true);
+		acc.addDeletion(0, 60, true);
+		acc.add(0, 101, (byte)'G', 30, true);
+		acc.finish();
+		Assert.assertEquals(depth[10], 1);
+		Assert.assertEquals(depth[50], 2);
+		Assert.assertEquals(depth[60], 0);
+		Assert.assertEquals(depth[11], 0);
+	}
+}
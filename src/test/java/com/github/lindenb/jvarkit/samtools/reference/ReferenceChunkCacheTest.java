@@ -0,0 +1,40 @@
+package com.github.lindenb.jvarkit.samtools.reference;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+
+public class ReferenceChunkCacheTest {
+	private final TestSupport support = new TestSupport();
+
+@Test
+public void test01() throws IOException {
+	final String fasta = support.resource("rotavirus_rf.fa");
+	try(ReferenceSequenceFile ref = ReferenceSequenceFileFactory.getReferenceSequenceFile(Paths.get(fasta))) {
+		// small chunks to test the runs crossing the boundaries of the chunks
+		try(ReferenceChunkCache cache = new ReferenceChunkCache(ReferenceSequenceFileFactory.getReferenceSequenceFile(Paths.get(fasta)),7,3)) {
+			for(final SAMSequenceRecord ssr: cache.getSequenceDictionary().getSequences()) {
+				final String seq = new String(ref.getSequence(ssr.getSequenceName()).getBases()).toUpperCase();
+				for(int pos1=1;pos1<=seq.length();pos1++) {
+					final char c = seq.charAt(pos1-1);
+					Assert.assertEquals((char)cache.getBase(ssr.getSequenceName(), pos1), c);
+					int left = 1;
+					while(pos1-1-left>=0 && seq.charAt(pos1-1-left)==c) left++;
+					Assert.assertEquals(cache.getHomopolymerLeft(ssr.getSequenceName(), pos1), left);
+					int right = 1;
+					while(pos1-1+right < seq.length() && seq.charAt(pos1-1+right)==c) right++;
+					Assert.assertEquals(cache.getHomopolymerRight(ssr.getSequenceName(), pos1), right);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.github.lindenb.jvarkit.tools.bam2wig;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.lang.StringUtils;
+import com.github.lindenb.jvarkit.math.stats.Percentile;
+import com.github.lindenb.jvarkit.samtools.DepthAccumulatorTest;
+import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.util.bio.samfilter.SamRecordFilterFactory;
+import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
+
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.filter.SamRecordFilter;
+
+@AlsoTest({LauncherTest.class,DepthAccumulatorTest.class})
+public class Bam2WigTest {
+	final TestSupport support= new TestSupport();
+
+	/** a short read followed by a read with a leading clip longer than any previous read */
+	@Test
+	public void testLongClipAfterShortRead() throws IOException {
+		try {
+			final Path sam = support.createTmpPath(".sam");
+			try(PrintWriter pw  = new PrintWriter(Files.newBufferedWriter(sam))) {
+				pw.println("@HD\tVN:1.6\tSO:coordinate");
+				pw.println("@SQ\tSN:chr1\tLN:2000");
+				pw.println(String.join("\t","r1","0","chr1","1000","60","10M","*","0","0",StringUtils.repeat(10, 'A'),StringUtils.repeat(10, 'I')));
+				pw.println(String.join("\t","r2","0","chr1","1001","60","500S10M","*","0","0",StringUtils.repeat(510, 'A'),StringUtils.repeat(510, 'I')));
+				}
+			final Path out = support.createTmpPath(".bedgraph");
+			Assert.assertEquals(new Bam2Wig().instanceMain(new String[] {
+					"-o",out.toString(),
+					"--display","CLIPPING",
+					"--bedgraph",
+					"-w","1",
+					"-s","1",
+					"-f","%.0f",
+					sam.toString()
+					}),0);
+			final List<String> lines = Files.readAllLines(out);
+			Assert.assertEquals(lines.size(), 2000);
+			for(final String line: lines) {
+				final String tokens[] = line.split("[\t]");
+				final int pos1 = Integer.parseInt(tokens[1]) + 1;
+				final int expect = (pos1 >= 501 && pos1 <= 1000 ? 1 : 0);
+				Assert.assertEquals(Integer.parseInt(tokens[3]), expect, line);
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+		}
+	}
+
+	private static final List<String> SAMPLES = Arrays.asList("S1","S2","S3","S4","S5");
+
+	/** return the depth of each sample at each position, key is contig:pos1 */
+	private Map<String,Map<String,Integer>> sampleDepths() throws IOException {
+		final Map<String,Map<String,Integer>> pos2sample2depth = new HashMap<>();
+		final SamRecordFilter filter = SamRecordFilterFactory.getDefault();
+		for(final String sn: SAMPLES) {
+			try(SamReader sr = SamReaderFactory.makeDefault().open(Paths.get(support.resource(sn+".bam")))) {
+				for(final SAMRecord rec: sr) {
+					if(rec.getReadUnmappedFlag() || filter.filterOut(rec)) continue;
+					int pos1 = rec.getAlignmentStart();
+					for(final CigarElement ce: rec.getCigar()) {
+						if(!ce.getOperator().consumesReferenceBases()) continue;
+						if(ce.getOperator().consumesReadBases()) {
+							for(int i=0;i< ce.getLength();i++) {
+								pos2sample2depth.computeIfAbsent(rec.getContig()+":"+(pos1+i), K->new HashMap<>()).
+									merge(rec.getReadGroup().getSample(), 1, (A,B)->A+B);
+								}
+							}
+						pos1 += ce.getLength();
+						}
+					}
+				}
+			}
+		return pos2sample2depth;
+		}
+
+	/** run bam2wig on S1...S5 with a window of 1 base and compare each value with 'expect' */
+	private void runSamples(final List<String> options,final ToIntFunction<Map<String,Integer>> expect) throws IOException {
+		final Map<String,Map<String,Integer>> pos2sample2depth = sampleDepths();
+		final Path out = support.createTmpPath(".bedgraph");
+		final List<String> args = new ArrayList<>(options);
+		args.addAll(Arrays.asList("-o",out.toString(),"--bedgraph","-w","1","-s","1","-f","%.0f"));
+		for(final String sn: SAMPLES) args.add(support.resource(sn+".bam"));
+		Assert.assertEquals(new Bam2Wig().instanceMain(args),0);
+		final List<String> lines = Files.readAllLines(out);
+		Assert.assertFalse(lines.isEmpty());
+		int n_covered = 0;
+		for(final String line: lines) {
+			final String tokens[] = line.split("[\t]");
+			final Map<String,Integer> sample2depth = pos2sample2depth.get(tokens[0]+":"+(Integer.parseInt(tokens[1])+1));
+			final int value = sample2depth==null?0:expect.applyAsInt(sample2depth);
+			if(value!=0) n_covered++;
+			Assert.assertEquals(Integer.parseInt(tokens[3]), value, line);
+			}
+		Assert.assertTrue(n_covered>0);
+		}
+
+	@Test
+	public void testReadGroups() throws IOException {
+		try {
+			runSamples(Arrays.asList("--display","READ_GROUPS","--mindepth","2"),
+				M->(int)M.values().stream().filter(D->D>=2).count()
+				);
+			}
+		finally {
+			support.removeTmpFiles();
+		}
+	}
+
+	@Test
+	public void testCaseControl() throws IOException {
+		try {
+			final Path ped = support.createTmpPath(".ped");
+			Files.write(ped, Arrays.asList(
+				"F1\tS1\t0\t0\t1\t1",
+				"F1\tS2\t0\t0\t2\t1",
+				"F2\tS3\t0\t0\t1\t0",
+				"F2\tS4\t0\t0\t2\t0",
+				"F2\tS5\t0\t0\t1\t0"
+				));
+			runSamples(Arrays.asList("--display","CASE_CTRL","--pedigree",ped.toString()),M->{
+				final double median_cases = Percentile.median().evaluate(new double[] {
+					M.getOrDefault("S1",0), M.getOrDefault("S2",0)
+					}).getAsDouble();
+				final double median_ctrls = Percentile.median().evaluate(new double[] {
+					M.getOrDefault("S3",0), M.getOrDefault("S4",0), M.getOrDefault("S5",0)
+					}).getAsDouble();
+				return (int)((median_cases/median_ctrls)*1000.0);
+				});
+			}
+		finally {
+			support.removeTmpFiles();
+		}
+	}
+}
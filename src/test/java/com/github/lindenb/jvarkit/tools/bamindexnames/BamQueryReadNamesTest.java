@@ -0,0 +1,72 @@
+package com.github.lindenb.jvarkit.tools.bamindexnames;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
+
+import htsjdk.samtools.SAMRecord;
+
+@AlsoTest(LauncherTest.class)
+public class BamQueryReadNamesTest {
+	final TestSupport support= new TestSupport();
+
+	@Test
+	public void test01() throws IOException {
+		try {
+			final Path bam = support.createTmpPath(".bam");
+			Files.copy(Path.of(support.resource("S1.bam")), bam, StandardCopyOption.REPLACE_EXISTING);
+			final Path index = support.deleteOnExit(bam.resolveSibling(bam.getFileName().toString()+BaseBamIndexReadNames.NAME_IDX_EXTENSION));
+			
+			Assert.assertEquals(new BamIndexReadNames().instanceMain(new String[] {
+					bam.toString()
+					}),0);
+			support.assertIsNotEmpty(index);
+			
+			final List<SAMRecord> records = support.samStream(bam).collect(Collectors.toList());
+			final List<String> queries = new ArrayList<>();
+			final List<SAMRecord> expect = new ArrayList<>();
+			for(int i=0;i< records.size();i+=97) {
+				final String name = records.get(i).getReadName();
+				final int side = (i/97)%3;
+				queries.add(name+(side==0?"":"/"+side));
+				expect.addAll(records.stream().
+						filter(R->R.getReadName().equals(name)).
+						filter(R->side==0 || (side==1 && R.getFirstOfPairFlag()) || (side==2 && R.getSecondOfPairFlag())).
+						collect(Collectors.toList()));
+				}
+			queries.add("ZZZZ:X");
+			
+			final Path names = support.createTmpPath(".txt");
+			try(PrintWriter pw  = new PrintWriter(Files.newBufferedWriter(names))) {
+				queries.forEach(pw::println);
+				}
+			final Path out = support.createTmpPath(".bam");
+			final Path notFound = support.createTmpPath(".txt");
+			Assert.assertEquals(new BamQueryReadNames().instanceMain(new String[] {
+					"-o",out.toString(),
+					"-N",notFound.toString(),
+					bam.toString(),
+					names.toString()
+					}),0);
+			final List<String> found = support.samStream(out).map(R->R.getSAMString()).collect(Collectors.toList());
+			Assert.assertEquals(found, expect.stream().map(R->R.getSAMString()).collect(Collectors.toList()));
+			Assert.assertEquals(Files.readAllLines(notFound), Arrays.asList("ZZZZ:X"));
+			}
+		finally {
+			support.removeTmpFiles();
+		}
+	}
+}
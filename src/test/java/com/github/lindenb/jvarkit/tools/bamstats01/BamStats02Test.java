@@ -0,0 +1,66 @@
+package com.github.lindenb.jvarkit.tools.bamstats01;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
+
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+@AlsoTest(LauncherTest.class)
+public class BamStats02Test {
+	private final TestSupport support = new TestSupport();
+
+	@DataProvider(name = "src1")
+	public Object[][] createData1() {
+		return new Object[][] {
+			{support.resource("S1.bam")},
+			{support.resource("S2.bam")},
+			{support.resource("toy.bam")}
+			};
+		}
+
+	private List<String> sortedLines(final Path p) throws IOException {
+		return Files.lines(p).sorted().collect(Collectors.toList());
+		}
+
+	@Test(dataProvider="src1")
+	public void test01(final String inBam) throws IOException {
+		try {
+			final Path out1 = support.createTmpPath(".tsv");
+			Assert.assertEquals(new BamStats02().instanceMain(new String[] {
+				"-o",out1.toString(),
+				inBam
+				}),0);
+			long nReads = 0L;
+			try(SamReader sr = SamReaderFactory.makeDefault().open(Paths.get(inBam))) {
+				nReads = sr.iterator().stream().count();
+				}
+			Assert.assertEquals(
+				Files.lines(out1).filter(L->!L.startsWith("#")).mapToLong(L->Long.parseLong(L.substring(L.lastIndexOf('\t')+1))).sum(),
+				nReads);
+			// output must not depend on the number of jobs
+			final Path out2 = support.createTmpPath(".tsv");
+			Assert.assertEquals(new BamStats02().instanceMain(new String[] {
+				"-o",out2.toString(),
+				"-j","3",
+				inBam
+				}),0);
+			Assert.assertEquals(sortedLines(out1),sortedLines(out2));
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
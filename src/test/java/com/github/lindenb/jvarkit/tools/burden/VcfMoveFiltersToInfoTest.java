@@ -0,0 +1,79 @@
+/*
+The MIT License (MIT)
+
+Copyright (c) 2022 Pierre Lindenbaum
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+
+
+*/
+package com.github.lindenb.jvarkit.tools.burden;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+public class VcfMoveFiltersToInfoTest {
+	private final TestSupport support = new TestSupport();
+
+	@DataProvider(name = "src1")
+	public Object[][] createData1() {
+		final String vcf1 = support.resource("manta.B00GWGD.vcf.gz");
+		return new Object[][] {
+			{vcf1,""},
+			{vcf1,"MaxDepth,SampleFT"}
+		};
+		}
+
+	private Path run(final String inputFile,final String limitTo,boolean lineMode) throws IOException {
+		final Path output = support.createTmpPath(".vcf");
+		final List<String> args = new ArrayList<>();
+		args.add("-o");
+		args.add(output.toString());
+		args.add("-t");
+		args.add(limitTo);
+		if(!lineMode) args.add("--no-line-mode");
+		args.add(inputFile);
+		Assert.assertEquals(new VcfMoveFiltersToInfo().instanceMain(args),0);
+		support.assertIsVcf(output);
+		return output;
+		}
+
+	@Test(dataProvider="src1")
+	public void testLineModeIsSameAsHtsjdk(final String inputFile,final String limitTo) 
+		throws IOException
+		{
+		try {
+			support.assertSameVariants(
+				run(inputFile, limitTo, true),
+				run(inputFile, limitTo, false)
+				);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
@@ -45,4 +45,35 @@ public void test01(final String vcfpath,final String gnomad) throws IOException
 
 
 
+@DataProvider(name="src02")
+public Object[][] testData02() {
+	return new Object[][] {
+		{support.resource("test_vcf01.vcf"),support.resource("gnomad.exomes.r2.0.1.sites.vcf.gz")}
+	};
+}
+
+@Test(dataProvider="src02")
+public void testSorted(final String vcfpath,final String gnomad) throws IOException {
+	try {
+		final Path vcfOut1 = support.createTmpPath(".vcf");
+		Assert.assertEquals(new VcfGnomad().instanceMain(new String[]{
+				"-o",vcfOut1.toString(),
+				"-g",gnomad,
+				vcfpath
+				}),0);
+		final Path vcfOut2 = support.createTmpPath(".vcf");
+		Assert.assertEquals(new VcfGnomad().instanceMain(new String[]{
+				"-o",vcfOut2.toString(),
+				"-g",gnomad,
+				"--sorted",
+				vcfpath
+				}),0);
+		support.assertSameVariants(vcfOut1, vcfOut2);
+		}
+	finally
+		{
+		support.removeTmpFiles();
+		}
+	}
+
 }
@@ -0,0 +1,57 @@
+package com.github.lindenb.jvarkit.tools.gnomad;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.misc.VcfAfInfoFilter;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
+import com.github.lindenb.jvarkit.variant.af.AlleleFrequencyStore;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+
+@AlsoTest({LauncherTest.class})
+public class VcfToAfStoreTest {
+	private final TestSupport support = new TestSupport();
+
+	@Test
+	public void test01() throws IOException {
+		try {
+			final String gnomad = support.resource("gnomad.exomes.r2.0.1.sites.vcf.gz");
+			final Path storePath = support.createTmpPath(AlleleFrequencyStore.SUFFIX);
+			Assert.assertEquals(new VcfToAfStore().instanceMain(new String[] {
+				"-F","AF_NFE,AF_AFR",
+				"-o",storePath.toString(),
+				gnomad
+				}),0);
+			try(AlleleFrequencyStore store = AlleleFrequencyStore.open(storePath);
+				VCFFileReader r = new VCFFileReader(java.nio.file.Paths.get(gnomad),false)) {
+				final int nfe = store.getPopulationIndex("AF_NFE");
+				Assert.assertTrue(nfe>=0);
+				for(final VariantContext ctx: r) {
+					for(int x=0;x< ctx.getAlternateAlleles().size();x++) {
+						final double expect = Double.parseDouble(ctx.getAttributeAsStringList("AF_NFE", ".").get(x));
+						Assert.assertEquals((double)store.get(ctx.getContig(), ctx.getStart(), ctx.getReference().getDisplayString(),ctx.getAlternateAllele(x).getDisplayString(),nfe), expect, 1E-6);
+						}
+					}
+				}
+			
+			final Path vcfOut = support.createTmpPath(".vcf");
+			Assert.assertEquals(new VcfAfInfoFilter().instanceMain(new String[] {
+				"--store",storePath.toString(),
+				"--store-populations","AF_NFE",
+				"-o",vcfOut.toString(),
+				support.resource("test_vcf01.vcf")
+				}),0);
+			support.assertIsVcf(vcfOut);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
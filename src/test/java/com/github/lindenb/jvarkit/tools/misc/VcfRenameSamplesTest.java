@@ -0,0 +1,56 @@
+package com.github.lindenb.jvarkit.tools.misc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+import htsjdk.variant.vcf.VCFFileReader;
+
+public class VcfRenameSamplesTest {
+	private final TestSupport support = new TestSupport();
+
+	private Path run(final Path mapping,final String outputOption,final boolean lineMode) throws IOException {
+		final Path output = support.createTmpPath(".vcf");
+		final List<String> args = new ArrayList<>();
+		args.add(outputOption);
+		args.add(output.toString());
+		args.add("-f");
+		args.add(mapping.toString());
+		if(!lineMode) args.add("--no-line-mode");
+		args.add(support.resource("rotavirus_rf.vcf.gz"));
+		Assert.assertEquals(new VcfRenameSamples().instanceMain(args),0);
+		support.assertIsVcf(output);
+		try(VCFFileReader r = new VCFFileReader(output,false)) {
+			Assert.assertEquals(r.getFileHeader().getGenotypeSamples(), Arrays.asList("ALPHA","S2","GAMMA","S4","S5"));
+			}
+		return output;
+		}
+
+	@Test
+	public void testLineModeIsSameAsHtsjdk() throws IOException {
+		try {
+			final Path mapping = support.createTmpPath(".tsv");
+			Files.write(mapping, Arrays.asList("S1\tALPHA","S3\tGAMMA"));
+			support.assertSameVariants(
+				run(mapping, "-o", true),
+				run(mapping, "-o", false)
+				);
+			// deprecated option
+			support.assertSameVariants(
+				run(mapping, "--output", true),
+				run(mapping, "--out", false)
+				);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
@@ -66,4 +66,29 @@ public class VcfSetSequenceDictionaryTest {
 		}
 		}
 
+	@Test
+	public void testLineModeIsSameAsHtsjdk() 
+		throws IOException
+		{
+		final String inputFile = support.resource("manta.B00GWGD.vcf.gz");
+		try {
+			final Path dictF = prepare(inputFile);
+			final Path output1 = support.createTmpPath(".vcf");
+			final Path output2 = support.createTmpPath(".vcf");
+			Assert.assertEquals(new VcfSetSequenceDictionary().instanceMain(new String[]{
+				"-o",output1.toString(),
+				"-R",dictF.toString(),
+				inputFile
+				}),0);
+			Assert.assertEquals(new VcfSetSequenceDictionary().instanceMain(new String[]{
+				"-o",output2.toString(),
+				"--no-line-mode",
+				"-R",dictF.toString(),
+				inputFile
+				}),0);
+			support.assertSameVariants(output1, output2);
+		} finally {
+			support.removeTmpFiles();
+		}
+		}
 }
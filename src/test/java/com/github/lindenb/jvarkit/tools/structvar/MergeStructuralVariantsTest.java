@@ -1,9 +1,53 @@
 package com.github.lindenb.jvarkit.tools.structvar;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
 import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
 import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
 
 @AlsoTest(LauncherTest.class)
 public class MergeStructuralVariantsTest   {
-//TODO
+	final TestSupport support = new TestSupport();
+
+	@Test
+	public void test01() throws IOException
+		{
+		try {
+			final Path out1 = support.createTmpPath(".vcf");
+			Assert.assertEquals(new MergeStructuralVariants().instanceMain(new String[] {
+					"-o",out1.toString(),
+					support.resource("manta.B00GWGD.vcf.gz"),
+					support.resource("manta.B00GWIU.vcf.gz"),
+					support.resource("manta.B00I9CJ.vcf.gz"),
+					support.resource("manta.D000Q1R.vcf.gz")
+				}),0
+				);
+			support.assertIsVcf(out1);
+			// output must not depend on the number of jobs or on the sorting buffer
+			final Path out2 = support.createTmpPath(".vcf");
+			Assert.assertEquals(new MergeStructuralVariants().instanceMain(new String[] {
+					"-o",out2.toString(),
+					"-j","3",
+					"--maxRecordsInRam","100",
+					support.resource("manta.B00GWGD.vcf.gz"),
+					support.resource("manta.B00GWIU.vcf.gz"),
+					support.resource("manta.B00I9CJ.vcf.gz"),
+					support.resource("manta.D000Q1R.vcf.gz")
+				}),0
+				);
+			Assert.assertEquals(
+				support.variantStream(out1).map(V->V.getContig()+":"+V.getStart()+":"+V.getEnd()+":"+V.getAttributeAsString("NSAMPLES","")).collect(Collectors.toList()),
+				support.variantStream(out2).map(V->V.getContig()+":"+V.getStart()+":"+V.getEnd()+":"+V.getAttributeAsString("NSAMPLES","")).collect(Collectors.toList())
+				);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
 }
@@ -39,4 +39,44 @@ public class ScanStructuralVariantsTest {
 			support.removeTmpFiles();
 			}
 		}
+	
+	@Test
+	public void testPanel() throws IOException
+		{
+		try {
+		final Path ctrls= support.createTmpPath(".list");
+		Files.write(ctrls, Arrays.asList(
+				support.resource("manta.B00GWGD.vcf.gz"),
+				support.resource("manta.B00GWIU.vcf.gz"),
+				support.resource("manta.B00I9CJ.vcf.gz")
+				));
+		final Path panel= support.createTmpPath(".svpanel");
+		Assert.assertEquals(new ScanStructuralVariants().instanceMain(new String[] {
+				"--controls",ctrls.toString(),
+				"--save-panel",panel.toString()
+			}),0
+			);
+		support.assertIsNotEmpty(panel);
+		final Path out1 = support.createTmpPath(".vcf");
+		Assert.assertEquals(new ScanStructuralVariants().instanceMain(new String[] {
+				"-o",out1.toString(),
+				"--controls",ctrls.toString(),
+				"--maf","0.4",
+				support.resource("manta.D000Q1R.vcf.gz")
+			}),0
+			);
+		final Path out2 = support.createTmpPath(".vcf");
+		Assert.assertEquals(new ScanStructuralVariants().instanceMain(new String[] {
+				"-o",out2.toString(),
+				"--panel",panel.toString(),
+				"--maf","0.4",
+				support.resource("manta.D000Q1R.vcf.gz")
+			}),0
+			);
+		support.assertIsVcf(out2);
+		Assert.assertEquals(support.wc(out1), support.wc(out2));
+		} finally {
+			support.removeTmpFiles();
+			}
+		}
 }
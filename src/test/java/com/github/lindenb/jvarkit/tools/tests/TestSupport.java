@@ -14,6 +14,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.Vector;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -254,6 +256,32 @@ public class TestSupport {
 		Assert.assertNull(err,"file "+f+" should be vcf : "+err);
 		}
 	
+	/** assert two VCFs contain the same variants, ignoring the way the values are encoded */
+	public void assertSameVariants(final Path f1,final Path f2) {
+		final List<VariantContext> L1;
+		try(Stream<VariantContext> st = variantStream(f1)) {
+			L1 = st.collect(Collectors.toList());
+			}
+		final List<VariantContext> L2;
+		try(Stream<VariantContext> st = variantStream(f2)) {
+			L2 = st.collect(Collectors.toList());
+			}
+		Assert.assertEquals(L1.size(), L2.size());
+		for(int i=0;i< L1.size();i++) {
+			final VariantContext v1 = L1.get(i);
+			final VariantContext v2 = L2.get(i);
+			Assert.assertEquals(v1.getContig(), v2.getContig());
+			Assert.assertEquals(v1.getStart(), v2.getStart());
+			Assert.assertEquals(v1.getEnd(), v2.getEnd());
+			Assert.assertEquals(v1.getID(), v2.getID());
+			Assert.assertEquals(v1.getAlleles(), v2.getAlleles());
+			Assert.assertEquals(v1.getPhredScaledQual(), v2.getPhredScaledQual(), 0.01);
+			Assert.assertEquals(new TreeSet<>(v1.getFilters()), new TreeSet<>(v2.getFilters()));
+			Assert.assertEquals(new TreeMap<>(v1.getAttributes()).toString(), new TreeMap<>(v2.getAttributes()).toString());
+			Assert.assertEquals(v1.getGenotypes().toString(), v2.getGenotypes().toString());
+			}
+		}
+	
 	public Stream<String> allSamOrBams() {
 		return Arrays.asList(
 		"FAB23716.nanopore.bam",
@@ -4,14 +4,21 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import com.github.lindenb.jvarkit.tests.AlsoTest;
 import com.github.lindenb.jvarkit.tools.tests.TestSupport;
 import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
 
+import htsjdk.variant.variantcontext.VariantContext;
+
 @AlsoTest(LauncherTest.class)
 public class VCFBigWigTest  {
 	
@@ -63,4 +70,78 @@ public void testXml() throws IOException {
 		support.removeTmpFiles();
 		}
 	}
+
+/** compare the values of 'tag' in the output with the values 'expectTag' computed by the original vcfbigwig (see vcfbigwig.expect.vcf) */
+private void assertSameValues(final Path out,final String tag,final String expectTag) {
+	final List<VariantContext> L = support.variantStream(out).collect(Collectors.toList());
+	Assert.assertFalse(L.isEmpty());
+	Assert.assertTrue(L.stream().anyMatch(V->V.hasAttribute(expectTag)));
+	for(final VariantContext ctx: L) {
+		Assert.assertEquals(ctx.hasAttribute(tag), ctx.hasAttribute(expectTag), ctx.toString());
+		final List<Double> expect = ctx.getAttributeAsDoubleList(expectTag, 0.0);
+		final List<Double> values = ctx.getAttributeAsDoubleList(tag, 0.0);
+		Assert.assertEquals(values.size(), expect.size(), ctx.toString());
+		for(int i=0;i< values.size();i++) {
+			Assert.assertEquals(values.get(i), expect.get(i), 1E-5, ctx.toString());
+			}
+		}
+	}
+
+@DataProvider(name="src1")
+public Object[][] createData1() {
+	final List<Object[]> L = new ArrayList<>();
+	for(final String bufferSize: new String[] {"0","100","1Mb"}) {
+		L.add(new Object[] {bufferSize, Arrays.asList("-a","all"), "BASE_ALL"});
+		L.add(new Object[] {bufferSize, Arrays.asList("-a","avg"), "BASE_AVG"});
+		L.add(new Object[] {bufferSize, Arrays.asList("-a","median"), "BASE_MEDIAN"});
+		L.add(new Object[] {bufferSize, Arrays.asList("-a","all","-C"), "BASE_CONTAINED"});
+		}
+	return L.toArray(new Object[L.size()][]);
+	}
+
+/** the values were computed by vcfbigwig before the windowed decoding */
+@Test(dataProvider="src1")
+public void testSameAsBaseline(final String bufferSize,final List<String> options,final String expectTag) throws IOException {
+	try {
+		final Path out = support.createTmpPath(".vcf");
+		final List<String> args = new ArrayList<>(Arrays.asList(
+				"-B",support.resource("Uniqueness35bp.bigWig"),
+				"-T","XXX",
+				"--bufferSize",bufferSize,
+				"-o",out.toString()
+				));
+		args.addAll(options);
+		args.add(support.resource("vcfbigwig.expect.vcf"));
+		Assert.assertEquals(new VCFBigWig().instanceMain(args),0);
+		support.assertIsVcf(out);
+		assertSameValues(out, "XXX", expectTag);
+		}
+	finally
+		{
+		support.removeTmpFiles();
+		}
+	}
+
+@Test
+public void testZoom() throws IOException {
+	try {
+		final Path out = support.createTmpPath(".vcf");
+		Assert.assertEquals(0,new VCFBigWig().instanceMain(new String[] {
+				"-B",support.resource("Uniqueness35bp.bigWig"),
+				"-T","XXX",
+				"--window","10kb",
+				"--zoom",
+				"-a","max",
+				"-o",out.toString(),
+				support.resource("test_vcf01.vcf")
+				}));
+		support.assertIsVcf(out);
+		Assert.assertTrue(support.variantStream(out).anyMatch(P->P.hasAttribute("XXX")));
+		Assert.assertTrue(support.variantStream(out).filter(P->P.hasAttribute("XXX")).allMatch(P->P.getAttributeAsDouble("XXX", -1)<=1.0));
+		} 
+	finally
+		{
+		support.removeTmpFiles();
+		}
+	}
 }
@@ -0,0 +1,62 @@
+package com.github.lindenb.jvarkit.tools.vcfbigwig;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+@AlsoTest(LauncherTest.class)
+public class VcfBigBedTest {
+	private final TestSupport support = new TestSupport();
+
+	@DataProvider(name="src1")
+	public Object[][] createData1() {
+		return new Object[][] {
+			{"0"},
+			{"100"},
+			{"10000"},
+			{"1Mb"}
+			};
+		}
+
+	/** features01.bb contains short and long (up to 40kb) features around the variants of test_vcf01.vcf.
+	 * vcfbigbed.expect.vcf contains those SNVs followed by deletions of 50-400 bases, so small windows have to slide.
+	 * BASE_BB was computed by vcfbigbed before the sliding window */
+	@Test(dataProvider="src1")
+	public void testSameAsBaseline(final String bufferSize) throws IOException {
+		try {
+			final Path out = support.createTmpPath(".vcf");
+			Assert.assertEquals(new VcfBigBed().instanceMain(new String[] {
+				"-B",support.resource("features01.bb"),
+				"--bufferSize",bufferSize,
+				"-o",out.toString(),
+				support.resource("vcfbigbed.expect.vcf")
+				}),0);
+			support.assertIsVcf(out);
+			final List<VariantContext> L = support.variantStream(out).collect(Collectors.toList());
+			Assert.assertEquals(L.size(), 190);
+			Assert.assertTrue(L.stream().anyMatch(V->V.hasAttribute("BASE_BB")));
+			for(final VariantContext ctx: L) {
+				Assert.assertEquals(
+					new HashSet<>(ctx.getAttributeAsStringList("features01", "")),
+					new HashSet<>(ctx.getAttributeAsStringList("BASE_BB", "")),
+					ctx.toString()
+					);
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
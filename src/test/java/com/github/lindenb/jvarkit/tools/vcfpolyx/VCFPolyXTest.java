@@ -1,7 +1,11 @@
 package com.github.lindenb.jvarkit.tools.vcfpolyx;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -43,4 +47,52 @@ public class VCFPolyXTest {
 			support.removeTmpFiles();
 			}
 		}
+
+	@Test
+	public void testEndOfContig() throws IOException {
+		try {
+			final Path fasta = support.createTmpPath(".fa");
+			final String fastaName = fasta.getFileName().toString();
+			final Path fai = support.deleteOnExit(fasta.resolveSibling(fastaName+".fai"));
+			final Path dict = support.deleteOnExit(fasta.resolveSibling(fastaName.substring(0,fastaName.length()-3)+".dict"));
+			try(PrintWriter pw = new PrintWriter(Files.newBufferedWriter(fasta))) {
+				pw.print(">chrT\nACGTAAAA\n");
+				}
+			try(PrintWriter pw = new PrintWriter(Files.newBufferedWriter(fai))) {
+				pw.print("chrT\t8\t6\t8\t9\n");
+				}
+			try(PrintWriter pw = new PrintWriter(Files.newBufferedWriter(dict))) {
+				pw.print("@HD\tVN:1.6\n@SQ\tSN:chrT\tLN:8\n");
+				}
+			final Path vcf = support.createTmpPath(".vcf");
+			try(PrintWriter pw = new PrintWriter(Files.newBufferedWriter(vcf))) {
+				pw.print("##fileformat=VCFv4.2\n");
+				pw.print("##contig=<ID=chrT,length=8>\n");
+				pw.print("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n");
+				// deletion ending on the last base
+				pw.print("chrT\t6\t.\tAAA\tA\t.\t.\t.\n");
+				// SNP on the last base
+				pw.print("chrT\t8\t.\tA\tC\t.\t.\t.\n");
+				// insertion after the last base
+				pw.print("chrT\t8\t.\tA\tAT\t.\t.\t.\n");
+				}
+			final Path out = support.createTmpPath(".vcf");
+			Assert.assertEquals( new VCFPolyX().instanceMain(new String[] {
+						"-o",out.toString(),
+						"-R",fasta.toString(),
+						vcf.toString()
+				}),0);
+			support.assertIsVcf(out);
+			final List<Integer> counts = support.variantStream(out).
+				map(V->V.getAttributeAsInt("POLYX", -1)).
+				collect(Collectors.toList());
+			Assert.assertEquals(counts.size(), 3);
+			Assert.assertEquals(counts.get(0).intValue(), 3);
+			Assert.assertEquals(counts.get(1).intValue(), 4);
+			Assert.assertEquals(counts.get(2).intValue(), 1);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
 }
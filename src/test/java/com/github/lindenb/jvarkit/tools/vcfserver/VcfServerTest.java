@@ -0,0 +1,139 @@
+package com.github.lindenb.jvarkit.tools.vcfserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jetty.server.Server;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
+import com.github.lindenb.jvarkit.util.log.Logger;
+
+/**
+ * starts a local server and sends concurrent requests (load test).
+ * Number of clients and requests can be changed with -Djvarkit.vcfserver.loadtest.clients=N and -Djvarkit.vcfserver.loadtest.requests=N
+ */
+@AlsoTest(LauncherTest.class)
+public class VcfServerTest {
+	private static final Logger LOG = Logger.build(VcfServerTest.class).make();
+	private final TestSupport support = new TestSupport();
+
+	private static class Response {
+		int status;
+		String etag;
+		String body;
+		}
+
+	private static Response get(final String url,final String ifNoneMatch) throws IOException {
+		final HttpURLConnection con = (HttpURLConnection)new URL(url).openConnection();
+		try {
+			if(ifNoneMatch!=null) con.setRequestProperty("If-None-Match", ifNoneMatch);
+			final Response resp = new Response();
+			resp.status = con.getResponseCode();
+			resp.etag = con.getHeaderField("ETag");
+			if(resp.status==HttpURLConnection.HTTP_OK) {
+				try(InputStream in = con.getInputStream()) {
+					resp.body = IOUtils.copyToString(new InputStreamReader(in, "UTF-8"));
+					}
+				}
+			return resp;
+			}
+		finally {
+			con.disconnect();
+			}
+		}
+
+	@Test
+	public void testLoad() throws Exception {
+		final int port;
+		try(ServerSocket ss = new ServerSocket(0)) {
+			port = ss.getLocalPort();
+			}
+		final VcfServer app = new VcfServer();
+		final Thread thread = new Thread(()->app.instanceMain(new String[] {
+				"--port",String.valueOf(port),
+				"--tile-size","100",
+				support.resource("rotavirus_rf.freebayes.vcf.gz")
+				}));
+		thread.start();
+		try {
+			for(int i=0;i< 300;i++) {
+				final Server server = app.getServer();
+				if(server!=null && server.isStarted()) break;
+				Thread.sleep(100L);
+				}
+			Assert.assertNotNull(app.getServer());
+			Assert.assertTrue(app.getServer().isStarted());
+			final String base = "http://localhost:"+port+"/?rgn=";
+
+			// conditional request
+			final Response r1 = get(base+URLEncoder.encode("RF01:1-1000","UTF-8"), null);
+			Assert.assertEquals(r1.status, HttpURLConnection.HTTP_OK);
+			Assert.assertNotNull(r1.etag);
+			Assert.assertTrue(r1.body.contains("END-TABLE"));
+			final Response r2 = get(base+URLEncoder.encode("RF01:1-1000","UTF-8"), r1.etag);
+			Assert.assertEquals(r2.status, HttpURLConnection.HTTP_NOT_MODIFIED);
+			final Response r3 = get(base+URLEncoder.encode("RF02:1-1000","UTF-8"), r1.etag);
+			Assert.assertEquals(r3.status, HttpURLConnection.HTTP_OK);
+
+			// load test
+			final int nClients = Integer.getInteger("jvarkit.vcfserver.loadtest.clients", 4);
+			final int nRequests = Integer.getInteger("jvarkit.vcfserver.loadtest.requests", 25);
+			final ExecutorService executor = Executors.newFixedThreadPool(nClients);
+			final List<Future<long[]>> futures = new ArrayList<>();
+			try {
+				for(int c=0;c< nClients;c++) {
+					final Random rand = new Random(c);
+					futures.add(executor.submit(()->{
+						final long[] latencies = new long[nRequests];
+						for(int i=0;i< nRequests;i++) {
+							final int start = 1 + rand.nextInt(2000);
+							final String rgn = String.format("RF%02d:%d-%d", 1 + rand.nextInt(4), start, start + rand.nextInt(1000));
+							final long t0 = System.nanoTime();
+							final Response r = get(base+URLEncoder.encode(rgn,"UTF-8")+"&gt="+rand.nextBoolean(), null);
+							latencies[i] = System.nanoTime() - t0;
+							Assert.assertEquals(r.status, HttpURLConnection.HTTP_OK);
+							Assert.assertTrue(r.body.contains("END-TABLE"), rgn);
+							}
+						return latencies;
+						}));
+					}
+				final List<Long> all = new ArrayList<>();
+				for(final Future<long[]> f:futures) {
+					for(long t: f.get()) all.add(t);
+					}
+				final long[] array = all.stream().mapToLong(L->L).toArray();
+				Arrays.sort(array);
+				LOG.info("clients:"+nClients+
+						" requests:"+array.length+
+						" median(ms):"+array[array.length/2]/1_000_000.0+
+						" p95(ms):"+array[(int)(array.length*0.95)]/1_000_000.0+
+						" max(ms):"+array[array.length-1]/1_000_000.0);
+				}
+			finally {
+				executor.shutdown();
+				}
+			}
+		finally {
+			if(app.getServer()!=null) app.getServer().stop();
+			thread.join(10_000L);
+			support.removeTmpFiles();
+			}
+		}
+	}
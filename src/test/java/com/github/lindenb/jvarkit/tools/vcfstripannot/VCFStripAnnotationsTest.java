@@ -2,6 +2,8 @@ package com.github.lindenb.jvarkit.tools.vcfstripannot;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -49,4 +51,31 @@ public class VCFStripAnnotationsTest {
 		}
 		}
 	
+	private Path run(final String inputFile,final String expr,boolean lineMode) throws IOException {
+		final Path output = support.createTmpPath(".vcf");
+		final List<String> args = new ArrayList<>();
+		args.add("-o");
+		args.add(output.toString());
+		args.add("-x");
+		args.add(expr);
+		if(!lineMode) args.add("--no-line-mode");
+		args.add(inputFile);
+		Assert.assertEquals(new VCFStripAnnotations().instanceMain(args),0);
+		return output;
+		}
+	
+	@Test(dataProvider="src1")
+	public void testLineModeIsSameAsHtsjdk(final String inputFile,final String expr) 
+		throws IOException
+		{
+		try {
+			support.assertSameVariants(
+				run(inputFile, expr, true),
+				run(inputFile, expr, false)
+				);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
 }
@@ -198,4 +198,45 @@ public void test05() {
 			));
 	}
 
+/** compare the allele-code engine with the Genotype-based test for all the combinations of genotypes */
+@Test
+public void testEncodedGenotypes() {
+	final Allele[] choices = new Allele[] {a1,a2,a3,Allele.NO_CALL,Allele.SPAN_DEL};
+	final List<Genotype> gts = new ArrayList<>();
+	for(int i=0;i< choices.length;i++) {
+		gts.add(new GenotypeBuilder("x", Arrays.asList(choices[i])).make());
+		for(int j=i;j< choices.length;j++) {
+			gts.add(new GenotypeBuilder("x", Arrays.asList(choices[i],choices[j])).make());
+			}
+		}
+	gts.add(null);
+	for(int flags=0;flags<4;++flags) {
+		final DeNovoDetector d= new DeNovoDetector();
+		d.setConvertingNoCallToHomRef(flags%2==1);
+		d.setFixingPloidy(flags/2==1);
+		int[] codes = null;
+		for(final Genotype f:gts) {
+			for(final Genotype m:gts) {
+				for(final Genotype c:gts) {
+					if(c==null) continue;
+					final VariantContext ctx = variant(
+						f==null?null:new GenotypeBuilder(f).name("F").make(),
+						m==null?null:new GenotypeBuilder(m).name("M").make(),
+						new GenotypeBuilder(c).name("C").make()
+						);
+					final int fi = ctx.getSampleNamesOrderedByName().indexOf("F");
+					final int mi = ctx.getSampleNamesOrderedByName().indexOf("M");
+					final int ci = ctx.getSampleNamesOrderedByName().indexOf("C");
+					codes = d.encodeGenotypes(ctx, codes);
+					Assert.assertEquals(
+						d.isDeNovo(codes, fi, mi, ci),
+						d.test(ctx, fi<0?null:ctx.getGenotype(fi), mi<0?null:ctx.getGenotype(mi), ctx.getGenotype(ci))!=null,
+						"flags="+flags+" F="+f+" M="+m+" C="+c
+						);
+					}
+				}
+			}
+		}
+	}
+
 }
@@ -4,10 +4,13 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 import org.testng.Assert;
+import org.testng.annotations.Test;
 
 import com.github.lindenb.jvarkit.tests.AlsoTest;
+import com.github.lindenb.jvarkit.tools.gnomad.VcfToAfStore;
 import com.github.lindenb.jvarkit.tools.tests.TestSupport;
 import com.github.lindenb.jvarkit.util.jcommander.LauncherTest;
+import com.github.lindenb.jvarkit.variant.af.AlleleFrequencyStore;
 import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
 
 import htsjdk.samtools.util.CloseableIterator;
@@ -159,4 +162,71 @@ public void testAF02()
 			}
 		}
 
+@Test
+public void testSorted()
+		throws IOException
+		{
+		try {
+			final String vcfin = support.resource("test_vcf01.vcf");
+			final Path out1=support.createTmpPath(".vcf");
+			Assert.assertEquals(new VcfPeekAf().instanceMain(new String[] {
+					"-o",out1.toString(),
+					"--peeker","ACAN",
+					"--treshold","0.5",
+					"--database",vcfin,
+					"--filter","THEFILTER",
+					vcfin
+					}),0);
+			final Path out2=support.createTmpPath(".vcf");
+			Assert.assertEquals(new VcfPeekAf().instanceMain(new String[] {
+					"-o",out2.toString(),
+					"--peeker","ACAN",
+					"--treshold","0.5",
+					"--database",vcfin,
+					"--filter","THEFILTER",
+					"--sorted",
+					vcfin
+					}),0);
+			support.assertSameVariants(out1, out2);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+
+@Test
+public void testStore()
+		throws IOException
+		{
+		try {
+			final String vcfin = support.resource("test_vcf01.vcf");
+			final Path storePath = support.createTmpPath(AlleleFrequencyStore.SUFFIX);
+			Assert.assertEquals(new VcfToAfStore().instanceMain(new String[] {
+					"-F","AF",
+					"-o",storePath.toString(),
+					vcfin
+					}),0);
+			final Path out=support.createTmpPath(".vcf");
+			Assert.assertEquals(new VcfPeekAf().instanceMain(new String[] {
+					"-o",out.toString(),
+					"--store",storePath.toString(),
+					"--treshold","0.5",
+					"--filter","THEFILTER",
+					vcfin
+					}),0);
+			support.assertIsVcf(out);
+			try(VCFReader r1= VCFReaderFactory.makeDefault().open(out,false)) {
+				Assert.assertTrue(
+					r1.iterator().
+					stream().
+					filter(V->V.getNAlleles()==2 && V.hasAttribute(VCFConstants.ALLELE_FREQUENCY_KEY)).
+					allMatch(V->V.getFilters().contains("THEFILTER") == (V.getAttributeAsDouble(VCFConstants.ALLELE_FREQUENCY_KEY, 1.0) > 0.5))
+					);
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+
 }
@@ -53,4 +53,33 @@ public void test01(final String vcfIn,final String vcfdb)
 		}
 	}
 	
+@Test(dataProvider="src01")
+public void testSorted(final String vcfIn,final String vcfdb)
+	throws IOException
+	{
+	try {
+		final Path out1 = support.createTmpPath(".vcf");
+		Assert.assertEquals(new VcfPeekVcf().instanceMain(new String[] {
+				"-o",out1.toString(),
+				"-f",vcfdb,
+				"-t","AN,AC,DP",
+				"-p","TITITOTO",
+				vcfIn
+				}),0);
+		final Path out2 = support.createTmpPath(".vcf");
+		Assert.assertEquals(new VcfPeekVcf().instanceMain(new String[] {
+				"-o",out2.toString(),
+				"-f",vcfdb,
+				"-t","AN,AC,DP",
+				"-p","TITITOTO",
+				"--sorted",
+				vcfIn
+				}),0);
+		support.assertSameVariants(out1, out2);
+		}
+	finally {
+		support.removeTmpFiles();
+		}
+	}
+
 }
@@ -0,0 +1,59 @@
+package com.github.lindenb.jvarkit.util.log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
+
+import htsjdk.variant.vcf.VCFReader;
+
+
+public class MetricsRegistryTest{
+
+private final TestSupport support =new TestSupport();
+
+@Test
+void testStage() throws IOException {
+	final MetricsRegistry metrics = MetricsRegistry.getInstance().reset("test", true);
+	long n;
+	try(VCFReader r= VCFReaderFactory.makeDefault().open(Paths.get(support.resource("rotavirus_rf.vcf.gz")),false)) {
+		n = ProgressFactory.newInstance().prefix("vcf").stream(r.iterator()).count();
+		}
+	metrics.counter("my.counter").add(3L);
+	final MetricsRegistry.Timer timer = metrics.timer("my.timer");
+	timer.stop(timer.start());
+	metrics.gauge("my.gauge",()->42);
+	final Map<String,Number> map = metrics.snapshot();
+	Assert.assertEquals(map.get("stage.vcf.records").longValue(), n);
+	Assert.assertEquals(map.get("my.counter").longValue(), 3L);
+	Assert.assertEquals(map.get("my.timer.calls").longValue(), 1L);
+	Assert.assertEquals(map.get("my.gauge").intValue(), 42);
+	Assert.assertTrue(map.get("jvm.heap.peak.bytes").longValue()>0L);
+	metrics.reset("test", false);
+	}
+
+@Test
+void testSave() throws IOException {
+	try {
+		final MetricsRegistry metrics = MetricsRegistry.getInstance().reset("test", true);
+		metrics.counter("my.counter").increment();
+		final Path json = support.createTmpPath(".json");
+		metrics.save(json);
+		Assert.assertTrue(Files.lines(json).anyMatch(L->L.contains("\"my.counter\":1")));
+		final Path prom = support.createTmpPath(".prom");
+		metrics.save(prom);
+		Assert.assertTrue(Files.lines(prom).anyMatch(L->L.equals("jvarkit_my_counter{program=\"test\"} 1")));
+		metrics.reset("test", false);
+		}
+	finally {
+		support.removeTmpFiles();
+		}
+	}
+}
@@ -111,4 +111,21 @@ public class SequenceOntologyTreeTest
 		}
 	 
 
+		private static void walkDescendants(final SequenceOntologyTree.Term t,final java.util.Set<SequenceOntologyTree.Term> set) {
+		if(!set.add(t)) return;
+		for(final SequenceOntologyTree.Term c:t.getChildren()) walkDescendants(c,set);
+		}
+	
+	@Test
+	public void testClosure() {
+		final SequenceOntologyTree tree = SequenceOntologyTree.getInstance();
+		for(final SequenceOntologyTree.Term t: tree) {
+			final java.util.Set<SequenceOntologyTree.Term> expect = new java.util.HashSet<>();
+			walkDescendants(t,expect);
+			Assert.assertEquals(t.getAllDescendants(), expect);
+			for(final SequenceOntologyTree.Term c: expect) {
+				Assert.assertTrue(c.isChildrenOf(t));
+				}
+			}
+		}
 	}
@@ -0,0 +1,68 @@
+package com.github.lindenb.jvarkit.util.vcf;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+import htsjdk.variant.vcf.VCFReader;
+
+public class VCFBufferTest {
+	private final TestSupport support = new TestSupport();
+
+	@DataProvider(name = "src1")
+	public Object[][] createData1() {
+		return new Object[][] {
+			{support.resource("rotavirus_rf.vcf.gz"),2},
+			{support.resource("rotavirus_rf.vcf.gz"),100_000},
+			{support.resource("test_vcf01.vcf"),10}
+			};
+		}
+
+	@Test(dataProvider="src1")
+	public void testBuffer(final String inputFile,final int maxRecordsInRam) throws IOException {
+		final List<String> expect = new ArrayList<>();
+		final VCFBuffer buffer = new VCFBuffer(maxRecordsInRam, null);
+		try(VCFReader r = VCFReaderFactory.makeDefault().open(Paths.get(inputFile),false)) {
+			final VCFHeader header = r.getHeader();
+			final VCFEncoder encoder = new VCFEncoder(header, true, false);
+			buffer.writeHeader(header);
+			try(CloseableIterator<VariantContext> iter=r.iterator()) {
+				while(iter.hasNext()) {
+					final VariantContext ctx = iter.next();
+					expect.add(encoder.encode(ctx));
+					buffer.add(ctx);
+					}
+				}
+			buffer.close();
+			/* can be read twice */
+			for(int i=0;i< 2;i++) {
+				final List<String> got = new ArrayList<>();
+				try(VCFIterator iter = buffer.iterator()) {
+					while(iter.hasNext()) {
+						Assert.assertNotNull(iter.peek());
+						got.add(encoder.encode(iter.next()));
+						}
+					}
+				Assert.assertEquals(got, expect);
+				}
+			Assert.assertEquals(buffer.stream().map(encoder::encode).collect(Collectors.toList()), expect);
+			}
+		finally {
+			buffer.dispose();
+			}
+		}
+	}
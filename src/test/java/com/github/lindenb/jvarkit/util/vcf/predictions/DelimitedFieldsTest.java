@@ -0,0 +1,56 @@
+package com.github.lindenb.jvarkit.util.vcf.predictions;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.lang.CharSplitter;
+
+public class DelimitedFieldsTest {
+	@DataProvider(name = "src1")
+	public Object[][] createData1() {
+		return new Object[][]{
+			{"A|missense_variant|MODERATE|GENE1|ENSG01"},
+			{"A||MODERATE||"},
+			{"|"},
+			{""},
+			{"A"},
+			{"||x"}
+			};
+		}
+	
+	@Test(dataProvider="src1")
+	public void testSameAsCharSplitter(final String s) {
+		final List<String> expect = CharSplitter.PIPE.splitAsStringList(s);
+		final DelimitedFields fields = new DelimitedFields(s, '|');
+		Assert.assertEquals(fields.size(), expect.size());
+		for(int i=0;i< expect.size();i++) {
+			Assert.assertEquals(fields.length(i), expect.get(i).length());
+			Assert.assertEquals(fields.isEmpty(i), expect.get(i).isEmpty());
+			Assert.assertTrue(fields.equalsAt(i, expect.get(i)));
+			Assert.assertEquals(fields.get(i), expect.get(i));
+			}
+		Assert.assertNull(fields.get(-1));
+		Assert.assertNull(fields.get(expect.size()));
+		Assert.assertTrue(fields.isEmpty(expect.size()));
+		Assert.assertEquals(fields.getSource(),s);
+		}
+	
+	@Test
+	public void testPoolAndSet() {
+		final Map<String,String> pool = new HashMap<>();
+		final DelimitedFields f1 = new DelimitedFields("A|GENE1", '|');
+		final DelimitedFields f2 = new DelimitedFields("C|GENE1", '|');
+		Assert.assertTrue(f1.startsWith(1, "GEN"));
+		Assert.assertFalse(f1.equalsAt(1, "GENE"));
+		Assert.assertSame(f1.get(1,pool), f2.get(1,pool));
+		f1.set(0, "T");
+		Assert.assertEquals(f1.get(0),"T");
+		Assert.assertTrue(f1.equalsAt(0,"T"));
+		Assert.assertEquals(f1.getSource(),"A|GENE1");
+		}
+	}
@@ -0,0 +1,101 @@
+package com.github.lindenb.jvarkit.variant.af;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+public class AlleleFrequencyStoreTest {
+	private final TestSupport support = new TestSupport();
+
+	@Test
+	public void testHash() {
+		Assert.assertEquals(
+			AlleleFrequencyStore.hash("chr1", 100, "a", "t"),
+			AlleleFrequencyStore.hash("1", 100, "A", "T")
+			);
+		Assert.assertNotEquals(
+			AlleleFrequencyStore.hash("1", 100, "A", "T"),
+			AlleleFrequencyStore.hash("1", 101, "A", "T")
+			);
+		Assert.assertNotEquals(
+			AlleleFrequencyStore.hash("1", 100, "A", "T"),
+			AlleleFrequencyStore.hash("1", 100, "A", "C")
+			);
+		}
+
+	@DataProvider(name="src01")
+	public Object[][] testData01() {
+		return new Object[][] {
+			{0},{1},{10},{1_000},{20_000}
+			};
+		}
+
+	@Test(dataProvider="src01")
+	public void testRoundTrip(final int n_variants) throws IOException {
+		try {
+			final Path storePath = support.createTmpPath(AlleleFrequencyStore.SUFFIX);
+			final Random rand = new Random(n_variants);
+			final String bases = "ACGT";
+			final float[][] expect = new float[n_variants][];
+			try(AlleleFrequencyStoreWriter w = AlleleFrequencyStore.createWriter(storePath, Arrays.asList("NFE","AFR"), 100, null)) {
+				for(int i=0;i< n_variants;i++) {
+					expect[i] = new float[] {rand.nextFloat(), (i%3==0?Float.NaN:rand.nextFloat())};
+					w.add("chr"+(1+i%5), 1+i, "A", String.valueOf(bases.charAt(1+i%3)), expect[i]);
+					}
+				}
+			try(AlleleFrequencyStore store = AlleleFrequencyStore.open(storePath)) {
+				Assert.assertEquals(store.size(), n_variants);
+				Assert.assertEquals(store.getPopulations(), Arrays.asList("NFE","AFR"));
+				Assert.assertEquals(store.getPopulationIndex("AFR"), 1);
+				Assert.assertEquals(store.getPopulationIndex("XXX"), -1);
+				for(int i=0;i< n_variants;i++) {
+					final String alt = String.valueOf(bases.charAt(1+i%3));
+					final float[] afs = store.get(String.valueOf(1+i%5), 1+i, "A", alt);
+					Assert.assertNotNull(afs);
+					Assert.assertEquals(afs[0], expect[i][0]);
+					Assert.assertEquals(Float.isNaN(afs[1]), Float.isNaN(expect[i][1]));
+					if(!Float.isNaN(afs[1])) Assert.assertEquals(afs[1], expect[i][1]);
+					Assert.assertEquals(store.get("chr"+(1+i%5), 1+i, "A", alt, 0), expect[i][0]);
+					//not in store
+					Assert.assertNull(store.get(String.valueOf(1+i%5), 1+i, "A", "A"));
+					Assert.assertTrue(Float.isNaN(store.get(String.valueOf(1+i%5), 1+i, "A", "A",0)));
+					}
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	
+	@Test
+	public void testFirstDuplicateIsKept() throws IOException {
+		try {
+			final Path storePath = support.createTmpPath(AlleleFrequencyStore.SUFFIX);
+			final AlleleFrequencyStoreWriter writer;
+			try(AlleleFrequencyStoreWriter w = AlleleFrequencyStore.createWriter(storePath, Arrays.asList("NFE"), 2, null)) {
+				writer = w;
+				for(int i=0;i< 100;i++) {
+					w.add("chr1", 1+(i%10), "A", "C", new float[] {i});
+					}
+				}
+			/* duplicates are only counted when the writer is closed */
+			Assert.assertEquals(writer.getDuplicateCount(), 90L);
+			try(AlleleFrequencyStore store = AlleleFrequencyStore.open(storePath)) {
+				Assert.assertEquals(store.size(), 10);
+				for(int i=0;i< 10;i++) {
+					Assert.assertEquals(store.get("1", 1+i, "A", "C", 0), (float)i);
+					}
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
@@ -0,0 +1,197 @@
+package com.github.lindenb.jvarkit.variant.bcf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+import com.github.lindenb.jvarkit.util.log.Logger;
+import com.github.lindenb.jvarkit.variant.vcf.VCFReaderFactory;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.VCFFileReader;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFIterator;
+import htsjdk.variant.vcf.VCFReader;
+
+/**
+ * testBenchmark compares the decoding throughput of htsjdk and of the BcfRecordReaders.
+ * The VCF converted to BCF and the number of rounds can be changed with
+ * -Djvarkit.bcf.benchmark.vcf=path and -Djvarkit.bcf.benchmark.rounds=N
+ */
+public class BcfRecordReaderTest {
+	private static final Logger LOG = Logger.build(BcfRecordReaderTest.class).make();
+	private final TestSupport support = new TestSupport();
+
+	private List<VariantContext> readHtsjdk(final Path path) {
+		final List<VariantContext> L = new ArrayList<>();
+		try(VCFFileReader r = new VCFFileReader(path, false)) {
+			final VCFHeader header = r.getFileHeader();
+			r.iterator().stream().map(V->V.fullyDecode(header, false)).forEach(V->L.add(V));
+			}
+		return L;
+		}
+
+	private List<VariantContext> readBcf(final BcfRecordReader r) throws IOException {
+		final List<VariantContext> L = new ArrayList<>();
+		try(VCFIterator iter = new BcfVCFIterator(r)) {
+			while(iter.hasNext()) L.add(iter.next());
+			}
+		return L;
+		}
+
+	/** numbers are compared as float because the types or the precision can differ between the VCF and the BCF */
+	private Object normalize(final Object o) {
+		if(o instanceof Number) return ((Number)o).floatValue();
+		if(o instanceof List) return ((List<?>)o).stream().map(V->normalize(V)).collect(Collectors.toList());
+		if(o instanceof Map) {
+			final Map<String,Object> m = new TreeMap<>();
+			for(Map.Entry<?,?> kv: ((Map<?,?>)o).entrySet()) m.put(kv.getKey().toString(), normalize(kv.getValue()));
+			return m;
+			}
+		return o;
+		}
+
+	private void compare(final List<VariantContext> L1,final List<VariantContext> L2) {
+		Assert.assertEquals(L2.size(), L1.size());
+		Assert.assertFalse(L1.isEmpty());
+		for(int i=0;i< L1.size();i++) {
+			final VariantContext v1 = L1.get(i);
+			final VariantContext v2 = L2.get(i);
+			Assert.assertEquals(v2.getContig(), v1.getContig());
+			Assert.assertEquals(v2.getStart(), v1.getStart());
+			Assert.assertEquals(v2.getEnd(), v1.getEnd());
+			Assert.assertEquals(v2.getID(), v1.getID());
+			Assert.assertEquals(v2.getAlleles(), v1.getAlleles());
+			Assert.assertEquals(v2.hasLog10PError(), v1.hasLog10PError());
+			Assert.assertEquals(v2.getPhredScaledQual(), v1.getPhredScaledQual(), 0.0001);
+			Assert.assertEquals(v2.filtersWereApplied(), v1.filtersWereApplied());
+			Assert.assertEquals(v2.getFilters(), v1.getFilters());
+			Assert.assertEquals(normalize(v2.getAttributes()), normalize(v1.getAttributes()));
+			Assert.assertEquals(v2.getGenotypes().toString(), v1.getGenotypes().toString());
+			}
+		}
+
+	@Test
+	public void testBcf22() throws IOException {
+		final Path bcf = Paths.get(support.resource("toy.bcf"));
+		final Path vcf = Paths.get(support.resource("toy.vcf.gz"));
+		try(BcfRecordReader r = new JavaBcfRecordReader(bcf)) {
+			try(VCFFileReader r2 = new VCFFileReader(vcf,false)) {
+				Assert.assertEquals(r.getHeader().getVCFHeader().getGenotypeSamples(), r2.getFileHeader().getGenotypeSamples());
+				}
+			compare(readHtsjdk(vcf), readBcf(r));
+			}
+		}
+
+	@Test
+	public void testBcf21() throws IOException {
+		try {
+			for(final String fn: new String[] {"rotavirus_rf.vcf.gz","manta.B00GWGD.vcf.gz","test_vcf01.vcf"}) {
+				final Path vcf = Paths.get(support.resource(fn));
+				final Path bcf = support.createTmpPath(".bcf");
+				try(VCFFileReader r = new VCFFileReader(vcf, false)) {
+					try(VariantContextWriter w = new VariantContextWriterBuilder().
+						setOutputPath(bcf).
+						unsetOption(Options.INDEX_ON_THE_FLY).
+						build()) {
+						w.writeHeader(r.getFileHeader());
+						r.iterator().stream().forEach(V->w.add(V));
+						}
+					}
+				try(BcfRecordReader r = new JavaBcfRecordReader(bcf)) {
+					compare(readHtsjdk(bcf), readBcf(r));
+					}
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	
+	@Test
+	public void testVCFReaderFactory() throws IOException {
+		final Path bcf = Paths.get(support.resource("toy.bcf"));
+		try(VCFReader r = VCFReaderFactory.makeDefault().open(bcf, false)) {
+			Assert.assertEquals(r.iterator().stream().count(), 5L);
+			}
+		}
+
+	/** decode all the records, return the number of records */
+	private long decode(final BcfRecordReader r,boolean toVariantContext) throws IOException {
+		final BcfRecord rec = r.createRecord();
+		long n = 0L;
+		while(r.read(rec)) {
+			if(toVariantContext) {
+				rec.toVariantContext().getGenotypes().size();
+				}
+			else
+				{
+				rec.getStart();
+				}
+			n++;
+			}
+		return n;
+		}
+
+	private void log(final String title,long n,long nanos) {
+		LOG.info(title+" : "+n+" records in "+(nanos/1_000_000)+"ms. "+(long)(n/(nanos/1.0E9))+" records/s");
+		}
+
+	@Test
+	public void testBenchmark() throws IOException {
+		try {
+			final Path vcf = Paths.get(System.getProperty("jvarkit.bcf.benchmark.vcf", support.resource("rotavirus_rf.vcf.gz")));
+			final int rounds = Integer.getInteger("jvarkit.bcf.benchmark.rounds", 1);
+			final Path bcf = support.createTmpPath(".bcf");
+			try(VCFFileReader r = new VCFFileReader(vcf, false)) {
+				try(VariantContextWriter w = new VariantContextWriterBuilder().
+					setOutputPath(bcf).
+					unsetOption(Options.INDEX_ON_THE_FLY).
+					build()) {
+					w.writeHeader(r.getFileHeader());
+					r.iterator().stream().forEach(V->w.add(V));
+					}
+				}
+			for(int round=0;round< rounds;round++) {
+				long t = System.nanoTime();
+				long n;
+				try(VCFFileReader r = new VCFFileReader(bcf, false)) {
+					n = r.iterator().stream().mapToInt(V->V.getGenotypes().size()).count();
+					}
+				log("htsjdk", n, System.nanoTime()-t);
+				t = System.nanoTime();
+				try(BcfRecordReader r = new JavaBcfRecordReader(bcf)) {
+					n = decode(r, true);
+					}
+				log("java/VariantContext", n, System.nanoTime()-t);
+				t = System.nanoTime();
+				try(BcfRecordReader r = new JavaBcfRecordReader(bcf)) {
+					n = decode(r, false);
+					}
+				log("java/raw", n, System.nanoTime()-t);
+				if(NativeBcfRecordReader.isAvailable()) {
+					t = System.nanoTime();
+					try(BcfRecordReader r = new NativeBcfRecordReader(bcf)) {
+						n = decode(r, false);
+						}
+					log("htslib/raw", n, System.nanoTime()-t);
+					}
+				}
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}
@@ -0,0 +1,47 @@
+package com.github.lindenb.jvarkit.variant.sv;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+public class StructuralVariantPanelTest {
+	private final TestSupport support = new TestSupport();
+
+	@Test
+	public void testSaveLoad() throws IOException {
+		try {
+			final StructuralVariantPanel panel1 = new StructuralVariantPanel.Builder().
+				add(Paths.get(support.resource("manta.B00GWGD.vcf.gz"))).
+				add(Paths.get(support.resource("manta.B00GWIU.vcf.gz"))).
+				build();
+			Assert.assertEquals(panel1.getControls().size(), 2);
+			Assert.assertFalse(panel1.getCalls().isEmpty());
+			Assert.assertTrue(panel1.getCalls().stream().anyMatch(C->C.getControlCount()==2));
+			final Path tmp = support.createTmpPath(StructuralVariantPanel.SUFFIX);
+			panel1.save(tmp);
+			final StructuralVariantPanel panel2 = StructuralVariantPanel.load(tmp);
+			Assert.assertEquals(panel2.getControls(), panel1.getControls());
+			Assert.assertEquals(panel2.getCalls().size(), panel1.getCalls().size());
+			for(int i=0;i< panel1.getCalls().size();i++) {
+				final StructuralVariantPanel.Call c1 = panel1.getCalls().get(i);
+				final StructuralVariantPanel.Call c2 = panel2.getCalls().get(i);
+				Assert.assertEquals(c2.toString(), c1.toString());
+				Assert.assertEquals(c2.getControlIndexes(), c1.getControlIndexes());
+				Assert.assertEquals(c2.toVariantContext().getAlleles(), c1.toVariantContext().getAlleles());
+				}
+			final StructuralVariantPanel.Call c = panel2.getCalls().stream().filter(C->C.getLengthOnReference()>100).findFirst().get();
+			Assert.assertTrue(panel2.getOverlapping(c.getContig(), c.getStart(), c.getStart()).contains(c));
+			Assert.assertTrue(panel2.getOverlapping(new SimpleInterval(c), 1.0).contains(c));
+			Assert.assertFalse(panel2.getOverlapping(new SimpleInterval(c.getContig(),c.getStart(),c.getStart()+c.getLengthOnReference()/2), 0.9).contains(c));
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+}
@@ -0,0 +1,59 @@
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFReader;
+
+public class BinaryVariantContextCodecTest {
+	private final TestSupport support = new TestSupport();
+
+	@DataProvider(name = "src1")
+	public Object[][] createData1() {
+		return support.combine2(support.allVcfOrBcf(), Stream.of(Boolean.TRUE,Boolean.FALSE));
+		}
+
+	@Test(dataProvider="src1")
+	public void testRoundTrip(final String inputFile,final Boolean fullyDecode) throws IOException {
+		final List<VariantContext> variants = new ArrayList<>();
+		final VCFHeader header;
+		try(VCFReader r = VCFReaderFactory.makeDefault().open(Paths.get(inputFile),false)) {
+			header = r.getHeader();
+			try(CloseableIterator<VariantContext> iter=r.iterator()) {
+				while(iter.hasNext()) {
+					final VariantContext ctx = iter.next();
+					variants.add(fullyDecode?ctx.fullyDecode(header, false):ctx);
+					}
+				}
+			}
+		final BinaryVariantContextCodec codec = new BinaryVariantContextCodec(header);
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		codec.setOutputStream(baos);
+		for(final VariantContext ctx:variants) codec.encode(ctx);
+		
+		final BinaryVariantContextCodec codec2 = codec.clone();
+		codec2.setInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		final VCFEncoder encoder = new VCFEncoder(header, true, false);
+		for(final VariantContext ctx:variants) {
+			final VariantContext ctx2 = codec2.decode();
+			Assert.assertNotNull(ctx2);
+			Assert.assertEquals(encoder.encode(ctx2), encoder.encode(ctx));
+			}
+		Assert.assertNull(codec2.decode());
+		}
+	}
@@ -0,0 +1,114 @@
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFIterator;
+import htsjdk.variant.vcf.VCFIteratorBuilder;
+
+public class SampleSubsetVCFIteratorTest {
+	private final TestSupport support = new TestSupport();
+
+	@DataProvider(name = "src1")
+	public Object[][] createData1() {
+		return new Object[][] {
+			{support.resource("rotavirus_rf.vcf.gz"),Arrays.asList("S4","S2")},
+			{support.resource("rotavirus_rf.vcf.gz"),Collections.emptyList()},
+			{support.resource("test_vcf01.vcf"),Collections.emptyList()}
+		};
+		}
+
+	private List<VariantContext> readAll(final VCFIterator iter) {
+		final List<VariantContext> L = new ArrayList<>();
+		while(iter.hasNext()) L.add(iter.next());
+		iter.close();
+		return L;
+		}
+
+	private void compare(final VCFIterator expect,final VCFIterator got,final Collection<String> samples) {
+		final List<String> sampleNames = new ArrayList<>(expect.getHeader().getSampleNamesInOrder());
+		sampleNames.retainAll(samples);
+		Assert.assertEquals(got.getHeader().getSampleNamesInOrder(), sampleNames);
+		final List<VariantContext> L1 = readAll(expect);
+		final List<VariantContext> L2 = readAll(got);
+		Assert.assertEquals(L1.size(), L2.size());
+		for(int i=0;i< L1.size();i++) {
+			final VariantContext v1 = L1.get(i).subContextFromSamples(new HashSet<>(samples), false);
+			final VariantContext v2 = L2.get(i);
+			Assert.assertEquals(v2.getContig(), v1.getContig());
+			Assert.assertEquals(v2.getStart(), v1.getStart());
+			Assert.assertEquals(v2.getAlleles(), v1.getAlleles());
+			Assert.assertEquals(v2.getNSamples(), sampleNames.size());
+			for(final String sn:sampleNames) {
+				Assert.assertEquals(v2.getGenotype(sn).toString(), v1.getGenotype(sn).toString());
+				}
+			}
+		}
+
+	@Test(dataProvider="src1")
+	public void testPath(final String vcf,final List<String> samples) throws IOException {
+		final Path path = Paths.get(vcf);
+		try(VCFIterator expect = new VCFIteratorBuilder().open(path)) {
+			try(VCFIterator got = new BcfIteratorBuilder().setSamples(samples).open(path)) {
+				compare(expect, got, samples);
+				}
+			}
+		}
+
+	@Test(dataProvider="src1")
+	public void testStream(final String vcf,final List<String> samples) throws IOException {
+		final Path path = Paths.get(vcf);
+		try(VCFIterator expect = new VCFIteratorBuilder().open(path)) {
+			try(InputStream in = Files.newInputStream(path)) {
+				try(VCFIterator got = new BcfIteratorBuilder().setSamples(samples).open(in)) {
+					compare(expect, got, samples);
+					}
+				}
+			}
+		}
+
+	@Test
+	public void testWrapToEnd() throws IOException {
+		final Path path = Paths.get(support.resource("rotavirus_rf.vcf.gz"));
+		final List<String> samples = Arrays.asList("S4","S2");
+		int n = 0;
+		try(VCFIterator iter = SampleSubsetVCFIterator.wrap(new VCFIteratorBuilder().open(path), samples)) {
+			while(iter.peek()!=null) {
+				final VariantContext ctx = iter.peek();
+				Assert.assertTrue(iter.hasNext());
+				Assert.assertSame(iter.next(), ctx);
+				Assert.assertEquals(ctx.getNSamples(), samples.size());
+				n++;
+				}
+			Assert.assertFalse(iter.hasNext());
+			Assert.assertNull(iter.peek());
+			}
+		try(VCFIterator expect = new VCFIteratorBuilder().open(path)) {
+			Assert.assertEquals(n, readAll(expect).size());
+			}
+		}
+
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void testMissingSample() throws IOException {
+		final Path path = Paths.get(support.resource("rotavirus_rf.vcf.gz"));
+		try(VCFIterator iter = new BcfIteratorBuilder().setSamples(Arrays.asList("XXX")).open(path)) {
+			Assert.fail("sample XXX was found in "+iter.getHeader().getSampleNamesInOrder());
+			}
+		}
+	}
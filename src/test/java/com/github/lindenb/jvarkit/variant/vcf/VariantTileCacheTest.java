@@ -0,0 +1,95 @@
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.samtools.util.SimpleInterval;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.Locatable;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFReader;
+
+public class VariantTileCacheTest {
+	private final TestSupport support = new TestSupport();
+
+	private static String toString(final VariantContext ctx) {
+		return ctx.getContig()+":"+ctx.getStart()+":"+ctx.getEnd()+":"+ctx.getAlleles()+":"+ctx.getGenotypes();
+		}
+
+	private static List<String> collect(final CloseableIterator<VariantContext> iter) {
+		final List<String> L = new ArrayList<>();
+		while(iter.hasNext()) L.add(toString(iter.next()));
+		iter.close();
+		return L;
+		}
+
+	@Test
+	public void testQueries() throws Exception {
+		final Path vcf = Paths.get(support.resource("rotavirus_rf.freebayes.vcf.gz"));
+		final List<Locatable> queries = new ArrayList<>();
+		final List<List<String>> expect = new ArrayList<>();
+		try(VCFReader r = VCFReaderFactory.makeDefault().open(vcf, true)) {
+			final SAMSequenceDictionary dict = r.getHeader().getSequenceDictionary();
+			final Random rand = new Random(0L);
+			for(int i=0;i< 200;i++) {
+				final SAMSequenceRecord ssr = dict.getSequence(rand.nextInt(dict.size()));
+				final int start = 1 + rand.nextInt(ssr.getSequenceLength());
+				final Locatable loc = new SimpleInterval(ssr.getSequenceName(), start, start + rand.nextInt(500));
+				queries.add(loc);
+				final List<String> L = new ArrayList<>();
+				try(CloseableIterator<VariantContext> iter = r.query(loc)) {
+					while(iter.hasNext()) L.add(toString(iter.next().fullyDecode(r.getHeader(), false)));
+					}
+				expect.add(L);
+				}
+			}
+		// small tiles and small cache: many tiles per query and many evictions
+		try(VariantTileCache cache = new VariantTileCache(50, 100)) {
+			final ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				final List<Future<?>> futures = new ArrayList<>();
+				for(int t=0;t< 4;t++) {
+					futures.add(executor.submit(()->{
+						for(int i=0;i< queries.size();i++) {
+							Assert.assertEquals(collect(cache.query(vcf, queries.get(i), false)), expect.get(i));
+							}
+						}));
+					}
+				for(final Future<?> f: futures) f.get();
+				}
+			finally {
+				executor.shutdown();
+				}
+			Assert.assertTrue(cache.getHitCount() > 0L);
+			Assert.assertTrue(cache.getWeight() <= 100L + 50L * (1 + cache.getHeader(vcf).getNGenotypeSamples()));
+			Assert.assertTrue(cache.getPool(vcf).getIdleCount() > 0);
+			// genotypes removed
+			for(final Locatable loc: queries) {
+				try(CloseableIterator<VariantContext> iter = cache.query(vcf, loc, true)) {
+					while(iter.hasNext()) Assert.assertFalse(iter.next().hasGenotypes());
+					}
+				}
+			// whole file
+			int n=0;
+			try(CloseableIterator<VariantContext> iter = cache.iterator(vcf)) {
+				while(iter.hasNext()) {iter.next();n++;}
+				}
+			Assert.assertEquals(n, 327);
+			Assert.assertEquals(cache.getETag(vcf, "rgn=RF01"), cache.getETag(vcf, "rgn=RF01"));
+			Assert.assertNotEquals(cache.getETag(vcf, "rgn=RF01"), cache.getETag(vcf, "rgn=RF02"));
+			}
+		}
+	}
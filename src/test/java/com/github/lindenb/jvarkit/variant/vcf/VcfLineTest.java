@@ -0,0 +1,88 @@
+package com.github.lindenb.jvarkit.variant.vcf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.lindenb.jvarkit.io.IOUtils;
+import com.github.lindenb.jvarkit.tools.tests.TestSupport;
+
+public class VcfLineTest {
+	private final TestSupport support = new TestSupport();
+
+	@Test
+	public void testColumns() {
+		final VcfLine line = new VcfLine("chr1\t10\t.\tA\tC\t.\tF1;F2\tAC=1;DP=3;DB\tGT\t0/1\t1/1");
+		Assert.assertEquals(line.getContig(), "chr1");
+		Assert.assertEquals(line.getStart(), 10);
+		Assert.assertEquals(line.getReference(), "A");
+		Assert.assertEquals(line.getAlt(), "C");
+		Assert.assertTrue(line.isFiltered());
+		Assert.assertEquals(line.getFilters(), Arrays.asList("F1","F2"));
+		Assert.assertEquals(line.getInfoAttribute("DP"), "3");
+		Assert.assertEquals(line.getInfoAttribute("DB"), "");
+		Assert.assertNull(line.getInfoAttribute("XX"));
+		Assert.assertEquals(line.getFormat(), "GT");
+		Assert.assertEquals(line.getGenotypeCount(), 2);
+		Assert.assertEquals(line.getColumn(10), "1/1");
+
+		line.setContig("1");
+		line.setFilter("PASS");
+		line.putInfoAttribute("B", "x");
+		line.putInfoAttribute("DP", "4");
+		Assert.assertEquals(line.toString(), "1\t10\t.\tA\tC\t.\tPASS\tAC=1;B=x;DP=4;DB\tGT\t0/1\t1/1");
+		line.removeInfoAttributes(K->!K.equals("B"));
+		Assert.assertEquals(line.getInfo(), "B=x");
+		line.removeInfoAttributes(K->true);
+		Assert.assertEquals(line.getInfo(), ".");
+		Assert.assertFalse(line.isFiltered());
+
+		final VcfLine line2 = new VcfLine("chr1\t10\t.\tA\tC\t.\t.\t.");
+		Assert.assertNull(line2.getFormat());
+		Assert.assertEquals(line2.getGenotypeCount(), 0);
+		Assert.assertFalse(line2.hasColumns(9));
+		line2.putInfoAttribute("X", null);
+		Assert.assertEquals(line2.toString(), "chr1\t10\t.\tA\tC\t.\t.\tX");
+		}
+
+	@Test(expectedExceptions=IndexOutOfBoundsException.class)
+	public void testNoSuchColumn() {
+		new VcfLine("chr1\t10\t.\tA\tC\t.\t.\t.").getColumn(8);
+		}
+
+	@Test
+	public void testCopy() throws IOException {
+		try {
+			final Path vcf = Paths.get(support.resource("manta.B00GWGD.vcf.gz"));
+			final Path out = support.createTmpPath(".vcf");
+			try(VcfLineReader r = VcfLineReader.open(vcf)) {
+				Assert.assertTrue(r.getHeader().hasGenotypingData());
+				try(VcfLineWriter w = new VcfLineWriter(Files.newOutputStream(out))) {
+					w.writeHeader(r.getHeader());
+					while(r.hasNext()) w.add(r.next());
+					}
+				}
+			support.assertIsVcf(out);
+			final List<String> L1;
+			try(BufferedReader br = IOUtils.openPathForBufferedReading(vcf)) {
+				L1 = br.lines().filter(S->!S.startsWith("#")).collect(Collectors.toList());
+				}
+			final List<String> L2;
+			try(BufferedReader br = IOUtils.openPathForBufferedReading(out)) {
+				L2 = br.lines().filter(S->!S.startsWith("#")).collect(Collectors.toList());
+				}
+			Assert.assertEquals(L2, L1);
+			}
+		finally {
+			support.removeTmpFiles();
+			}
+		}
+	}